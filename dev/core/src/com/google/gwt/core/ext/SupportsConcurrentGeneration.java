@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.ext;
+
+/**
+ * A marker interface that a {@link Generator} can implement to indicate that
+ * the compiler may run it concurrently with other generators that implement
+ * it, when the <code>gwt.precompile.rebindThreads</code> system property is
+ * greater than 1.
+ * <p>
+ * Each concurrent invocation gets its own {@link GeneratorContext}, whose
+ * generated types and resources are only committed to the compilation after
+ * all the concurrent invocations have finished. A generator that implements
+ * this interface must therefore:
+ * <ul>
+ * <li>be safe to call from several threads at once, without any shared mutable
+ * state other than what the compiler provides,</li>
+ * <li>not depend on the types generated for other rebind requests, except by
+ * relying on {@link GeneratorContext#tryCreate} to return <code>null</code>
+ * for a type that already exists.</li>
+ * </ul>
+ * An invocation that generates a type or resource that another one has
+ * generated first is discarded and run again on its own later, so generators
+ * that share helper types remain correct.
+ */
+public interface SupportsConcurrentGeneration {
+}
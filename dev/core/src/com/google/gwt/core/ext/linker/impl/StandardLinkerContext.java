@@ -51,6 +51,7 @@ import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.js.ast.JsScope;
 import com.google.gwt.dev.util.DefaultTextOutput;
 import com.google.gwt.dev.util.OutputFileSet;
+import com.google.gwt.dev.util.log.BufferedTreeLogger;
 
 import java.io.File;
 import java.io.IOException;
@@ -65,6 +66,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of {@link LinkerContext} that is initialized from a
@@ -72,6 +82,38 @@ import java.util.TreeSet;
  */
 public class StandardLinkerContext extends Linker implements LinkerContext {
 
+  /**
+   * A Java system property that sets the number of threads used to link
+   * permutations and to write artifacts. Values less than 2 link and write
+   * serially.
+   */
+  public static final String LINK_THREADS_PROPERTY = "gwt.link.threads";
+
+  /**
+   * Writes an artifact to a stream that is already open, and closes it.
+   */
+  private static final class ArtifactWrite implements Callable<Void> {
+    final EmittedArtifact artifact;
+    final TreeLogger logger;
+    final OutputStream stream;
+
+    ArtifactWrite(TreeLogger logger, EmittedArtifact artifact, OutputStream stream) {
+      this.artifact = artifact;
+      this.logger = logger;
+      this.stream = stream;
+    }
+
+    public Void call() throws UnableToCompleteException {
+      try {
+        artifact.writeTo(logger, stream);
+        stream.close();
+      } catch (IOException e) {
+        logger.log(TreeLogger.ERROR, "Fatal error emitting this artifact", e);
+      }
+      return null;
+    }
+  }
+
   /**
    * Applies the {@link JsStringInterner} optimization to each top-level
    * function defined within a JsProgram.
@@ -114,7 +156,7 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
   private final JJSOptions jjsOptions;
 
   private final List<Class<? extends Linker>> linkerClasses;
-  private Linker[] linkers;
+  private final Linker[] linkers;
   private final Map<Class<? extends Linker>, String> linkerShortNames = new HashMap<Class<? extends Linker>, String>();
   private final String moduleFunctionName;
   private final long moduleLastModified;
@@ -171,7 +213,7 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
       linkerClasses.addAll(postLinkerClasses);
     }
 
-    resetLinkers(logger);
+    linkers = createLinkers(logger);
 
     for (Map.Entry<String, Class<? extends Linker>> entry : module.getLinkers().entrySet()) {
       linkerShortNames.put(entry.getValue(), entry.getKey());
@@ -356,6 +398,12 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
   /**
    * Invoke the shardable linkers on one permutation result. Those linkers run
    * with the precompile artifacts as input.
+   * 
+   * <p>
+   * Each call runs new instances of the linkers, so that they don't carry any
+   * state across permutations, and different permutations can be linked
+   * concurrently.
+   * </p>
    */
   public ArtifactSet invokeLinkForOnePermutation(TreeLogger logger,
       StandardCompilationResult permResult, ArtifactSet permArtifacts)
@@ -363,7 +411,7 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
     ArtifactSet workingArtifacts = new ArtifactSet(permArtifacts);
     workingArtifacts.add(permResult);
 
-    for (Linker linker : linkers) {
+    for (Linker linker : createLinkers(logger)) {
       if (linker.isShardable()) {
         TreeLogger linkerLogger = logger.branch(TreeLogger.TRACE,
             "Invoking Linker " + linker.getDescription(), null);
@@ -377,12 +425,6 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
       }
     }
 
-    /*
-     * Reset linkers so that they don't accidentally carry any state across
-     * permutations
-     */
-    resetLinkers(logger);
-
     workingArtifacts.freeze();
     return workingArtifacts;
   }
@@ -473,7 +515,9 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
 
   /**
    * Emit EmittedArtifacts artifacts onto <code>out</code>. Does not close
-   * <code>out</code>.
+   * <code>out</code>. If {@value #LINK_THREADS_PROPERTY} is set and
+   * <code>out</code> {@link OutputFileSet#supportsConcurrentWrites() supports
+   * it}, the artifacts' contents are written by a bounded pool of threads.
    * 
    * @param logger where to log progress
    * @param artifacts the artifacts to emit
@@ -486,44 +530,109 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
     logger = logger.branch(TreeLogger.TRACE, "Linking " + visibility
         + " artifacts into " + out.getPathDescription(), null);
 
-    for (EmittedArtifact artifact : artifacts.find(EmittedArtifact.class)) {
-      TreeLogger artifactLogger = logger.branch(TreeLogger.DEBUG,
-          "Emitting resource " + artifact.getPartialPath(), null);
+    int numThreads = Integer.getInteger(LINK_THREADS_PROPERTY, 1);
+    ExecutorService executor = null;
+    if (numThreads > 1 && out.supportsConcurrentWrites()) {
+      executor = createWriteExecutor(numThreads);
+    }
+    List<TreeLogger> artifactLoggers = new ArrayList<TreeLogger>();
+    List<BufferedTreeLogger> writeLoggers = new ArrayList<BufferedTreeLogger>();
+    List<Future<Void>> writes = new ArrayList<Future<Void>>();
+
+    try {
+      for (EmittedArtifact artifact : artifacts.find(EmittedArtifact.class)) {
+        TreeLogger artifactLogger = logger.branch(TreeLogger.DEBUG,
+            "Emitting resource " + artifact.getPartialPath(), null);
 
-      if (!artifact.getVisibility().matches(visibility)) {
-        continue;
+        if (!artifact.getVisibility().matches(visibility)) {
+          continue;
+        }
+
+        String partialPath = artifact.getPartialPath();
+        if (artifact.getVisibility() != Visibility.Public) {
+          // Any non-public linker will have their artifacts stored in a directory
+          // named after the linker.
+          partialPath = getExtraPathForLinker(artifact.getLinker(), partialPath);
+          if (partialPath.startsWith("/")) {
+            partialPath = partialPath.substring(1);
+          }
+        }
+        OutputStream artifactStream;
+        try {
+          artifactStream = out.openForWrite(partialPath,
+              artifact.getLastModified());
+        } catch (IOException e) {
+          artifactLogger.log(TreeLogger.ERROR,
+              "Fatal error emitting this artifact", e);
+          continue;
+        }
+        if (executor == null) {
+          new ArtifactWrite(artifactLogger, artifact, artifactStream).call();
+        } else {
+          // Streams are opened here so that out is only used by one thread
+          BufferedTreeLogger writeLogger = new BufferedTreeLogger(artifactLogger);
+          artifactLoggers.add(artifactLogger);
+          writeLoggers.add(writeLogger);
+          writes.add(executor.submit(new ArtifactWrite(writeLogger, artifact,
+              artifactStream)));
+        }
       }
 
-      String partialPath = artifact.getPartialPath();
-      if (artifact.getVisibility() != Visibility.Public) {
-        // Any non-public linker will have their artifacts stored in a directory
-        // named after the linker.
-        partialPath = getExtraPathForLinker(artifact.getLinker(), partialPath);
-        if (partialPath.startsWith("/")) {
-          partialPath = partialPath.substring(1);
+      boolean failed = false;
+      for (int i = 0; i < writes.size(); ++i) {
+        try {
+          writes.get(i).get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          failed = true;
         }
+        writeLoggers.get(i).replay(artifactLoggers.get(i));
       }
-      try {
-        OutputStream artifactStream = out.openForWrite(partialPath,
-            artifact.getLastModified());
-        artifact.writeTo(artifactLogger, artifactStream);
-        artifactStream.close();
-      } catch (IOException e) {
-        artifactLogger.log(TreeLogger.ERROR,
-            "Fatal error emitting this artifact", e);
+      if (failed) {
+        throw new UnableToCompleteException();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.ERROR, "Interrupted while emitting artifacts", e);
+      throw new UnableToCompleteException();
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
       }
     }
   }
 
   /**
-   * (Re)instantiate all linkers.
+   * Creates the executor that writes artifacts. Once all threads are busy and
+   * a few writes are queued, the calling thread writes the next artifact
+   * itself, which bounds the number of open streams.
+   */
+  private ExecutorService createWriteExecutor(int numThreads) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    return new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(numThreads), new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ArtifactWriter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Instantiate all linkers.
    */
-  private void resetLinkers(TreeLogger logger) throws UnableToCompleteException {
-    linkers = new Linker[linkerClasses.size()];
+  private Linker[] createLinkers(TreeLogger logger) throws UnableToCompleteException {
+    Linker[] instances = new Linker[linkerClasses.size()];
     int i = 0;
     for (Class<? extends Linker> linkerClass : linkerClasses) {
       try {
-        linkers[i++] = linkerClass.newInstance();
+        instances[i++] = linkerClass.newInstance();
       } catch (InstantiationException e) {
         logger.log(TreeLogger.ERROR, "Unable to create Linker", e);
         throw new UnableToCompleteException();
@@ -532,5 +641,6 @@ public class StandardLinkerContext extends Linker implements LinkerContext {
         throw new UnableToCompleteException();
       }
     }
+    return instances;
   }
 }
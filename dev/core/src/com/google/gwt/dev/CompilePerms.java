@@ -28,6 +28,7 @@ import com.google.gwt.dev.util.PerfCounter;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.arg.ArgHandlerLocalWorkers;
 import com.google.gwt.dev.util.arg.OptionLocalWorkers;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.util.tools.ArgHandlerString;
 
 import java.io.File;
@@ -185,27 +186,42 @@ public class CompilePerms {
   }
 
   /**
-   * Compile a single permutation.
+   * Compile a single permutation. If a {@link PermutationResultCache} is
+   * configured, an unchanged permutation is read back from the cache instead.
    * 
    * @throws UnableToCompleteException if the permutation compile fails
    */
   public static PermutationResult compile(TreeLogger logger,
       Permutation permutation, UnifiedAst unifiedAst)
       throws UnableToCompleteException {
-    return unifiedAst.compilePermutation(logger, permutation);
+    PermutationResultCache cache = PermutationResultCache.get(logger);
+    String cacheKey = (cache == null) ? null : cache.computeKey(permutation, unifiedAst);
+    if (cacheKey != null) {
+      PermutationResult cached = cache.find(logger, cacheKey);
+      if (cached != null) {
+        logger.log(TreeLogger.INFO, "Permutation " + permutation.getId()
+            + " is unchanged; using the cached result");
+        return cached;
+      }
+    }
+    PermutationResult result = unifiedAst.compilePermutation(logger, permutation);
+    if (cacheKey != null) {
+      cache.put(logger, cacheKey, result);
+    }
+    return result;
   }
 
   /**
    * Compile multiple permutations.
    */
-  public static void compile(TreeLogger logger, Precompilation precompilation,
-      Permutation[] perms, int localWorkers,
+  public static void compile(TreeLogger logger, String moduleName,
+      Precompilation precompilation, Permutation[] perms, int localWorkers,
       List<FileBackedObject<PermutationResult>> resultFiles)
       throws UnableToCompleteException {
     final TreeLogger branch = logger.branch(TreeLogger.INFO, "Compiling "
         + perms.length + " permutation" + (perms.length > 1 ? "s" : ""));
-    PermutationWorkerFactory.compilePermutations(branch, precompilation, perms,
-        localWorkers, resultFiles);
+    PermutationWorkerFactory.compilePermutations(branch, moduleName, precompilation,
+        perms, localWorkers, resultFiles);
     logger.log(TreeLogger.INFO, "Compile of permutations succeeded");
   }
 
@@ -299,6 +315,7 @@ public class CompilePerms {
 
   public boolean run(TreeLogger logger) throws UnableToCompleteException {
     for (String moduleName : options.getModuleNames()) {
+      CompilerMetrics.setModule(moduleName);
       /*
        * NOTE: as a special case, null means "compile everything".
        */
@@ -325,8 +342,8 @@ public class CompilePerms {
 
         List<FileBackedObject<PermutationResult>> resultFiles = makeResultFiles(
             compilerWorkDir, subPerms);
-        compile(logger, precompilation, subPerms, options.getLocalWorkers(),
-            resultFiles);
+        compile(logger, moduleName, precompilation, subPerms,
+            options.getLocalWorkers(), resultFiles);
       }
     }
 
@@ -36,6 +36,7 @@ import com.google.gwt.dev.util.arg.ArgHandlerLocalWorkers;
 import com.google.gwt.dev.util.arg.ArgHandlerWarDir;
 import com.google.gwt.dev.util.arg.ArgHandlerWorkDirOptional;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import com.google.gwt.util.tools.Utility;
@@ -193,6 +194,7 @@ public class Compiler {
     ModuleDef[] modules = new ModuleDef[options.getModuleNames().size()];
     int i = 0;
     for (String moduleName : options.getModuleNames()) {
+      CompilerMetrics.setModule(moduleName);
       modules[i++] = ModuleDefLoader.loadFromClassPath(logger, moduleName, true);
     }
     return run(logger, modules);
@@ -218,6 +220,7 @@ public class Compiler {
 
       for (ModuleDef module : modules) {
         String moduleName = module.getCanonicalName();
+        CompilerMetrics.setModule(moduleName);
         if (options.isValidateOnly()) {
           if (!Precompile.validate(logger, options, module, options.getGenDir())) {
             return false;
@@ -239,7 +242,7 @@ public class Compiler {
           Permutation[] allPerms = precompilation.getPermutations();
           List<FileBackedObject<PermutationResult>> resultFiles = CompilePerms.makeResultFiles(
               options.getCompilerWorkDir(moduleName), allPerms);
-          CompilePerms.compile(branch, precompilation, allPerms,
+          CompilePerms.compile(branch, moduleName, precompilation, allPerms,
               options.getLocalWorkers(), resultFiles);
           compilePermutationsEvent.end();
 
@@ -44,6 +44,7 @@ import com.google.gwt.dev.util.arg.ArgHandlerLogLevel;
 import com.google.gwt.dev.util.arg.OptionDisableUpdateCheck;
 import com.google.gwt.dev.util.arg.OptionGenDir;
 import com.google.gwt.dev.util.arg.OptionLogLevel;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.DevModeEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
@@ -776,6 +777,12 @@ public abstract class DevModeBase implements DoneCallback {
 
   private boolean headlessMode = false;
 
+  /**
+   * The directory of the persistent unit cache, which also holds persisted
+   * generator results.
+   */
+  private File persistentCacheDir;
+
   private Map<String, RebindCache> rebindCaches = null;
 
   private boolean started;
@@ -877,7 +884,7 @@ public abstract class DevModeBase implements DoneCallback {
       CompilationState compilationState, ModuleDef moduleDef) throws UnableToCompleteException {
     ArtifactAcceptor artifactAcceptor = createArtifactAcceptor(logger, moduleDef);
     return new ShellModuleSpaceHost(logger, compilationState, moduleDef, options.getGenDir(),
-        artifactAcceptor, getRebindCache(moduleDef.getName()));
+        artifactAcceptor, getRebindCache(logger, moduleDef.getName(), compilationState));
   }
 
   protected abstract void doShutDownServer();
@@ -915,6 +922,7 @@ public abstract class DevModeBase implements DoneCallback {
     topLogger = ui.getTopLogger();
 
     CompilationStateBuilder.init(getTopLogger(), persistentCacheDir);
+    this.persistentCacheDir = persistentCacheDir;
 
     // Set done callback
     ui.setCallback(DoneEvent.getType(), this);
@@ -1073,6 +1081,7 @@ public abstract class DevModeBase implements DoneCallback {
       throw new IllegalStateException("Startup code has already been run");
     }
 
+    CompilerMetrics.registerMBean();
     Event startupEvent = SpeedTracerLogger.start(DevModeEventType.STARTUP);
     try {
       // See if there was a UI specified by command-line args
@@ -1186,7 +1195,8 @@ public abstract class DevModeBase implements DoneCallback {
     return newUI;
   }
 
-  private RebindCache getRebindCache(String moduleName) {
+  private RebindCache getRebindCache(TreeLogger logger, String moduleName,
+      CompilationState compilationState) {
 
     if (generatorResultCachingDisabled) {
       return null;
@@ -1198,7 +1208,11 @@ public abstract class DevModeBase implements DoneCallback {
 
     RebindCache cache = rebindCaches.get(moduleName);
     if (cache == null) {
-      cache = new RebindCache();
+      cache = PersistentRebindCache.create(logger, persistentCacheDir, moduleName,
+          compilationState);
+      if (cache == null) {
+        cache = new RebindCache();
+      }
       rebindCaches.put(moduleName, cache);
     }
     return cache;
@@ -15,6 +15,7 @@
  */
 package com.google.gwt.dev;
 
+import com.google.gwt.core.ext.SupportsConcurrentGeneration;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.linker.ArtifactSet;
@@ -22,6 +23,9 @@ import com.google.gwt.dev.cfg.BindingProperty;
 import com.google.gwt.dev.cfg.ConfigurationProperty;
 import com.google.gwt.dev.cfg.ModuleDef;
 import com.google.gwt.dev.cfg.PropertyPermutations;
+import com.google.gwt.dev.cfg.Rule;
+import com.google.gwt.dev.cfg.RuleGenerateWith;
+import com.google.gwt.dev.cfg.RuleReplaceWith;
 import com.google.gwt.dev.cfg.Rules;
 import com.google.gwt.dev.cfg.StaticPropertyOracle;
 import com.google.gwt.dev.javac.CompilationState;
@@ -31,23 +35,94 @@ import com.google.gwt.dev.jdt.RebindPermutationOracle;
 import com.google.gwt.dev.shell.StandardRebindOracle;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.collect.HashSet;
+import com.google.gwt.dev.util.log.BufferedTreeLogger;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of RebindPermutationOracle used by Precompile.
  */
 class DistillerRebindPermutationOracle implements RebindPermutationOracle {
+
+  /**
+   * Rebinds a type for every permutation in its own generator context, and
+   * records what it logs.
+   */
+  private final class ConcurrentRebind implements Callable<String[]> {
+    final StandardGeneratorContext context = generatorContext.fork();
+    final BufferedTreeLogger logger;
+    final String typeName;
+
+    ConcurrentRebind(TreeLogger logger, String typeName) {
+      this.logger = new BufferedTreeLogger(logger);
+      this.typeName = typeName;
+    }
+
+    /**
+     * Returns the answer of each permutation, or <code>null</code> if the
+     * rebind failed.
+     */
+    public String[] call() {
+      TreeLogger branch = logger.branch(TreeLogger.DEBUG,
+          "Computing all possible rebind results for '" + typeName + "'", null);
+      String[] answers = new String[propertyOracles.length];
+      try {
+        for (int i = 0; i < answers.length; ++i) {
+          answers[i] =
+              new StandardRebindOracle(propertyOracles[i], rules, context).rebind(branch, typeName);
+        }
+      } catch (UnableToCompleteException e) {
+        return null;
+      }
+      return answers;
+    }
+  }
+
+  /**
+   * A Java system property that sets the number of threads used to run
+   * generators that implement {@link SupportsConcurrentGeneration}. Values less
+   * than 2 disable concurrent rebinds.
+   */
+  public static final String REBIND_THREADS_PROPERTY = "gwt.precompile.rebindThreads";
+
   private CompilationState compilationState;
+  private ExecutorService executor;
   private StandardGeneratorContext generatorContext;
   private final Permutation[] permutations;
+
+  /**
+   * The answers of each permutation for the types that were rebound ahead of
+   * time by {@link #prefetchRebindAnswers}.
+   */
+  private final Map<String, String[]> prefetchedAnswers = new HashMap<String, String[]>();
+
   private final StaticPropertyOracle[] propertyOracles;
-  private final RebindOracle[] rebindOracles;
+  private final StandardRebindOracle[] rebindOracles;
+
+  /**
+   * The types that have been rebound, or whose rebind has failed.
+   */
+  private final Set<String> rebound = new HashSet<String>();
+
+  private final Rules rules;
 
   public DistillerRebindPermutationOracle(ModuleDef module,
       CompilationState compilationState, ArtifactSet generatorArtifacts,
@@ -55,13 +130,13 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
     this.compilationState = compilationState;
     permutations = new Permutation[perms.size()];
     propertyOracles = new StaticPropertyOracle[perms.size()];
-    rebindOracles = new RebindOracle[perms.size()];
+    rebindOracles = new StandardRebindOracle[perms.size()];
     generatorContext = new StandardGeneratorContext(compilationState, module,
         genDir, generatorArtifacts, true);
     BindingProperty[] orderedProps = perms.getOrderedProperties();
     SortedSet<ConfigurationProperty> configPropSet = module.getProperties().getConfigurationProperties();
     ConfigurationProperty[] configProps = configPropSet.toArray(new ConfigurationProperty[configPropSet.size()]);
-    Rules rules = module.getRules();
+    rules = module.getRules();
     for (int i = 0; i < rebindOracles.length; ++i) {
       String[] orderedPropValues = perms.getOrderedPropertyValues(i);
       propertyOracles[i] = new StaticPropertyOracle(orderedProps,
@@ -73,6 +148,10 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
   }
 
   public void clear() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
     generatorContext.clear();
     compilationState = null;
     generatorContext = null;
@@ -87,8 +166,11 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
 
     Set<String> answers = new HashSet<String>();
     Event getAllRebindsEvent = SpeedTracerLogger.start(CompilerEventType.GET_ALL_REBINDS);
+    rebound.add(requestTypeName);
+    String[] prefetched = prefetchedAnswers.get(requestTypeName);
     for (int i = 0; i < getPermuationCount(); ++i) {
-      String resultTypeName = rebindOracles[i].rebind(logger, requestTypeName);
+      String resultTypeName =
+          prefetched == null ? rebindOracles[i].rebind(logger, requestTypeName) : prefetched[i];
       answers.add(resultTypeName);
       // Record the correct answer into each permutation.
       permutations[i].putRebindAnswer(requestTypeName, resultTypeName);
@@ -121,4 +203,126 @@ class DistillerRebindPermutationOracle implements RebindPermutationOracle {
   public RebindOracle getRebindOracle(int permNumber) {
     return rebindOracles[permNumber];
   }
+
+  /**
+   * Rebinds the types whose generators implement
+   * {@link SupportsConcurrentGeneration} on a pool of
+   * {@value #REBIND_THREADS_PROPERTY} threads, each in a fork of the generator
+   * context. The forks are then merged in the order of
+   * <code>sourceTypeNames</code>, and their units are added to the compilation
+   * state together. Types generated from the same source by several rebinds,
+   * such as shared helper types, are added once. A rebind that fails, that
+   * generates a type from a different source than an earlier one, or that
+   * generates a resource an earlier one also generated, is dropped, so that it
+   * runs again on its own when its answer is requested.
+   */
+  public boolean prefetchRebindAnswers(TreeLogger logger, Collection<String> sourceTypeNames) {
+    int numThreads = Integer.getInteger(REBIND_THREADS_PROPERTY, 1);
+    if (numThreads < 2 || generatorContext == null) {
+      return false;
+    }
+
+    List<ConcurrentRebind> rebinds = new ArrayList<ConcurrentRebind>();
+    for (String typeName : new LinkedHashSet<String>(sourceTypeNames)) {
+      if (!rebound.contains(typeName) && isConcurrentRebind(typeName)) {
+        rebinds.add(new ConcurrentRebind(logger, typeName));
+      }
+    }
+    if (rebinds.size() < 2) {
+      return true;
+    }
+
+    Event prefetchEvent =
+        SpeedTracerLogger.start(CompilerEventType.GET_ALL_REBINDS, "concurrent", ""
+            + rebinds.size());
+    try {
+      if (executor == null) {
+        executor = createExecutor(numThreads);
+      }
+      List<Future<String[]>> futures = new ArrayList<Future<String[]>>(rebinds.size());
+      for (ConcurrentRebind rebind : rebinds) {
+        futures.add(executor.submit(rebind));
+      }
+
+      int numMerged = 0;
+      for (int i = 0; i < rebinds.size(); ++i) {
+        ConcurrentRebind rebind = rebinds.get(i);
+        String[] answers = getAnswers(logger, futures.get(i));
+        if (answers == null || !generatorContext.isMergeable(rebind.context)) {
+          continue;
+        }
+        rebind.logger.replay(logger);
+        generatorContext.merge(logger, rebind.context);
+        prefetchedAnswers.put(rebind.typeName, answers);
+        ++numMerged;
+      }
+      generatorContext.finish(logger);
+
+      if (logger.isLoggable(TreeLogger.DEBUG)) {
+        logger.log(TreeLogger.DEBUG, "Rebound " + numMerged + " of " + rebinds.size()
+            + " types concurrently");
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      prefetchEvent.end();
+    }
+  }
+
+  private ExecutorService createExecutor(int numThreads) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "ConcurrentRebind-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Returns the answers of a concurrent rebind, or <code>null</code> if it
+   * failed. The failure itself is reported when the rebind runs again.
+   */
+  private String[] getAnswers(TreeLogger logger, Future<String[]> future)
+      throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      logger.log(TreeLogger.DEBUG, "Concurrent rebind failed; it will be retried", cause);
+      return null;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if, in every permutation, a type is rebound by a
+   * generator that supports concurrent generation or without any generator,
+   * and at least one generator runs.
+   */
+  private boolean isConcurrentRebind(String typeName) {
+    boolean runsGenerator = false;
+    try {
+      for (StandardRebindOracle rebindOracle : rebindOracles) {
+        Rule rule = rebindOracle.findRebindRule(TreeLogger.NULL, typeName);
+        if (rule instanceof RuleGenerateWith) {
+          if (!((RuleGenerateWith) rule).isConcurrent()) {
+            return false;
+          }
+          runsGenerator = true;
+        } else if (rule != null && !(rule instanceof RuleReplaceWith)) {
+          return false;
+        }
+      }
+    } catch (UnableToCompleteException e) {
+      // Let the error be reported when the type is rebound
+      return false;
+    }
+    return runsGenerator;
+  }
 }
@@ -31,6 +31,7 @@ import com.google.gwt.dev.util.arg.ArgHandlerLocalWorkers;
 import com.google.gwt.dev.util.arg.ArgHandlerOutDir;
 import com.google.gwt.dev.util.arg.ArgHandlerWorkDirOptional;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import com.google.gwt.util.tools.ToolBase;
@@ -163,6 +164,7 @@ public class GWTCompiler {
     ModuleDef[] modules = new ModuleDef[options.getModuleNames().size()];
     int i = 0;
     for (String moduleName : options.getModuleNames()) {
+      CompilerMetrics.setModule(moduleName);
       modules[i++] = ModuleDefLoader.loadFromClassPath(logger, moduleName, true);
     }
     return run(logger, modules);
@@ -183,6 +185,7 @@ public class GWTCompiler {
 
       for (ModuleDef module : modules) {
         String moduleName = module.getName();
+        CompilerMetrics.setModule(moduleName);
 
         if (options.isValidateOnly()) {
           if (!Precompile.validate(logger, options, module, options.getGenDir())) {
@@ -204,7 +207,7 @@ public class GWTCompiler {
           Permutation[] allPerms = precompilation.getPermutations();
           List<FileBackedObject<PermutationResult>> resultFiles = CompilePerms.makeResultFiles(
               options.getCompilerWorkDir(moduleName), allPerms);
-          CompilePerms.compile(logger, precompilation, allPerms,
+          CompilePerms.compile(logger, moduleName, precompilation, allPerms,
               options.getLocalWorkers(), resultFiles);
 
           ArtifactSet generatedArtifacts = precompilation.getGeneratedArtifacts();
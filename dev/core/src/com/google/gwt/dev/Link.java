@@ -48,7 +48,9 @@ import com.google.gwt.dev.util.arg.OptionDeployDir;
 import com.google.gwt.dev.util.arg.OptionExtraDir;
 import com.google.gwt.dev.util.arg.OptionOutDir;
 import com.google.gwt.dev.util.arg.OptionWarDir;
+import com.google.gwt.dev.util.log.BufferedTreeLogger;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
@@ -61,6 +63,13 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -445,10 +454,17 @@ public class Link {
       List<FileBackedObject<PermutationResult>> resultFiles)
       throws UnableToCompleteException {
     ArtifactSet combinedArtifacts = new ArtifactSet();
-    for (int i = 0; i < perms.length; ++i) {
-      ArtifactSet newArtifacts = finishPermutation(logger, perms[i],
-          resultFiles.get(i), linkerContext, generatedArtifacts);
-      combinedArtifacts.addAll(newArtifacts);
+    int numThreads = Math.min(Integer.getInteger(
+        StandardLinkerContext.LINK_THREADS_PROPERTY, 1), perms.length);
+    if (numThreads > 1) {
+      finishPermutationsConcurrently(logger, perms, resultFiles, linkerContext,
+          generatedArtifacts, combinedArtifacts, numThreads);
+    } else {
+      for (int i = 0; i < perms.length; ++i) {
+        ArtifactSet newArtifacts = finishPermutation(logger, perms[i],
+            resultFiles.get(i), linkerContext, generatedArtifacts);
+        combinedArtifacts.addAll(newArtifacts);
+      }
     }
 
     combinedArtifacts.addAll(linkerContext.getArtifactsForPublicResources(
@@ -488,6 +504,70 @@ public class Link {
         permArtifacts);
   }
 
+  /**
+   * Runs {@link #finishPermutation} for every permutation on a pool of
+   * threads. The artifacts and log output of the permutations are combined in
+   * permutation order, as if they had been linked one after another.
+   */
+  private static void finishPermutationsConcurrently(TreeLogger logger,
+      final Permutation[] perms,
+      final List<FileBackedObject<PermutationResult>> resultFiles,
+      final StandardLinkerContext linkerContext,
+      final ArtifactSet generatedArtifacts, ArtifactSet combinedArtifacts,
+      int numThreads) throws UnableToCompleteException {
+    final AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "PermutationLinker-"
+                + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    try {
+      List<BufferedTreeLogger> permLoggers = new ArrayList<BufferedTreeLogger>();
+      List<Future<ArtifactSet>> results = new ArrayList<Future<ArtifactSet>>();
+      for (int i = 0; i < perms.length; ++i) {
+        final int permIndex = i;
+        final BufferedTreeLogger permLogger = new BufferedTreeLogger(logger);
+        permLoggers.add(permLogger);
+        results.add(executor.submit(new Callable<ArtifactSet>() {
+          public ArtifactSet call() throws UnableToCompleteException {
+            return finishPermutation(permLogger, perms[permIndex],
+                resultFiles.get(permIndex), linkerContext, generatedArtifacts);
+          }
+        }));
+      }
+
+      for (int i = 0; i < perms.length; ++i) {
+        try {
+          ArtifactSet newArtifacts = results.get(i).get();
+          permLoggers.get(i).replay(logger);
+          combinedArtifacts.addAll(newArtifacts);
+        } catch (ExecutionException e) {
+          permLoggers.get(i).replay(logger);
+          Throwable cause = e.getCause();
+          if (cause instanceof UnableToCompleteException) {
+            throw (UnableToCompleteException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          logger.log(TreeLogger.ERROR, "Unexpected error while linking", cause);
+          throw new UnableToCompleteException();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(TreeLogger.ERROR, "Interrupted while linking permutations", e);
+      throw new UnableToCompleteException();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private static String getFullArtifactPath(EmittedArtifact emittedArtifact,
       StandardLinkerContext context) {
     String path = emittedArtifact.getPartialPath();
@@ -612,6 +692,7 @@ public class Link {
 
   public boolean run(TreeLogger logger) throws UnableToCompleteException {
     loop_modules : for (String moduleName : options.getModuleNames()) {
+      CompilerMetrics.setModule(moduleName);
       ModuleDef module = ModuleDefLoader.loadFromClassPath(logger, moduleName);
 
       File compilerWorkDir = options.getCompilerWorkDir(moduleName);
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Remembers how long each permutation took to compile in earlier builds, so
+ * that the most expensive permutations can be started first.
+ *
+ * Permutations are identified by their module name and property values, which
+ * are stable across builds, rather than by their ids. Several modules can share
+ * one history file. The history is only persisted when the
+ * {@value #HISTORY_FILE_PROPERTY} system property names a file.
+ */
+public class PermutationCostHistory {
+
+  /**
+   * A Java system property naming the file that holds the compile times.
+   */
+  public static final String HISTORY_FILE_PROPERTY = "gwt.permutationhistory";
+
+  /**
+   * Returned by {@link #getEstimatedCost(Permutation)} for a permutation that
+   * has no recorded compile time.
+   */
+  public static final long UNKNOWN_COST = -1;
+
+  /**
+   * Loads the history of the module <code>moduleName</code> from the file
+   * named by {@value #HISTORY_FILE_PROPERTY}. Returns an empty history that is
+   * never saved if the property is unset.
+   */
+  public static PermutationCostHistory load(TreeLogger logger, String moduleName) {
+    String fileName = System.getProperty(HISTORY_FILE_PROPERTY);
+    if (fileName == null || fileName.length() == 0) {
+      return new PermutationCostHistory(null, moduleName);
+    }
+    PermutationCostHistory history =
+        new PermutationCostHistory(new File(fileName), moduleName);
+    history.read(logger);
+    return history;
+  }
+
+  private final File file;
+
+  private final String moduleName;
+
+  /**
+   * Maps the module name and {@link Permutation#prettyPrint()} to the compile
+   * time in milliseconds. Holds the entries of all modules in the file, so that
+   * saving keeps the other modules' times.
+   */
+  private final Properties times = new Properties();
+
+  PermutationCostHistory(File file, String moduleName) {
+    this.file = file;
+    this.moduleName = moduleName;
+  }
+
+  /**
+   * Returns the last recorded compile time of <code>permutation</code> in
+   * milliseconds, or {@link #UNKNOWN_COST}.
+   */
+  public synchronized long getEstimatedCost(Permutation permutation) {
+    String value = times.getProperty(getKey(permutation));
+    if (value != null) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        // Treat as unknown.
+      }
+    }
+    return UNKNOWN_COST;
+  }
+
+  /**
+   * Records that <code>permutation</code> took <code>millis</code> to compile.
+   */
+  public synchronized void record(Permutation permutation, long millis) {
+    times.setProperty(getKey(permutation), String.valueOf(millis));
+  }
+
+  /**
+   * Writes the history back to its file, if it has one. Failures are logged
+   * and otherwise ignored.
+   */
+  public synchronized void save(TreeLogger logger) {
+    if (file == null) {
+      return;
+    }
+    FileOutputStream out = null;
+    try {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null) {
+        parent.mkdirs();
+      }
+      out = new FileOutputStream(file);
+      times.store(out, "GWT permutation compile times in milliseconds");
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Unable to write permutation history "
+          + file.getAbsolutePath(), e);
+    } finally {
+      Utility.close(out);
+    }
+  }
+
+  void read(TreeLogger logger) {
+    if (!file.isFile()) {
+      return;
+    }
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      times.load(in);
+    } catch (IOException e) {
+      logger.log(TreeLogger.WARN, "Ignoring unreadable permutation history "
+          + file.getAbsolutePath(), e);
+      times.clear();
+    } finally {
+      Utility.close(in);
+    }
+  }
+
+  private String getKey(Permutation permutation) {
+    return moduleName + ": " + permutation.prettyPrint();
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.JJSOptionsImpl;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.jjs.UnifiedAst;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SortedMap;
+
+/**
+ * A persistent cache of {@link PermutationResult PermutationResults}, so that a
+ * permutation whose inputs did not change since an earlier compile is read
+ * back from disk instead of being compiled again.
+ *
+ * Results are keyed by a strong hash of the precompilation inputs (see
+ * {@link UnifiedAst#getInputsHash()}), the compiler options, and the
+ * permutation's id, property values, configuration properties and rebind
+ * answers. None of these depend on the identity of objects in the AST, so
+ * separate precompiles of the same sources share cache entries. The cache is only used when the {@value #CACHE_DIR_PROPERTY} system
+ * property names a directory. A cached result carries the compile metrics of
+ * the compile that produced it.
+ */
+public class PermutationResultCache {
+
+  /**
+   * A Java system property naming the directory that holds cached results.
+   */
+  public static final String CACHE_DIR_PROPERTY = "gwt.permutationcachedir";
+
+  /**
+   * Changes whenever the key or the file format changes, so that stale entries
+   * are never read back.
+   */
+  private static final String CACHE_VERSION = "2";
+
+  private static final String CACHE_FILE_SUFFIX = ".permutation";
+
+  private static PermutationResultCache instance;
+
+  private static boolean initialized;
+
+  /**
+   * Returns the shared cache, or <code>null</code> if caching is disabled.
+   */
+  public static synchronized PermutationResultCache get(TreeLogger logger) {
+    if (!initialized) {
+      initialized = true;
+      String cacheDirName = System.getProperty(CACHE_DIR_PROPERTY);
+      if (cacheDirName != null && cacheDirName.length() > 0) {
+        File cacheDir = new File(cacheDirName);
+        if (cacheDir.isDirectory() || cacheDir.mkdirs()) {
+          instance = new PermutationResultCache(cacheDir);
+        } else {
+          logger.log(TreeLogger.WARN, "Unable to create permutation cache directory "
+              + cacheDir.getAbsolutePath() + "; permutation results will not be cached");
+        }
+      }
+    }
+    return instance;
+  }
+
+  private final File cacheDir;
+
+  PermutationResultCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Computes the key under which the result of compiling
+   * <code>permutation</code> from <code>unifiedAst</code> is cached, or returns
+   * <code>null</code> if the result cannot be cached.
+   */
+  public String computeKey(Permutation permutation, UnifiedAst unifiedAst) {
+    String inputsHash = unifiedAst.getInputsHash();
+    if (inputsHash == null) {
+      return null;
+    }
+
+    byte[] options;
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      Util.writeObjectToStream(baos, new JJSOptionsImpl(unifiedAst.getOptions()));
+      options = baos.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException("Should never happen with in-memory stream", e);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(CACHE_VERSION).append('\n');
+    sb.append(About.getGwtVersionNum()).append('\n');
+    sb.append(permutation.getId()).append('\n');
+    for (StaticPropertyOracle oracle : permutation.getPropertyOracles()) {
+      sb.append(oracle).append('\n');
+      for (ConfigurationProperty prop : oracle.getConfigurationProperties()) {
+        sb.append(prop.getName()).append(" = ").append(prop.getValues()).append(' ');
+      }
+      sb.append('\n');
+    }
+    for (SortedMap<String, String> rebindAnswers : permutation.getOrderedRebindAnswers()) {
+      sb.append(rebindAnswers).append('\n');
+    }
+
+    return Util.computeStrongName(new byte[][] {
+        Util.getBytes(sb.toString()), Util.getBytes(inputsHash), options});
+  }
+
+  /**
+   * Returns the result cached under <code>key</code>, or <code>null</code> if
+   * there is none.
+   */
+  public PermutationResult find(TreeLogger logger, String key) {
+    File cacheFile = getCacheFile(key);
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    try {
+      return Util.readFileAsObject(cacheFile, PermutationResult.class);
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring unreadable cached permutation "
+          + cacheFile.getAbsolutePath(), e);
+    } catch (ClassNotFoundException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring unreadable cached permutation "
+          + cacheFile.getAbsolutePath(), e);
+    }
+    cacheFile.delete();
+    return null;
+  }
+
+  /**
+   * Stores <code>result</code> under <code>key</code>. Failures are logged and
+   * otherwise ignored.
+   */
+  public void put(TreeLogger logger, String key, PermutationResult result) {
+    File cacheFile = getCacheFile(key);
+    /*
+     * Write to a temporary file first, so that concurrent workers never see a
+     * partially written result.
+     */
+    File tempFile = null;
+    FileOutputStream stream = null;
+    try {
+      tempFile = File.createTempFile(key, ".tmp", cacheDir);
+      stream = new FileOutputStream(tempFile);
+      Util.writeObjectToStream(stream, result);
+      stream.close();
+      stream = null;
+      if (!tempFile.renameTo(cacheFile) && !cacheFile.isFile()) {
+        logger.log(TreeLogger.TRACE, "Unable to create cached permutation "
+            + cacheFile.getAbsolutePath());
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Unable to write cached permutation "
+          + cacheFile.getAbsolutePath(), e);
+    } finally {
+      Utility.close(stream);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private File getCacheFile(String key) {
+    return new File(cacheDir, key + CACHE_FILE_SUFFIX);
+  }
+}
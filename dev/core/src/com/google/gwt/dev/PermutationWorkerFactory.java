@@ -28,9 +28,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 
 /**
  * Represents a factory for implementations of an endpoint that will invoke
@@ -70,7 +72,9 @@ public abstract class PermutationWorkerFactory {
             }
             TreeLogger logger = work.getLogger();
             try {
+              long start = System.currentTimeMillis();
               worker.compile(logger, work.getPerm(), work.getResultFile());
+              history.record(work.getPerm(), System.currentTimeMillis() - start);
               logger.log(TreeLogger.DEBUG, "Successfully compiled permutation");
               resultsQueue.put(Result.SUCCESS);
             } catch (TransientWorkerException e) {
@@ -97,15 +101,23 @@ public abstract class PermutationWorkerFactory {
       }
     }
 
-    private static final Work POISON_PILL = new Work(null, null, null);
+    private static final Work POISON_PILL = new Work(null, null, null, Integer.MAX_VALUE, 0);
 
     public static void run(TreeLogger logger, List<Work> work,
-        List<PermutationWorker> workers) throws UnableToCompleteException {
-      new Manager().doRun(logger, work, workers);
+        List<PermutationWorker> workers, PermutationCostHistory history)
+        throws UnableToCompleteException {
+      new Manager(history).doRun(logger, work, workers);
     }
 
     /**
-     * The queue of work to do.
+     * Records the compile time of each permutation.
+     */
+    private final PermutationCostHistory history;
+
+    /**
+     * The queue of work to do, most expensive first. Idle workers take the
+     * next permutation from here, so a worker that finishes early picks up the
+     * work that would otherwise wait for a busy one.
      */
     BlockingQueue<Work> workQueue;
 
@@ -114,14 +126,16 @@ public abstract class PermutationWorkerFactory {
      */
     BlockingQueue<Result> resultsQueue;
 
-    private Manager() {
+    private Manager(PermutationCostHistory history) {
+      this.history = history;
     }
 
     private void doRun(TreeLogger logger, List<Work> work,
         List<PermutationWorker> workers) throws UnableToCompleteException {
 
       // Initialize state.
-      workQueue = new LinkedBlockingQueue<Work>(work);
+      workQueue = new PriorityBlockingQueue<Work>(work.size() + 1, Work.MOST_EXPENSIVE_FIRST);
+      workQueue.addAll(work);
       resultsQueue = new LinkedBlockingQueue<Result>();
 
       List<Thread> threads = new ArrayList<Thread>(workers.size());
@@ -180,21 +194,51 @@ public abstract class PermutationWorkerFactory {
    * Represents work to do.
    */
   private static class Work {
+    /**
+     * Orders work by decreasing estimated cost, and then by the order in which
+     * the work was created. Work of unknown cost goes first, since it might be
+     * the most expensive.
+     */
+    public static final Comparator<Work> MOST_EXPENSIVE_FIRST = new Comparator<Work>() {
+      public int compare(Work a, Work b) {
+        long costA = a.getEstimatedCost() == PermutationCostHistory.UNKNOWN_COST
+            ? Long.MAX_VALUE : a.getEstimatedCost();
+        long costB = b.getEstimatedCost() == PermutationCostHistory.UNKNOWN_COST
+            ? Long.MAX_VALUE : b.getEstimatedCost();
+        if (costA != costB) {
+          return costA > costB ? -1 : 1;
+        }
+        return a.getOrder() - b.getOrder();
+      }
+    };
+
+    private final long estimatedCost;
     private final TreeLogger logger;
+    private final int order;
     private final Permutation perm;
     private final FileBackedObject<PermutationResult> resultFile;
 
     public Work(TreeLogger logger, Permutation perm,
-        FileBackedObject<PermutationResult> resultFile) {
+        FileBackedObject<PermutationResult> resultFile, int order, long estimatedCost) {
       this.logger = logger;
       this.perm = perm;
       this.resultFile = resultFile;
+      this.order = order;
+      this.estimatedCost = estimatedCost;
+    }
+
+    public long getEstimatedCost() {
+      return estimatedCost;
     }
 
     public TreeLogger getLogger() {
       return logger;
     }
 
+    public int getOrder() {
+      return order;
+    }
+
     public Permutation getPerm() {
       return perm;
     }
@@ -221,11 +265,11 @@ public abstract class PermutationWorkerFactory {
    * that can be consumed by Link using the system-default
    * PermutationWorkersFactories.
    */
-  public static void compilePermutations(TreeLogger logger,
+  public static void compilePermutations(TreeLogger logger, String moduleName,
       Precompilation precompilation, int localWorkers,
       List<FileBackedObject<PermutationResult>> resultFiles)
       throws UnableToCompleteException {
-    compilePermutations(logger, precompilation,
+    compilePermutations(logger, moduleName, precompilation,
         precompilation.getPermutations(), localWorkers, resultFiles);
   }
 
@@ -234,6 +278,8 @@ public abstract class PermutationWorkerFactory {
    * array of Files that can be consumed by Link using the system-default
    * PermutationWorkersFactories.
    *
+   * @param moduleName the name of the module being compiled, used to look up
+   *          the permutations' earlier compile times
    * @param localWorkers Set the maximum number of workers that should be
    *          executed on the local system by the PermutationWorkerFactory. The
    *          value {@link #WORKERS_AUTO} will allow the
@@ -242,7 +288,7 @@ public abstract class PermutationWorkerFactory {
    * @param resultFiles the output files to write into; must be the same length
    *          as permutations
    */
-  public static void compilePermutations(TreeLogger logger,
+  public static void compilePermutations(TreeLogger logger, String moduleName,
       Precompilation precompilation, Permutation[] permutations,
       int localWorkers, List<FileBackedObject<PermutationResult>> resultFiles)
       throws UnableToCompleteException {
@@ -251,14 +297,18 @@ public abstract class PermutationWorkerFactory {
         Arrays.asList(permutations));
 
     // Create the work.
+    PermutationCostHistory history = PermutationCostHistory.load(logger, moduleName);
     List<Work> work = new ArrayList<Work>(permutations.length);
     for (int i = 0; i < permutations.length; ++i) {
       Permutation perm = permutations[i];
+      long estimatedCost = history.getEstimatedCost(perm);
       if (logger.isLoggable(TreeLogger.DEBUG)) {
         logger.log(TreeLogger.DEBUG,
-            "Creating worker permutation " + perm.getId() + " of " + permutations.length);
+            "Creating worker permutation " + perm.getId() + " of " + permutations.length
+                + (estimatedCost == PermutationCostHistory.UNKNOWN_COST ? ""
+                    : ", previously compiled in " + estimatedCost + "ms"));
       }
-      work.add(new Work(logger, perm, resultFiles.get(i)));
+      work.add(new Work(logger, perm, resultFiles.get(i), i, estimatedCost));
     }
 
     // Create the workers.
@@ -268,7 +318,8 @@ public abstract class PermutationWorkerFactory {
           localWorkers, workers);
 
       // Get it done!
-      Manager.run(logger, work, workers);
+      Manager.run(logger, work, workers, history);
+      history.save(logger);
     } finally {
       Throwable caught = null;
       for (PermutationWorker worker : workers) {
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.CachedGeneratorResult;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.javac.CachedGeneratorResultImpl;
+import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link RebindCache} that also writes its entries to disk, next to the
+ * persistent unit cache, so that generator results survive restarts of
+ * development mode. Each entry is stored in its own file, keyed by rebind rule
+ * and type name. When the cache is created, the entries of earlier sessions
+ * are read back, and kept only if the ContentIds of the source units they were
+ * generated from are unchanged.
+ * 
+ * The cache is only used when the {@value #ENABLED_PROPERTY} system property is
+ * <code>true</code>.
+ */
+public class PersistentRebindCache extends RebindCache {
+
+  /**
+   * A Java system property that enables persistent caching.
+   */
+  public static final String ENABLED_PROPERTY = "gwt.persistentrebindcache";
+
+  static final String REBIND_CACHE_PREFIX = "gwt-rebindCache";
+
+  private static final String CACHE_FILE_SUFFIX = ".rebind";
+
+  /**
+   * An entry that has not been written yet.
+   */
+  private static class PendingEntry {
+    final String ruleName;
+    final String queryTypeName;
+    final CachedGeneratorResult result;
+
+    PendingEntry(String ruleName, String queryTypeName, CachedGeneratorResult result) {
+      this.ruleName = ruleName;
+      this.queryTypeName = queryTypeName;
+      this.result = result;
+    }
+  }
+
+  /**
+   * Creates the cache of a module and loads the valid entries of earlier
+   * sessions, or returns <code>null</code> if persistent caching is disabled.
+   * 
+   * @param cacheDir the directory of the persistent unit cache, which is
+   *          overridden by the <code>gwt.persistentunitcachedir</code> system
+   *          property like the unit cache's
+   */
+  public static PersistentRebindCache create(TreeLogger logger, File cacheDir,
+      String moduleName, CompilationState compilationState) {
+    if (!Boolean.getBoolean(ENABLED_PROPERTY)) {
+      return null;
+    }
+    String propertyCacheDir = System.getProperty("gwt.persistentunitcachedir");
+    if (propertyCacheDir != null) {
+      cacheDir = new File(propertyCacheDir);
+    }
+    if (cacheDir == null) {
+      logger.log(TreeLogger.TRACE, "Persistent rebind caching disabled - no directory specified.");
+      return null;
+    }
+    File moduleCacheDir = new File(new File(cacheDir, REBIND_CACHE_PREFIX), moduleName);
+    if (!moduleCacheDir.isDirectory() && !moduleCacheDir.mkdirs()) {
+      logger.log(TreeLogger.WARN, "Unable to create rebind cache directory "
+          + moduleCacheDir.getAbsolutePath() + "; generator results will not be persisted");
+      return null;
+    }
+    PersistentRebindCache cache = new PersistentRebindCache(moduleCacheDir);
+    cache.load(logger, compilationState);
+    return cache;
+  }
+
+  private final File cacheDir;
+
+  private final List<PendingEntry> pendingEntries = new ArrayList<PendingEntry>();
+
+  PersistentRebindCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Writes the entries added since the last call, with the dependencies they
+   * have in <code>compilationState</code>. Failures are logged and otherwise
+   * ignored.
+   */
+  @Override
+  public void save(TreeLogger logger, CompilationState compilationState) {
+    for (PendingEntry entry : pendingEntries) {
+      File cacheFile = getCacheFile(entry.ruleName, entry.queryTypeName);
+      if (entry.result instanceof CachedGeneratorResultImpl
+          && ((CachedGeneratorResultImpl) entry.result).recordDependencies(compilationState,
+              entry.queryTypeName)) {
+        writeEntry(logger, cacheFile, entry);
+      } else {
+        // Don't let an older result for the same rebind outlive this one
+        cacheFile.delete();
+      }
+    }
+    pendingEntries.clear();
+  }
+
+  /**
+   * Reads the entries in the cache directory, keeping the valid ones and
+   * deleting the others.
+   */
+  void load(TreeLogger logger, CompilationState compilationState) {
+    File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    int loaded = 0;
+    for (File file : files) {
+      if (!file.getName().endsWith(CACHE_FILE_SUFFIX)) {
+        continue;
+      }
+      if (readEntry(logger, file, compilationState)) {
+        ++loaded;
+      } else {
+        file.delete();
+      }
+    }
+    if (logger.isLoggable(TreeLogger.TRACE)) {
+      logger.log(TreeLogger.TRACE, "Loaded " + loaded + " cached generator results from "
+          + cacheDir.getAbsolutePath());
+    }
+  }
+
+  @Override
+  void put(String ruleName, String queryTypeName, CachedGeneratorResult results) {
+    super.put(ruleName, queryTypeName, results);
+    pendingEntries.add(new PendingEntry(ruleName, queryTypeName, results));
+  }
+
+  private File getCacheFile(String ruleName, String queryTypeName) {
+    String key = Util.computeStrongName(Util.getBytes(ruleName + '\n' + queryTypeName));
+    return new File(cacheDir, key + CACHE_FILE_SUFFIX);
+  }
+
+  private boolean readEntry(TreeLogger logger, File file, CompilationState compilationState) {
+    ObjectInputStream stream = null;
+    try {
+      stream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (!About.getGwtVersionNum().equals(stream.readUTF())) {
+        return false;
+      }
+      String ruleName = stream.readUTF();
+      String queryTypeName = stream.readUTF();
+      CachedGeneratorResultImpl result = (CachedGeneratorResultImpl) stream.readObject();
+      if (!result.checkDependencies(compilationState)) {
+        return false;
+      }
+      // Entries read back don't need to be written again
+      super.put(ruleName, queryTypeName, result);
+      return true;
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring unreadable cached generator result "
+          + file.getAbsolutePath(), e);
+    } catch (ClassNotFoundException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring unreadable cached generator result "
+          + file.getAbsolutePath(), e);
+    } finally {
+      Utility.close(stream);
+    }
+    return false;
+  }
+
+  private void writeEntry(TreeLogger logger, File cacheFile, PendingEntry entry) {
+    /*
+     * Write to a temporary file first, so that a session that is killed never
+     * leaves a partially written entry behind.
+     */
+    File tempFile = null;
+    ObjectOutputStream stream = null;
+    try {
+      tempFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheDir);
+      stream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      stream.writeUTF(About.getGwtVersionNum());
+      stream.writeUTF(entry.ruleName);
+      stream.writeUTF(entry.queryTypeName);
+      stream.writeObject(entry.result);
+      stream.close();
+      stream = null;
+      cacheFile.delete();
+      if (!tempFile.renameTo(cacheFile)) {
+        logger.log(TreeLogger.TRACE, "Unable to create cached generator result "
+            + cacheFile.getAbsolutePath());
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Unable to write cached generator result "
+          + cacheFile.getAbsolutePath(), e);
+    } finally {
+      Utility.close(stream);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+}
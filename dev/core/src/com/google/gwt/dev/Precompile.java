@@ -41,6 +41,7 @@ import com.google.gwt.dev.util.Memory;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.collect.Lists;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
@@ -403,6 +404,7 @@ public class Precompile {
     options.setOptimizePrecompile(false);
 
     for (String moduleName : options.getModuleNames()) {
+      CompilerMetrics.setModule(moduleName);
       File compilerWorkDir = options.getCompilerWorkDir(moduleName);
       Util.recursiveDelete(compilerWorkDir, true);
       // No need to check mkdirs result because an IOException will occur
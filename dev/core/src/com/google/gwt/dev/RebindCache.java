@@ -16,7 +16,9 @@
 package com.google.gwt.dev;
 
 import com.google.gwt.core.ext.CachedGeneratorResult;
+import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.cfg.Rule;
+import com.google.gwt.dev.javac.CompilationState;
 
 import java.io.Serializable;
 import java.util.HashMap;
@@ -45,10 +47,22 @@ public class RebindCache implements Serializable {
   }
 
   public void put(Rule rule, String queryTypeName, CachedGeneratorResult results) {
-    Map<String, CachedGeneratorResult> ruleResults = rebindResults.get(rule.toString());
+    put(rule.toString(), queryTypeName, results);
+  }
+
+  /**
+   * Saves the entries added since the last call, once the units they generated
+   * have been compiled into <code>compilationState</code>. This implementation
+   * does nothing; see {@link PersistentRebindCache}.
+   */
+  public void save(TreeLogger logger, CompilationState compilationState) {
+  }
+
+  void put(String ruleName, String queryTypeName, CachedGeneratorResult results) {
+    Map<String, CachedGeneratorResult> ruleResults = rebindResults.get(ruleName);
     if (ruleResults == null) {
       ruleResults = new HashMap<String, CachedGeneratorResult>();
-      rebindResults.put(rule.toString(), ruleResults);
+      rebindResults.put(ruleName, ruleResults);
     }
     ruleResults.put(queryTypeName, results);
   }
@@ -17,6 +17,7 @@ package com.google.gwt.dev.cfg;
 
 import com.google.gwt.core.ext.Generator;
 import com.google.gwt.core.ext.RebindResult;
+import com.google.gwt.core.ext.SupportsConcurrentGeneration;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.javac.StandardGeneratorContext;
@@ -34,6 +35,14 @@ public class RuleGenerateWith extends Rule {
     this.generatorClass = generatorClass;
   }
 
+  /**
+   * Returns <code>true</code> if the generator implements
+   * {@link SupportsConcurrentGeneration}.
+   */
+  public boolean isConcurrent() {
+    return SupportsConcurrentGeneration.class.isAssignableFrom(generatorClass);
+  }
+
   @Override
   public RebindResult realize(TreeLogger logger,
       StandardGeneratorContext context, String typeName)
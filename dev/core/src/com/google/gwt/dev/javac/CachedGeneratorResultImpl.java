@@ -22,10 +22,13 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * An implementation class to represent the cached results from a previous
- * generator invocation.
+ * generator invocation. A result that is persisted across sessions records the
+ * {@link ContentId ContentIds} of the source units it was generated from, so
+ * that it can be discarded when one of them changes.
  */
 public class CachedGeneratorResultImpl implements CachedGeneratorResult, Serializable {
   private final ArtifactSet artifacts;
@@ -34,6 +37,12 @@ public class CachedGeneratorResultImpl implements CachedGeneratorResult, Seriali
   private final long timeGenerated;
   private final Map<String, Serializable> clientDataMap;
 
+  /**
+   * The ContentIds of the source units this result depends on, keyed by type
+   * name, or <code>null</code> if they have not been recorded.
+   */
+  private Map<String, String> dependencies;
+
   public CachedGeneratorResultImpl(String resultTypeName, ArtifactSet artifacts,
       Map<String, GeneratedUnit> generatedUnitMap, long timeGenerated,
       Map<String, Serializable> clientDataMap) {
@@ -50,6 +59,26 @@ public class CachedGeneratorResultImpl implements CachedGeneratorResult, Seriali
     this(resultTypeName, artifacts, generatedUnitMap, timeGenerated, null);
   }
 
+  /**
+   * Returns <code>true</code> if the dependencies recorded by
+   * {@link #recordDependencies(CompilationState, String)} are unchanged in
+   * <code>compilationState</code>, and <code>false</code> if any of them has
+   * changed or none were recorded.
+   */
+  public boolean checkDependencies(CompilationState compilationState) {
+    if (dependencies == null) {
+      return false;
+    }
+    Map<String, CompilationUnit> units = compilationState.getCompilationUnitMap();
+    for (Entry<String, String> entry : dependencies.entrySet()) {
+      CompilationUnit unit = units.get(entry.getKey());
+      if (unit == null || !unit.getContentId().get().equals(entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public ArtifactSet getArtifacts() {
     return artifacts;
   }
@@ -85,4 +114,45 @@ public class CachedGeneratorResultImpl implements CachedGeneratorResult, Seriali
   public boolean isTypeCached(String typeName) {
     return generatedUnitMap.containsKey(typeName);
   }
+
+  /**
+   * Records the ContentIds of the source units this result depends on: the
+   * unit that declares the type that was rebound, and the units referenced by
+   * the generated units. The generated units must have been compiled into
+   * <code>compilationState</code>.
+   * 
+   * @return <code>false</code> if the dependencies cannot be determined, e.g.
+   *         because a generated unit failed to compile
+   */
+  public boolean recordDependencies(CompilationState compilationState, String queryTypeName) {
+    Map<String, CompiledClass> classes = compilationState.getClassFileMapBySource();
+    Map<String, String> toRecord = new HashMap<String, String>();
+    if (!addDependency(toRecord, classes.get(queryTypeName))) {
+      return false;
+    }
+    Map<String, CompilationUnit> units = compilationState.getCompilationUnitMap();
+    for (String typeName : generatedUnitMap.keySet()) {
+      CompilationUnit unit = units.get(typeName);
+      if (unit == null || unit.isError()) {
+        return false;
+      }
+      for (String apiRef : unit.getDependencies().getApiRefs()) {
+        // References to packages and missing types don't resolve to a class
+        addDependency(toRecord, classes.get(apiRef));
+      }
+    }
+    dependencies = toRecord;
+    return true;
+  }
+
+  private static boolean addDependency(Map<String, String> toRecord, CompiledClass compiledClass) {
+    if (compiledClass == null) {
+      return false;
+    }
+    CompilationUnit unit = compiledClass.getUnit();
+    if (!unit.isGenerated()) {
+      toRecord.put(unit.getTypeName(), unit.getContentId().get());
+    }
+    return true;
+  }
 }
\ No newline at end of file
@@ -18,13 +18,16 @@ package com.google.gwt.dev.javac;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.javac.CompilationStateBuilder.CompileMoreLater;
 import com.google.gwt.dev.javac.typemodel.TypeOracle;
+import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.log.speedtracer.DevModeEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -127,6 +130,24 @@ public class CompilationState {
     return exposedUnits;
   }
 
+  /**
+   * Returns a strong hash of the {@link ContentId ContentIds} of all
+   * compilation units. It only depends on the units' type names and sources, so
+   * it is the same in every process that builds the same units.
+   */
+  public String getContentHash() {
+    List<String> contentIds = new ArrayList<String>();
+    for (CompilationUnit unit : unitMap.values()) {
+      contentIds.add(unit.getContentId().get());
+    }
+    Collections.sort(contentIds);
+    StringBuilder sb = new StringBuilder();
+    for (String contentId : contentIds) {
+      sb.append(contentId).append('\n');
+    }
+    return Util.computeStrongName(Util.getBytes(sb.toString()));
+  }
+
   public TypeOracle getTypeOracle() {
     return mediator.getTypeOracle();
   }
@@ -24,6 +24,7 @@ import com.google.gwt.dev.jjs.impl.GwtAstBuilder;
 import com.google.gwt.dev.js.ast.JsRootScope;
 import com.google.gwt.dev.resource.Resource;
 import com.google.gwt.dev.util.StringInterner;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.DevModeEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
@@ -50,7 +51,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages a centralized cache for compiled units.
@@ -64,6 +72,23 @@ public class CompilationStateBuilder {
 
     private final class UnitProcessorImpl implements UnitProcessor {
 
+      private final GwtAstBuilder astBuilder = new GwtAstBuilder();
+
+      /**
+       * The compiler of the processed units, which resolves JSNI references.
+       */
+      private JdtCompiler compiler;
+
+      /**
+       * Receives the processed units of a batch. If <code>null</code>, they go
+       * to the build threads.
+       */
+      private final List<CompilationUnitBuilder> processedBuilders;
+
+      public UnitProcessorImpl(List<CompilationUnitBuilder> processedBuilders) {
+        this.processedBuilders = processedBuilders;
+      }
+
       @Override
       public void process(CompilationUnitBuilder builder, CompilationUnitDeclaration cud,
           List<CompiledClass> compiledClasses) {
@@ -122,14 +147,20 @@ public class CompilationStateBuilder {
             types = astBuilder.process(cud, artificialRescues, jsniMethods, jsniRefs);
           }
 
-          for (CompiledClass cc : compiledClasses) {
-            allValidClasses.put(cc.getSourceName(), cc);
+          synchronized (allValidClasses) {
+            for (CompiledClass cc : compiledClasses) {
+              allValidClasses.put(cc.getSourceName(), cc);
+            }
           }
 
           builder.setClasses(compiledClasses).setTypes(types).setDependencies(dependencies)
               .setJsniMethods(jsniMethods.values()).setMethodArgs(methodArgs).setProblems(
                   cud.compilationResult().getProblems());
-          buildQueue.add(builder);
+          if (processedBuilders == null) {
+            buildQueue.add(builder);
+          } else {
+            processedBuilders.add(builder);
+          }
         } finally {
           event.end();
         }
@@ -143,15 +174,18 @@ public class CompilationStateBuilder {
      */
     private final Map<String, CompiledClass> allValidClasses = new HashMap<String, CompiledClass>();
 
-    private final GwtAstBuilder astBuilder = new GwtAstBuilder();
-
     private transient LinkedBlockingQueue<CompilationUnitBuilder> buildQueue;
 
+    private final UnitProcessorImpl processor = new UnitProcessorImpl(null);
+
     /**
-     * The JDT compiler.
+     * The JDT compiler, which compiles all units unless they are compiled in
+     * batches.
      */
-    private final JdtCompiler compiler = new JdtCompiler(new UnitProcessorImpl());
-    
+    private final JdtCompiler compiler = new JdtCompiler(processor);
+
+    private final boolean hasDelegate;
+
     /**
      * The set of binary names that correspond to Jribble classes.
      */
@@ -166,7 +200,9 @@ public class CompilationStateBuilder {
     private final boolean suppressErrors;
 
     public CompileMoreLater(AdditionalTypeProviderDelegate delegate, boolean suppressErrors) {
+      processor.compiler = compiler;
       compiler.setAdditionalTypeProviderDelegate(delegate);
+      hasDelegate = delegate != null;
       this.suppressErrors = suppressErrors;
     }
 
@@ -212,29 +248,48 @@ public class CompilationStateBuilder {
       do {
         // Compile anything that needs to be compiled.
         buildQueue = new LinkedBlockingQueue<CompilationUnitBuilder>();
-        final ArrayList<CompilationUnit> newlyBuiltUnits = new ArrayList<CompilationUnit>();
+        final List<CompilationUnit> newlyBuiltUnits =
+            Collections.synchronizedList(new ArrayList<CompilationUnit>());
         final CompilationUnitBuilder sentinel = CompilationUnitBuilder.create((GeneratedUnit) null);
         final Throwable[] workerException = new Throwable[1];
-        Thread buildThread = new Thread() {
-          @Override
-          public void run() {
-            try {
-              do {
-                CompilationUnitBuilder builder = buildQueue.take();
-                if (builder == sentinel) {
-                  return;
+        /*
+         * Units are built on one or more threads while JDT keeps compiling on
+         * this one. The built units are sorted below, so the order in which the
+         * threads finish does not matter.
+         */
+        int numBuildThreads = Math.max(1, Integer.getInteger(BUILD_THREADS_PROPERTY, 1));
+        Thread[] buildThreads = new Thread[numBuildThreads];
+        for (int i = 0; i < buildThreads.length; ++i) {
+          buildThreads[i] = new Thread() {
+            @Override
+            public void run() {
+              try {
+                do {
+                  CompilationUnitBuilder builder = buildQueue.take();
+                  if (builder == sentinel) {
+                    // Let the other build threads see it too.
+                    buildQueue.add(sentinel);
+                    return;
+                  }
+                  // Expensive, must serialize GWT AST types to bytes.
+                  CompilationUnit unit = builder.build();
+                  newlyBuiltUnits.add(unit);
+                } while (true);
+              } catch (Throwable e) {
+                synchronized (workerException) {
+                  if (workerException[0] == null) {
+                    workerException[0] = e;
+                  }
                 }
-                // Expensive, must serialize GWT AST types to bytes.
-                CompilationUnit unit = builder.build();
-                newlyBuiltUnits.add(unit);
-              } while (true);
-            } catch (Throwable e) {
-              workerException[0] = e;
+                // Keep the queue draining so that the JDT thread can finish.
+                buildQueue.add(sentinel);
+              }
             }
-          }
-        };
-        buildThread.setName("CompilationUnitBuilder");
-        buildThread.start();
+          };
+          buildThreads[i].setName("CompilationUnitBuilder"
+              + (buildThreads.length > 1 ? "-" + (i + 1) : ""));
+          buildThreads[i].start();
+        }
 
         ArrayList<CompilationUnitBuilder> javaBuilders = new ArrayList<CompilationUnitBuilder>();
         for (CompilationUnitBuilder builder : builders) {
@@ -249,17 +304,25 @@ public class CompilationStateBuilder {
           }
         }
 
+        int numCompileThreads = getCompileThreads();
         Event jdtCompilerEvent = SpeedTracerLogger.start(eventType);
         try {
-          compiler.doCompile(javaBuilders);
+          if (numCompileThreads > 1 && !hasDelegate
+              && javaBuilders.size() >= 2 * minBatchUnits) {
+            newlyBuiltUnits.addAll(compileInBatches(javaBuilders, numCompileThreads));
+          } else {
+            compiler.doCompile(javaBuilders);
+          }
         } finally {
           jdtCompilerEvent.end();
+          // Also if compiling failed, so that the build threads stop.
+          buildQueue.add(sentinel);
         }
 
-
-        buildQueue.add(sentinel);
         try {
-          buildThread.join();
+          for (Thread buildThread : buildThreads) {
+            buildThread.join();
+          }
           if (workerException[0] != null) {
             throw workerException[0];
           }
@@ -351,8 +414,106 @@ public class CompilationStateBuilder {
       }
       return resultUnits;
     }
+
+    /**
+     * Compiles units in the batches of a {@link CompilationUnitBatcher}, each
+     * with its own fork of {@link #compiler}, on the compilation pool. The
+     * batches of a stage are compiled at the same time and then built, so that
+     * the next stage can use their classes. Returns the built units.
+     */
+    private List<CompilationUnit> compileInBatches(List<CompilationUnitBuilder> javaBuilders,
+        int numThreads) {
+      CompilationUnitBatcher batcher = new CompilationUnitBatcher(javaBuilders, numThreads);
+      compiler.addSourcePackages(javaBuilders);
+      Map<String, CompilationUnitBuilder> pendingUnits = batcher.getTopLevelTypes();
+      List<CompilationUnit> builtUnits = new ArrayList<CompilationUnit>();
+      for (List<List<CompilationUnitBuilder>> stage : batcher.partition(numThreads,
+          minBatchUnits)) {
+        List<UnitProcessorImpl> processors = new ArrayList<UnitProcessorImpl>();
+        List<Callable<Void>> compiles = new ArrayList<Callable<Void>>();
+        for (final List<CompilationUnitBuilder> batch : stage) {
+          final UnitProcessorImpl batchProcessor =
+              new UnitProcessorImpl(new ArrayList<CompilationUnitBuilder>());
+          batchProcessor.compiler = compiler.fork(batchProcessor, pendingUnits);
+          processors.add(batchProcessor);
+          compiles.add(new Callable<Void>() {
+            public Void call() {
+              batchProcessor.compiler.doCompile(batch);
+              return null;
+            }
+          });
+        }
+        invokeAll(compiles);
+
+        /*
+         * Units are built only now, because building frees their source, which
+         * the other batches of the stage may still have needed.
+         */
+        List<Callable<List<CompilationUnit>>> builds =
+            new ArrayList<Callable<List<CompilationUnit>>>();
+        for (final UnitProcessorImpl batchProcessor : processors) {
+          compiler.join(batchProcessor.compiler);
+          builds.add(new Callable<List<CompilationUnit>>() {
+            public List<CompilationUnit> call() {
+              List<CompilationUnit> units = new ArrayList<CompilationUnit>();
+              for (CompilationUnitBuilder builder : batchProcessor.processedBuilders) {
+                units.add(builder.build());
+              }
+              return units;
+            }
+          });
+        }
+        for (List<CompilationUnit> units : invokeAll(builds)) {
+          builtUnits.addAll(units);
+        }
+
+        Map<CompilationUnitBuilder, Boolean> compiled =
+            new IdentityHashMap<CompilationUnitBuilder, Boolean>();
+        for (List<CompilationUnitBuilder> batch : stage) {
+          for (CompilationUnitBuilder builder : batch) {
+            compiled.put(builder, true);
+          }
+        }
+        for (Iterator<CompilationUnitBuilder> it = pendingUnits.values().iterator(); it
+            .hasNext();) {
+          if (compiled.containsKey(it.next())) {
+            it.remove();
+          }
+        }
+      }
+      return builtUnits;
+    }
   }
 
+  /**
+   * A Java system property that sets the number of threads used to build
+   * compilation units (mainly serializing their GWT ASTs) while JDT compiles.
+   * Defaults to 1.
+   * 
+   * <p>
+   * Only {@link CompilationUnitBuilder#build()} runs on these threads, so they
+   * help only when building units is slower than compiling them. To compile on
+   * several threads, set {@link #COMPILE_THREADS_PROPERTY}.
+   */
+  public static final String BUILD_THREADS_PROPERTY = "gwt.csb.buildThreads";
+
+  /**
+   * A Java system property that sets the number of threads used to compile
+   * units. Defaults to 1, which compiles all units with a single JDT compiler.
+   * 
+   * <p>
+   * With more threads, the units are partitioned into dependency-ordered
+   * batches by a {@link CompilationUnitBatcher}. Each batch is compiled,
+   * checked, converted to a GWT AST and built by its own JDT compiler, which
+   * reads the units of earlier batches as class files. The type oracle also
+   * reads class files on these threads. Batches are not used when units are
+   * provided on demand by an {@link AdditionalTypeProviderDelegate}, as in
+   * development mode.
+   */
+  public static final String COMPILE_THREADS_PROPERTY = "gwt.csb.compileThreads";
+
+  private static ExecutorService executor;
+
   private static final CompilationStateBuilder instance = new CompilationStateBuilder();
 
   /**
@@ -398,6 +559,14 @@ public class CompilationStateBuilder {
     return instance;
   }
 
+  /**
+   * Returns the number of threads to compile with, as configured by
+   * {@link #COMPILE_THREADS_PROPERTY}.
+   */
+  static int getCompileThreads() {
+    return Math.max(1, Integer.getInteger(COMPILE_THREADS_PROPERTY, 1));
+  }
+
   /**
    * Called to setup the directory where the persistent {@link CompilationUnit}
    * cache should be stored. Only the first call to init() will have an effect.
@@ -406,12 +575,80 @@ public class CompilationStateBuilder {
     instance.unitCache = UnitCacheFactory.get(logger, cacheDirectory);
   }
 
+  /**
+   * Runs <code>tasks</code> on the compilation pool and returns their results,
+   * in the order of <code>tasks</code>. If a task fails, the remaining tasks
+   * are cancelled and its exception is rethrown.
+   */
+  static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+    ExecutorService pool = getExecutor();
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(pool.submit(CompilerMetrics.inheritAttribution(task)));
+    }
+
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while compiling units", e);
+    } catch (ExecutionException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException("Exception compiling units", cause);
+    }
+    return results;
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(getCompileThreads(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread =
+              new Thread(r, "CompilationStateBuilder-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Batches get at least this many units each, unless there are fewer.
+   */
+  private final int minBatchUnits;
+
   /**
    * A cache to store compilation units. This value may be overridden with an
    * explicit call to {@link #init(TreeLogger, File)}.
    */
   private UnitCache unitCache = new MemoryUnitCache();
 
+  public CompilationStateBuilder() {
+    this(CompilationUnitBatcher.MIN_BATCH_UNITS);
+  }
+
+  // @VisibleForTesting
+  CompilationStateBuilder(int minBatchUnits) {
+    this.minBatchUnits = minBatchUnits;
+  }
+
   /**
    * Build a new compilation state from a source oracle. Allow the caller to
    * specify a compiler delegate that will handle undefined names.
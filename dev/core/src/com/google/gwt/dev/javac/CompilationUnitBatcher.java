@@ -0,0 +1,404 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
+import org.eclipse.jdt.internal.compiler.parser.Scanner;
+import org.eclipse.jdt.internal.compiler.parser.TerminalTokens;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Partitions units into batches that separate JDT compilers can compile at the
+ * same time. The batches are grouped into stages, and the units of a batch
+ * only depend on units of the same batch or of earlier stages.
+ *
+ * <p>
+ * Dependencies are found by scanning the source of each unit for the names of
+ * the top-level types that the other units declare, taking its package,
+ * imports and qualified names into account. A dependency that the scan misses
+ * is still compiled correctly, from the source of the other unit, but that
+ * unit is then compiled twice.
+ */
+class CompilationUnitBatcher {
+
+  /**
+   * What a scan of the source of a unit found.
+   */
+  private static class UnitInfo {
+    final CompilationUnitBuilder builder;
+    final List<UnitInfo> dependencies = new ArrayList<UnitInfo>();
+    final Set<String> identifiers = new HashSet<String>();
+    int index = -1;
+    int lowLink;
+    final Set<String> onDemandImports = new HashSet<String>();
+    String packageName = "";
+    final Set<String> qualifiedNames = new HashSet<String>();
+    final List<String> topLevelTypes = new ArrayList<String>();
+    int weight;
+
+    UnitInfo(CompilationUnitBuilder builder) {
+      this.builder = builder;
+    }
+
+    boolean isJre() {
+      return packageName.startsWith("java.");
+    }
+
+    /**
+     * Returns <code>true</code> if the simple name <code>typeName</code>,
+     * which occurs in this unit, may refer to the type of that name in
+     * <code>other</code>.
+     */
+    boolean mayReferTo(UnitInfo other, String typeName) {
+      if (packageName.equals(other.packageName)) {
+        return true;
+      }
+      return qualifiedNames.contains(other.packageName + "." + typeName)
+          || onDemandImports.contains(other.packageName);
+    }
+  }
+
+  /**
+   * Units are only split into more batches if each gets at least this many.
+   */
+  static final int MIN_BATCH_UNITS = 50;
+
+  /**
+   * The number of scan tasks for each thread, to even out the uneven size of
+   * units.
+   */
+  private static final int SCANS_PER_THREAD = 4;
+
+  private static void scan(UnitInfo info) {
+    Scanner scanner =
+        new Scanner(false, false, false, ClassFileConstants.JDK1_6, null, null, false);
+    char[] source = info.builder.getSource().toCharArray();
+    info.weight = source.length;
+    scanner.setSource(source);
+    int depth = 0;
+    int declaration = TerminalTokens.TokenNameEOF;
+    StringBuilder name = null;
+    int previous = TerminalTokens.TokenNameEOF;
+    int beforePrevious = TerminalTokens.TokenNameEOF;
+    try {
+      for (int token = scanner.getNextToken(); token != TerminalTokens.TokenNameEOF; token =
+          scanner.getNextToken()) {
+        switch (token) {
+          case TerminalTokens.TokenNameIdentifier:
+            String identifier = new String(scanner.getCurrentIdentifierSource());
+            info.identifiers.add(identifier);
+            if (previous == TerminalTokens.TokenNameDOT && name != null) {
+              name.append('.').append(identifier);
+              info.qualifiedNames.add(name.toString());
+            } else {
+              name = new StringBuilder(identifier);
+            }
+            if (depth == 0 && beforePrevious != TerminalTokens.TokenNameDOT
+                && (previous == TerminalTokens.TokenNameclass
+                    || previous == TerminalTokens.TokenNameinterface
+                    || previous == TerminalTokens.TokenNameenum)) {
+              info.topLevelTypes.add(identifier);
+            }
+            break;
+          case TerminalTokens.TokenNameLBRACE:
+            ++depth;
+            break;
+          case TerminalTokens.TokenNameRBRACE:
+            --depth;
+            break;
+          case TerminalTokens.TokenNamepackage:
+          case TerminalTokens.TokenNameimport:
+            if (depth == 0) {
+              declaration = token;
+              name = null;
+            }
+            break;
+          case TerminalTokens.TokenNameSEMICOLON:
+            if (declaration == TerminalTokens.TokenNamepackage && name != null) {
+              info.packageName = name.toString();
+            } else if (declaration == TerminalTokens.TokenNameimport && name != null
+                && previous == TerminalTokens.TokenNameMULTIPLY) {
+              info.onDemandImports.add(name.toString());
+            }
+            declaration = TerminalTokens.TokenNameEOF;
+            break;
+          default:
+            break;
+        }
+        beforePrevious = previous;
+        previous = token;
+      }
+    } catch (InvalidInputException e) {
+      // JDT reports it; the rest of the unit is not scanned.
+    }
+  }
+
+  private final List<UnitInfo> units = new ArrayList<UnitInfo>();
+
+  /**
+   * Scans the units, on the compilation pool if <code>numThreads</code> is
+   * greater than 1.
+   */
+  CompilationUnitBatcher(List<CompilationUnitBuilder> builders, int numThreads) {
+    for (CompilationUnitBuilder builder : builders) {
+      units.add(new UnitInfo(builder));
+    }
+    if (numThreads > 1) {
+      int numScans = Math.min(units.size(), numThreads * SCANS_PER_THREAD);
+      List<Callable<Void>> scans = new ArrayList<Callable<Void>>(numScans);
+      for (int i = 0; i < numScans; ++i) {
+        final List<UnitInfo> chunk =
+            units.subList(i * units.size() / numScans, (i + 1) * units.size() / numScans);
+        scans.add(new Callable<Void>() {
+          public Void call() {
+            for (UnitInfo info : chunk) {
+              scan(info);
+            }
+            return null;
+          }
+        });
+      }
+      CompilationStateBuilder.invokeAll(scans);
+    } else {
+      for (UnitInfo info : units) {
+        scan(info);
+      }
+    }
+    findDependencies();
+  }
+
+  /**
+   * Returns the units that declare each top-level type, keyed by internal
+   * name.
+   */
+  Map<String, CompilationUnitBuilder> getTopLevelTypes() {
+    Map<String, CompilationUnitBuilder> types = new HashMap<String, CompilationUnitBuilder>();
+    for (UnitInfo info : units) {
+      String prefix = info.packageName.length() == 0 ? "" : info.packageName.replace('.', '/')
+          + "/";
+      for (String typeName : info.topLevelTypes) {
+        types.put(prefix + typeName, info.builder);
+      }
+      // In case the scan did not get that far.
+      types.put(info.builder.getTypeName().replace('.', '/'), info.builder);
+    }
+    return types;
+  }
+
+  /**
+   * Returns the stages of batches, with at most <code>maxBatches</code> in
+   * each stage. Consecutive stages that are too small to split are merged into
+   * one batch.
+   */
+  List<List<List<CompilationUnitBuilder>>> partition(int maxBatches, int minBatchUnits) {
+    List<List<List<UnitInfo>>> components = findComponentsByLevel();
+
+    List<List<List<CompilationUnitBuilder>>> stages =
+        new ArrayList<List<List<CompilationUnitBuilder>>>();
+    for (List<List<UnitInfo>> level : components) {
+      int numUnits = 0;
+      for (List<UnitInfo> component : level) {
+        numUnits += component.size();
+      }
+      int numBatches =
+          Math.max(1, Math.min(Math.min(maxBatches, level.size()), numUnits / minBatchUnits));
+
+      // Largest components first, each into the batch with the least source.
+      Collections.sort(level, new Comparator<List<UnitInfo>>() {
+        public int compare(List<UnitInfo> a, List<UnitInfo> b) {
+          long difference = getWeight(b) - getWeight(a);
+          return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+        }
+      });
+      List<List<CompilationUnitBuilder>> batches =
+          new ArrayList<List<CompilationUnitBuilder>>(numBatches);
+      long[] weights = new long[numBatches];
+      for (int i = 0; i < numBatches; ++i) {
+        batches.add(new ArrayList<CompilationUnitBuilder>());
+      }
+      for (List<UnitInfo> component : level) {
+        int lightest = 0;
+        for (int i = 1; i < numBatches; ++i) {
+          if (weights[i] < weights[lightest]) {
+            lightest = i;
+          }
+        }
+        for (UnitInfo info : component) {
+          batches.get(lightest).add(info.builder);
+        }
+        weights[lightest] += getWeight(component);
+      }
+
+      List<List<CompilationUnitBuilder>> previous =
+          stages.isEmpty() ? null : stages.get(stages.size() - 1);
+      if (numBatches == 1 && previous != null && previous.size() == 1) {
+        previous.get(0).addAll(batches.get(0));
+      } else {
+        stages.add(batches);
+      }
+    }
+    return stages;
+  }
+
+  /**
+   * Adds an edge from each unit to the units that it may refer to. All JRE
+   * units are compiled together and first: every unit refers to some of them
+   * implicitly, such as java.lang.Object and java.lang.String.
+   */
+  private void findDependencies() {
+    Map<String, List<UnitInfo>> declaringUnits = new HashMap<String, List<UnitInfo>>();
+    List<UnitInfo> jreUnits = new ArrayList<UnitInfo>();
+    for (UnitInfo info : units) {
+      for (String typeName : info.topLevelTypes) {
+        List<UnitInfo> list = declaringUnits.get(typeName);
+        if (list == null) {
+          list = new ArrayList<UnitInfo>();
+          declaringUnits.put(typeName, list);
+        }
+        list.add(info);
+      }
+      if (info.isJre()) {
+        jreUnits.add(info);
+      }
+    }
+
+    Set<UnitInfo> dependencies = new HashSet<UnitInfo>();
+    for (UnitInfo info : units) {
+      for (String identifier : info.identifiers) {
+        List<UnitInfo> candidates = declaringUnits.get(identifier);
+        if (candidates != null) {
+          for (UnitInfo candidate : candidates) {
+            if (candidate != info && info.mayReferTo(candidate, identifier)) {
+              dependencies.add(candidate);
+            }
+          }
+        }
+      }
+      if (!jreUnits.isEmpty() && !info.isJre()) {
+        dependencies.add(jreUnits.get(0));
+      }
+      info.dependencies.addAll(dependencies);
+      dependencies.clear();
+    }
+    for (int i = 0; i < jreUnits.size(); ++i) {
+      jreUnits.get(i).dependencies.add(jreUnits.get((i + 1) % jreUnits.size()));
+    }
+
+    // The identifiers are no longer needed.
+    for (UnitInfo info : units) {
+      info.identifiers.clear();
+      info.qualifiedNames.clear();
+    }
+  }
+
+  /**
+   * Finds the strongly connected components of the dependency graph with
+   * Tarjan's algorithm, without recursion, and groups them by level. A
+   * component only depends on components of lower levels.
+   */
+  private List<List<List<UnitInfo>>> findComponentsByLevel() {
+    List<List<List<UnitInfo>>> levels = new ArrayList<List<List<UnitInfo>>>();
+    Map<UnitInfo, Integer> componentLevels = new HashMap<UnitInfo, Integer>();
+    List<UnitInfo> stack = new ArrayList<UnitInfo>();
+    Set<UnitInfo> onStack = new HashSet<UnitInfo>();
+    List<UnitInfo> path = new ArrayList<UnitInfo>();
+    List<Integer> nextEdges = new ArrayList<Integer>();
+    int index = 0;
+    for (UnitInfo root : units) {
+      if (root.index >= 0) {
+        continue;
+      }
+      root.index = root.lowLink = index++;
+      stack.add(root);
+      onStack.add(root);
+      path.add(root);
+      nextEdges.add(0);
+      while (!path.isEmpty()) {
+        int top = path.size() - 1;
+        UnitInfo info = path.get(top);
+        int edge = nextEdges.get(top);
+        if (edge < info.dependencies.size()) {
+          nextEdges.set(top, edge + 1);
+          UnitInfo dependency = info.dependencies.get(edge);
+          if (dependency.index < 0) {
+            dependency.index = dependency.lowLink = index++;
+            stack.add(dependency);
+            onStack.add(dependency);
+            path.add(dependency);
+            nextEdges.add(0);
+          } else if (onStack.contains(dependency)) {
+            info.lowLink = Math.min(info.lowLink, dependency.index);
+          }
+          continue;
+        }
+
+        path.remove(top);
+        nextEdges.remove(top);
+        if (top > 0) {
+          UnitInfo caller = path.get(top - 1);
+          caller.lowLink = Math.min(caller.lowLink, info.lowLink);
+        }
+        if (info.lowLink != info.index) {
+          continue;
+        }
+
+        // The dependencies of the component were all emitted before it.
+        List<UnitInfo> component = new ArrayList<UnitInfo>();
+        UnitInfo member;
+        do {
+          member = stack.remove(stack.size() - 1);
+          onStack.remove(member);
+          component.add(member);
+        } while (member != info);
+        int level = 0;
+        for (UnitInfo unit : component) {
+          for (UnitInfo dependency : unit.dependencies) {
+            Integer dependencyLevel = componentLevels.get(dependency);
+            if (dependencyLevel != null) {
+              level = Math.max(level, dependencyLevel + 1);
+            }
+          }
+        }
+        for (UnitInfo unit : component) {
+          componentLevels.put(unit, level);
+        }
+        while (levels.size() <= level) {
+          levels.add(new ArrayList<List<UnitInfo>>());
+        }
+        levels.get(level).add(component);
+      }
+    }
+    return levels;
+  }
+
+  private long getWeight(List<UnitInfo> component) {
+    long weight = 0;
+    for (UnitInfo info : component) {
+      weight += info.weight;
+    }
+    return weight;
+  }
+}
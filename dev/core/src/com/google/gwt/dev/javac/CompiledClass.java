@@ -177,7 +177,7 @@ public final class CompiledClass implements Serializable {
     return internalName;
   }
 
-  NameEnvironmentAnswer getNameEnvironmentAnswer() throws ClassFormatException {
+  synchronized NameEnvironmentAnswer getNameEnvironmentAnswer() throws ClassFormatException {
     if (nameEnvironmentAnswer == null) {
       ClassFileReader cfr =
           new ClassFileReader(getBytes(), unit.getResourceLocation().toCharArray(), true);
@@ -59,13 +59,13 @@ public class JSORestrictionsChecker {
   /**
    * The order in which the checker will process types is undefined, so this
    * type accumulates the information necessary for sanity-checking the JSO
-   * types.
+   * types. Units may be checked on several threads at once.
    */
   public static class CheckerState {
 
     private final Map<String, String> interfacesToJsoImpls = new HashMap<String, String>();
 
-    public void addJsoInterface(TypeDeclaration jsoType,
+    public synchronized void addJsoInterface(TypeDeclaration jsoType,
         CompilationUnitDeclaration cud, ReferenceBinding interf) {
       String intfName = CharOperation.toString(interf.compoundName);
       String alreadyImplementor = interfacesToJsoImpls.get(intfName);
@@ -78,12 +78,12 @@ public class JSORestrictionsChecker {
       }
     }
 
-    public String getJsoImplementor(ReferenceBinding binding) {
+    public synchronized String getJsoImplementor(ReferenceBinding binding) {
       String name = CharOperation.toString(binding.compoundName);
       return interfacesToJsoImpls.get(name);
     }
 
-    public boolean isJsoInterface(ReferenceBinding binding) {
+    public synchronized boolean isJsoInterface(ReferenceBinding binding) {
       String name = CharOperation.toString(binding.compoundName);
       return interfacesToJsoImpls.containsKey(name);
     }
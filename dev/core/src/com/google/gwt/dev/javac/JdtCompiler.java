@@ -191,8 +191,19 @@ public class JdtCompiler {
 
     private final CompilationUnitBuilder builder;
 
+    private final boolean isPending;
+
     public Adapter(CompilationUnitBuilder builder) {
+      this(builder, false);
+    }
+
+    /**
+     * @param isPending <code>true</code> if another compiler is compiling the
+     *          unit, and it is compiled here only to resolve references to it
+     */
+    public Adapter(CompilationUnitBuilder builder, boolean isPending) {
       this.builder = builder;
+      this.isPending = isPending;
     }
 
     public CompilationUnitBuilder getBuilder() {
@@ -216,6 +227,10 @@ public class JdtCompiler {
       return CharOperation.splitOn('.', packageName.toCharArray());
     }
 
+    public boolean isPending() {
+      return isPending;
+    }
+
     @Override
     public String toString() {
       return builder.toString();
@@ -235,6 +250,10 @@ public class JdtCompiler {
       super.process(cud, i);
       ICompilationUnit icu = cud.compilationResult().compilationUnit;
       Adapter adapter = (Adapter) icu;
+      if (adapter.isPending()) {
+        // Its own compiler produces the results.
+        return;
+      }
       CompilationUnitBuilder builder = adapter.getBuilder();
 
       ClassFile[] classFiles = cud.compilationResult().getClassFiles();
@@ -293,7 +312,7 @@ public class JdtCompiler {
     public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
       char[] binaryNameChars = CharOperation.concatWith(compoundTypeName, '/');
       String binaryName = String.valueOf(binaryNameChars);
-      CompiledClass compiledClass = binaryTypes.get(binaryName);
+      CompiledClass compiledClass = findBinaryType(binaryName);
       try {
         if (compiledClass != null) {
           return compiledClass.getNameEnvironmentAnswer();
@@ -301,6 +320,10 @@ public class JdtCompiler {
       } catch (ClassFormatException ex) {
         // fall back to binary class
       }
+      CompilationUnitBuilder pendingUnit = pendingUnits.get(binaryName);
+      if (pendingUnit != null) {
+        return new NameEnvironmentAnswer(new Adapter(pendingUnit, true), null);
+      }
       if (isPackage(binaryName)) {
         return null;
       }
@@ -355,8 +378,10 @@ public class JdtCompiler {
        *    -> JdtCompiler.addCompiledUnit
        *    -> addPackages()
        */
-      if (packages.contains(slashedPackageName)) {
-        return true;
+      for (JdtCompiler compiler = JdtCompiler.this; compiler != null; compiler = compiler.parent) {
+        if (compiler.packages.contains(slashedPackageName)) {
+          return true;
+        }
       }
       if (notPackages.contains(slashedPackageName)) {
         return false;
@@ -501,10 +526,26 @@ public class JdtCompiler {
 
   private final Set<String> packages = new HashSet<String>();
 
+  /**
+   * The compiler this one was forked from, or <code>null</code>.
+   */
+  private final JdtCompiler parent;
+
+  /**
+   * Units compiled by other forks, keyed by the internal names of their
+   * top-level types.
+   */
+  private Map<String, CompilationUnitBuilder> pendingUnits = Collections.emptyMap();
+
   private final UnitProcessor processor;
 
   public JdtCompiler(UnitProcessor processor) {
+    this(processor, null);
+  }
+
+  private JdtCompiler(UnitProcessor processor, JdtCompiler parent) {
     this.processor = processor;
+    this.parent = parent;
   }
 
   public void addCompiledUnit(CompilationUnit unit) {
@@ -702,10 +743,19 @@ public class JdtCompiler {
     return result;
   }
 
+  /**
+   * Adds the packages of units that this compiler or its forks will compile.
+   */
+  public void addSourcePackages(Collection<CompilationUnitBuilder> builders) {
+    for (CompilationUnitBuilder builder : builders) {
+      addPackages(Shared.getPackageName(builder.getTypeName()).replace('.', '/'));
+    }
+  }
+
   public boolean doCompile(Collection<CompilationUnitBuilder> builders) {
+    addSourcePackages(builders);
     List<ICompilationUnit> icus = new ArrayList<ICompilationUnit>();
     for (CompilationUnitBuilder builder : builders) {
-      addPackages(Shared.getPackageName(builder.getTypeName()).replace('.', '/'));
       icus.add(new Adapter(builder));
     }
     if (icus.isEmpty()) {
@@ -718,6 +768,32 @@ public class JdtCompiler {
     return true;
   }
 
+  /**
+   * Returns a compiler that compiles one of several batches of units at the
+   * same time as the others. It starts out with the packages and classes of
+   * this compiler, which must not change until the fork is joined. A type of
+   * one of the <code>pendingUnits</code>, keyed by the internal names of their
+   * top-level types, is compiled from source when it is referenced, but only
+   * the fork's own units are passed to <code>processor</code>. The packages of
+   * the pending units must have been added to this compiler.
+   */
+  public JdtCompiler fork(UnitProcessor processor,
+      Map<String, CompilationUnitBuilder> pendingUnits) {
+    assert additionalTypeProviderDelegate == null : "Forks cannot provide additional types";
+    JdtCompiler fork = new JdtCompiler(processor, this);
+    fork.pendingUnits = pendingUnits;
+    return fork;
+  }
+
+  /**
+   * Adds the packages and classes compiled by a fork of this compiler.
+   */
+  public void join(JdtCompiler fork) {
+    assert fork.parent == this;
+    packages.addAll(fork.packages);
+    binaryTypes.putAll(fork.binaryTypes);
+  }
+
   public ReferenceBinding resolveType(String typeName) {
     return resolveType(compilerImpl.lookupEnvironment, typeName);
   }
@@ -732,6 +808,16 @@ public class JdtCompiler {
     }
   }
 
+  private CompiledClass findBinaryType(String internalName) {
+    for (JdtCompiler compiler = this; compiler != null; compiler = compiler.parent) {
+      CompiledClass compiledClass = compiler.binaryTypes.get(internalName);
+      if (compiledClass != null) {
+        return compiledClass;
+      }
+    }
+    return null;
+  }
+
   private void addPackages(String slashedPackageName) {
     while (packages.add(slashedPackageName)) {
       int pos = slashedPackageName.lastIndexOf('/');
@@ -31,7 +31,9 @@ import java.util.Map;
  */
 class MemoryUnitCache implements UnitCache {
   /**
-   * Storage for a compilation unit in the map.
+   * Storage for a compilation unit in the map. Subclasses may load the unit
+   * lazily, in which case they must override the key accessors so that the
+   * entry can be indexed without loading the unit.
    */
   protected static class UnitCacheEntry {
     private final UnitOrigin origin;
@@ -42,10 +44,25 @@ class MemoryUnitCache implements UnitCache {
       this.origin = source;
     }
 
+    public ContentId getContentId() {
+      return unit.getContentId();
+    }
+
+    public long getLastModified() {
+      return unit.getLastModified();
+    }
+
     public UnitOrigin getOrigin() {
       return origin;
     }
 
+    public String getResourcePath() {
+      return unit.getResourcePath();
+    }
+
+    /**
+     * Returns the unit, or <code>null</code> if it could not be loaded.
+     */
     public CompilationUnit getUnit() {
       return unit;
     }
@@ -140,12 +157,20 @@ class MemoryUnitCache implements UnitCache {
     unitMapByContentId.remove(unit.getContentId());
   }
 
+  /**
+   * Removes an entry from the cache without loading its unit.
+   */
+  protected void remove(UnitCacheEntry entry) {
+    unitMap.remove(entry.getResourcePath());
+    unitMapByContentId.remove(entry.getContentId());
+  }
+
   private void add(CompilationUnit newUnit, UnitOrigin origin) {
     UnitCacheEntry newEntry = new UnitCacheEntry(newUnit, origin);
     String resourcePath = newUnit.getResourcePath();
     UnitCacheEntry oldEntry = unitMap.get(resourcePath);
     if (oldEntry != null) {
-      remove(oldEntry.getUnit());
+      remove(oldEntry);
     }
     unitMap.put(resourcePath, newEntry);
     unitMapByContentId.put(newUnit.getContentId(), newEntry);
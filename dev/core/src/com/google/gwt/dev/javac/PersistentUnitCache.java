@@ -23,15 +23,20 @@ import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import com.google.gwt.util.tools.Utility;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.EOFException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -40,6 +45,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 /**
  * A class that manages a persistent cache of {@link CompilationUnit} instances.
@@ -52,14 +58,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  * intended to support only a single PersistentUnitCache instance in the
  * compiler at a time.
  * <p>
- * As new units are compiled, the cache data is appended to a log. This allows
- * Java serialization to efficiently store references. The next time the cache
- * is started, all logs are replayed and loaded into the cache in chronological
- * order, with newer units taking precedence. A new cache file is created for
- * any newly compiled units in this session. After a threshold of a certain
- * number of files in the directory is reached
- * {@link PersistentUnitCache#CACHE_FILE_THRESHOLD} , the cache files are
- * consolidated back into a single file.
+ * As new units are compiled, the cache data is appended to a log. Each unit is
+ * written as a separate record: a small header holding the unit's resource
+ * path, {@link ContentId}, last modified time and AST version, followed by the
+ * length-prefixed serialized unit and its CRC-32 checksum. The next time the cache is started, all logs
+ * are memory-mapped and only the record headers are read, in chronological
+ * order, with newer units taking precedence. Units are deserialized the first
+ * time {@link #find(ContentId)} or {@link #find(String)} returns them. A new
+ * cache file is created for any newly compiled units in this session. After a
+ * threshold of a certain number of files in the directory is reached
+ * {@link PersistentUnitCache#CACHE_FILE_THRESHOLD} , the writer thread
+ * consolidates the cache files back into a single file by copying the raw
+ * records of live units, without deserializing them. Records that fail their
+ * checksum or could not be deserialized are dropped instead of copied.
  * 
  * <p>
  * System Properties (see {@link UnitCacheFactory}).
@@ -74,10 +85,13 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Known Issues:
  * 
  * <ul>
- * <li>This design uses an eager cache to load every unit in the cache on the
- * first reference to find() or add(). When the cache is large (10000 units), it
- * uses lots of heap and takes 5-10 seconds. Once the PersistentUnitCache is
- * created, it starts eagerly loading the cache in a background thread).</li>
+ * <li>The index of every cache file is read on the first reference to find()
+ * or add(). Once the PersistentUnitCache is created, it starts reading the
+ * index in a background thread.</li>
+ * 
+ * <li>Mapped cache files cannot be deleted on some platforms until the mapping
+ * is garbage collected, so consolidation may leave old files behind. They are
+ * loaded and consolidated again next time.</li>
  * 
  * <li>Although units logged to disk with the same resource path are eventually
  * cleaned up, the most recently compiled unit stays in the cache forever. This
@@ -130,6 +144,110 @@ class PersistentUnitCache extends MemoryUnitCache {
     }
   }
 
+  /**
+   * A unit whose record lives in a memory-mapped cache file. The unit is
+   * deserialized the first time it is requested.
+   */
+  private static class MappedUnitCacheEntry extends UnitCacheEntry {
+    private final int checksum;
+    private final ContentId contentId;
+    private final long lastModified;
+
+    /**
+     * The complete record, header included, so that it can be copied verbatim
+     * when cache files are consolidated.
+     */
+    private final ByteBuffer record;
+
+    /**
+     * The offset of the serialized unit within {@link #record}.
+     */
+    private final int payloadOffset;
+    private final String resourcePath;
+    private CompilationUnit unit;
+    private boolean checksumVerified = false;
+    private boolean loadFailed = false;
+
+    public MappedUnitCacheEntry(String resourcePath, ContentId contentId, long lastModified,
+        ByteBuffer record, int payloadOffset, int checksum) {
+      super(null, UnitOrigin.PERSISTENT);
+      this.resourcePath = resourcePath;
+      this.contentId = contentId;
+      this.lastModified = lastModified;
+      this.record = record;
+      this.payloadOffset = payloadOffset;
+      this.checksum = checksum;
+    }
+
+    @Override
+    public ContentId getContentId() {
+      return contentId;
+    }
+
+    @Override
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * Returns a new buffer over the complete record.
+     */
+    public ByteBuffer getRecord() {
+      return record.duplicate();
+    }
+
+    @Override
+    public String getResourcePath() {
+      return resourcePath;
+    }
+
+    @Override
+    public synchronized CompilationUnit getUnit() {
+      if (unit == null && isValid()) {
+        ObjectInputStream inputStream = null;
+        try {
+          inputStream = new ObjectInputStream(new ByteArrayInputStream(getPayload()));
+          unit = (CachedCompilationUnit) inputStream.readObject();
+        } catch (IOException e) {
+          loadFailed = true;
+        } catch (ClassNotFoundException e) {
+          loadFailed = true;
+        } catch (ClassCastException e) {
+          loadFailed = true;
+        } finally {
+          Utility.close(inputStream);
+        }
+      }
+      return unit;
+    }
+
+    /**
+     * Returns <code>false</code> if the serialized unit doesn't match its
+     * checksum or has already failed to deserialize. The checksum is only
+     * computed once.
+     */
+    public synchronized boolean isValid() {
+      if (!loadFailed && !checksumVerified) {
+        CRC32 crc = new CRC32();
+        crc.update(getPayload());
+        if ((int) crc.getValue() == checksum) {
+          checksumVerified = true;
+        } else {
+          loadFailed = true;
+        }
+      }
+      return !loadFailed;
+    }
+
+    private byte[] getPayload() {
+      ByteBuffer payload = record.duplicate();
+      payload.position(payloadOffset);
+      byte[] bytes = new byte[payload.remaining()];
+      payload.get(bytes);
+      return bytes;
+    }
+  }
+
   /**
    * Used to pass messages to the unitWriteThread.
    */
@@ -181,11 +299,12 @@ class PersistentUnitCache extends MemoryUnitCache {
 
       FileOutputStream fstream = null;
       BufferedOutputStream bstream = null;
-      ObjectOutputStream stream = null;
+      DataOutputStream stream = null;
       try {
         fstream = new FileOutputStream(currentCacheFile);
         bstream = new BufferedOutputStream(fstream);
-        stream = new ObjectOutputStream(bstream);
+        stream = new DataOutputStream(bstream);
+        stream.writeInt(CACHE_FILE_MAGIC);
       } catch (IOException ex) {
         logger.log(TreeLogger.ERROR, "Error creating cache " + currentCacheFile
             + ". Disabling cache.", ex);
@@ -219,11 +338,28 @@ class PersistentUnitCache extends MemoryUnitCache {
                 stream.flush();
                 assert unitWriteQueue.size() == 0;
                 break;
+              } else if (msg.unitCacheEntry instanceof MappedUnitCacheEntry) {
+                // Consolidating: copy the record as-is, unless it is corrupt.
+                MappedUnitCacheEntry mappedEntry = (MappedUnitCacheEntry) msg.unitCacheEntry;
+                if (mappedEntry.isValid()) {
+                  ByteBuffer record = mappedEntry.getRecord();
+                  byte[] bytes = new byte[record.remaining()];
+                  record.get(bytes);
+                  stream.write(bytes);
+                  recentUnitsWritten++;
+                  totalUnitsWritten++;
+                } else {
+                  if (logger.isLoggable(TreeLogger.TRACE)) {
+                    logger.log(TreeLogger.TRACE, "Dropping corrupt cache record for "
+                        + mappedEntry.getResourcePath());
+                  }
+                  removeIfCurrent(mappedEntry);
+                }
               } else {
                 assert msg.unitCacheEntry.getOrigin() != UnitOrigin.ARCHIVE;
                 CompilationUnit unit = msg.unitCacheEntry.getUnit();
                 assert unit != null;
-                stream.writeObject(unit);
+                writeRecord(stream, unit);
                 recentUnitsWritten++;
                 totalUnitsWritten++;
               }
@@ -279,6 +415,12 @@ class PersistentUnitCache extends MemoryUnitCache {
 
   static final String CACHE_FILE_PREFIX = UNIT_CACHE_PREFIX + "-";
 
+  /**
+   * Marks a cache file in the current record format. Files without it, such as
+   * those written by older versions, are deleted.
+   */
+  static final int CACHE_FILE_MAGIC = 0x47554332;
+
   /**
    * If there are more than this many files in the cache, clean up the old
    * files.
@@ -385,7 +527,8 @@ class PersistentUnitCache extends MemoryUnitCache {
 
     /*
      * Resend all units read in from the in-memory cache to the writer thread.
-     * They will be re-written out and the old cache files removed.
+     * Their records will be copied to the current file and the old cache files
+     * removed.
      */
     synchronized (unitMap) {
       for (UnitCacheEntry unitCacheEntry : unitMap.values()) {
@@ -400,13 +543,13 @@ class PersistentUnitCache extends MemoryUnitCache {
   @Override
   public CompilationUnit find(ContentId contentId) {
     unitCacheMapLoader.await();
-    return super.find(contentId);
+    return checkLoaded(unitMapByContentId.get(contentId));
   }
 
   @Override
   public CompilationUnit find(String resourcePath) {
     unitCacheMapLoader.await();
-    return super.find(resourcePath);
+    return checkLoaded(unitMap.get(resourcePath));
   }
 
   /**
@@ -464,7 +607,108 @@ class PersistentUnitCache extends MemoryUnitCache {
   }
 
   /**
-   * Load everything cached on disk into memory.
+   * Returns the entry's unit, dropping the entry from the cache if its unit
+   * can no longer be deserialized.
+   */
+  private CompilationUnit checkLoaded(UnitCacheEntry entry) {
+    if (entry == null) {
+      return null;
+    }
+    CompilationUnit unit = entry.getUnit();
+    if (unit == null) {
+      removeIfCurrent(entry);
+    }
+    return unit;
+  }
+
+  /**
+   * Index one cache file. Returns <code>false</code> if the file is unreadable
+   * and should be deleted.
+   */
+  private boolean indexCacheFile(TreeLogger logger, File cacheFile) {
+    ByteBuffer buffer;
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(cacheFile, "r");
+      FileChannel channel = file.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException ex) {
+      if (logger.isLoggable(TreeLogger.TRACE)) {
+        logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
+            + cacheFile.getAbsolutePath() + " due to read error.", ex);
+      }
+      return false;
+    } finally {
+      // The mapping stays valid after the file is closed.
+      Utility.close(file);
+    }
+
+    try {
+      if (buffer.remaining() < 4 || buffer.getInt() != CACHE_FILE_MAGIC) {
+        if (logger.isLoggable(TreeLogger.TRACE)) {
+          logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
+              + cacheFile.getAbsolutePath() + " written in an old format.");
+        }
+        return false;
+      }
+      while (buffer.hasRemaining()) {
+        int recordStart = buffer.position();
+        String resourcePath = readUTF(buffer);
+        ContentId contentId = new ContentId(readUTF(buffer));
+        long lastModified = buffer.getLong();
+        long astVersion = buffer.getLong();
+        int payloadLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        int payloadStart = buffer.position();
+        if (payloadLength < 0 || payloadLength > buffer.remaining()) {
+          // Truncated write, for example after a crash. Keep what we have.
+          break;
+        }
+        buffer.position(payloadStart + payloadLength);
+        if (astVersion != GwtAstBuilder.getSerializationVersion()) {
+          continue;
+        }
+
+        ByteBuffer record = buffer.duplicate();
+        record.position(recordStart);
+        record.limit(payloadStart + payloadLength);
+        record = record.slice();
+        UnitCacheEntry entry =
+            new MappedUnitCacheEntry(resourcePath, contentId, lastModified, record, payloadStart
+                - recordStart, checksum);
+        UnitCacheEntry existingEntry = unitMap.get(resourcePath);
+        /*
+         * Don't assume that an existing entry is stale - an entry might have
+         * been loaded already from another source like a
+         * CompilationUnitArchive that is more up to date. If the timestamps are
+         * the same, accept the latest version. If it turns out to be stale, it
+         * will be recompiled and the updated unit will win this test the next
+         * time the session starts.
+         */
+        if (existingEntry != null && lastModified >= existingEntry.getLastModified()) {
+          super.remove(existingEntry);
+          unitMap.put(resourcePath, entry);
+          unitMapByContentId.put(contentId, entry);
+        } else if (existingEntry == null) {
+          unitMap.put(resourcePath, entry);
+          unitMapByContentId.put(contentId, entry);
+        }
+      }
+    } catch (BufferUnderflowException ex) {
+      // Truncated header; keep the records indexed so far.
+    } catch (UTFDataFormatException ex) {
+      if (logger.isLoggable(TreeLogger.TRACE)) {
+        logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
+            + cacheFile.getAbsolutePath() + " due to a corrupt index.", ex);
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Index everything cached on disk. Units are not deserialized until they are
+   * found.
    */
   private void loadUnitMap(TreeLogger logger) {
     Event loadPersistentUnitEvent =
@@ -477,68 +721,10 @@ class PersistentUnitCache extends MemoryUnitCache {
       if (cacheDirectory.isDirectory() && cacheDirectory.canRead()) {
         File[] files = getCacheFiles();
         for (File cacheFile : files) {
-          FileInputStream fis = null;
-          BufferedInputStream bis = null;
-          ObjectInputStream inputStream = null;
           if (cacheFile.equals(currentCacheFile)) {
             continue;
           }
-          boolean deleteCacheFile = false;
-          try {
-            fis = new FileInputStream(cacheFile);
-            bis = new BufferedInputStream(fis);
-            /*
-             * It is possible for the next call to throw an exception, leaving
-             * inputStream null and fis still live.
-             */
-            inputStream = new ObjectInputStream(bis);
-            while (true) {
-              CachedCompilationUnit unit = (CachedCompilationUnit) inputStream.readObject();
-              if (unit == null) {
-                break;
-              }
-              if (unit.getTypesSerializedVersion() != GwtAstBuilder.getSerializationVersion()) {
-                continue;
-              }
-              UnitCacheEntry entry = new UnitCacheEntry(unit, UnitOrigin.PERSISTENT);
-              UnitCacheEntry existingEntry = unitMap.get(unit.getResourcePath());
-              /*
-               * Don't assume that an existing entry is stale - an entry might
-               * have been loaded already from another source like a
-               * CompilationUnitArchive that is more up to date. If the
-               * timestamps are the same, accept the latest version. If it turns
-               * out to be stale, it will be recompiled and the updated unit
-               * will win this test the next time the session starts.
-               */
-              if (existingEntry != null && unit.getLastModified() >= existingEntry.getUnit().getLastModified()) {
-                super.remove(existingEntry.getUnit());
-                unitMap.put(unit.getResourcePath(), entry);
-                unitMapByContentId.put(unit.getContentId(), entry);
-              } else if (existingEntry == null) {
-                unitMap.put(unit.getResourcePath(), entry);
-                unitMapByContentId.put(unit.getContentId(), entry);
-              }
-            }
-          } catch (EOFException ex) {
-            // Go on to the next file.
-          } catch (IOException ex) {
-            deleteCacheFile = true;
-            if (logger.isLoggable(TreeLogger.TRACE)) {
-              logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
-                  + cacheFile.getAbsolutePath() + " due to read error.", ex);
-            }
-          } catch (ClassNotFoundException ex) {
-            deleteCacheFile = true;
-            if (logger.isLoggable(TreeLogger.TRACE)) {
-              logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
-                  + cacheFile.getAbsolutePath() + " due to deserialization error.", ex);
-            }
-          } finally {
-            Utility.close(inputStream);
-            Utility.close(bis);
-            Utility.close(fis);
-          }
-          if (deleteCacheFile) {
+          if (!indexCacheFile(logger, cacheFile)) {
             cacheFile.delete();
           } else {
             if (logger.isLoggable(TreeLogger.TRACE)) {
@@ -555,4 +741,79 @@ class PersistentUnitCache extends MemoryUnitCache {
       loadPersistentUnitEvent.end();
     }
   }
+
+  /**
+   * Removes an entry unless it has already been replaced by a newer unit.
+   */
+  private void removeIfCurrent(UnitCacheEntry entry) {
+    synchronized (unitMap) {
+      if (unitMap.get(entry.getResourcePath()) == entry) {
+        remove(entry);
+      }
+    }
+  }
+
+  /**
+   * Reads a string written by {@link DataOutputStream#writeUTF(String)}.
+   */
+  private static String readUTF(ByteBuffer buffer) throws UTFDataFormatException {
+    int length = buffer.getShort() & 0xFFFF;
+    char[] chars = new char[length];
+    int count = 0;
+    int end = buffer.position() + length;
+    while (buffer.position() < end) {
+      int a = buffer.get() & 0xFF;
+      if (a < 0x80) {
+        chars[count++] = (char) a;
+      } else if ((a & 0xE0) == 0xC0) {
+        int b = buffer.get() & 0xFF;
+        if ((b & 0xC0) != 0x80) {
+          throw new UTFDataFormatException();
+        }
+        chars[count++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+      } else if ((a & 0xF0) == 0xE0) {
+        int b = buffer.get() & 0xFF;
+        int c = buffer.get() & 0xFF;
+        if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80) {
+          throw new UTFDataFormatException();
+        }
+        chars[count++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+      } else {
+        throw new UTFDataFormatException();
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  /**
+   * Writes a unit as a record: header, then the length-prefixed serialized
+   * unit in its own object stream, so that it can be read back on its own.
+   */
+  private static void writeRecord(DataOutputStream stream, CompilationUnit unit)
+      throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    ObjectOutputStream objectStream = new ObjectOutputStream(payload);
+    objectStream.writeObject(unit);
+    objectStream.close();
+
+    writeRecord(stream, unit.getResourcePath(), unit.getContentId().get(), unit
+        .getLastModified(), payload.toByteArray());
+  }
+
+  /**
+   * Writes a record around an already serialized unit. Visible for testing.
+   */
+  static void writeRecord(DataOutputStream stream, String resourcePath, String contentId,
+      long lastModified, byte[] payload) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+
+    stream.writeUTF(resourcePath);
+    stream.writeUTF(contentId);
+    stream.writeLong(lastModified);
+    stream.writeLong(GwtAstBuilder.getSerializationVersion());
+    stream.writeInt(payload.length);
+    stream.writeInt((int) crc.getValue());
+    stream.write(payload);
+  }
 }
@@ -45,8 +45,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -75,20 +79,22 @@ public class StandardGeneratorContext implements GeneratorContext {
    * This generated unit acts as a normal generated unit as well as a buffer
    * into which generators can write their source. A controller should ensure
    * that source isn't requested until the generator has finished writing it.
-   * This version is backed by {@link StandardGeneratorContext#diskCache}.
+   * This version is backed by {@link StandardGeneratorContext#diskCache}, and
+   * carries its source with it once committed, so that it can be persisted
+   * with a {@link CachedGeneratorResultImpl}.
    */
-  private static class GeneratedUnitImpl implements Generated {
+  private static class GeneratedUnitImpl implements Generated, Serializable {
 
     /**
      * A token to retrieve this object's bytes from the disk cache.
      */
-    protected long sourceToken = -1;
+    protected transient long sourceToken = -1;
 
     private long creationTime;
 
     private String strongHash; // cache so that refreshes work correctly
 
-    private StringWriter sw;
+    private transient StringWriter sw;
 
     private final String typeName;
 
@@ -149,6 +155,20 @@ public class StandardGeneratorContext implements GeneratorContext {
     public String optionalFileLocation() {
       return null;
     }
+
+    private void readObject(ObjectInputStream stream) throws IOException,
+        ClassNotFoundException {
+      stream.defaultReadObject();
+      sourceToken = diskCache.transferFromStream(stream);
+    }
+
+    private void writeObject(ObjectOutputStream stream) throws IOException {
+      if (sw != null) {
+        throw new NotSerializableException("source not committed");
+      }
+      stream.defaultWriteObject();
+      diskCache.transferToStream(sourceToken, stream);
+    }
   }
 
   /**
@@ -483,17 +503,8 @@ public class StandardGeneratorContext implements GeneratorContext {
     } finally {
 
       // Remind the user if there uncommitted cups.
-      if (!uncommittedGeneratedCupsByPrintWriter.isEmpty()) {
-        String msg =
-            "For the following type(s), generated source was never committed (did you forget to call commit()?)";
-        logger = logger.branch(TreeLogger.WARN, msg, null);
+      warnUncommittedUnits(logger);
 
-        for (Generated unit : uncommittedGeneratedCupsByPrintWriter.values()) {
-          logger.log(TreeLogger.WARN, unit.getTypeName(), null);
-        }
-      }
-
-      uncommittedGeneratedCupsByPrintWriter.clear();
       committedGeneratedCups.clear();
       newlyGeneratedTypeNames.clear();
       newlyGeneratedArtifacts = new ArtifactSet();
@@ -501,6 +512,21 @@ public class StandardGeneratorContext implements GeneratorContext {
     }
   }
 
+  /**
+   * Returns a context whose generators see the same compilation state, module
+   * and previously generated artifacts as this one, but whose generated units
+   * and artifacts are kept apart until they are passed to {@link #merge}. A
+   * fork can be used on another thread while this context is not modified.
+   * 
+   * @see com.google.gwt.core.ext.SupportsConcurrentGeneration
+   */
+  public StandardGeneratorContext fork() {
+    StandardGeneratorContext fork = new StandardGeneratorContext(compilationState, module, genDir,
+        new ArtifactSet(allGeneratedArtifacts), isProdMode);
+    fork.generatorResultCachingEnabled = generatorResultCachingEnabled;
+    return fork;
+  }
+
   public Set<String> getActiveLinkerNames() {
     return module.getActiveLinkerNames();
   }
@@ -560,6 +586,63 @@ public class StandardGeneratorContext implements GeneratorContext {
     return isProdMode;
   }
 
+  /**
+   * Returns <code>true</code> if none of the types and resources generated in
+   * <code>fork</code> have been generated since it was created, so that it
+   * can be merged into this context. A type that has been generated from the
+   * same source, such as a helper type shared by several generated types, does
+   * not prevent merging.
+   */
+  public boolean isMergeable(StandardGeneratorContext fork) {
+    for (GeneratedUnit unit : fork.committedGeneratedCups.values()) {
+      if (isGeneratedFrom(unit)) {
+        continue;
+      }
+      String typeName = unit.getTypeName();
+      if (newlyGeneratedTypeNames.contains(typeName)
+          || committedGeneratedCups.containsKey(typeName)
+          || getTypeOracle().findType(typeName) != null) {
+        return false;
+      }
+    }
+    SortedSet<GeneratedResource> forkResources =
+        fork.newlyGeneratedArtifacts.find(GeneratedResource.class);
+    if (!forkResources.isEmpty()) {
+      Set<String> partialPaths = new HashSet<String>();
+      for (GeneratedResource resource : allGeneratedArtifacts.find(GeneratedResource.class)) {
+        partialPaths.add(resource.getPartialPath());
+      }
+      for (GeneratedResource resource : forkResources) {
+        if (partialPaths.contains(resource.getPartialPath())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds the units and artifacts generated in a context returned by
+   * {@link #fork()} to this context, as if they had been generated here. They
+   * are assimilated by the next call to {@link #finish}. Units that have
+   * already been generated from the same source are skipped.
+   */
+  public void merge(TreeLogger logger, StandardGeneratorContext fork) {
+    assert isMergeable(fork);
+    fork.abortUncommittedResources(logger);
+    fork.warnUncommittedUnits(logger);
+    for (GeneratedUnit unit : fork.committedGeneratedCups.values()) {
+      if (isGeneratedFrom(unit)) {
+        continue;
+      }
+      committedGeneratedCups.put(unit.getTypeName(), unit);
+      newlyGeneratedTypeNames.add(unit.getTypeName());
+    }
+    for (Artifact<?> artifact : fork.newlyGeneratedArtifacts) {
+      commitArtifact(logger, artifact);
+    }
+  }
+
   /**
    * This method is maintained for backwards compatibility.
    * {@link #runGeneratorIncrementally} should be used instead.
@@ -838,6 +921,26 @@ public class StandardGeneratorContext implements GeneratorContext {
     return true;
   }
 
+  /**
+   * Returns <code>true</code> if the type of <code>unit</code> has already been
+   * generated from the same source, in this context or in an earlier call to
+   * {@link #finish}.
+   */
+  private boolean isGeneratedFrom(GeneratedUnit unit) {
+    String typeName = unit.getTypeName();
+    GeneratedUnit committed = committedGeneratedCups.get(typeName);
+    if (committed != null) {
+      return committed.getStrongHash().equals(unit.getStrongHash());
+    }
+    if (newlyGeneratedTypeNames.contains(typeName)) {
+      // Not committed yet
+      return false;
+    }
+    CompilationUnit existing = compilationState.getCompilationUnitMap().get(typeName);
+    return existing != null && existing.isGenerated()
+        && existing.getContentId().equals(new ContentId(typeName, unit.getStrongHash()));
+  }
+
   private void abortUncommittedResources(TreeLogger logger) {
     if (pendingResources.isEmpty()) {
       // Nothing to do.
@@ -858,4 +961,17 @@ public class StandardGeneratorContext implements GeneratorContext {
     }
     pendingResources.clear();
   }
+
+  private void warnUncommittedUnits(TreeLogger logger) {
+    if (!uncommittedGeneratedCupsByPrintWriter.isEmpty()) {
+      String msg =
+          "For the following type(s), generated source was never committed (did you forget to call commit()?)";
+      logger = logger.branch(TreeLogger.WARN, msg, null);
+
+      for (Generated unit : uncommittedGeneratedCupsByPrintWriter.values()) {
+        logger.log(TreeLogger.WARN, unit.getTypeName(), null);
+      }
+    }
+    uncommittedGeneratedCupsByPrintWriter.clear();
+  }
 }
@@ -67,6 +67,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Builds or rebuilds a {@link com.google.gwt.core.ext.typeinfo.TypeOracle} from
@@ -261,6 +262,12 @@ public class TypeOracleMediator extends TypeOracleBuilder {
 
   private static final JTypeParameter[] NO_TYPE_PARAMETERS = new JTypeParameter[0];
 
+  /**
+   * The number of tasks that read class files for each compilation thread, to
+   * even out the uneven size of classes.
+   */
+  private static final int READS_PER_THREAD = 4;
+
   /**
    * Turn on to trace class processing.
    */
@@ -390,6 +397,27 @@ public class TypeOracleMediator extends TypeOracleBuilder {
         CompilerEventType.TYPE_ORACLE_MEDIATOR, "phase", "Visit Class Files");
     TypeOracleBuildContext context = new TypeOracleBuildContext(argsLookup);
 
+    int numThreads = CompilationStateBuilder.getCompileThreads();
+    if (numThreads > 1 && typeDataList.size() > numThreads) {
+      // Each class file is read on its own, so read them on the compilation pool.
+      List<TypeData> list = new ArrayList<TypeData>(typeDataList);
+      int numReads = numThreads * READS_PER_THREAD;
+      List<Callable<Void>> reads = new ArrayList<Callable<Void>>(numReads);
+      for (int i = 0; i < numReads; ++i) {
+        final List<TypeData> chunk =
+            list.subList(i * list.size() / numReads, (i + 1) * list.size() / numReads);
+        reads.add(new Callable<Void>() {
+          public Void call() {
+            for (TypeData typeData : chunk) {
+              typeData.getCollectClassData();
+            }
+            return null;
+          }
+        });
+      }
+      CompilationStateBuilder.invokeAll(reads);
+    }
+
     for (TypeData typeData : typeDataList) {
       CollectClassData cv = typeData.getCollectClassData();
       // skip any classes that can't be referenced by name outside of
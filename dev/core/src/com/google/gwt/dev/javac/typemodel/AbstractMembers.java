@@ -27,8 +27,11 @@ import java.util.TreeMap;
 abstract class AbstractMembers {
 
   protected final JClassType classType;
-  private JMethod[] cachedInheritableMethods;
-  private JMethod[] cachedOverridableMethods;
+  /*
+   * Volatile so that concurrent generators see the cached arrays filled.
+   */
+  private volatile JMethod[] cachedInheritableMethods;
+  private volatile JMethod[] cachedOverridableMethods;
 
   public AbstractMembers(JClassType classType) {
     this.classType = classType;
@@ -39,6 +39,15 @@ class DelegateMembers extends AbstractMembers {
   private final JClassType baseType;
   private Map<String, JField> fieldMap;
   private JField[] fields;
+  /**
+   * Set once the fields have been fully initialized; the methods and
+   * constructors are published the same way. Initialization holds the type
+   * oracle's lock, so that concurrent readers neither see a partially
+   * initialized member nor deadlock with the type oracle's own factories.
+   */
+  private volatile boolean fieldsInitialized;
+  private volatile boolean constructorsInitialized;
+  private volatile boolean methodsInitialized;
   private List<JConstructor> lazyConstructors;
   private Map<String, Object> methodMap;
   private JMethod[] methods;
@@ -101,6 +110,21 @@ class DelegateMembers extends AbstractMembers {
 
   @Override
   protected List<JConstructor> doGetConstructors() {
+    if (!constructorsInitialized) {
+      synchronized (baseType.getOracle()) {
+        return initConstructors();
+      }
+    }
+    return lazyConstructors;
+  }
+
+  @Override
+  protected Map<String, JClassType> doGetNestedTypes() {
+    // TODO: is this correct?
+    return Maps.create();
+  }
+
+  private List<JConstructor> initConstructors() {
     if (lazyConstructors != null) {
       /*
        * Return if the constructors are being initialized or have been
@@ -117,16 +141,20 @@ class DelegateMembers extends AbstractMembers {
       lazyConstructors.add(newCtor);
     }
 
-    return lazyConstructors = Lists.normalize(lazyConstructors);
+    lazyConstructors = Lists.normalize(lazyConstructors);
+    constructorsInitialized = true;
+    return lazyConstructors;
   }
 
-  @Override
-  protected Map<String, JClassType> doGetNestedTypes() {
-    // TODO: is this correct?
-    return Maps.create();
+  private void initFields() {
+    if (!fieldsInitialized) {
+      synchronized (baseType.getOracle()) {
+        initFieldsLocked();
+      }
+    }
   }
 
-  private void initFields() {
+  private void initFieldsLocked() {
     if (fields != null) {
       return;
     }
@@ -141,6 +169,7 @@ class DelegateMembers extends AbstractMembers {
       fieldMap.put(newField.getName(), newField);
     }
     fieldMap = Maps.normalize(fieldMap);
+    fieldsInitialized = true;
   }
 
   private void initializeExceptions(JAbstractMethod srcMethod,
@@ -160,8 +189,16 @@ class DelegateMembers extends AbstractMembers {
     }
   }
 
-  @SuppressWarnings("unchecked")
   private void initMethods() {
+    if (!methodsInitialized) {
+      synchronized (baseType.getOracle()) {
+        initMethodsLocked();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void initMethodsLocked() {
     if (methods != null) {
       return;
     }
@@ -200,6 +237,7 @@ class DelegateMembers extends AbstractMembers {
       }
     }
     methodMap = Maps.normalize(methodMap);
+    methodsInitialized = true;
   }
 
   private JType substitute(JType type) {
@@ -337,9 +337,10 @@ public abstract class JClassType implements
 
   /**
    * Cached set of supertypes for this type (including itself). If null, the set
-   * has not been calculated yet.
+   * has not been calculated yet. Volatile so that concurrent generators see
+   * the set filled.
    */
-  private Set<JClassType> flattenedSupertypes;
+  private volatile Set<JClassType> flattenedSupertypes;
 
   /**
    * True if this type may be enhanced with server-only fields. This property is
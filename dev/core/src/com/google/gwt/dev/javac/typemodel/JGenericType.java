@@ -26,7 +26,7 @@ import java.util.List;
 public class JGenericType extends JRealClassType implements
     com.google.gwt.core.ext.typeinfo.JGenericType {
 
-  private JRawType lazyRawType = null;
+  private volatile JRawType lazyRawType = null;
 
   private List<JTypeParameter> typeParams = Lists.create();
 
@@ -84,7 +84,12 @@ public class JGenericType extends JRealClassType implements
 
   public JRawType getRawType() {
     if (lazyRawType == null) {
-      lazyRawType = new JRawType(this);
+      // Raw types are compared by identity, so only one may be created
+      synchronized (getOracle()) {
+        if (lazyRawType == null) {
+          lazyRawType = new JRawType(this);
+        }
+      }
     }
 
     return lazyRawType;
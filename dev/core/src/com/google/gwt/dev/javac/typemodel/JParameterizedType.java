@@ -72,15 +72,20 @@ public class JParameterizedType extends JMaybeParameterizedType implements
 
   private final JClassType enclosingType;
 
-  private List<JClassType> interfaces;
+  /*
+   * The lazily computed fields are only assigned once fully built, and are
+   * volatile so that concurrent generators see them complete. Threads that
+   * race to compute them get the same values from the type oracle.
+   */
+  private volatile List<JClassType> interfaces;
 
   /**
    * This map records the JClassType that should be used in place of a given
    * {@link JTypeParameter}.
    */
-  private Map<JTypeParameter, JClassType> lazySubstitutionMap;
+  private volatile Map<JTypeParameter, JClassType> lazySubstitutionMap;
 
-  private JClassType lazySuperclass;
+  private volatile JClassType lazySuperclass;
 
   private final AbstractMembers members;
 
@@ -156,16 +161,17 @@ public class JParameterizedType extends JMaybeParameterizedType implements
 
   @Override
   public JClassType[] getImplementedInterfaces() {
-    if (interfaces == null) {
-      interfaces = new ArrayList<JClassType>();
+    List<JClassType> toReturn = interfaces;
+    if (toReturn == null) {
+      toReturn = new ArrayList<JClassType>();
       JClassType[] intfs = getBaseType().getImplementedInterfaces();
       for (JClassType intf : intfs) {
         JClassType newIntf = intf.getSubstitutedType(this);
-        interfaces.add(newIntf);
+        toReturn.add(newIntf);
       }
-      interfaces = Lists.normalize(interfaces);
+      interfaces = toReturn = Lists.normalize(toReturn);
     }
-    return interfaces.toArray(TypeOracle.NO_JCLASSES);
+    return toReturn.toArray(TypeOracle.NO_JCLASSES);
   }
 
   @Override
@@ -315,14 +321,15 @@ public class JParameterizedType extends JMaybeParameterizedType implements
       return null;
     }
 
-    if (lazySuperclass == null) {
+    JClassType toReturn = lazySuperclass;
+    if (toReturn == null) {
       JGenericType baseType = getBaseType();
       JClassType superclass = baseType.getSuperclass();
       assert (superclass != null);
-      lazySuperclass = superclass.getSubstitutedType(this);
+      lazySuperclass = toReturn = superclass.getSubstitutedType(this);
     }
 
-    return lazySuperclass;
+    return toReturn;
   }
 
   public JClassType[] getTypeArgs() {
@@ -406,9 +413,7 @@ public class JParameterizedType extends JMaybeParameterizedType implements
    * {@link JTypeParameter} is returned.
    */
   JClassType getTypeParameterSubstitution(JTypeParameter typeParameter) {
-    maybeInitializeTypeParameterSubstitutionMap();
-
-    JClassType substitute = lazySubstitutionMap.get(typeParameter);
+    JClassType substitute = maybeInitializeTypeParameterSubstitutionMap().get(typeParameter);
     if (substitute != null) {
       return substitute;
     }
@@ -437,12 +442,15 @@ public class JParameterizedType extends JMaybeParameterizedType implements
    * corresponding {@link JClassType}s. This can only be initialized after the
    * {@link com.google.gwt.dev.javac.TypeOracleMediator TypeOracleMediator} has
    * fully resolved all of the {@link JClassType}s.
+   * 
+   * @return the map of substitutions
    */
-  void maybeInitializeTypeParameterSubstitutionMap() {
-    if (lazySubstitutionMap != null) {
-      return;
+  Map<JTypeParameter, JClassType> maybeInitializeTypeParameterSubstitutionMap() {
+    Map<JTypeParameter, JClassType> substitutionMap = lazySubstitutionMap;
+    if (substitutionMap != null) {
+      return substitutionMap;
     }
-    lazySubstitutionMap = new IdentityHashMap<JTypeParameter, JClassType>();
+    substitutionMap = new IdentityHashMap<JTypeParameter, JClassType>();
 
     JParameterizedType currentParameterizedType = this;
 
@@ -452,7 +460,7 @@ public class JParameterizedType extends JMaybeParameterizedType implements
       JClassType[] typeArguments = currentParameterizedType.getTypeArgs();
 
       for (JTypeParameter typeParameter : typeParameters) {
-        lazySubstitutionMap.put(typeParameter,
+        substitutionMap.put(typeParameter,
             typeArguments[typeParameter.getOrdinal()]);
       }
 
@@ -467,7 +475,8 @@ public class JParameterizedType extends JMaybeParameterizedType implements
       }
       currentParameterizedType = maybeParameterizedType.isParameterized();
     }
-    lazySubstitutionMap = Maps.normalize(lazySubstitutionMap);
+    lazySubstitutionMap = substitutionMap = Maps.normalize(substitutionMap);
+    return substitutionMap;
   }
 
   void setTypeArguments(JClassType[] typeArgs) {
@@ -32,7 +32,11 @@ public class JRawType extends JMaybeParameterizedType implements
     }
   };
 
-  private List<JClassType> interfaces;
+  /**
+   * Only assigned once fully built, so that concurrent generators see it
+   * complete.
+   */
+  private volatile List<JClassType> interfaces;
 
   private final AbstractMembers members;
 
@@ -92,15 +96,17 @@ public class JRawType extends JMaybeParameterizedType implements
 
   @Override
   public JClassType[] getImplementedInterfaces() {
-    if (interfaces == null) {
-      interfaces = new ArrayList<JClassType>();
+    List<JClassType> toReturn = interfaces;
+    if (toReturn == null) {
+      toReturn = new ArrayList<JClassType>();
       JClassType[] intfs = getBaseType().getImplementedInterfaces();
       for (JClassType intf : intfs) {
         JClassType newIntf = intf.getErasedType();
-        interfaces.add(newIntf);
+        toReturn.add(newIntf);
       }
+      interfaces = toReturn;
     }
-    return interfaces.toArray(TypeOracle.NO_JCLASSES);
+    return toReturn.toArray(TypeOracle.NO_JCLASSES);
   }
 
   @Override
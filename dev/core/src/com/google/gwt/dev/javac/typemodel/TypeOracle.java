@@ -65,7 +65,12 @@ import java.util.Set;
  * </pre>
  * 
  * </p>
- * 
+ * <p>
+ * Once it has been built, a type oracle may be queried by several threads at
+ * once, e.g. by generators that run concurrently. The methods that create
+ * array, parameterized and wildcard types on demand are synchronized for that
+ * reason.
+ * </p>
  */
 public class TypeOracle extends com.google.gwt.core.ext.typeinfo.TypeOracle {
 
@@ -387,7 +392,7 @@ public class TypeOracle extends com.google.gwt.core.ext.typeinfo.TypeOracle {
    * @return a type object representing an array of the component type
    */
   @Override
-  public JArrayType getArrayType(JType componentType) {
+  public synchronized JArrayType getArrayType(JType componentType) {
     JArrayType arrayType = arrayTypes.get(componentType);
     if (arrayType == null) {
       arrayType = new JArrayType(componentType, this);
@@ -472,7 +477,7 @@ public class TypeOracle extends com.google.gwt.core.ext.typeinfo.TypeOracle {
    * @throws NullPointerException if genericType is <code>null</code>
    */
   @Override
-  public JParameterizedType getParameterizedType(
+  public synchronized JParameterizedType getParameterizedType(
       com.google.gwt.core.ext.typeinfo.JGenericType extGenericType,
       com.google.gwt.core.ext.typeinfo.JClassType extEnclosingType,
       com.google.gwt.core.ext.typeinfo.JClassType[] extTypeArgs) {
@@ -625,7 +630,7 @@ public class TypeOracle extends com.google.gwt.core.ext.typeinfo.TypeOracle {
   }
 
   @Override
-  public JWildcardType getWildcardType(
+  public synchronized JWildcardType getWildcardType(
       com.google.gwt.core.ext.typeinfo.JWildcardType.BoundType boundType,
       com.google.gwt.core.ext.typeinfo.JClassType extTypeBound) {
     // Special fast case for <? extends Object>
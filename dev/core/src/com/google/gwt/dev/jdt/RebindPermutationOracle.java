@@ -20,6 +20,8 @@ import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.javac.CompilationState;
 import com.google.gwt.dev.javac.StandardGeneratorContext;
 
+import java.util.Collection;
+
 /**
  * Abstract the process of determining all of the possible deferred binding
  * answers for a given type.
@@ -48,4 +50,16 @@ public interface RebindPermutationOracle {
    * Returns the StandardGeneratorContext.
    */
   StandardGeneratorContext getGeneratorContext();
+
+  /**
+   * Gives the oracle a chance to compute the answers for several types that are
+   * about to be requested through {@link #getAllPossibleRebindAnswers}, e.g.
+   * by running their generators concurrently. The oracle may compute any
+   * number of them, including none; errors are reported when the answers are
+   * requested.
+   * 
+   * @return <code>false</code> if the oracle never computes answers ahead of
+   *         time, so that callers need not look for upcoming requests
+   */
+  boolean prefetchRebindAnswers(TreeLogger logger, Collection<String> sourceTypeNames);
 }
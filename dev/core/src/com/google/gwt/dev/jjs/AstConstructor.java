@@ -29,6 +29,8 @@ import com.google.gwt.dev.jjs.impl.ReplaceRunAsyncs;
 import com.google.gwt.dev.jjs.impl.UnifyAst;
 import com.google.gwt.dev.js.ast.JsProgram;
 
+import java.util.Collection;
+
 /**
  * Constructs a full Java AST from source.
  */
@@ -62,6 +64,10 @@ public class AstConstructor {
       public StandardGeneratorContext getGeneratorContext() {
         return null;
       }
+
+      public boolean prefetchRebindAnswers(TreeLogger logger, Collection<String> sourceTypeNames) {
+        return false;
+      }
     };
 
     JProgram jprogram = new JProgram();
@@ -41,6 +41,7 @@ import com.google.gwt.dev.Permutation;
 import com.google.gwt.dev.cfg.ConfigurationProperty;
 import com.google.gwt.dev.cfg.ModuleDef;
 import com.google.gwt.dev.javac.CompilationProblemReporter;
+import com.google.gwt.dev.javac.CompilationState;
 import com.google.gwt.dev.javac.typemodel.TypeOracle;
 import com.google.gwt.dev.jdt.RebindPermutationOracle;
 import com.google.gwt.dev.jjs.UnifiedAst.AST;
@@ -88,6 +89,8 @@ import com.google.gwt.dev.jjs.impl.MakeCallsStatic;
 import com.google.gwt.dev.jjs.impl.MethodCallTightener;
 import com.google.gwt.dev.jjs.impl.MethodInliner;
 import com.google.gwt.dev.jjs.impl.OptimizerStats;
+import com.google.gwt.dev.jjs.impl.OptimizerWorklist;
+import com.google.gwt.dev.jjs.impl.ParallelMethodVisitor;
 import com.google.gwt.dev.jjs.impl.PostOptimizationCompoundAssignmentNormalizer;
 import com.google.gwt.dev.jjs.impl.Pruner;
 import com.google.gwt.dev.jjs.impl.RecordRebinds;
@@ -130,6 +133,7 @@ import com.google.gwt.dev.util.arg.OptionOptimize;
 import com.google.gwt.dev.util.collect.Lists;
 import com.google.gwt.dev.util.collect.Maps;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 import com.google.gwt.soyc.SoycDashboard;
@@ -150,6 +154,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -160,6 +165,16 @@ import javax.xml.parsers.ParserConfigurationException;
  */
 public class JavaToJavaScriptCompiler {
 
+  /**
+   * The generated code and related information for one fragment.
+   */
+  private static class FragmentOutput {
+    String js;
+    StatementRanges ranges;
+    SizeBreakdown sizeBreakdown;
+    Map<Range, SourceInfo> sourceInfoMap;
+  }
+
   private static class PermutationResultImpl implements PermutationResult {
     private final ArtifactSet artifacts = new ArtifactSet();
     private final byte[][] js;
@@ -226,6 +241,15 @@ public class JavaToJavaScriptCompiler {
 
   private static final String ENUM_NAME_OBFUSCATION_PROPERTY = "compiler.enum.obfuscate.names";
 
+  /**
+   * A Java system property that, when true, makes the optimizer revisit only
+   * the methods affected by the previous pass whenever that pass changed
+   * nothing but method bodies, instead of rerunning every optimizer over the
+   * whole program. It only takes effect at the maximum optimization level,
+   * where both modes run to a fixed point.
+   */
+  static final String INCREMENTAL_OPTIMIZE_PROPERTY = "gwt.jjs.incrementalOptimize";
+
   /**
    * Compiles a particular permutation, based on a precompiled unified AST.
    * 
@@ -242,6 +266,7 @@ public class JavaToJavaScriptCompiler {
     JJSOptions options = unifiedAst.getOptions();
     long startTimeMilliseconds = System.currentTimeMillis();
 
+    CompilerMetrics.setPermutation(permutation.getId());
     Event jjsCompilePermutationEvent =
         SpeedTracerLogger.start(CompilerEventType.JJS_COMPILE_PERMUTATION, "name", permutation
             .prettyPrint());
@@ -454,6 +479,7 @@ public class JavaToJavaScriptCompiler {
       throw CompilationProblemReporter.logAndTranslateException(logger, e);
     } finally {
       jjsCompilePermutationEvent.end();
+      CompilerMetrics.setPermutation(-1);
     }
   }
 
@@ -540,6 +566,10 @@ public class JavaToJavaScriptCompiler {
         precompilationMetrics.setFinalTypeOracleTypes(finalTypeOracleTypes);
       }
 
+      // Hash what the AST is built from while the compilation state is live.
+      String inputsHash =
+          computeInputsHash(rpo.getCompilationState(), allRootTypes, singlePermutation);
+
       // Free up memory.
       rpo.clear();
 
@@ -626,7 +656,8 @@ public class JavaToJavaScriptCompiler {
 
       Event createUnifiedAstEvent = SpeedTracerLogger.start(CompilerEventType.CREATE_UNIFIED_AST);
       UnifiedAst result =
-          new UnifiedAst(options, new AST(jprogram, jsProgram), singlePermutation, rebindRequests);
+          new UnifiedAst(options, new AST(jprogram, jsProgram), singlePermutation, rebindRequests,
+              inputsHash);
       createUnifiedAstEvent.end();
       return result;
     } catch (Throwable e) {
@@ -635,6 +666,21 @@ public class JavaToJavaScriptCompiler {
     }
   }
 
+  /**
+   * Computes the hash returned by {@link UnifiedAst#getInputsHash()}.
+   */
+  private static String computeInputsHash(CompilationState compilationState,
+      Set<String> allRootTypes, boolean singlePermutation) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(compilationState.getContentHash()).append('\n');
+    sb.append(singlePermutation).append('\n');
+    // Sorted, since allRootTypes is a TreeSet.
+    for (String rootType : allRootTypes) {
+      sb.append(rootType).append('\n');
+    }
+    return Util.computeStrongName(Util.getBytes(sb.toString()));
+  }
+
   /**
    * Perform the minimal amount of optimization to make sure the compile
    * succeeds.
@@ -652,23 +698,63 @@ public class JavaToJavaScriptCompiler {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE);
 
     List<OptimizerStats> allOptimizerStats = new ArrayList<OptimizerStats>();
+    // Only full passes count toward the optimization level's pass budget
     int counter = 0;
     int optimizationLevel = options.getOptimizationLevel();
+    /*
+     * With a limited pass budget, the extra method-local passes would make the
+     * output differ from that of the same number of full passes, so the
+     * worklist is only used when the optimizer runs to a fixed point.
+     */
+    boolean incremental = Boolean.getBoolean(INCREMENTAL_OPTIMIZE_PROPERTY)
+        && optimizationLevel >= OptionOptimize.OPTIMIZE_LEVEL_MAX;
+    // When non-null, only the method-local passes need to run, and only here.
+    OptimizerWorklist worklist = null;
+    Set<JMethod> modifiedMethods = null;
+    int worklistCounter = 0;
     while (true) {
-      counter++;
-      if (optimizationLevel < OptionOptimize.OPTIMIZE_LEVEL_MAX && counter > optimizationLevel) {
-        break;
+      if (worklist == null) {
+        counter++;
+        worklistCounter = 0;
+        if (optimizationLevel < OptionOptimize.OPTIMIZE_LEVEL_MAX && counter > optimizationLevel) {
+          break;
+        }
       }
       if (Thread.interrupted()) {
         optimizeEvent.end();
         throw new InterruptedException();
       }
       AstDumper.maybeDumpAST(jprogram);
-      OptimizerStats stats =
-          optimizeLoop("Pass " + counter, jprogram, options.isAggressivelyOptimize());
+      OptimizerStats stats;
+      if (worklist == null) {
+        stats =
+            optimizeLoop("Pass " + counter, jprogram, options.isAggressivelyOptimize(),
+                incremental);
+      } else {
+        stats =
+            optimizeMethods("Pass " + counter + "." + (++worklistCounter), jprogram, worklist
+                .expand(modifiedMethods));
+      }
       allOptimizerStats.add(stats);
       if (!stats.didChange()) {
-        break;
+        if (worklist == null) {
+          break;
+        }
+        /*
+         * The method-local passes have settled; run a full pass to pick up any
+         * whole-program optimizations they enabled.
+         */
+        worklist = null;
+        continue;
+      }
+      if (incremental) {
+        modifiedMethods = stats.getModifiedMethods();
+        if (modifiedMethods == null) {
+          // A whole-program pass made changes; the next pass must be full.
+          worklist = null;
+        } else if (worklist == null) {
+          worklist = OptimizerWorklist.build(jprogram);
+        }
       }
     }
 
@@ -732,6 +818,19 @@ public class JavaToJavaScriptCompiler {
 
   protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
       boolean isAggressivelyOptimize) {
+    return optimizeLoop(passName, jprogram, isAggressivelyOptimize, false);
+  }
+
+  /**
+   * Runs one full round of the Java optimizers.
+   * 
+   * @param trackModifiedMethods if <code>true</code>, the method-local passes
+   *          record which methods they modified, so that the result's
+   *          {@link OptimizerStats#getModifiedMethods()} is non-null if only
+   *          those passes made changes
+   */
+  protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
+      boolean isAggressivelyOptimize, boolean trackModifiedMethods) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "phase", "loop");
 
     // Count the number of nodes in the AST so we can measure the efficiency of
@@ -765,11 +864,19 @@ public class JavaToJavaScriptCompiler {
     // - optimize casts and instance of
     stats.add(TypeTightener.exec(jprogram).recordVisits(numNodes));
 
+    /*
+     * The following passes are method-local, so they can run one method body
+     * at a time, possibly in parallel, and report which methods they modified.
+     */
+    boolean perMethod = ParallelMethodVisitor.isEnabled() || trackModifiedMethods;
+
     // tighten method call bindings
-    stats.add(MethodCallTightener.exec(jprogram).recordVisits(numNodes));
+    stats.add((perMethod ? MethodCallTightener.execParallel(jprogram) : MethodCallTightener
+        .exec(jprogram)).recordVisits(numNodes));
 
     // dead code removal??
-    stats.add(DeadCodeElimination.exec(jprogram).recordVisits(numNodes));
+    stats.add((perMethod ? DeadCodeElimination.execParallel(jprogram) : DeadCodeElimination
+        .exec(jprogram)).recordVisits(numNodes));
 
     // inlining
     stats.add(MethodInliner.exec(jprogram).recordVisits(numNodes));
@@ -794,6 +901,32 @@ public class JavaToJavaScriptCompiler {
     return stats;
   }
 
+  /**
+   * Runs only the method-local optimizers, and only over <code>methods</code>.
+   * The whole-program facts they depend on are unchanged since the last call
+   * to {@link #optimizeLoop(String, JProgram, boolean, boolean)}, so they are
+   * not recomputed.
+   */
+  protected static OptimizerStats optimizeMethods(String passName, JProgram jprogram,
+      List<JMethod> methods) {
+    Event optimizeEvent =
+        SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "phase", "methods", "count", ""
+            + methods.size());
+
+    Event countEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "phase", "countNodes");
+    TreeStatistics treeStats = new TreeStatistics();
+    treeStats.accept(methods);
+    int numNodes = treeStats.getNodeCount();
+    countEvent.end();
+
+    OptimizerStats stats = new OptimizerStats(passName);
+    stats.add(MethodCallTightener.execParallel(jprogram, methods).recordVisits(numNodes));
+    stats.add(DeadCodeElimination.execParallel(jprogram, methods).recordVisits(numNodes));
+
+    optimizeEvent.end();
+    return stats;
+  }
+
   private static MultipleDependencyGraphRecorder chooseDependencyRecorder(boolean soycEnabled,
       OutputStream out) {
     MultipleDependencyGraphRecorder dependencyRecorder = CodeSplitter.NULL_RECORDER;
@@ -931,7 +1064,8 @@ public class JavaToJavaScriptCompiler {
 
   /**
    * Generate JavaScript code from the given JavaScript ASTs. Also produces
-   * information about that transformation.
+   * information about that transformation. Fragments are generated in parallel
+   * if {@link ParallelMethodVisitor#THREADS_PROPERTY} is set.
    * 
    * @param options The options this compiler instance is running with
    * @param jsProgram The AST to convert to source code
@@ -945,63 +1079,110 @@ public class JavaToJavaScriptCompiler {
    *          JavaScript
    * @param splitBlocks true if current permutation is for IE6 or unknown
    */
-  private static void generateJavaScriptCode(JJSOptions options, JsProgram jsProgram,
-      JavaToJavaScriptMap jjsMap, String[] js, StatementRanges[] ranges,
-      SizeBreakdown[] sizeBreakdowns, List<Map<Range, SourceInfo>> sourceInfoMaps,
-      boolean splitBlocks) {
-    for (int i = 0; i < js.length; i++) {
-      DefaultTextOutput out = new DefaultTextOutput(options.getOutput().shouldMinimize());
-      JsSourceGenerationVisitorWithSizeBreakdown v;
+  private static void generateJavaScriptCode(final JJSOptions options,
+      final JsProgram jsProgram, final JavaToJavaScriptMap jjsMap, String[] js,
+      StatementRanges[] ranges, SizeBreakdown[] sizeBreakdowns,
+      List<Map<Range, SourceInfo>> sourceInfoMaps, final boolean splitBlocks) {
+    final boolean wantSizeBreakdowns = sizeBreakdowns != null;
+    final boolean wantSourceInfoMaps = sourceInfoMaps != null;
+    List<FragmentOutput> outputs;
+    if (js.length > 1 && ParallelMethodVisitor.isEnabled()) {
+      /*
+       * Fragments are generated independently of each other, and only read the
+       * JavaScript AST and jjsMap, which are not modified from here on.
+       */
+      List<Callable<FragmentOutput>> tasks = new ArrayList<Callable<FragmentOutput>>(js.length);
+      for (int i = 0; i < js.length; i++) {
+        final int fragment = i;
+        tasks.add(new Callable<FragmentOutput>() {
+          public FragmentOutput call() {
+            return generateJavaScriptCode(options, jsProgram, jjsMap, fragment,
+                wantSizeBreakdowns, wantSourceInfoMaps, splitBlocks);
+          }
+        });
+      }
+      outputs = ParallelMethodVisitor.invokeAll(tasks);
+    } else {
+      outputs = new ArrayList<FragmentOutput>(js.length);
+      for (int i = 0; i < js.length; i++) {
+        outputs.add(generateJavaScriptCode(options, jsProgram, jjsMap, i, wantSizeBreakdowns,
+            wantSourceInfoMaps, splitBlocks));
+      }
+    }
 
+    for (int i = 0; i < js.length; i++) {
+      FragmentOutput output = outputs.get(i);
+      js[i] = output.js;
+      ranges[i] = output.ranges;
+      if (sizeBreakdowns != null) {
+        sizeBreakdowns[i] = output.sizeBreakdown;
+      }
       if (sourceInfoMaps != null) {
-        v = new JsReportGenerationVisitor(out, jjsMap);
-      } else {
-        v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
+        sourceInfoMaps.add(output.sourceInfoMap);
       }
-      v.accept(jsProgram.getFragmentBlock(i));
+    }
+  }
 
-      StatementRanges statementRanges = v.getStatementRanges();
-      String code = out.toString();
-      Map<Range, SourceInfo> infoMap = (sourceInfoMaps != null) ? v.getSourceInfoMap() : null;
+  /**
+   * Generates the JavaScript code for a single fragment of
+   * <code>jsProgram</code>.
+   */
+  private static FragmentOutput generateJavaScriptCode(JJSOptions options,
+      JsProgram jsProgram, JavaToJavaScriptMap jjsMap, int fragment,
+      boolean wantSizeBreakdown, boolean wantSourceInfoMap, boolean splitBlocks) {
+    DefaultTextOutput out = new DefaultTextOutput(options.getOutput().shouldMinimize());
+    JsSourceGenerationVisitorWithSizeBreakdown v;
+
+    if (wantSourceInfoMap) {
+      v = new JsReportGenerationVisitor(out, jjsMap);
+    } else {
+      v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
+    }
+    v.accept(jsProgram.getFragmentBlock(fragment));
 
-      JsAbstractTextTransformer transformer =
-          new JsAbstractTextTransformer(code, statementRanges, infoMap) {
-            @Override
-            public void exec() {
-            }
+    StatementRanges statementRanges = v.getStatementRanges();
+    String code = out.toString();
+    Map<Range, SourceInfo> infoMap = wantSourceInfoMap ? v.getSourceInfoMap() : null;
 
-            @Override
-            protected void updateSourceInfoMap() {
-            }
-          };
+    JsAbstractTextTransformer transformer =
+        new JsAbstractTextTransformer(code, statementRanges, infoMap) {
+          @Override
+          public void exec() {
+          }
 
-      /**
-       * Reorder function decls to improve compression ratios. Also restructures
-       * the top level blocks into sub-blocks if they exceed 32767 statements.
-       */
-      Event functionClusterEvent = SpeedTracerLogger.start(CompilerEventType.FUNCTION_CLUSTER);
-      // only cluster for obfuscated mode
-      if (options.isAggressivelyOptimize() && options.getOutput() == JsOutputOption.OBFUSCATED) {
-        transformer = new JsFunctionClusterer(transformer);
-        transformer.exec();
-      }
-      functionClusterEvent.end();
+          @Override
+          protected void updateSourceInfoMap() {
+          }
+        };
 
-      // rewrite top-level blocks to limit the number of statements
-      if (splitBlocks) {
-        transformer = new JsIEBlockTextTransformer(transformer);
-        transformer.exec();
-      }
+    /**
+     * Reorder function decls to improve compression ratios. Also restructures
+     * the top level blocks into sub-blocks if they exceed 32767 statements.
+     */
+    Event functionClusterEvent = SpeedTracerLogger.start(CompilerEventType.FUNCTION_CLUSTER);
+    // only cluster for obfuscated mode
+    if (options.isAggressivelyOptimize() && options.getOutput() == JsOutputOption.OBFUSCATED) {
+      transformer = new JsFunctionClusterer(transformer);
+      transformer.exec();
+    }
+    functionClusterEvent.end();
 
-      js[i] = transformer.getJs();
-      ranges[i] = transformer.getStatementRanges();
-      if (sizeBreakdowns != null) {
-        sizeBreakdowns[i] = v.getSizeBreakdown();
-      }
-      if (sourceInfoMaps != null) {
-        sourceInfoMaps.add(transformer.getSourceInfoMap());
-      }
+    // rewrite top-level blocks to limit the number of statements
+    if (splitBlocks) {
+      transformer = new JsIEBlockTextTransformer(transformer);
+      transformer.exec();
+    }
+
+    FragmentOutput output = new FragmentOutput();
+    output.js = transformer.getJs();
+    output.ranges = transformer.getStatementRanges();
+    if (wantSizeBreakdown) {
+      output.sizeBreakdown = v.getSizeBreakdown();
+    }
+    if (wantSourceInfoMap) {
+      output.sourceInfoMap = transformer.getSourceInfoMap();
     }
+    return output;
   }
 
   /**
@@ -80,6 +80,12 @@ public class UnifiedAst implements Serializable {
    */
   private transient Object myLockObject = new Object();
 
+  /**
+   * A strong hash of the precompilation inputs, or <code>null</code> if
+   * unknown.
+   */
+  private final String inputsHash;
+
   /**
    * The compilation options.
    */
@@ -103,7 +109,17 @@ public class UnifiedAst implements Serializable {
 
   public UnifiedAst(JJSOptions options, AST initialAst, boolean singlePermutation,
       Set<String> rebindRequests) {
+    this(options, initialAst, singlePermutation, rebindRequests, null);
+  }
+
+  /**
+   * @param inputsHash a strong hash of everything the AST was built from, see
+   *          {@link #getInputsHash()}; may be <code>null</code>
+   */
+  public UnifiedAst(JJSOptions options, AST initialAst, boolean singlePermutation,
+      Set<String> rebindRequests, String inputsHash) {
     this.options = new JJSOptionsImpl(options);
+    this.inputsHash = inputsHash;
     this.initialAst = initialAst;
     this.rebindRequests = Collections.unmodifiableSortedSet(new TreeSet<String>(rebindRequests));
     this.serializedAstToken = singlePermutation ? -1 : diskCache.writeObject(initialAst);
@@ -114,6 +130,7 @@ public class UnifiedAst implements Serializable {
    */
   UnifiedAst(UnifiedAst other) {
     this.options = other.options;
+    this.inputsHash = other.inputsHash;
     this.initialAst = other.initialAst;
     other.initialAst = null; // steal its copy
     this.rebindRequests = other.rebindRequests;
@@ -184,6 +201,18 @@ public class UnifiedAst implements Serializable {
     return rebindRequests;
   }
 
+  /**
+   * Returns a strong hash of the inputs this AST was precompiled from: the
+   * content of every compilation unit, the root types and whether it was built
+   * for a single permutation. Unlike a hash of the serialized AST, it does not
+   * depend on the identity hash codes of AST nodes, so independent
+   * precompiles of the same sources agree on it. Returns <code>null</code> if
+   * unknown.
+   */
+  public String getInputsHash() {
+    return inputsHash;
+  }
+
   /**
    * Internally prepares a new AST for compilation if one is not already
    * prepared.
@@ -655,6 +655,20 @@ public class JTypeOracle implements Serializable {
     return get(superClassMap, type).contains(qType);
   }
 
+  /**
+   * Eagerly builds the polymorphic method tables that
+   * {@link #getPolyMethod(JClassType, String)} otherwise computes lazily. After
+   * this call, and until the program's types or methods change, lookups do not
+   * modify the oracle and may be made from multiple threads.
+   */
+  public void precomputePolyMethods() {
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type instanceof JClassType) {
+        getOrCreatePolyMap((JClassType) type);
+      }
+    }
+  }
+
   /**
    * This method should be called after altering the types that are live in the
    * associated JProgram.
@@ -27,6 +27,7 @@ import com.google.gwt.dev.jjs.ast.JCastOperation;
 import com.google.gwt.dev.jjs.ast.JCharLiteral;
 import com.google.gwt.dev.jjs.ast.JClassType;
 import com.google.gwt.dev.jjs.ast.JConditional;
+import com.google.gwt.dev.jjs.ast.JConstructor;
 import com.google.gwt.dev.jjs.ast.JContinueStatement;
 import com.google.gwt.dev.jjs.ast.JDeclarationStatement;
 import com.google.gwt.dev.jjs.ast.JDeclaredType;
@@ -34,6 +35,7 @@ import com.google.gwt.dev.jjs.ast.JDoStatement;
 import com.google.gwt.dev.jjs.ast.JDoubleLiteral;
 import com.google.gwt.dev.jjs.ast.JExpression;
 import com.google.gwt.dev.jjs.ast.JExpressionStatement;
+import com.google.gwt.dev.jjs.ast.JField;
 import com.google.gwt.dev.jjs.ast.JFieldRef;
 import com.google.gwt.dev.jjs.ast.JForStatement;
 import com.google.gwt.dev.jjs.ast.JIfStatement;
@@ -59,10 +61,12 @@ import com.google.gwt.dev.jjs.ast.JTryStatement;
 import com.google.gwt.dev.jjs.ast.JType;
 import com.google.gwt.dev.jjs.ast.JUnaryOperator;
 import com.google.gwt.dev.jjs.ast.JValueLiteral;
+import com.google.gwt.dev.jjs.ast.JVariable;
 import com.google.gwt.dev.jjs.ast.JVariableRef;
 import com.google.gwt.dev.jjs.ast.JVisitor;
 import com.google.gwt.dev.jjs.ast.JWhileStatement;
 import com.google.gwt.dev.jjs.ast.js.JMultiExpression;
+import com.google.gwt.dev.util.collect.IdentityHashSet;
 import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
@@ -466,7 +470,7 @@ public class DeadCodeElimination {
        * / it has no side effects.
        */
       if (ignoringExpressionOutput.contains(x)) {
-        if (!x.getTarget().isEmpty()) {
+        if (!isEmpty(x.getTarget())) {
           return;
         }
         JMultiExpression multi = new JMultiExpression(x.getSourceInfo());
@@ -1530,7 +1534,7 @@ public class DeadCodeElimination {
 
     private JLiteral tryGetConstant(JVariableRef x) {
       if (!lvalues.contains(x)) {
-        JLiteral lit = x.getTarget().getConstInitializer();
+        JLiteral lit = getConstInitializer(x.getTarget());
         if (lit != null) {
           /*
            * Upcast the initializer so that the semantics of any arithmetic on
@@ -1747,6 +1751,36 @@ public class DeadCodeElimination {
     return new DeadCodeElimination(program).execImpl(node);
   }
 
+  /**
+   * Like {@link #exec(JProgram)}, but runs over the method bodies in parallel
+   * using {@link ParallelMethodVisitor}. Constant field initializers and empty
+   * constructors are snapshotted first, so that no method reads the body of
+   * another method while it is being rewritten.
+   */
+  public static OptimizerStats execParallel(JProgram program) {
+    return execParallel(program, ParallelMethodVisitor.getMethods(program));
+  }
+
+  /**
+   * Like {@link #execParallel(JProgram)}, but only visits <code>methods</code>.
+   * The returned stats record which methods were modified.
+   */
+  public static OptimizerStats execParallel(JProgram program, List<JMethod> methods) {
+    return new DeadCodeElimination(program).execParallelImpl(methods);
+  }
+
+  /**
+   * Constant initializers of fields, snapshotted before a parallel run; null
+   * when running sequentially.
+   */
+  private Map<JField, JLiteral> frozenConstFields = null;
+
+  /**
+   * Constructors that were empty before a parallel run; null when running
+   * sequentially.
+   */
+  private Set<JConstructor> frozenEmptyConstructors = null;
+
   private final JProgram program;
   private final Simplifier simplifier;
 
@@ -1777,4 +1811,58 @@ public class DeadCodeElimination {
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
+
+  private OptimizerStats execParallelImpl(List<JMethod> methods) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    Event optimizeEvent =
+        SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME, "parallel", "true");
+
+    freezeCrossMethodFacts();
+    List<JMethod> modifiedMethods = new ArrayList<JMethod>();
+    int numMods =
+        ParallelMethodVisitor.exec(methods, new ParallelMethodVisitor.VisitorFactory() {
+          public JModVisitor create() {
+            return new DeadCodeVisitor();
+          }
+        }, modifiedMethods);
+    stats.recordModified(numMods).recordModifiedMethods(modifiedMethods);
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
+  private void freezeCrossMethodFacts() {
+    frozenConstFields = new IdentityHashMap<JField, JLiteral>();
+    frozenEmptyConstructors = new IdentityHashSet<JConstructor>();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type.isExternal()) {
+        continue;
+      }
+      for (JField field : type.getFields()) {
+        JLiteral lit = field.getConstInitializer();
+        if (lit != null) {
+          frozenConstFields.put(field, lit);
+        }
+      }
+      for (JMethod method : type.getMethods()) {
+        if (method instanceof JConstructor && ((JConstructor) method).isEmpty()) {
+          frozenEmptyConstructors.add((JConstructor) method);
+        }
+      }
+    }
+  }
+
+  private JLiteral getConstInitializer(JVariable variable) {
+    if (frozenConstFields != null && variable instanceof JField
+        && !((JField) variable).isExternal()) {
+      return frozenConstFields.get(variable);
+    }
+    return variable.getConstInitializer();
+  }
+
+  private boolean isEmpty(JConstructor constructor) {
+    if (frozenEmptyConstructors != null && !constructor.isExternal()) {
+      return frozenEmptyConstructors.contains(constructor);
+    }
+    return constructor.isEmpty();
+  }
 }
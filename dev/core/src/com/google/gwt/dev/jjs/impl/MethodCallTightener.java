@@ -28,6 +28,9 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Update polymorphic method calls to tighter bindings based on the type of the
  * qualifier. For a given polymorphic method call to a non-final target, see if
@@ -116,6 +119,26 @@ public class MethodCallTightener {
     return stats;
   }
 
+  /**
+   * Like {@link #exec(JProgram)}, but rewrites the method bodies in parallel
+   * using {@link ParallelMethodVisitor}.
+   */
+  public static OptimizerStats execParallel(JProgram program) {
+    return execParallel(program, ParallelMethodVisitor.getMethods(program));
+  }
+
+  /**
+   * Like {@link #execParallel(JProgram)}, but only visits <code>methods</code>.
+   * The returned stats record which methods were modified.
+   */
+  public static OptimizerStats execParallel(JProgram program, List<JMethod> methods) {
+    Event optimizeEvent =
+        SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME, "parallel", "true");
+    OptimizerStats stats = new MethodCallTightener(program).execParallelImpl(methods);
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
   private final JProgram program;
 
   private MethodCallTightener(JProgram program) {
@@ -127,4 +150,17 @@ public class MethodCallTightener {
     tightener.accept(program);
     return new OptimizerStats(NAME).recordModified(tightener.getNumMods());
   }
+
+  private OptimizerStats execParallelImpl(List<JMethod> methods) {
+    // Tightening only reads the poly method tables; build them up front.
+    program.typeOracle.precomputePolyMethods();
+    List<JMethod> modifiedMethods = new ArrayList<JMethod>();
+    int numMods =
+        ParallelMethodVisitor.exec(methods, new ParallelMethodVisitor.VisitorFactory() {
+          public JModVisitor create() {
+            return new MethodCallTighteningVisitor();
+          }
+        }, modifiedMethods);
+    return new OptimizerStats(NAME).recordModified(numMods).recordModifiedMethods(modifiedMethods);
+  }
 }
\ No newline at end of file
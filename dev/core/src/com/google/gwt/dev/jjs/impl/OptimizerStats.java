@@ -16,14 +16,20 @@
 
 package com.google.gwt.dev.jjs.impl;
 
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.util.collect.IdentityHashSet;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Stores statistics on the results of running an optimizer pass.
  */
 public class OptimizerStats {
   private final List<OptimizerStats> children = new ArrayList<OptimizerStats>();
+  private Set<JMethod> modifiedMethods = null;
   private final String name;
   private int numMods = 0;
   private int numVisits = 0;
@@ -61,6 +67,31 @@ public class OptimizerStats {
     return children;
   }
 
+  /**
+   * Returns the methods modified by this pass and its children, or
+   * <code>null</code> if some pass changed the AST without reporting which
+   * methods it modified.
+   */
+  public Set<JMethod> getModifiedMethods() {
+    if (numMods > 0 && modifiedMethods == null) {
+      return null;
+    }
+    Set<JMethod> result = new IdentityHashSet<JMethod>();
+    if (modifiedMethods != null) {
+      result.addAll(modifiedMethods);
+    }
+    for (OptimizerStats child : children) {
+      if (child.didChange()) {
+        Set<JMethod> childMethods = child.getModifiedMethods();
+        if (childMethods == null) {
+          return null;
+        }
+        result.addAll(childMethods);
+      }
+    }
+    return result;
+  }
+
   public String getName() {
     return name;
   }
@@ -114,6 +145,18 @@ public class OptimizerStats {
     return this;
   }
 
+  /**
+   * Record the methods that were modified. Passes that call this report a
+   * complete change set, see {@link #getModifiedMethods()}.
+   */
+  public OptimizerStats recordModifiedMethods(Collection<JMethod> methods) {
+    if (modifiedMethods == null) {
+      modifiedMethods = new IdentityHashSet<JMethod>();
+    }
+    modifiedMethods.addAll(methods);
+    return this;
+  }
+
   /**
    * Increment the number of times tree nodes were visited.
    */
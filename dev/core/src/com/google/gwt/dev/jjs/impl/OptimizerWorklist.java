@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JFieldRef;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JNode;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JVisitor;
+import com.google.gwt.dev.util.collect.IdentityHashMap;
+import com.google.gwt.dev.util.collect.IdentityHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes which methods the method-local optimizations (
+ * {@link MethodCallTightener} and {@link DeadCodeElimination}) must revisit
+ * after a set of methods was modified.
+ *
+ * A modified method can unlock optimizations in the methods that call it (for
+ * example, a constructor that became empty), and a modified initializer can
+ * unlock optimizations in the methods that read the fields of its type. The
+ * index is built once and stays valid as long as only method-local passes run;
+ * it must be rebuilt after any whole-program pass.
+ */
+public class OptimizerWorklist {
+
+  /**
+   * Records, for each method and type, the methods that depend on it.
+   */
+  private class DependencyVisitor extends JVisitor {
+    private JMethod currentMethod;
+
+    @Override
+    public void endVisit(JFieldRef x, Context ctx) {
+      if (currentMethod != null) {
+        addDependent(x.getField().getEnclosingType(), currentMethod);
+      }
+    }
+
+    @Override
+    public void endVisit(JMethod x, Context ctx) {
+      currentMethod = null;
+    }
+
+    @Override
+    public void endVisit(JMethodCall x, Context ctx) {
+      if (currentMethod != null) {
+        addDependent(x.getTarget(), currentMethod);
+      }
+    }
+
+    @Override
+    public boolean visit(JMethod x, Context ctx) {
+      currentMethod = x;
+      return true;
+    }
+  }
+
+  /**
+   * Builds the dependency index for <code>program</code>.
+   */
+  public static OptimizerWorklist build(JProgram program) {
+    OptimizerWorklist worklist = new OptimizerWorklist(program);
+    worklist.new DependencyVisitor().accept(program);
+    return worklist;
+  }
+
+  private final Map<JNode, Set<JMethod>> dependents = new IdentityHashMap<JNode, Set<JMethod>>();
+
+  /**
+   * All methods of the program, in program order, so that worklists are
+   * deterministic.
+   */
+  private final List<JMethod> methods;
+
+  private OptimizerWorklist(JProgram program) {
+    methods = ParallelMethodVisitor.getMethods(program);
+  }
+
+  /**
+   * Returns the modified methods plus all methods that depend on them, in
+   * program order.
+   */
+  public List<JMethod> expand(Collection<JMethod> modifiedMethods) {
+    Set<JMethod> toVisit = new IdentityHashSet<JMethod>();
+    for (JMethod method : modifiedMethods) {
+      toVisit.add(method);
+      addAll(toVisit, dependents.get(method));
+      addAll(toVisit, dependents.get(method.getEnclosingType()));
+    }
+    List<JMethod> result = new ArrayList<JMethod>();
+    for (JMethod method : methods) {
+      if (toVisit.contains(method)) {
+        result.add(method);
+      }
+    }
+    return result;
+  }
+
+  private void addAll(Set<JMethod> to, Set<JMethod> from) {
+    if (from != null) {
+      to.addAll(from);
+    }
+  }
+
+  private void addDependent(JNode node, JMethod dependent) {
+    if (node == null) {
+      return;
+    }
+    Set<JMethod> set = dependents.get(node);
+    if (set == null) {
+      set = new IdentityHashSet<JMethod>();
+      dependents.put(node, set);
+    }
+    set.add(dependent);
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.InternalCompilerException;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.util.log.speedtracer.CompilerMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a method-local {@link JModVisitor} over every method of a
+ * {@link JProgram}, spreading the methods across a shared pool of threads.
+ *
+ * A visitor run this way must only modify the body of the method it is
+ * visiting, and must only read global state (such as the type oracle) that was
+ * computed before the parallel phase started and is not modified during it.
+ * Each worker gets its own visitor instance, so visitors may keep per-method
+ * state in fields.
+ *
+ * Other independent compiler tasks can share the same pool through
+ * {@link #invokeAll(List)}.
+ */
+public class ParallelMethodVisitor {
+
+  /**
+   * Creates the visitors used by the worker threads.
+   */
+  public interface VisitorFactory {
+    /**
+     * Returns a new visitor; the result is never shared between threads.
+     */
+    JModVisitor create();
+  }
+
+  /**
+   * A Java system property that sets the number of threads used to run
+   * method-local optimizations. Values less than 2 disable parallel mode.
+   */
+  public static final String THREADS_PROPERTY = "gwt.jjs.optimizerThreads";
+
+  /**
+   * The number of chunks handed to each thread, to even out the uneven size of
+   * method bodies.
+   */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private static ExecutorService executor;
+
+  /**
+   * Visits every method in <code>program</code> with visitors created by
+   * <code>factory</code>, and returns the total number of modifications they
+   * made.
+   */
+  public static int exec(JProgram program, VisitorFactory factory) {
+    return exec(getMethods(program), factory, new ArrayList<JMethod>());
+  }
+
+  /**
+   * Visits <code>methods</code> with visitors created by <code>factory</code>,
+   * and returns the total number of modifications they made. Each method that
+   * was modified is added to <code>modifiedMethods</code>, in the order of
+   * <code>methods</code>.
+   */
+  public static int exec(List<JMethod> methods, final VisitorFactory factory,
+      Collection<JMethod> modifiedMethods) {
+    int numChunks = Math.min(methods.size(), getThreadCount() * CHUNKS_PER_THREAD);
+    if (numChunks <= 1) {
+      return visit(methods, factory, modifiedMethods);
+    }
+
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(numChunks);
+    List<List<JMethod>> chunkModifiedMethods = new ArrayList<List<JMethod>>(numChunks);
+    for (int i = 0; i < numChunks; ++i) {
+      int start = methods.size() * i / numChunks;
+      int end = methods.size() * (i + 1) / numChunks;
+      final List<JMethod> chunk = methods.subList(start, end);
+      final List<JMethod> chunkModified = new ArrayList<JMethod>();
+      chunkModifiedMethods.add(chunkModified);
+      tasks.add(new Callable<Integer>() {
+        public Integer call() {
+          return visit(chunk, factory, chunkModified);
+        }
+      });
+    }
+
+    int numMods = 0;
+    for (Integer chunkMods : invokeAll(tasks)) {
+      numMods += chunkMods;
+    }
+    for (List<JMethod> chunkModified : chunkModifiedMethods) {
+      modifiedMethods.addAll(chunkModified);
+    }
+    return numMods;
+  }
+
+  /**
+   * Returns the methods of all non-external types in <code>program</code>, in
+   * program order.
+   */
+  public static List<JMethod> getMethods(JProgram program) {
+    List<JMethod> methods = new ArrayList<JMethod>();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (!type.isExternal()) {
+        methods.addAll(type.getMethods());
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Runs <code>tasks</code> on the shared pool of threads and returns their
+   * results, in the order of <code>tasks</code>. If a task fails, the remaining
+   * tasks are cancelled and its exception is rethrown. The tasks' events are
+   * attributed to the calling thread's module and permutation.
+   */
+  public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+    ExecutorService pool = getExecutor();
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(pool.submit(CompilerMetrics.inheritAttribution(task)));
+    }
+
+    List<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new InternalCompilerException("Interrupted during parallel compilation");
+    } catch (ExecutionException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new InternalCompilerException("Unexpected error during parallel compilation", cause);
+    }
+    return results;
+  }
+
+  /**
+   * Returns the number of threads to use, as configured by
+   * {@link #THREADS_PROPERTY}.
+   */
+  public static int getThreadCount() {
+    return Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+  }
+
+  /**
+   * Returns <code>true</code> if method-local optimizations should be run in
+   * parallel.
+   */
+  public static boolean isEnabled() {
+    return getThreadCount() > 1;
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(getThreadCount(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ParallelMethodVisitor-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  private static int visit(List<JMethod> methods, VisitorFactory factory,
+      Collection<JMethod> modifiedMethods) {
+    JModVisitor visitor = factory.create();
+    for (JMethod method : methods) {
+      int numMods = visitor.getNumMods();
+      visitor.accept(method);
+      if (visitor.getNumMods() != numMods) {
+        modifiedMethods.add(method);
+      }
+    }
+    return visitor.getNumMods();
+  }
+
+  private ParallelMethodVisitor() {
+  }
+}
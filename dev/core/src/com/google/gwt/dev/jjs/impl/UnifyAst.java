@@ -63,6 +63,7 @@ import com.google.gwt.dev.jjs.ast.JStringLiteral;
 import com.google.gwt.dev.jjs.ast.JThisRef;
 import com.google.gwt.dev.jjs.ast.JType;
 import com.google.gwt.dev.jjs.ast.JVariable;
+import com.google.gwt.dev.jjs.ast.JVisitor;
 import com.google.gwt.dev.jjs.ast.js.JsniFieldRef;
 import com.google.gwt.dev.jjs.ast.js.JsniMethodBody;
 import com.google.gwt.dev.jjs.ast.js.JsniMethodRef;
@@ -492,7 +493,20 @@ public class UnifyAst {
   private TreeLogger logger;
   private Set<JMethod> magicMethodCalls = new IdentityHashSet<JMethod>();
   private final Map<String, JMethod> methodMap = new HashMap<String, JMethod>();
+
+  /**
+   * The number of methods at the head of {@link #todo} that have been scanned
+   * for upcoming rebind requests.
+   */
+  private int numScannedMethods = 0;
+
   private final JJSOptions options;
+
+  /**
+   * Whether the rebind oracle wants to know about upcoming rebind requests.
+   */
+  private boolean prefetchRebinds = true;
+
   private final JProgram program;
   private final RebindPermutationOracle rpo;
 
@@ -768,6 +782,32 @@ public class UnifyAst {
     branch.log(TreeLogger.ERROR, msgBuf.toString());
   }
 
+  /**
+   * Returns the types requested by the GWT.create() calls in
+   * <code>methods</code>, whose bodies have not been unified yet.
+   */
+  private Collection<String> findRebindRequests(Collection<JMethod> methods) {
+    final Set<String> requests = new LinkedHashSet<String>();
+    JVisitor finder = new JVisitor() {
+      @Override
+      public void endVisit(JMethodCall x, Context ctx) {
+        JMethod target = x.getTarget();
+        if (x.getArgs().size() != 1 || !(x.getArgs().get(0) instanceof JClassLiteral)) {
+          return;
+        }
+        String sig = target.getEnclosingType().getName() + '.' + target.getSignature();
+        JType type = ((JClassLiteral) x.getArgs().get(0)).getRefType();
+        if (GWT_CREATE.equals(sig) && type instanceof JDeclaredType) {
+          requests.add(JGwtCreate.nameOf(type));
+        }
+      }
+    };
+    for (JMethod method : methods) {
+      finder.accept(method);
+    }
+    return requests;
+  }
+
   private void flowInto(JField field) {
     if (field.isExternal()) {
       assert errorsFound;
@@ -890,7 +930,18 @@ public class UnifyAst {
   private void mainLoop() {
     UnifyVisitor visitor = new UnifyVisitor();
     while (!todo.isEmpty()) {
+      if (numScannedMethods == 0 && prefetchRebinds) {
+        /*
+         * Tell the rebind oracle about the GWT.create() calls in all the
+         * queued methods, so that it can answer them in one batch.
+         */
+        numScannedMethods = todo.size();
+        prefetchRebinds = rpo.prefetchRebindAnswers(logger, findRebindRequests(todo));
+      }
       visitor.accept(todo.poll());
+      if (numScannedMethods > 0) {
+        --numScannedMethods;
+      }
     }
   }
 
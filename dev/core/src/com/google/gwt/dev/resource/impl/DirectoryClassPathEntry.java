@@ -21,36 +21,93 @@ import com.google.gwt.dev.util.msg.Message1String;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * A {@link ClassPathEntry} for a directory on the file system.
+ * 
+ * <p>
+ * If the <code>gwt.resource.incrementalScan</code> system property is set, the
+ * entry keeps an in-memory index of the directories it has scanned. A
+ * directory whose modification time has not changed since it was last listed
+ * is not listed again, and the same {@link FileResource} instances are
+ * returned for files that are still present, so a refresh only pays for the
+ * parts of the tree that actually changed.
+ * </p>
  */
 public class DirectoryClassPathEntry extends ClassPathEntry {
 
+  /**
+   * The cached contents of one directory.
+   */
+  private static class DirectoryIndex {
+    final File[] childDirs;
+    final File[] childFiles;
+    final long lastModified;
+    final Map<String, FileResource> resources = new HashMap<String, FileResource>();
+    final Map<String, DirectoryIndex> subdirs = new HashMap<String, DirectoryIndex>();
+
+    DirectoryIndex(File[] childDirs, File[] childFiles, long lastModified) {
+      this.childDirs = childDirs;
+      this.childFiles = childFiles;
+      this.lastModified = lastModified;
+    }
+  }
+
   private static class Messages {
     static final Message1String DESCENDING_INTO_DIR = new Message1String(
         TreeLogger.SPAM, "Descending into dir: $0");
 
     static final Message1String INCLUDING_FILE = new Message1String(
         TreeLogger.DEBUG, "Including file: $0");
+
+    static final Message1String RELISTING_DIR = new Message1String(
+        TreeLogger.SPAM, "Listing changed dir: $0");
   }
 
+  private static final boolean INCREMENTAL_SCAN =
+      Boolean.getBoolean("gwt.resource.incrementalScan");
+
+  /**
+   * Directory timestamps are only trusted once they are this much older than
+   * the listing they describe, so that a change made within the file system's
+   * timestamp granularity of a listing is not missed.
+   */
+  private static final long TIMESTAMP_GRANULARITY = 2000;
+
   /**
    * Absolute directory.
    */
   private final File dir;
 
+  /**
+   * The index of {@link #dir}, or <code>null</code> if it has not been scanned
+   * or incremental scanning is disabled. Guarded by <code>this</code>.
+   */
+  private DirectoryIndex index;
+
+  private final boolean incremental;
+
   private final String location;
 
   /**
    * @param dir an absolute directory
    */
   public DirectoryClassPathEntry(File dir) {
+    this(dir, INCREMENTAL_SCAN);
+  }
+
+  /**
+   * @param dir an absolute directory
+   * @param incremental whether to index the directory between scans
+   */
+  DirectoryClassPathEntry(File dir, boolean incremental) {
     assert (dir.isAbsolute());
     this.dir = dir;
+    this.incremental = incremental;
     this.location = dir.toURI().toString();
   }
 
@@ -62,7 +119,7 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
     for (int i = 0, c = pathPrefixSets.size(); i < c; ++i) {
       results.add(new IdentityHashMap<AbstractResource, PathPrefix>());
     }
-    descendToFindResources(logger, pathPrefixSets, results, dir, "");
+    findResources(logger, pathPrefixSets, results);
     return results;
   }
 
@@ -70,8 +127,7 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
   public Map<AbstractResource, PathPrefix> findApplicableResources(
       TreeLogger logger, PathPrefixSet pathPrefixSet) {
     Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
-    descendToFindResources(logger, Lists.create(pathPrefixSet),
-        Lists.create(results), dir, "");
+    findResources(logger, Lists.create(pathPrefixSet), Lists.create(results));
     return results;
   }
 
@@ -80,6 +136,66 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
     return location;
   }
 
+  private void findResources(TreeLogger logger, List<PathPrefixSet> pathPrefixSets,
+      List<Map<AbstractResource, PathPrefix>> results) {
+    if (incremental) {
+      synchronized (this) {
+        index = descendIndexToFindResources(logger, pathPrefixSets, results, index, dir, "");
+      }
+    } else {
+      descendToFindResources(logger, pathPrefixSets, results, dir, "");
+    }
+  }
+
+  /**
+   * Like {@link #descendToFindResources}, but reuses the listing and resources
+   * in <code>index</code> if <code>dir</code> has not changed since it was
+   * indexed.
+   * 
+   * @return the up-to-date index of <code>dir</code>
+   */
+  private DirectoryIndex descendIndexToFindResources(TreeLogger logger,
+      List<PathPrefixSet> pathPrefixSets, List<Map<AbstractResource, PathPrefix>> results,
+      DirectoryIndex index, File dir, String dirPath) {
+    long lastModified = dir.lastModified();
+    if (index == null || lastModified == 0 || lastModified != index.lastModified
+        || lastModified + TIMESTAMP_GRANULARITY > System.currentTimeMillis()) {
+      Messages.RELISTING_DIR.log(logger, dir.getPath(), null);
+      index = listDirectory(dir, lastModified, index);
+    }
+    int len = pathPrefixSets.size();
+
+    for (File child : index.childDirs) {
+      String childDirPath = dirPath + child.getName() + "/";
+      for (int i = 0; i < len; ++i) {
+        if (pathPrefixSets.get(i).includesDirectory(childDirPath)) {
+          Messages.DESCENDING_INTO_DIR.log(logger, child.getPath(), null);
+          DirectoryIndex childIndex = index.subdirs.get(child.getName());
+          index.subdirs.put(child.getName(), descendIndexToFindResources(logger, pathPrefixSets,
+              results, childIndex, child, childDirPath));
+          break;
+        }
+      }
+    }
+
+    for (File child : index.childFiles) {
+      String childPath = dirPath + child.getName();
+      for (int i = 0; i < len; ++i) {
+        PathPrefix prefix = null;
+        if ((prefix = pathPrefixSets.get(i).includesResource(childPath)) != null) {
+          Messages.INCLUDING_FILE.log(logger, childPath, null);
+          FileResource r = index.resources.get(child.getName());
+          if (r == null) {
+            r = new FileResource(this, childPath, child);
+            index.resources.put(child.getName(), r);
+          }
+          results.get(i).put(r, prefix);
+        }
+      }
+    }
+    return index;
+  }
+
   /**
    * @param logger logs progress
    * @param pathPrefixSets the sets of path prefixes to determine what resources
@@ -123,4 +239,40 @@ public class DirectoryClassPathEntry extends ClassPathEntry {
       }
     }
   }
+
+  /**
+   * Lists a directory, carrying over the resources and subdirectory indices of
+   * its previous index for the children that are still present.
+   */
+  private DirectoryIndex listDirectory(File dir, long lastModified, DirectoryIndex previous) {
+    List<File> childDirs = new ArrayList<File>();
+    List<File> childFiles = new ArrayList<File>();
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          childDirs.add(child);
+        } else if (child.isFile()) {
+          childFiles.add(child);
+        }
+      }
+    }
+    DirectoryIndex listing = new DirectoryIndex(childDirs.toArray(new File[childDirs.size()]),
+        childFiles.toArray(new File[childFiles.size()]), lastModified);
+    if (previous != null) {
+      for (File child : listing.childDirs) {
+        DirectoryIndex subdir = previous.subdirs.get(child.getName());
+        if (subdir != null) {
+          listing.subdirs.put(child.getName(), subdir);
+        }
+      }
+      for (File child : listing.childFiles) {
+        FileResource resource = previous.resources.get(child.getName());
+        if (resource != null) {
+          listing.resources.put(child.getName(), resource);
+        }
+      }
+    }
+    return listing;
+  }
 }
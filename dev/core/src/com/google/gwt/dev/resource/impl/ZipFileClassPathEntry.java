@@ -28,7 +28,9 @@ import org.apache.commons.collections.map.ReferenceMap;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
@@ -36,6 +38,12 @@ import java.util.zip.ZipFile;
 
 /**
  * A classpath entry that is a jar or zip file.
+ * 
+ * <p>
+ * If a {@link ZipFileIndexCache} is configured, the entry names are read from
+ * its up-to-date index when there is one, and the archive itself is only
+ * opened when a resource's contents are read.
+ * </p>
  */
 public class ZipFileClassPathEntry extends ClassPathEntry {
 
@@ -95,6 +103,11 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
 
   private Set<ZipFileResource> allZipFileResources;
 
+  /**
+   * The entry names read from the index cache, until the index is built.
+   */
+  private String[] cachedEntryNames;
+
   /**
    * The lifetime of the {@link PathPrefixSet} pins the life time of the associated
    * {@link ZipFileSnapshot}; this is because the {@link PathPrefixSet} is referenced from module,
@@ -105,15 +118,30 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
   private final Map<PathPrefixSet, ZipFileSnapshot> cachedSnapshots = new ReferenceIdentityMap(
       AbstractReferenceMap.WEAK, AbstractReferenceMap.HARD, true);
 
+  private final File file;
+  private final ZipFileIndexCache indexCache = ZipFileIndexCache.get();
   private final long lastModified;
+  private final long length;
   private final String location;
-  private final ZipFile zipFile;
+
+  /**
+   * Opened on demand if the entry names were read from the index cache.
+   */
+  private ZipFile zipFile;
 
   private ZipFileClassPathEntry(File zipFile) throws IOException {
     assert zipFile.isAbsolute();
+    this.file = zipFile;
     this.lastModified = zipFile.lastModified();
-    this.zipFile = new ZipFile(zipFile);
+    this.length = zipFile.length();
     this.location = zipFile.toURI().toString();
+    if (indexCache != null) {
+      cachedEntryNames = indexCache.read(TreeLogger.NULL, zipFile);
+    }
+    if (cachedEntryNames == null) {
+      // Fails early if the file is not an archive
+      this.zipFile = new ZipFile(zipFile);
+    }
   }
 
   /**
@@ -137,7 +165,10 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
     return location;
   }
 
-  public ZipFile getZipFile() {
+  public synchronized ZipFile getZipFile() throws IOException {
+    if (zipFile == null) {
+      zipFile = new ZipFile(file);
+    }
     return zipFile;
   }
 
@@ -153,9 +184,19 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
   }
 
   private Set<ZipFileResource> buildIndex(TreeLogger logger) {
-    logger = Messages.BUILDING_INDEX.branch(logger, zipFile.getName(), null);
+    logger = Messages.BUILDING_INDEX.branch(logger, file.getPath(), null);
 
     Set<ZipFileResource> results = new IdentityHashSet<ZipFileResource>();
+    if (cachedEntryNames != null) {
+      for (String name : cachedEntryNames) {
+        results.add(new ZipFileResource(this, name));
+        Messages.READ_ZIP_ENTRY.log(logger, name, null);
+      }
+      cachedEntryNames = null;
+      return Sets.normalize(results);
+    }
+
+    List<String> names = new ArrayList<String>();
     Enumeration<? extends ZipEntry> e = zipFile.entries();
     while (e.hasMoreElements()) {
       ZipEntry zipEntry = e.nextElement();
@@ -170,15 +211,19 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
       ZipFileResource zipResource = new ZipFileResource(this,
           zipEntry.getName());
       results.add(zipResource);
+      names.add(zipEntry.getName());
       Messages.READ_ZIP_ENTRY.log(logger, zipEntry.getName(), null);
     }
+    if (indexCache != null) {
+      indexCache.write(logger, file, length, lastModified, names);
+    }
     return Sets.normalize(results);
   }
 
   private Map<AbstractResource, PathPrefix> computeApplicableResources(
       TreeLogger logger, PathPrefixSet pathPrefixSet) {
     logger = Messages.FINDING_INCLUDED_RESOURCES.branch(logger,
-        zipFile.getName(), null);
+        file.getPath(), null);
 
     Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
     for (ZipFileResource r : allZipFileResources) {
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * An on-disk cache of the entry names of jar and zip files, shared by every
+ * process that uses the same cache directory. Reading a cached index avoids
+ * opening and enumerating the archive, which for the large GWT jars is a
+ * noticeable part of the startup of each compiler and worker process.
+ * 
+ * <p>
+ * Each archive has its own index file, keyed by the archive's absolute path,
+ * which records the size and modification time of the archive it was built
+ * from; an index that doesn't match the archive is ignored and rewritten.
+ * Index files are memory-mapped for reading.
+ * </p>
+ * 
+ * The cache is only used when the {@value #CACHE_DIR_PROPERTY} system property
+ * names a directory.
+ */
+class ZipFileIndexCache {
+
+  /**
+   * A Java system property that names the cache directory.
+   */
+  static final String CACHE_DIR_PROPERTY = "gwt.jarIndexCacheDir";
+
+  private static final String INDEX_FILE_SUFFIX = ".jarindex";
+
+  /**
+   * Identifies the index file format; change it when the format changes.
+   */
+  private static final int MAGIC = 0x67777431;
+
+  /**
+   * Returns the cache in the directory named by {@value #CACHE_DIR_PROPERTY},
+   * or <code>null</code> if the property is not set.
+   */
+  static ZipFileIndexCache get() {
+    String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+    return cacheDir == null ? null : new ZipFileIndexCache(new File(cacheDir));
+  }
+
+  private final File cacheDir;
+
+  ZipFileIndexCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Returns the cached entry names of an archive, or <code>null</code> if
+   * there is no up-to-date index for it.
+   */
+  String[] read(TreeLogger logger, File zipFile) {
+    File indexFile = getIndexFile(zipFile);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    FileInputStream stream = null;
+    try {
+      stream = new FileInputStream(indexFile);
+      FileChannel channel = stream.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || !zipFile.getAbsolutePath().equals(getString(buffer))
+          || buffer.getLong() != zipFile.length() || buffer.getLong() != zipFile.lastModified()) {
+        return null;
+      }
+      String[] names = new String[buffer.getInt()];
+      for (int i = 0; i < names.length; ++i) {
+        names[i] = getString(buffer);
+      }
+      return names;
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Ignoring unreadable jar index " + indexFile.getAbsolutePath(),
+          e);
+    } catch (RuntimeException e) {
+      // A truncated or otherwise corrupt index
+      logger.log(TreeLogger.TRACE, "Ignoring corrupt jar index " + indexFile.getAbsolutePath(), e);
+    } finally {
+      Utility.close(stream);
+    }
+    return null;
+  }
+
+  /**
+   * Writes the index of an archive. Failures are logged and otherwise ignored.
+   * 
+   * @param lastModified the modification time of the archive when its entries
+   *          were read
+   * @param length the size of the archive when its entries were read
+   */
+  void write(TreeLogger logger, File zipFile, long length, long lastModified,
+      List<String> names) {
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      logger.log(TreeLogger.TRACE, "Unable to create jar index directory "
+          + cacheDir.getAbsolutePath());
+      return;
+    }
+    File indexFile = getIndexFile(zipFile);
+
+    /*
+     * Write to a temporary file first, so that other processes never read a
+     * partially written index.
+     */
+    File tempFile = null;
+    DataOutputStream stream = null;
+    try {
+      tempFile = File.createTempFile(indexFile.getName(), ".tmp", cacheDir);
+      stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      stream.writeInt(MAGIC);
+      putString(stream, zipFile.getAbsolutePath());
+      stream.writeLong(length);
+      stream.writeLong(lastModified);
+      stream.writeInt(names.size());
+      for (String name : names) {
+        putString(stream, name);
+      }
+      stream.close();
+      stream = null;
+      indexFile.delete();
+      if (!tempFile.renameTo(indexFile)) {
+        logger.log(TreeLogger.TRACE, "Unable to create jar index " + indexFile.getAbsolutePath());
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.TRACE, "Unable to write jar index " + indexFile.getAbsolutePath(), e);
+    } finally {
+      Utility.close(stream);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private File getIndexFile(File zipFile) {
+    String key = Util.computeStrongName(Util.getBytes(zipFile.getAbsolutePath()));
+    return new File(cacheDir, key + INDEX_FILE_SUFFIX);
+  }
+
+  /**
+   * Reads a string written by {@link #putString}. Unlike
+   * {@link java.io.DataInput#readUTF()}, the length is not limited to 64k.
+   */
+  private String getString(MappedByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return Util.toString(bytes);
+  }
+
+  private void putString(DataOutputStream stream, String string) throws IOException {
+    byte[] bytes = Util.getBytes(string);
+    stream.writeInt(bytes.length);
+    stream.write(bytes);
+  }
+}
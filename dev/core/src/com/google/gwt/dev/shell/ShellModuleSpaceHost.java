@@ -138,12 +138,18 @@ public class ShellModuleSpaceHost implements ModuleSpaceHost {
       throws UnableToCompleteException {
     synchronized (rebindLock) {
       checkForModuleSpace();
-      return rebindOracle.rebind(logger, sourceTypeName, new ArtifactAcceptor() {
-        public void accept(TreeLogger logger, ArtifactSet newlyGeneratedArtifacts)
-        throws UnableToCompleteException {
-          artifactAcceptor.accept(logger, newlyGeneratedArtifacts);
-        }
-      });
+      String resultTypeName = rebindOracle.rebind(logger, sourceTypeName,
+          new ArtifactAcceptor() {
+            public void accept(TreeLogger logger, ArtifactSet newlyGeneratedArtifacts)
+                throws UnableToCompleteException {
+              artifactAcceptor.accept(logger, newlyGeneratedArtifacts);
+            }
+          });
+      if (rebindCache != null) {
+        // The generated units have been compiled by now
+        rebindCache.save(logger, compilationState);
+      }
+      return resultTypeName;
     }
   }
 
@@ -109,6 +109,17 @@ public class StandardRebindOracle implements RebindOracle {
         return null;
       }
 
+      /*
+       * Rules record the cost of their last evaluation, so concurrent rebinds
+       * must take turns to evaluate them.
+       */
+      synchronized (rules) {
+        return getRebindRuleLocked(logger, typeName);
+      }
+    }
+
+    private Rule getRebindRuleLocked(TreeLogger logger, String typeName)
+        throws UnableToCompleteException {
       Rule minCostRuleSoFar = null;
 
       for (Iterator<Rule> iter = rules.iterator(); iter.hasNext();) {
@@ -252,6 +263,16 @@ public class StandardRebindOracle implements RebindOracle {
     this.genCtx = genCtx;
   }
 
+  /**
+   * Returns the rule that would be used to rebind a type, or <code>null</code>
+   * if the type would be rebound to itself. This does not run any generator.
+   */
+  public Rule findRebindRule(TreeLogger logger, String typeName)
+      throws UnableToCompleteException {
+    genCtx.setPropertyOracle(propOracle);
+    return new Rebinder().getRebindRule(logger, typeName);
+  }
+
   /**
    * Invalidates the given source type name, so the next rebind request will
    * generate the type again.
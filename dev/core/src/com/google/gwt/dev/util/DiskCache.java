@@ -49,22 +49,31 @@ public class DiskCache {
   private static class Shutdown implements Runnable {
     @Override
     public void run() {
-      for (WeakReference<DiskCache> ref : shutdownList) {
-        try {
-          DiskCache diskCache = ref.get();
-          if (diskCache != null) {
-            diskCache.close();
+      synchronized (DiskCache.class) {
+        for (WeakReference<DiskCache> ref : shutdownList) {
+          try {
+            DiskCache diskCache = ref.get();
+            if (diskCache != null) {
+              diskCache.close();
+            }
+          } catch (Throwable e) {
           }
-        } catch (Throwable e) {
         }
       }
     }
   }
 
+  /**
+   * A Java system property that, when true, makes {@link #INSTANCE} a
+   * {@link SegmentedDiskCache}, whose readers never block each other.
+   */
+  public static final String SEGMENTED_PROPERTY = "gwt.diskcache.segmented";
+
   /**
    * A global shared Disk cache.
    */
-  public static DiskCache INSTANCE = new DiskCache();
+  public static DiskCache INSTANCE = Boolean.getBoolean(SEGMENTED_PROPERTY)
+      ? new SegmentedDiskCache() : new DiskCache();
 
   private static List<WeakReference<DiskCache>> shutdownList;
 
@@ -72,16 +81,28 @@ public class DiskCache {
   private RandomAccessFile file;
 
   DiskCache() {
+    this(true);
+  }
+
+  /**
+   * Subclasses that manage their own storage pass <code>false</code> so that
+   * no backing file is created for them.
+   */
+  DiskCache(boolean createBackingFile) {
     try {
-      File temp = File.createTempFile("gwt", "byte-cache");
-      temp.deleteOnExit();
-      file = new RandomAccessFile(temp, "rw");
-      file.setLength(0);
-      if (shutdownList == null) {
-        shutdownList = new ArrayList<WeakReference<DiskCache>>();
-        Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown()));
+      if (createBackingFile) {
+        File temp = File.createTempFile("gwt", "byte-cache");
+        temp.deleteOnExit();
+        file = new RandomAccessFile(temp, "rw");
+        file.setLength(0);
+      }
+      synchronized (DiskCache.class) {
+        if (shutdownList == null) {
+          shutdownList = new ArrayList<WeakReference<DiskCache>>();
+          Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown()));
+        }
+        shutdownList.add(new WeakReference<DiskCache>(this));
       }
-      shutdownList.add(new WeakReference<DiskCache>(this));
     } catch (IOException e) {
       throw new RuntimeException("Unable to initialize byte cache", e);
     }
@@ -249,7 +270,10 @@ public class DiskCache {
     close();
   }
 
-  private void close() throws Throwable {
+  /**
+   * Releases the backing storage; called at shutdown.
+   */
+  void close() throws Throwable {
     if (file != null) {
       file.setLength(0);
       file.close();
@@ -52,6 +52,16 @@ public abstract class OutputFileSet {
     return pathDescription;
   }
 
+  /**
+   * Whether the streams returned by {@link #openForWrite(String, long)} may be
+   * written and closed by other threads than the one that opened them, while
+   * more streams are opened. Streams must still be opened by one thread at a
+   * time.
+   */
+  public boolean supportsConcurrentWrites() {
+    return false;
+  }
+
   public final OutputStream openForWrite(String path) throws IOException {
     int lastModifiedTime = -1;
     return openForWrite(path, lastModifiedTime);
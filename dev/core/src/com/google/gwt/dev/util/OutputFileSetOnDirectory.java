@@ -42,6 +42,11 @@ public class OutputFileSetOnDirectory extends OutputFileSet {
   public void close() {
   }
 
+  @Override
+  public boolean supportsConcurrentWrites() {
+    return true;
+  }
+
   @Override
   protected OutputStream createNewOutputStream(String path,
       final long lastModifiedTime) throws IOException {
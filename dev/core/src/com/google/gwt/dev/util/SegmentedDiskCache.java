@@ -0,0 +1,213 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A {@link DiskCache} that appends to a series of memory-mapped segment files.
+ *
+ * Readers never block each other or writers: each read works on its own view of
+ * an immutable, already written region. Writers only synchronize long enough to
+ * reserve space for their record, and then copy the bytes in concurrently.
+ * Tokens encode the segment index in their upper 32 bits and the offset within
+ * the segment in the lower 32 bits.
+ *
+ * Like {@link DiskCache}, the segments are never compacted; they are deleted
+ * when the cache is closed at shutdown.
+ */
+public class SegmentedDiskCache extends DiskCache {
+
+  /**
+   * An append-only, memory-mapped file.
+   */
+  private static class Segment {
+    private final MappedByteBuffer buffer;
+    private final File file;
+    private final RandomAccessFile raf;
+
+    /**
+     * Number of bytes reserved so far; guarded by the cache's allocation lock.
+     */
+    private int used;
+
+    public Segment(int size) throws IOException {
+      file = File.createTempFile("gwt", "byte-cache-segment");
+      file.deleteOnExit();
+      raf = new RandomAccessFile(file, "rw");
+      buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+    }
+
+    public void close() throws IOException {
+      raf.close();
+      file.delete();
+    }
+
+    public int remaining() {
+      return buffer.capacity() - used;
+    }
+  }
+
+  /**
+   * The size of a regular segment. Records larger than this get a segment of
+   * their own.
+   */
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Every record starts with its length.
+   */
+  private static final int HEADER_SIZE = 4;
+
+  private final Object allocationLock = new Object();
+
+  private final int segmentSize;
+
+  /**
+   * Replaced, never modified, whenever a segment is added.
+   */
+  private volatile Segment[] segments = new Segment[0];
+
+  public SegmentedDiskCache() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  SegmentedDiskCache(int segmentSize) {
+    super(false);
+    this.segmentSize = segmentSize;
+  }
+
+  @Override
+  public byte[] readByteArray(long token) {
+    ByteBuffer view = view(token);
+    byte[] result = new byte[view.getInt()];
+    view.get(result);
+    return result;
+  }
+
+  /**
+   * Write the rest of the data in an input stream to disk. Note: this method
+   * does not close the InputStream. The data is buffered in memory first,
+   * because space for a record must be reserved before it is written.
+   *
+   * @param in open stream containing the data to write to the disk cache.
+   *
+   * @return a token to retrieve the data later
+   */
+  @Override
+  public long transferFromStream(InputStream in) {
+    assert in != null;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = Util.takeThreadLocalBuf();
+    try {
+      int bytesRead;
+      while ((bytesRead = in.read(buf)) != -1) {
+        out.write(buf, 0, bytesRead);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read from byte cache", e);
+    } finally {
+      Util.releaseThreadLocalBuf(buf);
+    }
+    return writeByteArray(out.toByteArray());
+  }
+
+  @Override
+  public void transferToStream(long token, OutputStream out) {
+    ByteBuffer view = view(token);
+    int length = view.getInt();
+    byte[] buf = Util.takeThreadLocalBuf();
+    try {
+      while (length > 0) {
+        int chunk = Math.min(length, buf.length);
+        view.get(buf, 0, chunk);
+        out.write(buf, 0, chunk);
+        length -= chunk;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read from byte cache", e);
+    } finally {
+      Util.releaseThreadLocalBuf(buf);
+    }
+  }
+
+  @Override
+  public long writeByteArray(byte[] bytes) {
+    long token = allocate(HEADER_SIZE + bytes.length);
+    ByteBuffer view = view(token);
+    view.putInt(bytes.length);
+    view.put(bytes);
+    return token;
+  }
+
+  @Override
+  void close() throws Throwable {
+    synchronized (allocationLock) {
+      for (Segment segment : segments) {
+        segment.close();
+      }
+      segments = new Segment[0];
+    }
+  }
+
+  /**
+   * Reserves <code>recordSize</code> contiguous bytes and returns the token of
+   * the reserved region.
+   */
+  private long allocate(int recordSize) {
+    synchronized (allocationLock) {
+      Segment[] current = segments;
+      int index = current.length - 1;
+      if (index < 0 || current[index].remaining() < recordSize) {
+        Segment segment;
+        try {
+          segment = new Segment(Math.max(segmentSize, recordSize));
+        } catch (IOException e) {
+          throw new RuntimeException("Unable to write to byte cache", e);
+        }
+        Segment[] grown = new Segment[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = segment;
+        segments = grown;
+        index = current.length;
+        current = grown;
+      }
+      Segment segment = current[index];
+      int offset = segment.used;
+      segment.used += recordSize;
+      return ((long) index << 32) | offset;
+    }
+  }
+
+  /**
+   * Returns a buffer positioned at the start of the record for
+   * <code>token</code>, private to the caller.
+   */
+  private ByteBuffer view(long token) {
+    Segment segment = segments[(int) (token >>> 32)];
+    ByteBuffer view = segment.buffer.duplicate();
+    view.position((int) token);
+    return view;
+  }
+}
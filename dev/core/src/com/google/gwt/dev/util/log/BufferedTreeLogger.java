@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the messages and branches logged to it, so that they can be replayed
+ * into another logger later. This lets a task that runs on another thread, or
+ * whose work may be thrown away, log without interleaving its messages with
+ * those of other tasks. Instances are not thread-safe.
+ */
+public final class BufferedTreeLogger extends TreeLogger {
+
+  private static final class Message {
+    final BufferedTreeLogger branch;
+    final Throwable caught;
+    final HelpInfo helpInfo;
+    final String msg;
+    final Type type;
+
+    Message(Type type, String msg, Throwable caught, HelpInfo helpInfo,
+        BufferedTreeLogger branch) {
+      this.type = type;
+      this.msg = msg;
+      this.caught = caught;
+      this.helpInfo = helpInfo;
+      this.branch = branch;
+    }
+  }
+
+  private final List<Message> messages = new ArrayList<Message>();
+
+  private final TreeLogger model;
+
+  /**
+   * Creates a logger that records the messages that <code>model</code> would
+   * log. <code>model</code> itself is only asked which levels are loggable.
+   */
+  public BufferedTreeLogger(TreeLogger model) {
+    this.model = model;
+  }
+
+  @Override
+  public TreeLogger branch(Type type, String msg, Throwable caught, HelpInfo helpInfo) {
+    /*
+     * Always record branches, since their children may be loggable even if
+     * they are not.
+     */
+    BufferedTreeLogger branch = new BufferedTreeLogger(model);
+    messages.add(new Message(type, msg, caught, helpInfo, branch));
+    return branch;
+  }
+
+  @Override
+  public boolean isLoggable(Type type) {
+    return model.isLoggable(type);
+  }
+
+  @Override
+  public void log(Type type, String msg, Throwable caught, HelpInfo helpInfo) {
+    if (isLoggable(type)) {
+      messages.add(new Message(type, msg, caught, helpInfo, null));
+    }
+  }
+
+  /**
+   * Logs the recorded messages and branches into <code>logger</code>, in the
+   * order in which they were recorded.
+   */
+  public void replay(TreeLogger logger) {
+    for (Message message : messages) {
+      if (message.branch == null) {
+        logger.log(message.type, message.msg, message.caught, message.helpInfo);
+      } else {
+        message.branch.replay(logger.branch(message.type, message.msg, message.caught,
+            message.helpInfo));
+      }
+    }
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log.speedtracer;
+
+import com.google.gwt.dev.json.JsonObject;
+import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.EventType;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Aggregates machine-readable performance metrics for every
+ * {@link SpeedTracerLogger} event type, keyed by module and permutation, so
+ * that compile times can be tracked across builds.
+ *
+ * For each event type this records the number of events, their total wall
+ * time, thread CPU time and allocated bytes, and the process heap high-water
+ * mark. The latter is the peak heap usage of the whole VM since it started, as
+ * seen at the end of the latest event; it is not the event's own peak, since
+ * events on different threads overlap and share the heap. Nested events are included in the
+ * totals of their enclosing events, as in the SpeedTracer output. Allocated
+ * bytes are only available on VMs that support per-thread allocation counters;
+ * metrics that cannot be measured are reported as -1.
+ *
+ * <p>
+ * Enable collection by setting the system property {@code gwt.compilermetrics}
+ * to the output file path; the metrics are written when the VM exits, as JSON
+ * objects, one per line, or as CSV if {@code gwt.compilermetricsformat} is
+ * {@code csv}. An empty path collects metrics without writing them, which is
+ * useful in DevMode, where they are exposed through JMX as
+ * {@value #MBEAN_NAME}.
+ * </p>
+ */
+public final class CompilerMetrics implements CompilerMetricsMBean {
+
+  /**
+   * The measurements taken at the start of an event.
+   */
+  static final class Sample {
+    private final long allocatedBytes;
+    private final long cpuNanos;
+    private final long wallNanos;
+
+    private Sample(long wallNanos, long cpuNanos, long allocatedBytes) {
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+
+  /**
+   * The totals for one event type in one module and permutation.
+   */
+  private static final class Row {
+    private long allocatedBytes;
+    private int count;
+    private long cpuNanos;
+    private long processHeapHighWaterBytes;
+    private final String module;
+    private final int permutation;
+    private final String phase;
+    private long wallNanos;
+
+    public Row(String module, int permutation, String phase) {
+      this.module = module;
+      this.permutation = permutation;
+      this.phase = phase;
+    }
+  }
+
+  /**
+   * The name under which the metrics are registered with the platform MBean
+   * server.
+   */
+  public static final String MBEAN_NAME = "com.google.gwt.dev:type=CompilerMetrics";
+
+  private static final Logger log = Logger.getLogger(CompilerMetrics.class.getName());
+
+  private static final String metricsFile = System.getProperty("gwt.compilermetrics");
+
+  private static final boolean csvFormat =
+      "csv".equalsIgnoreCase(System.getProperty("gwt.compilermetricsformat"));
+
+  private static final CompilerMetrics instance =
+      (metricsFile == null) ? null : new CompilerMetrics(metricsFile);
+
+  /**
+   * The module being compiled by the current thread and the threads it starts.
+   */
+  private static final InheritableThreadLocal<String> currentModule =
+      new InheritableThreadLocal<String>();
+
+  /**
+   * The id of the permutation being compiled by the current thread.
+   */
+  private static final ThreadLocal<Integer> currentPermutation = new ThreadLocal<Integer>();
+
+  /**
+   * Returns the metrics collector, or <code>null</code> if metrics are not
+   * being collected.
+   */
+  public static CompilerMetrics get() {
+    return instance;
+  }
+
+  /**
+   * Returns <code>true</code> if metrics are being collected.
+   */
+  public static boolean isEnabled() {
+    return instance != null;
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server, if they are being
+   * collected.
+   */
+  public static void registerMBean() {
+    if (instance == null) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(MBEAN_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(instance, name);
+      }
+    } catch (Exception e) {
+      log.log(Level.WARNING, "Unable to register " + MBEAN_NAME, e);
+    }
+  }
+
+  /**
+   * Returns a task that runs <code>task</code> with the module and permutation
+   * of the calling thread. Use it for tasks run on pooled threads, which
+   * otherwise keep the module they inherited when the pool was created and
+   * have no permutation.
+   */
+  public static <T> Callable<T> inheritAttribution(final Callable<T> task) {
+    final String module = currentModule.get();
+    final Integer permutation = currentPermutation.get();
+    return new Callable<T>() {
+      public T call() throws Exception {
+        String oldModule = currentModule.get();
+        Integer oldPermutation = currentPermutation.get();
+        currentModule.set(module);
+        currentPermutation.set(permutation);
+        try {
+          return task.call();
+        } finally {
+          currentModule.set(oldModule);
+          currentPermutation.set(oldPermutation);
+        }
+      }
+    };
+  }
+
+  /**
+   * Attributes the events of the current thread, and of the threads it starts
+   * from now on, to <code>moduleName</code>.
+   */
+  public static void setModule(String moduleName) {
+    currentModule.set(moduleName);
+  }
+
+  /**
+   * Attributes the events of the current thread to the permutation with the
+   * given id, or to no permutation if <code>permutationId</code> is negative.
+   */
+  public static void setPermutation(int permutationId) {
+    currentPermutation.set(permutationId < 0 ? null : permutationId);
+  }
+
+  private final Method getThreadAllocatedBytesMethod;
+
+  private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+
+  private final Map<String, Row> rows = new LinkedHashMap<String, Row>();
+
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  /**
+   * Constructor intended for unit testing.
+   */
+  CompilerMetrics() {
+    /*
+     * Per-thread allocation counters are part of the Sun extension of
+     * ThreadMXBean, which we can't assume is available, so find the method by
+     * reflection.
+     */
+    Method method = null;
+    try {
+      Class<?> sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+      if (sunThreadMXBean.isInstance(threadMXBean)) {
+        method = sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+        method.invoke(threadMXBean, Thread.currentThread().getId());
+      }
+    } catch (Exception e) {
+      method = null;
+    }
+    getThreadAllocatedBytesMethod = method;
+
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        heapPools.add(pool);
+      }
+    }
+  }
+
+  private CompilerMetrics(final String fileName) {
+    this();
+    if (fileName.length() > 0) {
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          writeToFile(fileName);
+        }
+      });
+    }
+  }
+
+  public String getMetricsAsCsv() {
+    StringWriter writer = new StringWriter();
+    try {
+      writeCsv(writer);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected IOException on in-memory stream", e);
+    }
+    return writer.toString();
+  }
+
+  public String getMetricsAsJson() {
+    StringWriter writer = new StringWriter();
+    try {
+      writeJson(writer);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected IOException on in-memory stream", e);
+    }
+    return writer.toString();
+  }
+
+  public synchronized void reset() {
+    rows.clear();
+  }
+
+  /**
+   * Records an event of the given type that started at <code>start</code> and
+   * ends now. Events of a DevMode session are attributed to the session's
+   * module.
+   */
+  void record(EventType type, Sample start, String sessionModule) {
+    Sample end = sample();
+    String module = (sessionModule != null) ? sessionModule : currentModule.get();
+    Integer permutation = currentPermutation.get();
+    long processHeapHighWaterBytes = getProcessHeapHighWaterBytes();
+    recordImpl(module == null ? "" : module, permutation == null ? -1 : permutation,
+        type.getName(), end.wallNanos - start.wallNanos, difference(end.cpuNanos,
+            start.cpuNanos), difference(end.allocatedBytes, start.allocatedBytes),
+        processHeapHighWaterBytes);
+  }
+
+  synchronized void recordImpl(String module, int permutation, String phase, long wallNanos,
+      long cpuNanos, long allocatedBytes, long processHeapHighWaterBytes) {
+    String key = module + '\n' + permutation + '\n' + phase;
+    Row row = rows.get(key);
+    if (row == null) {
+      row = new Row(module, permutation, phase);
+      rows.put(key, row);
+    }
+    ++row.count;
+    row.wallNanos += wallNanos;
+    row.cpuNanos = (cpuNanos < 0 || row.cpuNanos < 0) ? -1 : row.cpuNanos + cpuNanos;
+    row.allocatedBytes = (allocatedBytes < 0 || row.allocatedBytes < 0) ? -1
+        : row.allocatedBytes + allocatedBytes;
+    row.processHeapHighWaterBytes =
+        Math.max(row.processHeapHighWaterBytes, processHeapHighWaterBytes);
+  }
+
+  /**
+   * Takes the measurements for the start of an event on the current thread.
+   */
+  Sample sample() {
+    long cpuNanos = -1;
+    if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+      cpuNanos = threadMXBean.getCurrentThreadCpuTime();
+    }
+    long allocatedBytes = -1;
+    if (getThreadAllocatedBytesMethod != null) {
+      try {
+        allocatedBytes = (Long) getThreadAllocatedBytesMethod.invoke(threadMXBean,
+            Thread.currentThread().getId());
+      } catch (Exception e) {
+        // Leave as unknown.
+      }
+    }
+    return new Sample(System.nanoTime(), cpuNanos, allocatedBytes);
+  }
+
+  synchronized void writeCsv(Writer writer) throws IOException {
+    writer.write("module,permutation,phase,count,wallMillis,cpuMillis,allocatedBytes,"
+        + "processHeapHighWaterBytes\n");
+    for (Row row : rows.values()) {
+      writer.write(quoteCsv(row.module) + "," + row.permutation + "," + quoteCsv(row.phase)
+          + "," + row.count + "," + toMillis(row.wallNanos) + "," + toMillis(row.cpuNanos)
+          + "," + row.allocatedBytes + "," + row.processHeapHighWaterBytes + "\n");
+    }
+  }
+
+  synchronized void writeJson(Writer writer) throws IOException {
+    for (Row row : rows.values()) {
+      JsonObject json = JsonObject.create();
+      json.put("module", row.module);
+      json.put("permutation", row.permutation);
+      json.put("phase", row.phase);
+      json.put("count", row.count);
+      json.put("wallMillis", toMillis(row.wallNanos));
+      json.put("cpuMillis", toMillis(row.cpuNanos));
+      json.put("allocatedBytes", row.allocatedBytes);
+      json.put("processHeapHighWaterBytes", row.processHeapHighWaterBytes);
+      json.write(writer);
+      writer.write('\n');
+    }
+  }
+
+  private long difference(long end, long start) {
+    return (end < 0 || start < 0) ? -1 : end - start;
+  }
+
+  /**
+   * Returns the sum of the peak usage of all heap memory pools since the VM
+   * started. The peaks are never reset, since concurrent events would reset
+   * each other's.
+   */
+  private long getProcessHeapHighWaterBytes() {
+    long total = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      total += pool.getPeakUsage().getUsed();
+    }
+    return total;
+  }
+
+  private String quoteCsv(String value) {
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private long toMillis(long nanos) {
+    return nanos < 0 ? -1 : nanos / 1000000L;
+  }
+
+  private void writeToFile(String fileName) {
+    Writer writer = null;
+    try {
+      writer = new BufferedWriter(new FileWriter(fileName));
+      if (csvFormat) {
+        writeCsv(writer);
+      } else {
+        writeJson(writer);
+      }
+    } catch (IOException e) {
+      log.log(Level.SEVERE, "Unable to write to gwt.compilermetrics '" + fileName + "'", e);
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log.speedtracer;
+
+/**
+ * The JMX view of {@link CompilerMetrics}.
+ */
+public interface CompilerMetricsMBean {
+
+  /**
+   * Returns the metrics recorded so far as CSV, with a header line.
+   */
+  String getMetricsAsCsv();
+
+  /**
+   * Returns the metrics recorded so far as JSON objects, one per line.
+   */
+  String getMetricsAsJson();
+
+  /**
+   * Discards the metrics recorded so far.
+   */
+  void reset();
+}
@@ -105,6 +105,7 @@ public final class SpeedTracerLogger {
     List<Event> children;
     List<String> data;
     DevModeSession devModeSession;
+    CompilerMetrics.Sample metricsStart;
     
     long elapsedDurationNanos;
     long elapsedStartTimeNanos;
@@ -731,7 +732,8 @@ public final class SpeedTracerLogger {
 
   private SpeedTracerLogger() {
     fileLoggingEnabled = logFile != null;
-    enabled = fileLoggingEnabled || DashboardNotifierFactory.areNotificationsEnabled();
+    enabled = fileLoggingEnabled || DashboardNotifierFactory.areNotificationsEnabled()
+        || CompilerMetrics.isEnabled();
 
     if (enabled) {
       if (fileLoggingEnabled) {
@@ -836,6 +838,7 @@ public final class SpeedTracerLogger {
     }
     Event currentEvent = threadPendingEvents.pop();
     currentEvent.updateDuration();
+    recordMetrics(currentEvent);
     
     while (currentEvent != event && !threadPendingEvents.isEmpty()) {
       // Missed a closing end for one or more frames! Try to sync back up.
@@ -843,6 +846,7 @@ public final class SpeedTracerLogger {
           "This event was closed without an explicit call to Event.end()");
       currentEvent = threadPendingEvents.pop();
       currentEvent.updateDuration();
+      recordMetrics(currentEvent);
     }
 
     if (threadPendingEvents.isEmpty() && currentEvent != event) {
@@ -914,6 +918,10 @@ public final class SpeedTracerLogger {
     }
     
     Event newEvent = new Event(session, parent, type, data);
+    CompilerMetrics metrics = CompilerMetrics.get();
+    if (metrics != null) {
+      newEvent.metricsStart = metrics.sample();
+    }
     // Add a field to the top level event in order to  track the base time
     // so we can re-normalize the data
     if (threadPendingEvents.size() == 0) {
@@ -1000,4 +1008,12 @@ public final class SpeedTracerLogger {
     logWriterWorker.start();
     return eventQueue;
   }
+
+  private void recordMetrics(Event event) {
+    CompilerMetrics metrics = CompilerMetrics.get();
+    if (metrics != null && event.metricsStart != null) {
+      metrics.record(event.getType(), event.metricsStart,
+          event.devModeSession == null ? null : event.devModeSession.getModuleName());
+    }
+  }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.BadPropertyValueException;
+import com.google.gwt.core.ext.Generator;
+import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.SupportsConcurrentGeneration;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.typeinfo.JClassType;
+import com.google.gwt.core.ext.typeinfo.JMethod;
+import com.google.gwt.core.ext.typeinfo.JParameterizedType;
+import com.google.gwt.core.ext.typeinfo.NotFoundException;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConditionWhenTypeAssignableTo;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.PropertyPermutations;
+import com.google.gwt.dev.cfg.RuleGenerateWith;
+import com.google.gwt.dev.javac.CompilationState;
+import com.google.gwt.dev.javac.CompilationUnit;
+import com.google.gwt.dev.javac.TypeOracleTestingUtils;
+import com.google.gwt.dev.javac.testing.impl.MockJavaResource;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests that rebinding types concurrently in
+ * {@link DistillerRebindPermutationOracle} gives the same results as rebinding
+ * them one at a time.
+ */
+public class DistillerRebindPermutationOracleTest extends TestCase {
+
+  /**
+   * Implements a requested interface, which extends a parameterized interface
+   * shared by all the requested types, for each value of the flavor property.
+   * The types requested with {@link #HELPER_USERS} also share a helper type,
+   * and those requested with {@link #CONFLICTING_HELPER_USERS} each generate a
+   * different version of another one.
+   */
+  public static class ConcurrentGenerator extends Generator implements
+      SupportsConcurrentGeneration {
+
+    @Override
+    public String generate(TreeLogger logger, GeneratorContext context, String typeName)
+        throws UnableToCompleteException {
+      if (Thread.currentThread().getName().startsWith("ConcurrentRebind")) {
+        concurrentTypes.put(typeName, true);
+      } else {
+        serialTypes.put(typeName, true);
+      }
+      try {
+        String flavor =
+            context.getPropertyOracle().getSelectionProperty(logger, "flavor").getCurrentValue();
+        JClassType type = context.getTypeOracle().getType(typeName);
+        String simpleName = type.getSimpleSourceName() + "_" + flavor;
+
+        PrintWriter pw = context.tryCreate(logger, "test", simpleName);
+        if (pw != null) {
+          StringBuilder source = new StringBuilder();
+          source.append("package test;\n");
+          source.append("public class " + simpleName + " implements " + typeName + " {\n");
+          for (JClassType intf : type.getImplementedInterfaces()) {
+            JParameterizedType parameterized = intf.isParameterized();
+            if (parameterized == null) {
+              continue;
+            }
+            source.append("  // " + parameterized.getParameterizedQualifiedSourceName() + "\n");
+            for (JClassType superIntf : parameterized.getImplementedInterfaces()) {
+              source.append("  // " + superIntf.getParameterizedQualifiedSourceName() + "\n");
+            }
+            for (JMethod method : parameterized.getOverridableMethods()) {
+              source.append("  public " + method.getReturnType().getQualifiedSourceName() + " "
+                  + method.getName() + "() { return null; }\n");
+            }
+          }
+          source.append("}\n");
+          pw.print(source);
+          context.commit(logger, pw);
+          sources.put(simpleName, source.toString());
+        }
+
+        if (HELPER_USERS.contains(typeName)) {
+          PrintWriter helper = context.tryCreate(logger, "test", "Helper");
+          if (helper != null) {
+            helper.println("package test;");
+            helper.println("public class Helper {}");
+            context.commit(logger, helper);
+          }
+        }
+        if (CONFLICTING_HELPER_USERS.contains(typeName)) {
+          PrintWriter helper = context.tryCreate(logger, "test", "ConflictingHelper");
+          if (helper != null) {
+            helper.println("package test;");
+            helper.println("// Generated for " + typeName);
+            helper.println("public class ConflictingHelper {}");
+            context.commit(logger, helper);
+          }
+        }
+        return "test." + simpleName;
+      } catch (BadPropertyValueException e) {
+        logger.log(TreeLogger.ERROR, "No flavor", e);
+        throw new UnableToCompleteException();
+      } catch (NotFoundException e) {
+        logger.log(TreeLogger.ERROR, "No type " + typeName, e);
+        throw new UnableToCompleteException();
+      }
+    }
+  }
+
+  private static final List<String> CONFLICTING_HELPER_USERS = Arrays.asList("test.E",
+      "test.F");
+
+  private static final List<String> HELPER_USERS = Arrays.asList("test.A", "test.B");
+
+  private static final List<String> REQUESTED_TYPES = Arrays.asList("test.A", "test.B",
+      "test.C", "test.D", "test.E", "test.F");
+
+  /**
+   * The requested types whose generator ran on a concurrent rebind thread.
+   */
+  private static final Map<String, Boolean> concurrentTypes =
+      new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * The requested types whose generator ran on the calling thread.
+   */
+  private static final Map<String, Boolean> serialTypes =
+      new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * The source of the generated types, by simple name.
+   */
+  private static final Map<String, String> sources = new ConcurrentHashMap<String, String>();
+
+  private static MockJavaResource createResource(String typeName, final String source) {
+    return new MockJavaResource(typeName) {
+      @Override
+      public CharSequence getContent() {
+        return source;
+      }
+    };
+  }
+
+  public void testConcurrentRebinds() throws UnableToCompleteException {
+    List<Object> serial = rebind(1);
+    assertTrue(concurrentTypes.isEmpty());
+
+    serialTypes.clear();
+    List<Object> concurrent = rebind(4);
+    assertEquals(serial, concurrent);
+    for (String typeName : REQUESTED_TYPES) {
+      assertTrue(typeName, concurrentTypes.containsKey(typeName));
+    }
+
+    // Only the rebind whose helper type differs from the one generated before
+    // it is run again; the identical helper types are shared
+    assertEquals(Arrays.asList("test.F"), new ArrayList<String>(serialTypes.keySet()));
+  }
+
+  @Override
+  protected void tearDown() {
+    concurrentTypes.clear();
+    serialTypes.clear();
+    sources.clear();
+  }
+
+  /**
+   * Rebinds {@link #REQUESTED_TYPES} with the given number of threads, and
+   * returns the answers of each permutation, the generated units, and their
+   * source.
+   */
+  private List<Object> rebind(int numThreads) throws UnableToCompleteException {
+    sources.clear();
+    List<MockJavaResource> resources = new ArrayList<MockJavaResource>();
+    resources.add(createResource("test.Service", "package test;\n"
+        + "public interface Service {}\n"));
+    resources.add(createResource("test.Root", "package test;\n"
+        + "public interface Root<T> extends Service { T get(); }\n"));
+    resources.add(createResource("test.Base", "package test;\n"
+        + "public interface Base<T> extends Root<T> {}\n"));
+    for (String typeName : REQUESTED_TYPES) {
+      String simpleName = typeName.substring(typeName.lastIndexOf('.') + 1);
+      resources.add(createResource(typeName, "package test;\n" + "public interface "
+          + simpleName + " extends Base<String> {}\n"));
+    }
+    CompilationState compilationState =
+        TypeOracleTestingUtils.buildStandardCompilationStateWith(TreeLogger.NULL,
+            resources.toArray(new MockJavaResource[resources.size()]));
+
+    ModuleDef module = new ModuleDef("test");
+    BindingProperty flavor = module.getProperties().createBinding("flavor");
+    flavor.addDefinedValue(flavor.getRootCondition(), "x");
+    flavor.addDefinedValue(flavor.getRootCondition(), "y");
+    RuleGenerateWith rule = new RuleGenerateWith(ConcurrentGenerator.class);
+    rule.getRootCondition().getConditions().add(new ConditionWhenTypeAssignableTo("test.Service"));
+    module.getRules().prepend(rule);
+
+    String oldThreads =
+        System.setProperty(DistillerRebindPermutationOracle.REBIND_THREADS_PROPERTY, ""
+            + numThreads);
+    DistillerRebindPermutationOracle oracle =
+        new DistillerRebindPermutationOracle(module, compilationState, new ArtifactSet(),
+            new PropertyPermutations(module.getProperties(), module.getActiveLinkerNames()),
+            null);
+    try {
+      assertEquals(numThreads > 1, oracle.prefetchRebindAnswers(TreeLogger.NULL,
+          REQUESTED_TYPES));
+      for (String typeName : REQUESTED_TYPES) {
+        oracle.getAllPossibleRebindAnswers(TreeLogger.NULL, typeName);
+      }
+      oracle.getGeneratorContext().finish(TreeLogger.NULL);
+
+      List<SortedMap<String, String>> answers = new ArrayList<SortedMap<String, String>>();
+      for (Permutation permutation : oracle.getPermutations()) {
+        answers.addAll(Arrays.asList(permutation.getOrderedRebindAnswers()));
+      }
+      assertEquals(2, answers.size());
+      assertEquals("test.A_x", answers.get(0).get("test.A"));
+
+      Set<String> generatedUnits = new TreeSet<String>();
+      for (CompilationUnit unit : compilationState.getCompilationUnits()) {
+        if (unit.isGenerated()) {
+          assertFalse(unit.getTypeName(), unit.isError());
+          generatedUnits.add(unit.getTypeName());
+        }
+      }
+      assertEquals(REQUESTED_TYPES.size() * 2 + 2, generatedUnits.size());
+      assertTrue(generatedUnits.contains("test.Helper"));
+      assertTrue(generatedUnits.contains("test.ConflictingHelper"));
+
+      return Arrays.<Object> asList(answers, generatedUnits, new TreeMap<String, String>(sources));
+    } finally {
+      oracle.clear();
+      if (oldThreads == null) {
+        System.clearProperty(DistillerRebindPermutationOracle.REBIND_THREADS_PROPERTY);
+      } else {
+        System.setProperty(DistillerRebindPermutationOracle.REBIND_THREADS_PROPERTY, oldThreads);
+      }
+    }
+  }
+}
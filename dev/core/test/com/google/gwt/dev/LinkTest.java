@@ -0,0 +1,264 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.LinkerContext;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.AbstractLinker;
+import com.google.gwt.core.ext.linker.Artifact;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.CompilationResult;
+import com.google.gwt.core.ext.linker.EmittedArtifact;
+import com.google.gwt.core.ext.linker.EmittedArtifact.Visibility;
+import com.google.gwt.core.ext.linker.LinkerOrder;
+import com.google.gwt.core.ext.linker.LinkerOrder.Order;
+import com.google.gwt.core.ext.linker.Shardable;
+import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.core.ext.linker.SyntheticArtifact;
+import com.google.gwt.core.ext.linker.impl.StandardLinkerContext;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.MockModuleDef;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.PropertyPermutations;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+import com.google.gwt.dev.jjs.JJSOptionsImpl;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.util.FileBackedObject;
+import com.google.gwt.dev.util.UnitTestTreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Tests that linking permutations and writing their artifacts concurrently in
+ * {@link Link} gives the same output as doing it serially.
+ */
+public class LinkTest extends TestCase {
+
+  /**
+   * An artifact that cannot be written.
+   */
+  private static class FailingArtifact extends EmittedArtifact {
+    public FailingArtifact(String partialPath) {
+      super(TestLinker.class, partialPath);
+    }
+
+    @Override
+    public InputStream getContents(TreeLogger logger) throws UnableToCompleteException {
+      logger.log(TreeLogger.ERROR, "Unable to write " + getPartialPath());
+      throw new UnableToCompleteException();
+    }
+  }
+
+  private static class MockPermutationResult implements PermutationResult {
+    private final byte[][] js;
+    private final Permutation permutation;
+
+    public MockPermutationResult(Permutation permutation, String js) {
+      this.js = new byte[][] {Util.getBytes(js)};
+      this.permutation = permutation;
+    }
+
+    public void addArtifacts(Collection<? extends Artifact<?>> newArtifacts) {
+    }
+
+    public ArtifactSet getArtifacts() {
+      return new ArtifactSet();
+    }
+
+    public byte[][] getJs() {
+      return js;
+    }
+
+    public Permutation getPermutation() {
+      return permutation;
+    }
+
+    public byte[] getSerializedSymbolMap() {
+      return new byte[0];
+    }
+
+    public StatementRanges[] getStatementRanges() {
+      return new StatementRanges[0];
+    }
+  }
+
+  /**
+   * Emits the script and a private symbol file for each permutation, and a
+   * list of the scripts in the final link. A permutation whose script is
+   * {@link #FAILING_JS} also emits an artifact that cannot be written.
+   */
+  @LinkerOrder(Order.PRIMARY)
+  @Shardable
+  public static class TestLinker extends AbstractLinker {
+    @Override
+    public String getDescription() {
+      return "Test";
+    }
+
+    @Override
+    public ArtifactSet link(TreeLogger logger, LinkerContext context, ArtifactSet artifacts,
+        boolean onePermutation) throws UnableToCompleteException {
+      ArtifactSet toReturn = new ArtifactSet(artifacts);
+      if (onePermutation) {
+        for (CompilationResult result : artifacts.find(CompilationResult.class)) {
+          String js = result.getJavaScript()[0];
+          toReturn.add(emitString(logger, js, result.getStrongName() + ".cache.js"));
+          SyntheticArtifact symbols = emitString(logger, "symbols for "
+              + result.getPermutationId(), result.getStrongName() + ".symbols");
+          symbols.setVisibility(Visibility.Private);
+          toReturn.add(symbols);
+          if (FAILING_JS.equals(js)) {
+            toReturn.add(new FailingArtifact(result.getStrongName() + ".failed"));
+          }
+        }
+      } else {
+        // Only emitted artifacts are transferred from the permutation links
+        StringBuilder summary = new StringBuilder();
+        for (EmittedArtifact artifact : artifacts.find(EmittedArtifact.class)) {
+          if (artifact.getPartialPath().endsWith(".cache.js")) {
+            summary.append(artifact.getPartialPath()).append('\n');
+          }
+        }
+        toReturn.add(emitString(logger, summary.toString(), "permutations.txt"));
+      }
+      return toReturn;
+    }
+  }
+
+  private static final String FAILING_JS = "fail();";
+
+  private File tempDir;
+
+  @Override
+  public void setUp() throws IOException {
+    tempDir = File.createTempFile("LinkTest", "");
+    assertTrue(tempDir.delete());
+    assertTrue(tempDir.mkdirs());
+  }
+
+  @Override
+  public void tearDown() {
+    Util.recursiveDelete(tempDir, false);
+  }
+
+  public void testConcurrentLink() throws Exception {
+    SortedMap<String, String> serial = link("serial", 1, null);
+    SortedMap<String, String> concurrent = link("concurrent", 4, null);
+    assertEquals(serial, concurrent);
+
+    // Four scripts and symbol files, the list of scripts and the public resource
+    assertEquals(10, serial.size());
+    assertTrue(serial.containsKey("war/test/onPublicPath.txt"));
+    assertTrue(serial.containsKey("war/test/permutations.txt"));
+    assertEquals(4, serial.get("war/test/permutations.txt").split("\n").length);
+  }
+
+  public void testConcurrentLinkFailure() throws Exception {
+    for (int numThreads : new int[] {1, 4}) {
+      UnitTestTreeLogger.Builder builder = new UnitTestTreeLogger.Builder();
+      builder.setLowestLogLevel(TreeLogger.ERROR);
+      builder.expectError("Unable to write " + Util.computeStrongName(new byte[][] {
+          Util.getBytes(FAILING_JS)}) + ".failed", null);
+      UnitTestTreeLogger logger = builder.createLogger();
+      try {
+        link(logger, "failure" + numThreads, numThreads, FAILING_JS);
+        fail("Expected UnableToCompleteException");
+      } catch (UnableToCompleteException expected) {
+      }
+      logger.assertCorrectLogEntries();
+    }
+  }
+
+  private SortedMap<String, String> link(String name, int numThreads, String failingJs)
+      throws IOException, UnableToCompleteException {
+    return link(TreeLogger.NULL, name, numThreads, failingJs);
+  }
+
+  /**
+   * Links four permutations of a module with the given number of threads, and
+   * returns the content of the output files by path.
+   */
+  private SortedMap<String, String> link(TreeLogger logger, String name, int numThreads,
+      String failingJs) throws IOException, UnableToCompleteException {
+    ModuleDef module = new MockModuleDef();
+    module.setNameOverride("test");
+    module.defineLinker(logger, "test", TestLinker.class);
+    module.addLinker("test");
+    BindingProperty flavor = module.getProperties().createBinding("flavor");
+    for (String value : new String[] {"a", "b", "c", "d"}) {
+      flavor.addDefinedValue(flavor.getRootCondition(), value);
+    }
+
+    PropertyPermutations propertyPermutations =
+        new PropertyPermutations(module.getProperties(), module.getActiveLinkerNames());
+    Permutation[] permutations = new Permutation[propertyPermutations.size()];
+    List<FileBackedObject<PermutationResult>> resultFiles =
+        new ArrayList<FileBackedObject<PermutationResult>>();
+    for (int i = 0; i < permutations.length; ++i) {
+      permutations[i] = new Permutation(i, new StaticPropertyOracle(
+          propertyPermutations.getOrderedProperties(),
+          propertyPermutations.getOrderedPropertyValues(i), new ConfigurationProperty[0]));
+      String js = i == 1 && failingJs != null ? failingJs : "perm" + i + "();";
+      FileBackedObject<PermutationResult> resultFile =
+          new FileBackedObject<PermutationResult>(PermutationResult.class);
+      resultFile.set(logger, new MockPermutationResult(permutations[i], js));
+      resultFiles.add(resultFile);
+    }
+
+    File outDir = new File(tempDir, name);
+    String oldThreads =
+        System.setProperty(StandardLinkerContext.LINK_THREADS_PROPERTY, "" + numThreads);
+    try {
+      Link.link(logger, module, new ArtifactSet(), permutations, resultFiles, new File(outDir,
+          "war"), new File(outDir, "deploy"), new File(outDir, "extras"), new JJSOptionsImpl());
+    } finally {
+      if (oldThreads == null) {
+        System.clearProperty(StandardLinkerContext.LINK_THREADS_PROPERTY);
+      } else {
+        System.setProperty(StandardLinkerContext.LINK_THREADS_PROPERTY, oldThreads);
+      }
+      for (FileBackedObject<PermutationResult> resultFile : resultFiles) {
+        resultFile.getFile().delete();
+      }
+    }
+
+    SortedMap<String, String> files = new TreeMap<String, String>();
+    readFiles(outDir, "", files);
+    return files;
+  }
+
+  private void readFiles(File dir, String prefix, SortedMap<String, String> files) {
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) {
+        readFiles(file, prefix + file.getName() + "/", files);
+      } else {
+        files.put(prefix + file.getName(), Util.readFileAsString(file));
+      }
+    }
+  }
+}
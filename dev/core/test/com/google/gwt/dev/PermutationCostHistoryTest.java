@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Unit test for {@link PermutationCostHistory}.
+ */
+public class PermutationCostHistoryTest extends TestCase {
+
+  private static Permutation createPermutation(int id, String userAgent) {
+    BindingProperty property = new BindingProperty("user.agent");
+    property.addDefinedValue(property.getRootCondition(), "ie6");
+    property.addDefinedValue(property.getRootCondition(), "safari");
+    StaticPropertyOracle oracle = new StaticPropertyOracle(new BindingProperty[] {property},
+        new String[] {userAgent}, new ConfigurationProperty[0]);
+    return new Permutation(id, oracle);
+  }
+
+  private static final String MODULE = "com.example.Module";
+
+  private File historyFile;
+
+  @Override
+  public void setUp() throws IOException {
+    historyFile = File.createTempFile("PermutationCostHistoryTest", ".properties");
+    assertTrue(historyFile.delete());
+  }
+
+  @Override
+  public void tearDown() {
+    historyFile.delete();
+  }
+
+  public void testRecordAndReload() {
+    Permutation ie6 = createPermutation(0, "ie6");
+    Permutation safari = createPermutation(1, "safari");
+
+    PermutationCostHistory history = new PermutationCostHistory(historyFile, MODULE);
+    assertEquals(PermutationCostHistory.UNKNOWN_COST, history.getEstimatedCost(ie6));
+    history.record(ie6, 5000);
+    history.record(safari, 1200);
+    history.save(TreeLogger.NULL);
+    assertTrue(historyFile.isFile());
+
+    String oldValue = System.getProperty(PermutationCostHistory.HISTORY_FILE_PROPERTY);
+    System.setProperty(PermutationCostHistory.HISTORY_FILE_PROPERTY,
+        historyFile.getAbsolutePath());
+    try {
+      // Permutations are matched by property values, not by id.
+      history = PermutationCostHistory.load(TreeLogger.NULL, MODULE);
+      assertEquals(5000, history.getEstimatedCost(createPermutation(7, "ie6")));
+      assertEquals(1200, history.getEstimatedCost(createPermutation(8, "safari")));
+    } finally {
+      if (oldValue == null) {
+        System.clearProperty(PermutationCostHistory.HISTORY_FILE_PROPERTY);
+      } else {
+        System.setProperty(PermutationCostHistory.HISTORY_FILE_PROPERTY, oldValue);
+      }
+    }
+  }
+
+  /**
+   * Modules sharing a history file must not see each other's times, even when
+   * their permutations have the same property values.
+   */
+  public void testModulesAreSeparate() {
+    Permutation ie6 = createPermutation(0, "ie6");
+
+    PermutationCostHistory history = new PermutationCostHistory(historyFile, MODULE);
+    history.record(ie6, 5000);
+    history.save(TreeLogger.NULL);
+
+    PermutationCostHistory other =
+        new PermutationCostHistory(historyFile, "com.example.Other");
+    other.read(TreeLogger.NULL);
+    assertEquals(PermutationCostHistory.UNKNOWN_COST, other.getEstimatedCost(ie6));
+    other.record(ie6, 800);
+    other.save(TreeLogger.NULL);
+
+    // Saving the other module kept this module's time.
+    history = new PermutationCostHistory(historyFile, MODULE);
+    history.read(TreeLogger.NULL);
+    assertEquals(5000, history.getEstimatedCost(ie6));
+    other = new PermutationCostHistory(historyFile, "com.example.Other");
+    other.read(TreeLogger.NULL);
+    assertEquals(800, other.getEstimatedCost(ie6));
+  }
+
+  public void testWithoutFile() {
+    PermutationCostHistory history = new PermutationCostHistory(null, MODULE);
+    Permutation ie6 = createPermutation(0, "ie6");
+    history.record(ie6, 5000);
+    assertEquals(5000, history.getEstimatedCost(ie6));
+    history.save(TreeLogger.NULL);
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.linker.Artifact;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Unit test for {@link PermutationResultCache}.
+ */
+public class PermutationResultCacheTest extends TestCase {
+
+  private static class MockPermutationResult implements PermutationResult {
+    private final byte[][] js;
+
+    public MockPermutationResult(String js) {
+      this.js = new byte[][] {Util.getBytes(js)};
+    }
+
+    public void addArtifacts(Collection<? extends Artifact<?>> newArtifacts) {
+    }
+
+    public ArtifactSet getArtifacts() {
+      return new ArtifactSet();
+    }
+
+    public byte[][] getJs() {
+      return js;
+    }
+
+    public Permutation getPermutation() {
+      return null;
+    }
+
+    public byte[] getSerializedSymbolMap() {
+      return new byte[0];
+    }
+
+    public StatementRanges[] getStatementRanges() {
+      return new StatementRanges[0];
+    }
+  }
+
+  private File cacheDir;
+
+  @Override
+  public void setUp() throws IOException {
+    cacheDir = File.createTempFile("PermutationResultCacheTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdirs());
+  }
+
+  @Override
+  public void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+
+  public void testCorruptEntry() {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir);
+    cache.put(TreeLogger.NULL, "key", new MockPermutationResult("js"));
+    File[] files = cacheDir.listFiles();
+    assertEquals(1, files.length);
+    assertTrue(Util.writeStringAsFile(files[0], "garbage"));
+
+    assertNull(cache.find(TreeLogger.NULL, "key"));
+    assertEquals(0, cacheDir.listFiles().length);
+  }
+
+  public void testPutAndFind() {
+    PermutationResultCache cache = new PermutationResultCache(cacheDir);
+    assertNull(cache.find(TreeLogger.NULL, "key1"));
+
+    cache.put(TreeLogger.NULL, "key1", new MockPermutationResult("js1"));
+    cache.put(TreeLogger.NULL, "key2", new MockPermutationResult("js2"));
+
+    // A fresh instance reads the entries written by another one.
+    cache = new PermutationResultCache(cacheDir);
+    PermutationResult result = cache.find(TreeLogger.NULL, "key1");
+    assertNotNull(result);
+    assertTrue(Arrays.equals(Util.getBytes("js1"), result.getJs()[0]));
+    result = cache.find(TreeLogger.NULL, "key2");
+    assertNotNull(result);
+    assertTrue(Arrays.equals(Util.getBytes("js2"), result.getJs()[0]));
+    assertNull(cache.find(TreeLogger.NULL, "key3"));
+
+    // No temporary files are left behind.
+    assertEquals(2, cacheDir.listFiles().length);
+  }
+}
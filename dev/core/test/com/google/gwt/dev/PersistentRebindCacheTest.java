@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.CachedGeneratorResult;
+import com.google.gwt.core.ext.Generator;
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.dev.cfg.Rule;
+import com.google.gwt.dev.cfg.RuleGenerateWith;
+import com.google.gwt.dev.javac.CachedGeneratorResultImpl;
+import com.google.gwt.dev.javac.CompilationStateTestBase;
+import com.google.gwt.dev.javac.GeneratedUnit;
+import com.google.gwt.dev.javac.StandardGeneratorContext;
+import com.google.gwt.dev.javac.testing.impl.JavaResourceBase;
+import com.google.gwt.dev.javac.testing.impl.MockJavaResource;
+import com.google.gwt.dev.util.Util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests that {@link PersistentRebindCache} entries survive a new session, and
+ * are thrown away when they are out of date.
+ */
+public class PersistentRebindCacheTest extends CompilationStateTestBase {
+
+  private static final MockJavaResource FOO_CHANGED = new MockJavaResource("test.Foo") {
+    @Override
+    public CharSequence getContent() {
+      StringBuilder code = new StringBuilder();
+      code.append("package test;\n");
+      code.append("public class Foo {\n");
+      code.append("  public String value() { return \"Changed\"; }\n");
+      code.append("}\n");
+      return code;
+    }
+  };
+
+  private static final String GENERATED_SOURCE =
+      "package test;\npublic class FooImpl extends Foo {\n}\n";
+
+  private static final Rule RULE = new RuleGenerateWith(Generator.class);
+
+  private File cacheDir;
+
+  public void testChangedDependency() throws IOException {
+    saveEntry();
+
+    oracle.replace(FOO_CHANGED);
+    rebuildCompilationState();
+    assertNull(loadCache().get(RULE, "test.Foo"));
+    assertEquals(0, cacheDir.list().length);
+  }
+
+  public void testSaveAndLoad() throws IOException {
+    saveEntry();
+    assertEquals(1, cacheDir.list().length);
+
+    // A new session with the same sources
+    rebuildCompilationState();
+    CachedGeneratorResult cached = loadCache().get(RULE, "test.Foo");
+    assertNotNull(cached);
+    assertEquals("test.FooImpl", cached.getResultTypeName());
+    assertTrue(cached.isTypeCached("test.FooImpl"));
+
+    // The source was transferred into the disk cache of this process
+    GeneratedUnit unit = ((CachedGeneratorResultImpl) cached).getGeneratedUnit("test.FooImpl");
+    assertEquals(GENERATED_SOURCE, unit.getSource());
+    assertEquals(Util.computeStrongName(Util.getBytes(GENERATED_SOURCE)), unit.getStrongHash());
+    assertEquals(1, cacheDir.list().length);
+
+    // Entries that were loaded are not written again
+    PersistentRebindCache cache = loadCache();
+    File[] files = cacheDir.listFiles();
+    long lastModified = files[0].lastModified();
+    assertTrue(files[0].setLastModified(lastModified - 10000));
+    cache.save(createTreeLogger(), state);
+    assertEquals(lastModified - 10000, files[0].lastModified());
+  }
+
+  public void testVersionMismatch() throws IOException {
+    saveEntry();
+    ObjectOutputStream stream =
+        new ObjectOutputStream(new FileOutputStream(new File(cacheDir, "old.rebind")));
+    try {
+      stream.writeUTF("0.0.0");
+      stream.writeUTF(RULE.toString());
+      stream.writeUTF("test.Bar");
+      stream.writeObject(new CachedGeneratorResultImpl("test.BarImpl", new ArtifactSet(),
+          new HashMap<String, GeneratedUnit>(), System.currentTimeMillis()));
+    } finally {
+      stream.close();
+    }
+    assertEquals(2, cacheDir.list().length);
+
+    rebuildCompilationState();
+    PersistentRebindCache cache = loadCache();
+    assertNull(cache.get(RULE, "test.Bar"));
+    assertNotNull(cache.get(RULE, "test.Foo"));
+    assertFalse(new File(cacheDir, "old.rebind").exists());
+    assertEquals(1, cacheDir.list().length);
+  }
+
+  @Override
+  protected void setUp() throws IOException {
+    cacheDir = File.createTempFile("PersistentRebindCacheTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdirs());
+    oracle.add(JavaResourceBase.FOO);
+    rebuildCompilationState();
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+  }
+
+  private PersistentRebindCache loadCache() {
+    PersistentRebindCache cache = new PersistentRebindCache(cacheDir);
+    cache.load(createTreeLogger(), state);
+    return cache;
+  }
+
+  /**
+   * Generates a subclass of test.Foo, as a generator would, and saves the
+   * result for test.Foo.
+   */
+  private void saveEntry() {
+    StandardGeneratorContext context =
+        new StandardGeneratorContext(state, null, null, new ArtifactSet(), false);
+    PrintWriter pw = context.tryCreate(createTreeLogger(), "test", "FooImpl");
+    pw.print(GENERATED_SOURCE);
+    context.commit(createTreeLogger(), pw);
+    Map<String, GeneratedUnit> generatedUnits =
+        new HashMap<String, GeneratedUnit>(context.getGeneratedUnitMap());
+    context.finish(createTreeLogger());
+
+    PersistentRebindCache cache = new PersistentRebindCache(cacheDir);
+    cache.put(RULE, "test.Foo", new CachedGeneratorResultImpl("test.FooImpl",
+        new ArtifactSet(), generatedUnits, System.currentTimeMillis()));
+    cache.save(createTreeLogger(), state);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.core.ext.linker.ArtifactSet;
+import com.google.gwt.dev.javac.testing.impl.JavaResourceBase;
+import com.google.gwt.dev.javac.testing.impl.MockJavaResource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the dependency tracking of {@link CachedGeneratorResultImpl}.
+ */
+public class CachedGeneratorResultImplTest extends CompilationStateTestBase {
+
+  private static final MockJavaResource FOO_CHANGED = new MockJavaResource("test.Foo") {
+    @Override
+    public CharSequence getContent() {
+      StringBuilder code = new StringBuilder();
+      code.append("package test;\n");
+      code.append("public class Foo {\n");
+      code.append("  public String value() { return \"Changed\"; }\n");
+      code.append("}\n");
+      return code;
+    }
+  };
+
+  public void testDependencies() {
+    oracle.add(JavaResourceBase.FOO);
+    rebuildCompilationState();
+    addGeneratedUnits(JavaResourceBase.BAR);
+
+    CachedGeneratorResultImpl result = createResult();
+    // Nothing has been recorded yet
+    assertFalse(result.checkDependencies(state));
+    assertTrue(result.recordDependencies(state, "test.Foo"));
+    assertTrue(result.checkDependencies(state));
+
+    // A new session with the same sources
+    rebuildCompilationState();
+    assertTrue(result.checkDependencies(state));
+
+    oracle.replace(FOO_CHANGED);
+    rebuildCompilationState();
+    assertFalse(result.checkDependencies(state));
+  }
+
+  public void testMissingQueryType() {
+    oracle.add(JavaResourceBase.FOO);
+    rebuildCompilationState();
+    addGeneratedUnits(JavaResourceBase.BAR);
+
+    assertFalse(createResult().recordDependencies(state, "test.Missing"));
+  }
+
+  public void testUncompiledGeneratedUnit() {
+    oracle.add(JavaResourceBase.FOO);
+    rebuildCompilationState();
+
+    assertFalse(createResult().recordDependencies(state, "test.Foo"));
+  }
+
+  private CachedGeneratorResultImpl createResult() {
+    Map<String, GeneratedUnit> generatedUnits = new HashMap<String, GeneratedUnit>();
+    for (GeneratedUnit unit : getGeneratedUnits(JavaResourceBase.BAR)) {
+      generatedUnits.put(unit.getTypeName(), unit);
+    }
+    return new CachedGeneratorResultImpl(JavaResourceBase.BAR.getTypeName(), new ArtifactSet(),
+        generatedUnits, System.currentTimeMillis());
+  }
+}
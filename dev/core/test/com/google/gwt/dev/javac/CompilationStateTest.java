@@ -20,6 +20,7 @@ import com.google.gwt.dev.javac.testing.impl.JavaResourceBase;
 import com.google.gwt.dev.javac.testing.impl.MockJavaResource;
 import com.google.gwt.dev.javac.testing.impl.MockResourceOracle;
 import com.google.gwt.dev.jjs.SourceOrigin;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
 import com.google.gwt.dev.js.JsParser;
 import com.google.gwt.dev.js.JsSourceGenerationVisitor;
 import com.google.gwt.dev.js.ast.JsFunction;
@@ -34,6 +35,7 @@ import com.google.gwt.dev.util.collect.Lists;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -47,6 +49,19 @@ import java.util.Set;
  */
 public class CompilationStateTest extends CompilationStateTestBase {
 
+  private static final MockJavaResource BAZ = new MockJavaResource("other.Baz") {
+    @Override
+    public CharSequence getContent() {
+      StringBuffer code = new StringBuffer();
+      code.append("package other;\n");
+      code.append("import test.*;\n");
+      code.append("public class Baz extends Bar {\n");
+      code.append("  public String value() { return JsniCaller.call(); }\n");
+      code.append("}\n");
+      return code;
+    }
+  };
+
   private static final MockJavaResource FOO_DIFF_API =
       new MockJavaResource("test.Foo") {
         @Override
@@ -74,6 +89,36 @@ public class CompilationStateTest extends CompilationStateTestBase {
         }
       };
 
+  /**
+   * Refers to {@link #JSNI_TARGET} only in JSNI, which is not scanned for
+   * dependencies.
+   */
+  private static final MockJavaResource JSNI_CALLER = new MockJavaResource("test.JsniCaller") {
+    @Override
+    public CharSequence getContent() {
+      StringBuffer code = new StringBuffer();
+      code.append("package test;\n");
+      code.append("public class JsniCaller {\n");
+      code.append("  public static native String call() /*-{\n");
+      code.append("    return @test.JsniTarget::target()();\n");
+      code.append("  }-*/;\n");
+      code.append("}\n");
+      return code;
+    }
+  };
+
+  private static final MockJavaResource JSNI_TARGET = new MockJavaResource("test.JsniTarget") {
+    @Override
+    public CharSequence getContent() {
+      StringBuffer code = new StringBuffer();
+      code.append("package test;\n");
+      code.append("public class JsniTarget extends Foo {\n");
+      code.append("  public static String target() { return \"JsniTarget\"; }\n");
+      code.append("}\n");
+      return code;
+    }
+  };
+
   private static String parseJs(String js) throws Exception {
     List<JsStatement> parsed =
         JsParser.parse(SourceOrigin.UNKNOWN, JsRootScope.INSTANCE,
@@ -95,6 +140,36 @@ public class CompilationStateTest extends CompilationStateTestBase {
     validateCompilationState();
   }
 
+  /**
+   * Building units on several threads must give the same units as building
+   * them on one.
+   */
+  public void testBuildThreads() throws Exception {
+    oracle.add(JavaResourceBase.FOO, JavaResourceBase.BAR);
+    Map<String, CompilationUnit> serialUnits = buildUnits(new CompilationStateBuilder());
+    Map<String, CompilationUnit> threadedUnits =
+        buildUnits(new CompilationStateBuilder(), CompilationStateBuilder.BUILD_THREADS_PROPERTY);
+    assertSameUnits(serialUnits, threadedUnits);
+  }
+
+  /**
+   * Compiling units in batches on several threads must give the same units as
+   * compiling them with one compiler, also when a unit refers to a unit of a
+   * later batch without the batcher noticing.
+   */
+  public void testCompileThreads() throws Exception {
+    oracle.add(JavaResourceBase.FOO, JavaResourceBase.BAR, BAZ, JSNI_CALLER, JSNI_TARGET);
+    Map<String, CompilationUnit> serialUnits = buildUnits(new CompilationStateBuilder());
+    // Batches of one unit, so that units are split as much as possible
+    Map<String, CompilationUnit> batchedUnits =
+        buildUnits(new CompilationStateBuilder(1),
+            CompilationStateBuilder.COMPILE_THREADS_PROPERTY);
+    assertSameUnits(serialUnits, batchedUnits);
+    for (CompilationUnit unit : batchedUnits.values()) {
+      assertFalse(unit.getTypeName(), unit.isError());
+    }
+  }
+
   /* test that a generated unit, if unchanged, is reused */
   public void testCaching() {
     testCaching(JavaResourceBase.FOO);
@@ -476,6 +551,64 @@ public class CompilationStateTest extends CompilationStateTestBase {
     }
   }
 
+  private void assertSameUnits(Map<String, CompilationUnit> expectedUnits,
+      Map<String, CompilationUnit> actualUnits) throws Exception {
+    assertEquals(expectedUnits.keySet(), actualUnits.keySet());
+    for (CompilationUnit expectedUnit : expectedUnits.values()) {
+      CompilationUnit actualUnit = actualUnits.get(expectedUnit.getTypeName());
+      assertEquals(expectedUnit.getContentId(), actualUnit.getContentId());
+      assertEquals(expectedUnit.isError(), actualUnit.isError());
+      assertEquals(expectedUnit.getDependencies().qualified.keySet(),
+          actualUnit.getDependencies().qualified.keySet());
+      assertEquals(expectedUnit.getDependencies().simple.keySet(),
+          actualUnit.getDependencies().simple.keySet());
+      validateSerializedUnit(expectedUnit, actualUnit);
+
+      Map<String, CompiledClass> actualClasses = new HashMap<String, CompiledClass>();
+      for (CompiledClass cc : actualUnit.getCompiledClasses()) {
+        actualClasses.put(cc.getInternalName(), cc);
+      }
+      assertEquals(expectedUnit.getCompiledClasses().size(), actualClasses.size());
+      for (CompiledClass cc : expectedUnit.getCompiledClasses()) {
+        assertTrue(Arrays.equals(cc.getBytes(), actualClasses.get(cc.getInternalName())
+            .getBytes()));
+      }
+
+      List<String> expectedTypes = new ArrayList<String>();
+      for (JDeclaredType type : expectedUnit.getTypes()) {
+        expectedTypes.add(type.getName());
+      }
+      List<String> actualTypes = new ArrayList<String>();
+      for (JDeclaredType type : actualUnit.getTypes()) {
+        actualTypes.add(type.getName());
+      }
+      assertEquals(expectedTypes, actualTypes);
+    }
+  }
+
+  private Map<String, CompilationUnit> buildUnits(CompilationStateBuilder builder) {
+    return builder.doBuildFrom(createTreeLogger(), oracle.getResources(), false)
+        .getCompilationUnitMap();
+  }
+
+  /**
+   * Builds the units with four threads, as set by a system property.
+   */
+  private Map<String, CompilationUnit> buildUnits(CompilationStateBuilder builder,
+      String threadsProperty) {
+    String oldValue = System.getProperty(threadsProperty);
+    try {
+      System.setProperty(threadsProperty, "4");
+      return buildUnits(builder);
+    } finally {
+      if (oldValue == null) {
+        System.clearProperty(threadsProperty);
+      } else {
+        System.setProperty(threadsProperty, oldValue);
+      }
+    }
+  }
+
   private void validateSerializedTestUnit(MockJavaResource resource,
       CompilationUnit unit) throws Exception {
     assertNotNull(unit);
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.javac;
+
+import com.google.gwt.dev.javac.testing.impl.JavaResourceBase;
+import com.google.gwt.dev.javac.testing.impl.MockJavaResource;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link CompilationUnitBatcher}.
+ */
+public class CompilationUnitBatcherTest extends TestCase {
+
+  private static MockJavaResource createResource(String typeName, final String source) {
+    return new MockJavaResource(typeName) {
+      @Override
+      public CharSequence getContent() {
+        return source;
+      }
+    };
+  }
+
+  /**
+   * Units that refer to each other are compiled together.
+   */
+  public void testCycle() {
+    MockJavaResource a = createResource("test.A", "package test;\npublic class A { B b; }\n");
+    MockJavaResource b = createResource("test.B", "package test;\npublic class B { A a; }\n");
+    MockJavaResource c = createResource("test.C", "package test;\npublic class C { }\n");
+    Map<String, Integer> stages = partition(4, a, b, c);
+    assertEquals(stages.get("test.A"), stages.get("test.B"));
+    assertEquals(0, stages.get("test.C").intValue());
+  }
+
+  /**
+   * Units depend on the units whose types they refer to, by simple name from
+   * the same package or an import, or by qualified name.
+   */
+  public void testDependencies() {
+    MockJavaResource imported =
+        createResource("other.Imported", "package other;\n"
+            + "import test.Foo;\npublic class Imported { Foo foo; }\n");
+    MockJavaResource onDemand =
+        createResource("other.OnDemand", "package other;\n"
+            + "import test.*;\npublic class OnDemand { Bar bar; }\n");
+    MockJavaResource qualified =
+        createResource("other.Qualified", "package other;\n"
+            + "public class Qualified { other.OnDemand onDemand; }\n");
+    MockJavaResource unrelated =
+        createResource("other.Unrelated", "package other;\n"
+            + "public class Unrelated { String Bar; }\n");
+    Map<String, Integer> stages =
+        partition(4, JavaResourceBase.OBJECT, JavaResourceBase.STRING, JavaResourceBase.FOO,
+            JavaResourceBase.BAR, imported, onDemand, qualified, unrelated);
+
+    // The JRE first, then in dependency order; the last two levels only have
+    // one unit each, so they are merged
+    assertEquals(0, stages.get("java.lang.Object").intValue());
+    assertEquals(0, stages.get("java.lang.String").intValue());
+    assertEquals(1, stages.get("test.Foo").intValue());
+    assertEquals(1, stages.get("other.Unrelated").intValue());
+    assertEquals(2, stages.get("test.Bar").intValue());
+    assertEquals(2, stages.get("other.Imported").intValue());
+    assertEquals(3, stages.get("other.OnDemand").intValue());
+    assertEquals(3, stages.get("other.Qualified").intValue());
+  }
+
+  /**
+   * Consecutive stages that are too small to split become one batch.
+   */
+  public void testMergeSmallStages() {
+    List<List<List<CompilationUnitBuilder>>> stages =
+        new CompilationUnitBatcher(createBuilders(JavaResourceBase.OBJECT,
+            JavaResourceBase.STRING, JavaResourceBase.FOO, JavaResourceBase.BAR), 1).partition(4,
+            CompilationUnitBatcher.MIN_BATCH_UNITS);
+    assertEquals(1, stages.size());
+    assertEquals(1, stages.get(0).size());
+    assertEquals(4, stages.get(0).get(0).size());
+  }
+
+  /**
+   * Secondary top-level types can be found by their internal names.
+   */
+  public void testTopLevelTypes() {
+    MockJavaResource secondary =
+        createResource("test.Main", "package test;\npublic class Main { }\n"
+            + "@interface Annotation { }\nenum Enum { A; class Nested { } }\n"
+            + "interface Interface { Class<?> C = Main.class; }\n");
+    List<CompilationUnitBuilder> builders = createBuilders(secondary);
+    Map<String, CompilationUnitBuilder> types =
+        new CompilationUnitBatcher(builders, 1).getTopLevelTypes();
+    assertEquals(4, types.size());
+    for (String typeName : new String[] {
+        "test/Main", "test/Annotation", "test/Enum", "test/Interface"}) {
+      assertSame(builders.get(0), types.get(typeName));
+    }
+    assertFalse(types.containsKey("test/Nested"));
+  }
+
+  private List<CompilationUnitBuilder> createBuilders(MockJavaResource... resources) {
+    List<CompilationUnitBuilder> builders = new ArrayList<CompilationUnitBuilder>();
+    for (MockJavaResource resource : resources) {
+      builders.add(CompilationUnitBuilder.create(resource));
+    }
+    return builders;
+  }
+
+  /**
+   * Partitions units into batches of as little as one unit, and returns the
+   * stage of each unit by type name. Also checks that no stage has more
+   * batches than allowed, and that no batch is empty.
+   */
+  private Map<String, Integer> partition(int maxBatches, MockJavaResource... resources) {
+    List<List<List<CompilationUnitBuilder>>> stages =
+        new CompilationUnitBatcher(createBuilders(resources), 1).partition(maxBatches, 1);
+    Map<String, Integer> result = new HashMap<String, Integer>();
+    for (int i = 0; i < stages.size(); ++i) {
+      assertTrue(stages.get(i).size() <= maxBatches);
+      for (List<CompilationUnitBuilder> batch : stages.get(i)) {
+        assertFalse(batch.isEmpty());
+        for (CompilationUnitBuilder builder : batch) {
+          assertNull(result.put(builder.getTypeName(), i));
+        }
+      }
+    }
+    return result;
+  }
+}
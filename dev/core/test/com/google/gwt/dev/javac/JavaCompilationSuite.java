@@ -43,6 +43,7 @@ public class JavaCompilationSuite {
     suite.addTestSuite(ArtificialRescueCheckerTest.class);
     suite.addTestSuite(BinaryTypeReferenceRestrictionsCheckerTest.class);
     suite.addTestSuite(BytecodeSignatureMakerTest.class);
+    suite.addTestSuite(CachedGeneratorResultImplTest.class);
     suite.addTestSuite(CompilationStateTest.class);
     suite.addTestSuite(CompilationUnitFileReferenceTest.class);
     suite.addTestSuite(CompiledClassTest.class);
@@ -21,6 +21,8 @@ import com.google.gwt.dev.util.Util;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -66,6 +68,75 @@ public class PersistentUnitCacheTest extends TestCase {
     checkInvalidObjectInCache(new ThrowsClassNotFoundException());
   }
 
+  /**
+   * Consolidation should drop corrupt records rather than copy them to the new
+   * cache file.
+   */
+  public void testConsolidationDropsCorruptRecords() throws IOException,
+      UnableToCompleteException, InterruptedException {
+    TreeLogger logger = TreeLogger.NULL;
+    File cacheDir = lastCacheDir = File.createTempFile("PersistentUnitTest-consolidate", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    MockCompilationUnit foo = new MockCompilationUnit("com.example.Foo", "Foo: source1");
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source1");
+    writeCacheFile(cacheFile(unitCacheDir, 1), makeRecord(foo, foo.asCachedCompilationUnit()),
+        corruptPayload(makeRecord(bar, bar.asCachedCompilationUnit())));
+    // Pad the directory so that the next cleanup consolidates.
+    for (int i = 2; i < PersistentUnitCache.CACHE_FILE_THRESHOLD; ++i) {
+      writeCacheFile(cacheFile(unitCacheDir, i));
+    }
+
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    cache.cleanup(logger);
+    cache.shutdown();
+    assertNumCacheFiles(unitCacheDir, 1);
+
+    cache = new PersistentUnitCache(logger, cacheDir);
+    CompilationUnit result = cache.find(foo.getResourcePath());
+    assertNotNull(result);
+    assertEquals(foo.getContentId(), result.getContentId());
+    // Not just unloadable: the record was never copied.
+    assertFalse(cache.unitMap.containsKey(bar.getResourcePath()));
+    cache.shutdown();
+  }
+
+  /**
+   * A record that fails its checksum or can't be deserialized should be
+   * removed from the cache when it is first found, so that the unit is
+   * recompiled and cached again.
+   */
+  public void testCorruptRecordRemovedOnLoad() throws IOException, UnableToCompleteException,
+      InterruptedException {
+    TreeLogger logger = TreeLogger.NULL;
+    File cacheDir = lastCacheDir = File.createTempFile("PersistentUnitTest-corrupt", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    MockCompilationUnit foo = new MockCompilationUnit("com.example.Foo", "Foo: source1");
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source1");
+    writeCacheFile(cacheFile(unitCacheDir, 1), makeRecord(foo, new ThrowsIOException()),
+        corruptPayload(makeRecord(bar, bar.asCachedCompilationUnit())));
+
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    assertNull(cache.find(foo.getResourcePath()));
+    assertFalse(cache.unitMap.containsKey(foo.getResourcePath()));
+    assertNull(cache.find(bar.getContentId()));
+    assertFalse(cache.unitMap.containsKey(bar.getResourcePath()));
+    assertFalse(cache.unitMapByContentId.containsKey(bar.getContentId()));
+
+    // Rebuild Foo.
+    cache.add(foo);
+    assertNotNull(cache.find(foo.getResourcePath()));
+    cache.shutdown();
+
+    cache = new PersistentUnitCache(logger, cacheDir);
+    CompilationUnit result = cache.find(foo.getResourcePath());
+    assertNotNull(result);
+    assertEquals(foo.getContentId(), result.getContentId());
+    assertNull(cache.find(bar.getResourcePath()));
+    cache.shutdown();
+  }
+
   /**
    * Test if a file already exists with the name we want to put the cache dir
    * in.
@@ -231,6 +302,41 @@ public class PersistentUnitCacheTest extends TestCase {
     assertNumCacheFiles(unitCacheDir, 1);
   }
 
+  /**
+   * A cache file cut off in the middle of a record, for example by a crash,
+   * should keep the records before the cut.
+   */
+  public void testTruncatedCacheFile() throws IOException, UnableToCompleteException,
+      InterruptedException {
+    TreeLogger logger = TreeLogger.NULL;
+    MockCompilationUnit foo = new MockCompilationUnit("com.example.Foo", "Foo: source1");
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source1");
+    byte[] fooRecord = makeRecord(foo, foo.asCachedCompilationUnit());
+    byte[] barRecord = makeRecord(bar, bar.asCachedCompilationUnit());
+
+    // Cut inside the header, then inside the payload.
+    for (int keep : new int[] {3, barRecord.length - 1}) {
+      File cacheDir = lastCacheDir = File.createTempFile("PersistentUnitTest-truncated", "");
+      File unitCacheDir = mkCacheDir(cacheDir);
+      byte[] truncated = new byte[keep];
+      System.arraycopy(barRecord, 0, truncated, 0, keep);
+      File cacheFile = cacheFile(unitCacheDir, 1);
+      writeCacheFile(cacheFile, fooRecord, truncated);
+
+      PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+      CompilationUnit result = cache.find(foo.getResourcePath());
+      assertNotNull(result);
+      assertEquals(foo.getContentId(), result.getContentId());
+      assertNull(cache.find(bar.getResourcePath()));
+      cache.shutdown();
+
+      // The readable part of the file is kept.
+      assertTrue(cacheFile.exists());
+      assertNumCacheFiles(unitCacheDir, 1);
+      tearDown();
+    }
+  }
+
   private void assertNumCacheFiles(File unitCacheDir, int expected) {
     assertEquals(expected, unitCacheDir.list().length);
   }
@@ -260,6 +366,36 @@ public class PersistentUnitCacheTest extends TestCase {
     assertNumCacheFiles(unitCacheDir, 0);
   }
 
+  /**
+   * Flips a bit in the last byte of a record's payload.
+   */
+  private byte[] corruptPayload(byte[] record) {
+    record[record.length - 1] ^= 1;
+    return record;
+  }
+
+  private byte[] makeRecord(CompilationUnit unit, Object toSerialize) throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    ObjectOutputStream os = new ObjectOutputStream(payload);
+    os.writeObject(toSerialize);
+    os.close();
+
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    DataOutputStream stream = new DataOutputStream(record);
+    PersistentUnitCache.writeRecord(stream, unit.getResourcePath(), unit.getContentId().get(),
+        unit.getLastModified(), payload.toByteArray());
+    stream.close();
+    return record.toByteArray();
+  }
+
+  /**
+   * Returns a cache file name that sorts before any the cache creates itself.
+   */
+  private File cacheFile(File unitCacheDir, int index) {
+    return new File(unitCacheDir, PersistentUnitCache.CACHE_FILE_PREFIX
+        + String.format("%016X", index));
+  }
+
   private File mkCacheDir(File cacheDir) {
     assertNotNull(cacheDir);
     assertTrue(cacheDir.exists());
@@ -268,4 +404,13 @@ public class PersistentUnitCacheTest extends TestCase {
     unitCacheDir.mkdirs();
     return unitCacheDir;
   }
+
+  private void writeCacheFile(File cacheFile, byte[]... records) throws IOException {
+    DataOutputStream stream = new DataOutputStream(new FileOutputStream(cacheFile));
+    stream.writeInt(PersistentUnitCache.CACHE_FILE_MAGIC);
+    for (byte[] record : records) {
+      stream.write(record);
+    }
+    stream.close();
+  }
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.core.ext.linker.impl.StandardSymbolData;
+import com.google.gwt.dev.Permutation;
+import com.google.gwt.dev.Precompilation;
+import com.google.gwt.dev.Precompile;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.javac.CompilationStateBuilder;
+import com.google.gwt.dev.jjs.UnifiedAst.AST;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.impl.ArrayNormalizer;
+import com.google.gwt.dev.jjs.impl.CastNormalizer;
+import com.google.gwt.dev.jjs.impl.CatchBlockNormalizer;
+import com.google.gwt.dev.jjs.impl.EqualityNormalizer;
+import com.google.gwt.dev.jjs.impl.GenerateJavaScriptAST;
+import com.google.gwt.dev.jjs.impl.JavaToJavaScriptMap;
+import com.google.gwt.dev.jjs.impl.JsoDevirtualizer;
+import com.google.gwt.dev.jjs.impl.LongCastNormalizer;
+import com.google.gwt.dev.jjs.impl.LongEmulationNormalizer;
+import com.google.gwt.dev.jjs.impl.MethodInliner;
+import com.google.gwt.dev.jjs.impl.PostOptimizationCompoundAssignmentNormalizer;
+import com.google.gwt.dev.jjs.impl.Pruner;
+import com.google.gwt.dev.jjs.impl.RemoveEmptySuperCalls;
+import com.google.gwt.dev.jjs.impl.ReplaceGetClassOverrides;
+import com.google.gwt.dev.jjs.impl.ResolveRebinds;
+import com.google.gwt.dev.jjs.impl.TypeTightener;
+import com.google.gwt.dev.js.EvalFunctionsAtTopScope;
+import com.google.gwt.dev.js.JsInliner;
+import com.google.gwt.dev.js.JsNormalizer;
+import com.google.gwt.dev.js.JsObfuscateNamer;
+import com.google.gwt.dev.js.JsSymbolResolver;
+import com.google.gwt.dev.js.ast.JsName;
+import com.google.gwt.dev.js.ast.JsProgram;
+import com.google.gwt.dev.resource.Resource;
+import com.google.gwt.dev.util.Util;
+import com.google.gwt.dev.util.log.PrintWriterTreeLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Measures the time and allocation of individual compiler passes on real
+ * modules, so that the effect of a compiler change on compile times can be
+ * quantified.
+ *
+ * <p>
+ * Each module is loaded and precompiled once, and snapshots of its AST are
+ * taken at the points where the measured passes run in a permutation compile.
+ * Every measured run starts from a fresh copy of the relevant snapshot; the
+ * copy is made outside of the measurement. Results are averaged over the
+ * measured iterations, after a number of warmup iterations that let the JIT
+ * settle.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>java -Xmx2g -cp &lt;gwt-dev, gwt-user, sample sources, dev test
+ * classes&gt; com.google.gwt.dev.jjs.CompilerPassBenchmark [-warmup N]
+ * [-iterations N] module...</code>, for example with the modules
+ * <code>com.google.gwt.sample.showcase.Showcase</code> and
+ * <code>com.google.gwt.sample.expenses.Expenses</code>. The first permutation
+ * of each module is used.
+ * </p>
+ *
+ * <p>
+ * Allocation is measured for the current thread only, and requires a VM with
+ * per-thread allocation counters; run with
+ * {@code -Dgwt.jjs.optimizerThreads=1} (the default) and without
+ * {@code gwt.csb.buildThreads} to attribute all allocation correctly. The
+ * batched build pass, which compiles on one thread per processor, only reports
+ * the allocation of the calling thread.
+ * </p>
+ */
+public class CompilerPassBenchmark {
+
+  /**
+   * A measured unit of work.
+   */
+  private abstract static class Pass {
+    private final String name;
+
+    public Pass(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Runs the pass once; this is measured.
+     */
+    public abstract void run() throws Exception;
+
+    /**
+     * Prepares the input of the next run; this is not measured.
+     */
+    public void setUp() throws Exception {
+    }
+  }
+
+  /**
+   * Builds all units of the module from source, compiling them on the given
+   * number of threads.
+   */
+  private class BuildPass extends Pass {
+    private final int numCompileThreads;
+    private Set<Resource> resources;
+
+    public BuildPass(String name, int numCompileThreads) {
+      super(name);
+      this.numCompileThreads = numCompileThreads;
+    }
+
+    @Override
+    public void run() {
+      String oldThreads =
+          System.setProperty(CompilationStateBuilder.COMPILE_THREADS_PROPERTY, ""
+              + numCompileThreads);
+      try {
+        // A new builder has an empty unit cache, so all units are rebuilt.
+        new CompilationStateBuilder().doBuildFrom(logger, resources, null, true);
+      } finally {
+        if (oldThreads == null) {
+          System.clearProperty(CompilationStateBuilder.COMPILE_THREADS_PROPERTY);
+        } else {
+          System.setProperty(CompilationStateBuilder.COMPILE_THREADS_PROPERTY, oldThreads);
+        }
+      }
+    }
+
+    @Override
+    public void setUp() {
+      if (resources == null) {
+        resources = new HashSet<Resource>();
+        for (String path : module.getAllSourceFiles()) {
+          resources.add(module.findSourceFile(path));
+        }
+      }
+    }
+  }
+
+  private static final int DEFAULT_ITERATIONS = 10;
+
+  private static final int DEFAULT_WARMUP = 3;
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    List<String> moduleNames = new ArrayList<String>();
+    for (int i = 0; i < args.length; ++i) {
+      if ("-warmup".equals(args[i]) && i + 1 < args.length) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-iterations".equals(args[i]) && i + 1 < args.length) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if (args[i].startsWith("-")) {
+        printUsage();
+        return;
+      } else {
+        moduleNames.add(args[i]);
+      }
+    }
+    if (moduleNames.isEmpty() || iterations < 1) {
+      printUsage();
+      return;
+    }
+
+    PrintWriterTreeLogger logger = new PrintWriterTreeLogger();
+    logger.setMaxDetail(TreeLogger.WARN);
+    for (String moduleName : moduleNames) {
+      CompilerPassBenchmark benchmark = new CompilerPassBenchmark(logger, moduleName);
+      System.out.println(moduleName);
+      benchmark.run(warmup, iterations);
+    }
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: java " + CompilerPassBenchmark.class.getName()
+        + " [-warmup N] [-iterations N] module...");
+  }
+
+  /**
+   * A snapshot of the AST after generating the JavaScript AST, and the
+   * normalizations that immediately follow it.
+   */
+  private byte[] generatedJsAst;
+
+  private final Method getThreadAllocatedBytesMethod;
+
+  private JavaToJavaScriptMap jjsMap;
+
+  private JProgram jprogram;
+
+  private JsProgram jsProgram;
+
+  private final TreeLogger logger;
+
+  /**
+   * A snapshot of the AST after Java optimization and normalization, as input
+   * to {@link GenerateJavaScriptAST}.
+   */
+  private byte[] loweredAst;
+
+  private final ModuleDef module;
+
+  private final JJSOptionsImpl options = new JJSOptionsImpl();
+
+  private Permutation permutation;
+
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  /**
+   * A snapshot of the unified AST produced by precompilation.
+   */
+  private byte[] unifiedAst;
+
+  private CompilerPassBenchmark(TreeLogger logger, String moduleName)
+      throws UnableToCompleteException {
+    this.logger = logger;
+    module = ModuleDefLoader.loadFromClassPath(logger, moduleName);
+    options.setOutput(JsOutputOption.OBFUSCATED);
+    options.setAggressivelyOptimize(true);
+
+    Method method = null;
+    try {
+      Class<?> sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+      if (sunThreadMXBean.isInstance(threadMXBean)) {
+        method = sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (Exception e) {
+      method = null;
+    }
+    getThreadAllocatedBytesMethod = method;
+  }
+
+  private List<Pass> createPasses() {
+    List<Pass> passes = new ArrayList<Pass>();
+    passes.add(new BuildPass("JdtCompiler + GwtAstBuilder", 1));
+    int numProcessors = Runtime.getRuntime().availableProcessors();
+    if (numProcessors > 1) {
+      passes.add(new BuildPass("JdtCompiler + GwtAstBuilder, batched", numProcessors));
+    }
+    passes.add(new Pass("Precompile (generators + UnifyAst)") {
+      @Override
+      public void run() throws UnableToCompleteException {
+        // The result is dropped; the passes below start from the snapshot
+        // taken in prepare()
+        Precompilation precompilation = Precompile.precompile(logger, options, module, null);
+        if (precompilation == null) {
+          throw new UnableToCompleteException();
+        }
+      }
+    });
+    passes.add(new Pass("Pruner") {
+      @Override
+      public void run() {
+        Pruner.exec(jprogram, true);
+      }
+
+      @Override
+      public void setUp() throws Exception {
+        loadUnifiedAst();
+      }
+    });
+    passes.add(new Pass("TypeTightener") {
+      @Override
+      public void run() {
+        TypeTightener.exec(jprogram);
+      }
+
+      @Override
+      public void setUp() throws Exception {
+        loadUnifiedAst();
+      }
+    });
+    passes.add(new Pass("MethodInliner") {
+      @Override
+      public void run() {
+        MethodInliner.exec(jprogram);
+      }
+
+      @Override
+      public void setUp() throws Exception {
+        loadUnifiedAst();
+      }
+    });
+    passes.add(new Pass("GenerateJavaScriptAST") {
+      @Override
+      public void run() {
+        generateJavaScriptAst();
+      }
+
+      @Override
+      public void setUp() throws Exception {
+        loadAst(loweredAst);
+      }
+    });
+    passes.add(new Pass("JsInliner") {
+      @Override
+      public void run() {
+        JsInliner.exec(jsProgram);
+      }
+
+      @Override
+      public void setUp() throws Exception {
+        loadAst(generatedJsAst);
+      }
+    });
+    passes.add(new Pass("JsObfuscateNamer") {
+      @Override
+      public void run() {
+        JsObfuscateNamer.exec(jsProgram);
+      }
+
+      @Override
+      public void setUp() throws Exception {
+        loadAst(generatedJsAst);
+      }
+    });
+    return passes;
+  }
+
+  /**
+   * Generates the JavaScript AST for {@link #jprogram}, as in
+   * {@link JavaToJavaScriptCompiler#compilePermutation}.
+   */
+  private void generateJavaScriptAst() {
+    Map<StandardSymbolData, JsName> symbolTable =
+        new TreeMap<StandardSymbolData, JsName>(new SymbolData.ClassIdentComparator());
+    jjsMap =
+        GenerateJavaScriptAST.exec(jprogram, jsProgram, options.getOutput(), symbolTable,
+            permutation.getPropertyOracles());
+  }
+
+  private long getAllocatedBytes() {
+    if (getThreadAllocatedBytesMethod == null) {
+      return -1;
+    }
+    try {
+      return (Long) getThreadAllocatedBytesMethod.invoke(threadMXBean, Thread.currentThread()
+          .getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  private void loadAst(byte[] snapshot) throws Exception {
+    AST ast = Util.readStreamAsObject(new ByteArrayInputStream(snapshot), AST.class);
+    jprogram = ast.getJProgram();
+    jsProgram = ast.getJsProgram();
+    jjsMap = null;
+  }
+
+  private void loadUnifiedAst() throws Exception {
+    loadAst(unifiedAst);
+    ResolveRebinds.exec(jprogram, permutation.getOrderedRebindAnswers());
+  }
+
+  /**
+   * Precompiles the module and takes the AST snapshots that the passes start
+   * from, following the steps of
+   * {@link JavaToJavaScriptCompiler#compilePermutation}.
+   */
+  private void prepare() throws Exception {
+    Precompilation precompilation = Precompile.precompile(logger, options, module, null);
+    if (precompilation == null) {
+      throw new UnableToCompleteException();
+    }
+    permutation = precompilation.getPermutations()[0];
+    unifiedAst = snapshot(precompilation.getUnifiedAst().getFreshAst());
+
+    loadUnifiedAst();
+    JavaToJavaScriptCompiler.optimize(options, jprogram);
+    RemoveEmptySuperCalls.exec(jprogram);
+    JsoDevirtualizer.exec(jprogram);
+    CatchBlockNormalizer.exec(jprogram);
+    PostOptimizationCompoundAssignmentNormalizer.exec(jprogram);
+    LongCastNormalizer.exec(jprogram);
+    LongEmulationNormalizer.exec(jprogram);
+    CastNormalizer.exec(jprogram, options.isCastCheckingDisabled());
+    ArrayNormalizer.exec(jprogram);
+    EqualityNormalizer.exec(jprogram);
+    Pruner.exec(jprogram, false);
+    ReplaceGetClassOverrides.exec(jprogram);
+    jprogram.typeOracle.recomputeAfterOptimizations();
+    loweredAst = snapshot(new AST(jprogram, jsProgram));
+
+    generateJavaScriptAst();
+    JsNormalizer.exec(jsProgram);
+    JsSymbolResolver.exec(jsProgram);
+    EvalFunctionsAtTopScope.exec(jsProgram, jjsMap);
+    generatedJsAst = snapshot(new AST(jprogram, jsProgram));
+
+    jprogram = null;
+    jsProgram = null;
+    jjsMap = null;
+  }
+
+  private void run(int warmup, int iterations) throws Exception {
+    prepare();
+    System.out.println(String.format("  %-36s %12s %12s %12s %12s", "pass", "ms/op", "min ms",
+        "MB/op", "MB/s"));
+    for (Pass pass : createPasses()) {
+      for (int i = 0; i < warmup; ++i) {
+        pass.setUp();
+        pass.run();
+      }
+
+      long totalNanos = 0;
+      long minNanos = Long.MAX_VALUE;
+      long totalBytes = 0;
+      for (int i = 0; i < iterations; ++i) {
+        pass.setUp();
+        System.gc();
+        long startBytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        pass.run();
+        long nanos = System.nanoTime() - start;
+        long endBytes = getAllocatedBytes();
+        totalNanos += nanos;
+        minNanos = Math.min(minNanos, nanos);
+        totalBytes = (startBytes < 0 || endBytes < 0 || totalBytes < 0) ? -1
+            : totalBytes + endBytes - startBytes;
+      }
+
+      double msPerOp = totalNanos / 1e6 / iterations;
+      String mbPerOp = "n/a";
+      String mbPerSecond = "n/a";
+      if (totalBytes >= 0) {
+        mbPerOp = String.format("%.1f", totalBytes / 1048576.0 / iterations);
+        mbPerSecond = String.format("%.1f", totalBytes / 1048576.0 / (totalNanos / 1e9));
+      }
+      System.out.println(String.format("  %-36s %12.1f %12.1f %12s %12s", pass.getName(),
+          msPerOp, minNanos / 1e6, mbPerOp, mbPerSecond));
+    }
+  }
+
+  private byte[] snapshot(AST ast) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Util.writeObjectToStream(out, ast);
+    return out.toByteArray();
+  }
+}
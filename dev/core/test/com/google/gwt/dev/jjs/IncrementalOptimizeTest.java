@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.impl.JJSTestBase;
+import com.google.gwt.dev.util.arg.OptionOptimize;
+
+/**
+ * Tests that the incremental optimizer mode of
+ * {@link JavaToJavaScriptCompiler#optimize} reaches the same program as full
+ * optimizer passes.
+ */
+public class IncrementalOptimizeTest extends JJSTestBase {
+
+  private String oldIncremental;
+
+  public void testLimitedPassBudget() throws Exception {
+    addSampleCode();
+    String full = optimize(false, 1);
+    String incremental = optimize(true, 1);
+    assertEquals(full, incremental);
+  }
+
+  public void testSameFixedPoint() throws Exception {
+    addSampleCode();
+    String full = optimize(false, OptionOptimize.OPTIMIZE_LEVEL_MAX);
+    String incremental = optimize(true, OptionOptimize.OPTIMIZE_LEVEL_MAX);
+    assertEquals(full, incremental);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    oldIncremental = System.getProperty(JavaToJavaScriptCompiler.INCREMENTAL_OPTIMIZE_PROPERTY);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (oldIncremental == null) {
+      System.clearProperty(JavaToJavaScriptCompiler.INCREMENTAL_OPTIMIZE_PROPERTY);
+    } else {
+      System.setProperty(JavaToJavaScriptCompiler.INCREMENTAL_OPTIMIZE_PROPERTY, oldIncremental);
+    }
+    super.tearDown();
+  }
+
+  private void addSampleCode() {
+    addSnippetClassDecl("static volatile boolean b");
+    addSnippetClassDecl("static final int CONST = 3");
+    addSnippetClassDecl("static int counter");
+    addSnippetClassDecl("static abstract class A { abstract int f(); int g() { return 1; } }");
+    addSnippetClassDecl("static class B extends A { int f() { return CONST; } }");
+    addSnippetClassDecl("static class C extends B { int g() { return 2; } }");
+    addSnippetClassDecl("static class Empty { Empty() { } }");
+    addSnippetClassDecl("static class Unused { void u() { counter++; } }");
+    addSnippetClassDecl("static int identity(int x) { return x; }");
+    addSnippetClassDecl("static boolean never() { return false; }");
+    for (int i = 0; i < 20; ++i) {
+      addSnippetClassDecl("static int m" + i + "(A a, C c) {"
+          + " if (never()) { return " + i + "; }"
+          + " int x = identity(true ? CONST : 4);"
+          + " new Empty();"
+          + " if (b) { return c.f() + c.g(); }"
+          + " return a.f() + x + (b ? m" + ((i + 1) % 20) + "(a, c) : 0); }");
+    }
+  }
+
+  private String getSource(JProgram program) {
+    StringBuilder source = new StringBuilder();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type.getName().startsWith("test.")) {
+        source.append(type.toSource());
+      }
+    }
+    return source.toString();
+  }
+
+  private String optimize(boolean incremental, int optimizationLevel) throws Exception {
+    System.setProperty(JavaToJavaScriptCompiler.INCREMENTAL_OPTIMIZE_PROPERTY, ""
+        + incremental);
+    StringBuilder main = new StringBuilder();
+    for (int i = 0; i < 20; ++i) {
+      main.append("counter += m" + i + "(new B(), new C());\n");
+    }
+    JProgram program = compileSnippet("void", main.toString());
+    JJSOptionsImpl options = new JJSOptionsImpl();
+    options.setOptimizationLevel(optimizationLevel);
+    options.setAggressivelyOptimize(false);
+    JavaToJavaScriptCompiler.optimize(options, program);
+    return getSource(program);
+  }
+}
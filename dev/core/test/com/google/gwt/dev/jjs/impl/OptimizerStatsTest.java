@@ -15,9 +15,13 @@
  */
 package com.google.gwt.dev.jjs.impl;
 
+import com.google.gwt.dev.jjs.ast.JMethod;
+
 import junit.framework.TestCase;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Tests the {@link OptimizerStats} class.
@@ -75,4 +79,23 @@ public class OptimizerStatsTest extends TestCase {
     childStats.recordModified();
     assertTrue(stats.didChange());
   }
+
+  public void testOptimizerStatsModifiedMethods() {
+    OptimizerStats stats = new OptimizerStats("foo");
+    OptimizerStats trackedStats = new OptimizerStats("bar");
+    OptimizerStats untrackedStats = new OptimizerStats("baz");
+    stats.add(trackedStats);
+    stats.add(untrackedStats);
+    assertTrue(stats.getModifiedMethods().isEmpty());
+
+    trackedStats.recordModified().recordModifiedMethods(
+        Collections.singletonList(JMethod.NULL_METHOD));
+    Set<JMethod> modified = stats.getModifiedMethods();
+    assertEquals(1, modified.size());
+    assertTrue(modified.contains(JMethod.NULL_METHOD));
+
+    // A change without a change set invalidates the whole change set.
+    untrackedStats.recordModified();
+    assertNull(stats.getModifiedMethods());
+  }
 }
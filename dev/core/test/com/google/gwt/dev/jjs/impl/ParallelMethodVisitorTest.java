@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+/**
+ * Tests that the parallel modes of {@link DeadCodeElimination} and
+ * {@link MethodCallTightener} produce the same program as the sequential ones.
+ */
+public class ParallelMethodVisitorTest extends JJSTestBase {
+
+  private String oldThreads;
+
+  public void testSameOutput() throws UnableToCompleteException {
+    addSnippetClassDecl("static volatile boolean b");
+    addSnippetClassDecl("static final int CONST = 3");
+    addSnippetClassDecl("static abstract class A { abstract int f(); int g() { return 1; } }");
+    addSnippetClassDecl("static class B extends A { int f() { return CONST; } }");
+    addSnippetClassDecl("static class C extends B { int g() { return 2; } }");
+    addSnippetClassDecl("static class Empty { Empty() { } }");
+    StringBuilder main = new StringBuilder();
+    // Enough methods to spread over every chunk
+    for (int i = 0; i < 40; ++i) {
+      addSnippetClassDecl("static int m" + i + "(A a, C c) {"
+          + " if (false) { return " + i + "; }"
+          + " int x = true ? CONST : 4;"
+          + " new Empty();"
+          + " if (b) { return c.f() + c.g(); }"
+          + " return a.f() + x + (b ? m" + ((i + 1) % 40) + "(a, c) : 0); }");
+      main.append("m" + i + "(new B(), new C());\n");
+    }
+
+    JProgram sequential = compileSnippet("void", main.toString());
+    optimize(sequential, false);
+
+    JProgram parallel = compileSnippet("void", main.toString());
+    optimize(parallel, true);
+
+    assertEquals(getSource(sequential), getSource(parallel));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    oldThreads = System.getProperty(ParallelMethodVisitor.THREADS_PROPERTY);
+    System.setProperty(ParallelMethodVisitor.THREADS_PROPERTY, "4");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (oldThreads == null) {
+      System.clearProperty(ParallelMethodVisitor.THREADS_PROPERTY);
+    } else {
+      System.setProperty(ParallelMethodVisitor.THREADS_PROPERTY, oldThreads);
+    }
+    super.tearDown();
+  }
+
+  private String getSource(JProgram program) {
+    StringBuilder source = new StringBuilder();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type.getName().startsWith("test.")) {
+        source.append(type.toSource());
+      }
+    }
+    return source.toString();
+  }
+
+  private void optimize(JProgram program, boolean parallel) {
+    assertTrue(ParallelMethodVisitor.isEnabled());
+    // Repeat like the optimizer loop does, so later passes see earlier changes
+    for (int pass = 0; pass < 3; ++pass) {
+      if (parallel) {
+        MethodCallTightener.execParallel(program);
+        DeadCodeElimination.execParallel(program);
+      } else {
+        MethodCallTightener.exec(program);
+        DeadCodeElimination.exec(program);
+      }
+    }
+  }
+}
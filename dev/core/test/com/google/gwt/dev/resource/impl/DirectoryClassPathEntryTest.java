@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Tests the incremental scanning of {@link DirectoryClassPathEntry}.
+ */
+public class DirectoryClassPathEntryTest extends TestCase {
+
+  private File dir;
+
+  public void testIncrementalScan() {
+    File pkg = new File(dir, "pkg");
+    assertTrue(pkg.mkdir());
+    File a = new File(pkg, "A.java");
+    Util.writeStringAsFile(a, "class A {}");
+    makeOld(pkg);
+    makeOld(dir);
+
+    DirectoryClassPathEntry cpe = new DirectoryClassPathEntry(dir, true);
+    PathPrefixSet pps = new PathPrefixSet();
+    pps.add(new PathPrefix("pkg/", null));
+
+    Map<AbstractResource, PathPrefix> first = cpe.findApplicableResources(TreeLogger.NULL, pps);
+    assertEquals(1, first.size());
+    AbstractResource resourceA = first.keySet().iterator().next();
+    assertEquals("pkg/A.java", resourceA.getPath());
+
+    // Nothing changed, the same resource is returned
+    Map<AbstractResource, PathPrefix> second = cpe.findApplicableResources(TreeLogger.NULL, pps);
+    assertEquals(1, second.size());
+    assertSame(resourceA, second.keySet().iterator().next());
+
+    // Adding a file updates the directory and keeps the unchanged resource
+    Util.writeStringAsFile(new File(pkg, "B.java"), "class B {}");
+    Map<AbstractResource, PathPrefix> third = cpe.findApplicableResources(TreeLogger.NULL, pps);
+    assertEquals(2, third.size());
+    assertTrue(third.containsKey(resourceA));
+
+    // Deleting a file removes its resource
+    assertTrue(a.delete());
+    Map<AbstractResource, PathPrefix> fourth = cpe.findApplicableResources(TreeLogger.NULL, pps);
+    assertEquals(1, fourth.size());
+    assertEquals("pkg/B.java", fourth.keySet().iterator().next().getPath());
+  }
+
+  @Override
+  protected void setUp() throws IOException {
+    dir = File.createTempFile("DirectoryClassPathEntryTest", "");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+    // Canonicalize, the entry requires an absolute path
+    dir = dir.getCanonicalFile();
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(dir, false);
+  }
+
+  /**
+   * Backdates a directory so that its listing can be trusted.
+   */
+  private void makeOld(File file) {
+    assertTrue(file.setLastModified(System.currentTimeMillis() - 60000));
+  }
+}
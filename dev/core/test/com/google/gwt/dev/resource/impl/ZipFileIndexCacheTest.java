@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.resource.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests {@link ZipFileIndexCache}.
+ */
+public class ZipFileIndexCacheTest extends TestCase {
+
+  private File cacheDir;
+  private File zipFile;
+
+  public void testRoundTrip() {
+    ZipFileIndexCache cache = new ZipFileIndexCache(cacheDir);
+    assertNull(cache.read(TreeLogger.NULL, zipFile));
+
+    String[] names = {"com/example/A.class", "com/example/\u00e9t\u00e9.txt"};
+    cache.write(TreeLogger.NULL, zipFile, zipFile.length(), zipFile.lastModified(),
+        Arrays.asList(names));
+    assertTrue(Arrays.equals(names, cache.read(TreeLogger.NULL, zipFile)));
+  }
+
+  public void testStaleIndex() {
+    ZipFileIndexCache cache = new ZipFileIndexCache(cacheDir);
+    cache.write(TreeLogger.NULL, zipFile, zipFile.length(), zipFile.lastModified() - 1000,
+        Arrays.asList("A.class"));
+    assertNull(cache.read(TreeLogger.NULL, zipFile));
+
+    cache.write(TreeLogger.NULL, zipFile, zipFile.length() + 1, zipFile.lastModified(),
+        Arrays.asList("A.class"));
+    assertNull(cache.read(TreeLogger.NULL, zipFile));
+  }
+
+  @Override
+  protected void setUp() throws IOException {
+    cacheDir = File.createTempFile("ZipFileIndexCacheTest", "");
+    assertTrue(cacheDir.delete());
+    assertTrue(cacheDir.mkdir());
+    zipFile = File.createTempFile("ZipFileIndexCacheTest", ".jar").getAbsoluteFile();
+    Util.writeStringAsFile(zipFile, "not really a jar");
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(cacheDir, false);
+    zipFile.delete();
+  }
+}
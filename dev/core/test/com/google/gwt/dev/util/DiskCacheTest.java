@@ -17,13 +17,16 @@ package com.google.gwt.dev.util;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 
 /**
  * Tests {@link DiskCache}.
  */
 public class DiskCacheTest extends TestCase {
-  private final DiskCache diskCache = new DiskCache();
+  private final DiskCache diskCache = createDiskCache();
 
   public void testBytes() {
     byte[] a = new byte[0];
@@ -49,6 +52,21 @@ public class DiskCacheTest extends TestCase {
     }
   }
 
+  public void testStreams() throws IOException {
+    byte[] bytes = new byte[70000];
+    for (int i = 1; i < bytes.length; ++i) {
+      bytes[i] = (byte) (i * 31 + bytes[i - 1]);
+    }
+    long token = diskCache.transferFromStream(new ByteArrayInputStream(bytes));
+    long emptyToken = diskCache.transferFromStream(new ByteArrayInputStream(new byte[0]));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    diskCache.transferToStream(token, out);
+    assertTrue(Arrays.equals(bytes, out.toByteArray()));
+    assertTrue(Arrays.equals(bytes, diskCache.readByteArray(token)));
+    assertEquals(0, diskCache.readByteArray(emptyToken).length);
+  }
+
   public void testStrings() {
     String a = "";
     String b = "abjdsfkl;jasdf";
@@ -76,4 +94,8 @@ public class DiskCacheTest extends TestCase {
           expected, actual);
     }
   }
+
+  protected DiskCache createDiskCache() {
+    return new DiskCache();
+  }
 }
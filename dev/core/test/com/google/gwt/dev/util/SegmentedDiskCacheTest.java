@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util;
+
+import java.util.Arrays;
+
+/**
+ * Tests {@link SegmentedDiskCache}. Uses tiny segments so that records span
+ * several segments and some records are larger than a segment.
+ */
+public class SegmentedDiskCacheTest extends DiskCacheTest {
+
+  public void testConcurrentAccess() throws InterruptedException {
+    final DiskCache diskCache = createDiskCache();
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; ++t) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            long[] tokens = new long[200];
+            byte[][] values = new byte[tokens.length][];
+            for (int i = 0; i < tokens.length; ++i) {
+              values[i] = new byte[(i * 37 + seed) % 3000];
+              Arrays.fill(values[i], (byte) (i + seed));
+              tokens[i] = diskCache.writeByteArray(values[i]);
+            }
+            for (int i = 0; i < tokens.length; ++i) {
+              assertTrue(Arrays.equals(values[i], diskCache.readByteArray(tokens[i])));
+            }
+          } catch (Throwable e) {
+            synchronized (failure) {
+              failure[0] = e;
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    synchronized (failure) {
+      if (failure[0] != null) {
+        throw new RuntimeException(failure[0]);
+      }
+    }
+  }
+
+  @Override
+  protected DiskCache createDiskCache() {
+    return new SegmentedDiskCache(1024);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Tests the <code>BufferedTreeLogger</code>.
+ */
+public class BufferedTreeLoggerTest extends TestCase {
+
+  public void testReplay() {
+    StringWriter sw = new StringWriter();
+    PrintWriterTreeLogger logger = new PrintWriterTreeLogger(new PrintWriter(sw, true));
+    logger.setMaxDetail(TreeLogger.WARN);
+
+    BufferedTreeLogger buffer = new BufferedTreeLogger(logger);
+    assertTrue(buffer.isLoggable(TreeLogger.WARN));
+    assertFalse(buffer.isLoggable(TreeLogger.DEBUG));
+
+    buffer.log(TreeLogger.WARN, "TEST-WARN-STRING");
+    buffer.log(TreeLogger.DEBUG, "TEST-DEBUG-STRING");
+    TreeLogger branch = buffer.branch(TreeLogger.DEBUG, "TEST-BRANCH-STRING");
+    branch.log(TreeLogger.ERROR, "TEST-ERROR-STRING");
+    assertEquals("", sw.toString());
+
+    buffer.replay(logger);
+    String output = sw.toString();
+    int posWarn = output.indexOf("TEST-WARN-STRING");
+    int posBranch = output.indexOf("TEST-BRANCH-STRING");
+    int posError = output.indexOf("TEST-ERROR-STRING");
+    assertTrue(posWarn != -1);
+    assertTrue(posWarn < posBranch);
+    assertTrue(posBranch < posError);
+    assertEquals(-1, output.indexOf("TEST-DEBUG-STRING"));
+  }
+}
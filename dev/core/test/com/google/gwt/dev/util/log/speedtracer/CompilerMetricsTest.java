@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.util.log.speedtracer;
+
+import com.google.gwt.dev.json.JsonException;
+import com.google.gwt.dev.json.JsonObject;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests {@link CompilerMetrics}.
+ */
+public class CompilerMetricsTest extends TestCase {
+
+  public void testAggregation() throws Exception {
+    CompilerMetrics metrics = new CompilerMetrics();
+    metrics.recordImpl("com.example.App", 0, "Optimize", 2000000L, 1000000L, 100, 5000);
+    metrics.recordImpl("com.example.App", 0, "Optimize", 3000000L, 2000000L, 200, 4000);
+    metrics.recordImpl("com.example.App", 1, "Optimize", 7000000L, -1, -1, 6000);
+
+    String[] lines = metrics.getMetricsAsJson().split("\n");
+    assertEquals(2, lines.length);
+
+    JsonObject perm0 = parse(lines[0]);
+    assertEquals("com.example.App", perm0.get("module").asString().getString());
+    assertEquals(0, perm0.get("permutation").asNumber().getInteger());
+    assertEquals("Optimize", perm0.get("phase").asString().getString());
+    assertEquals(2, perm0.get("count").asNumber().getInteger());
+    assertEquals(5, perm0.get("wallMillis").asNumber().getInteger());
+    assertEquals(3, perm0.get("cpuMillis").asNumber().getInteger());
+    assertEquals(300, perm0.get("allocatedBytes").asNumber().getInteger());
+    assertEquals(5000, perm0.get("processHeapHighWaterBytes").asNumber().getInteger());
+
+    JsonObject perm1 = parse(lines[1]);
+    assertEquals(1, perm1.get("permutation").asNumber().getInteger());
+    assertEquals(-1, perm1.get("cpuMillis").asNumber().getInteger());
+    assertEquals(-1, perm1.get("allocatedBytes").asNumber().getInteger());
+
+    metrics.reset();
+    assertEquals("", metrics.getMetricsAsJson());
+  }
+
+  public void testCsv() {
+    CompilerMetrics metrics = new CompilerMetrics();
+    metrics.recordImpl("com.example.App", -1, "Generator \"Other\"", 1000000L, 0, 0, 10);
+
+    String[] lines = metrics.getMetricsAsCsv().split("\n");
+    assertEquals(2, lines.length);
+    assertEquals("module,permutation,phase,count,wallMillis,cpuMillis,allocatedBytes,"
+        + "processHeapHighWaterBytes", lines[0]);
+    assertEquals("\"com.example.App\",-1,\"Generator \"\"Other\"\"\",1,1,0,0,10", lines[1]);
+  }
+
+  public void testInheritAttribution() throws Exception {
+    final CompilerMetrics metrics = new CompilerMetrics();
+    Callable<Void> task = new Callable<Void>() {
+      public Void call() {
+        metrics.record(CompilerEventType.OPTIMIZE, metrics.sample(), null);
+        return null;
+      }
+    };
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      // Start the pool thread before the module is set, like a shared pool.
+      pool.submit(new Callable<Void>() {
+        public Void call() {
+          return null;
+        }
+      }).get();
+      CompilerMetrics.setModule("com.example.Pooled");
+      CompilerMetrics.setPermutation(2);
+      pool.submit(CompilerMetrics.inheritAttribution(task)).get();
+      // Afterwards, the pool thread is back to its own attribution.
+      pool.submit(task).get();
+    } finally {
+      CompilerMetrics.setModule(null);
+      CompilerMetrics.setPermutation(-1);
+      pool.shutdown();
+    }
+    String csv = metrics.getMetricsAsCsv();
+    assertTrue(csv, csv.contains("\"com.example.Pooled\",2,\"Optimize\",1,"));
+    assertTrue(csv, csv.contains("\"\",-1,\"Optimize\",1,"));
+  }
+
+  public void testSample() {
+    CompilerMetrics metrics = new CompilerMetrics();
+    CompilerMetrics.Sample start = metrics.sample();
+    CompilerMetrics.setModule("com.example.Other");
+    CompilerMetrics.setPermutation(3);
+    try {
+      metrics.record(CompilerEventType.OPTIMIZE, start, null);
+    } finally {
+      CompilerMetrics.setModule(null);
+      CompilerMetrics.setPermutation(-1);
+    }
+    String csv = metrics.getMetricsAsCsv();
+    assertTrue(csv, csv.contains("\"com.example.Other\",3,\"Optimize\",1,"));
+  }
+
+  private JsonObject parse(String line) throws IOException, JsonException {
+    return JsonObject.parse(new StringReader(line));
+  }
+}
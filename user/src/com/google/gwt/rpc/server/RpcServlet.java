@@ -23,6 +23,7 @@ import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.server.rpc.AbstractRemoteServiceServlet;
 import com.google.gwt.user.server.rpc.RPCRequest;
 import com.google.gwt.user.server.rpc.RPCServletUtils;
+import com.google.gwt.user.server.rpc.ResponseCompressor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -35,7 +36,7 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.DeflaterOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -217,32 +218,41 @@ public class RpcServlet extends AbstractRemoteServiceServlet {
     boolean canCompress = RPCServletUtils.acceptsGzipEncoding(request)
         && shouldCompressResponse(request, response);
 
+    ResponseCompressor compressor = null;
     OutputStream out;
     if (DUMP_PAYLOAD) {
       out = new ByteArrayOutputStream();
 
     } else if (canCompress) {
-      RPCServletUtils.setGzipEncodingHeader(response);
-      out = new GZIPOutputStream(response.getOutputStream());
+      compressor = getResponseCompressor();
+      RPCServletUtils.setContentEncodingHeader(response, compressor);
+      out = compressor.openStream(response.getOutputStream());
 
     } else {
       out = response.getOutputStream();
     }
 
-    // Invoke the core dispatching logic, which returns the serialized result.
-    processCall(clientOracle, requestPayload, out);
-
-    if (DUMP_PAYLOAD) {
-      byte[] bytes = ((ByteArrayOutputStream) out).toByteArray();
-      System.out.println(new String(bytes, "UTF-8"));
-      response.getOutputStream().write(bytes);
-    } else if (canCompress) {
-      /*
-       * We want to write the end of the gzip data, but not close the underlying
-       * OutputStream in case there are servlet filters that want to write
-       * headers after processPost().
-       */
-      ((GZIPOutputStream) out).finish();
+    try {
+      // Invoke the core dispatching logic, which returns the serialized result.
+      processCall(clientOracle, requestPayload, out);
+
+      if (DUMP_PAYLOAD) {
+        byte[] bytes = ((ByteArrayOutputStream) out).toByteArray();
+        System.out.println(new String(bytes, "UTF-8"));
+        response.getOutputStream().write(bytes);
+      } else if (canCompress) {
+        /*
+         * We want to write the end of the gzip data, but not close the
+         * underlying OutputStream in case there are servlet filters that want
+         * to write headers after processPost().
+         */
+        ((DeflaterOutputStream) out).finish();
+      }
+    } finally {
+      if (compressor != null) {
+        // Releases the Deflater if the response could not be written
+        compressor.discard(out);
+      }
     }
   }
 
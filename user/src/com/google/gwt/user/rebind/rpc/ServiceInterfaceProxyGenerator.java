@@ -18,6 +18,7 @@ package com.google.gwt.user.rebind.rpc;
 import com.google.gwt.core.ext.GeneratorContext;
 import com.google.gwt.core.ext.IncrementalGenerator;
 import com.google.gwt.core.ext.RebindResult;
+import com.google.gwt.core.ext.SupportsConcurrentGeneration;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.core.ext.typeinfo.JClassType;
@@ -26,8 +27,13 @@ import com.google.gwt.core.ext.typeinfo.TypeOracle;
 /**
  * Generator for producing the asynchronous version of a
  * {@link com.google.gwt.user.client.rpc.RemoteService RemoteService} interface.
+ * <p>
+ * It keeps no state between invocations, so it can run concurrently with other
+ * generators; subclasses that override {@link #createProxyCreator} must
+ * preserve this.
  */
-public class ServiceInterfaceProxyGenerator extends IncrementalGenerator {
+public class ServiceInterfaceProxyGenerator extends IncrementalGenerator implements
+    SupportsConcurrentGeneration {
 
   /*
    * A version id. Increment this as needed, when structural changes are made to
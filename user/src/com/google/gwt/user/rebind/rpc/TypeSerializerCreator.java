@@ -80,18 +80,19 @@ public class TypeSerializerCreator {
    */
   private static final String GWT_CREATEMETHODMAP_SHARD_SIZE = "gwt.typecreator.shard.size";
 
-  private static int shardSize = -1;
+  private static volatile int shardSize = -1;
 
   private static void computeShardSize(TreeLogger logger) throws UnableToCompleteException {
     String shardSizeProperty =
         System.getProperty(GWT_CREATEMETHODMAP_SHARD_SIZE, DEFAULT_CREATEMETHODMAP_SHARD_SIZE);
     try {
-      shardSize = Integer.valueOf(shardSizeProperty);
-      if (shardSize < 0) {
+      int size = Integer.valueOf(shardSizeProperty);
+      if (size < 0) {
         logger.log(TreeLogger.ERROR, GWT_CREATEMETHODMAP_SHARD_SIZE + " must be non-negative: "
             + shardSizeProperty);
         throw new UnableToCompleteException();
       }
+      shardSize = size;
     } catch (NumberFormatException e) {
       logger.log(TreeLogger.ERROR, "Property " + GWT_CREATEMETHODMAP_SHARD_SIZE + " not a number: "
           + shardSizeProperty, e);
@@ -122,6 +122,17 @@ public abstract class AbstractRemoteServiceServlet extends HttpServlet {
     return getThreadLocalRequest().getHeader(STRONG_NAME_HEADER);
   }
 
+  /**
+   * Returns the compressor used for responses that should be compressed. This
+   * implementation returns {@link ResponseCompressor#getDefault()}. Subclasses
+   * can override it, e.g. to use a different compression level.
+   * 
+   * @return the compressor for this servlet's responses
+   */
+  protected ResponseCompressor getResponseCompressor() {
+    return ResponseCompressor.getDefault();
+  }
+
   /**
    * Gets the <code>HttpServletRequest</code> object for the current call. It is
    * stored thread-locally so that simultaneous invocations can have different
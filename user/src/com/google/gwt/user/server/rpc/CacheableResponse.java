@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation on RPC methods indicating that their responses depend only on
+ * their arguments, so that {@link RemoteServiceServlet} may answer a request
+ * with the response it encoded for an earlier request with the same arguments
+ * and serialization policy, without invoking the method. Only successful
+ * responses are cached; calls that throw are always repeated.
+ * <p>
+ * The annotation may be placed on the method of the service interface or on
+ * its implementation. Methods that return data specific to the current user,
+ * or that have side effects, must not be annotated. Cached responses are still
+ * passed to {@link RemoteServiceServlet#onAfterResponseSerialized(String)},
+ * and their compressed form is kept by the servlet's
+ * {@link ResponseCompressor}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheableResponse {
+
+  /**
+   * The number of seconds a cached response may be reused for.
+   */
+  int timeToLive() default 60;
+}
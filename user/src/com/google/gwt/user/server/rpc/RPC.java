@@ -27,6 +27,11 @@ import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
 import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
 import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
@@ -56,6 +61,41 @@ import java.util.Set;
  */
 public final class RPC {
 
+  /**
+   * A serialized response, which can be converted to a String or written to a
+   * stream.
+   */
+  private static class EncodedResponse {
+    private final ServerSerializationStreamWriter stream;
+    private final boolean wasThrown;
+
+    public EncodedResponse(ServerSerializationStreamWriter stream, boolean wasThrown) {
+      this.stream = stream;
+      this.wasThrown = wasThrown;
+    }
+
+    @Override
+    public String toString() {
+      return getPrefix() + stream.toString();
+    }
+
+    /**
+     * Writes the response to <code>out</code> as UTF-8, without closing it.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(out, CHARSET_UTF8));
+      writer.write(getPrefix());
+      stream.writeTo(writer);
+      writer.flush();
+    }
+
+    private String getPrefix() {
+      return wasThrown ? "//EX" : "//OK";
+    }
+  }
+
+  private static final String CHARSET_UTF8 = "UTF-8";
+
   /**
    * Maps primitive wrapper classes to their corresponding primitive class.
    */
@@ -377,20 +417,37 @@ public final class RPC {
 
   public static String encodeResponseForFailure(Method serviceMethod, Throwable cause,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
-    if (cause == null) {
-      throw new NullPointerException("cause cannot be null");
-    }
-
-    if (serializationPolicy == null) {
-      throw new NullPointerException("serializationPolicy");
-    }
+    return encodeFailure(serviceMethod, cause, serializationPolicy, flags).toString();
+  }
 
-    if (serviceMethod != null && !RPCServletUtils.isExpectedException(serviceMethod, cause)) {
-      throw new UnexpectedException("Service method '" + getSourceRepresentation(serviceMethod)
-          + "' threw an unexpected exception: " + cause.toString(), cause);
-    }
+  /**
+   * Serializes an exception with the default serialization policy, like
+   * {@link #encodeResponseForFailure(Method, Throwable)}, and writes it to
+   * <code>stream</code> as UTF-8.
+   * 
+   * @throws IOException if writing to <code>stream</code> fails
+   * @see #streamResponseForFailure(Method, Throwable, SerializationPolicy, int,
+   *      OutputStream)
+   */
+  public static void streamResponseForFailure(Method serviceMethod, Throwable cause,
+      OutputStream stream) throws SerializationException, IOException {
+    streamResponseForFailure(serviceMethod, cause, getDefaultSerializationPolicy(),
+        AbstractSerializationStream.DEFAULT_FLAGS, stream);
+  }
 
-    return encodeResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+  /**
+   * Serializes an exception, like
+   * {@link #encodeResponseForFailure(Method, Throwable, SerializationPolicy, int)}
+   * , and writes it to <code>stream</code> as UTF-8 without building the
+   * response as a String first. The exception is fully serialized before
+   * anything is written to <code>stream</code>, which is not closed.
+   * 
+   * @throws IOException if writing to <code>stream</code> fails
+   */
+  public static void streamResponseForFailure(Method serviceMethod, Throwable cause,
+      SerializationPolicy serializationPolicy, int flags, OutputStream stream)
+      throws SerializationException, IOException {
+    encodeFailure(serviceMethod, cause, serializationPolicy, flags).writeTo(stream);
   }
 
   /**
@@ -444,31 +501,7 @@ public final class RPC {
 
   public static String encodeResponseForSuccess(Method serviceMethod, Object object,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
-    if (serviceMethod == null) {
-      throw new NullPointerException("serviceMethod cannot be null");
-    }
-
-    if (serializationPolicy == null) {
-      throw new NullPointerException("serializationPolicy");
-    }
-
-    Class<?> methodReturnType = serviceMethod.getReturnType();
-    if (methodReturnType != void.class && object != null) {
-      Class<?> actualReturnType;
-      if (methodReturnType.isPrimitive()) {
-        actualReturnType = getPrimitiveClassFromWrapper(object.getClass());
-      } else {
-        actualReturnType = object.getClass();
-      }
-
-      if (actualReturnType == null || !methodReturnType.isAssignableFrom(actualReturnType)) {
-        throw new IllegalArgumentException("Type '" + printTypeName(object.getClass())
-            + "' does not match the return type in the method's signature: '"
-            + getSourceRepresentation(serviceMethod) + "'");
-      }
-    }
-
-    return encodeResponse(methodReturnType, object, false, flags, serializationPolicy);
+    return encodeSuccess(serviceMethod, object, serializationPolicy, flags).toString();
   }
 
   /**
@@ -548,6 +581,116 @@ public final class RPC {
 
   public static String invokeAndEncodeResponse(Object target, Method serviceMethod, Object[] args,
       SerializationPolicy serializationPolicy, int flags) throws SerializationException {
+    return invokeAndEncode(target, serviceMethod, args, serializationPolicy, flags).toString();
+  }
+
+  /**
+   * Calls a service method and writes the encoded result, like
+   * {@link #invokeAndEncodeResponse(Object, Method, Object[], SerializationPolicy, int)}
+   * , to <code>stream</code> as UTF-8 without building the response as a
+   * String first. This bounds the memory needed for large responses to the
+   * serialized tokens. The result is fully serialized before anything is
+   * written to <code>stream</code>, which is not closed.
+   * 
+   * @param target instance on which to invoke the serviceMethod
+   * @param serviceMethod the method to invoke
+   * @param args arguments used for the method invocation
+   * @param serializationPolicy determines the serialization policy to be used
+   * @param flags the flags of the serialization stream
+   * @param stream the stream that receives the encoded response
+   * 
+   * @throws IOException if writing to <code>stream</code> fails
+   * @throws NullPointerException if the serviceMethod or the
+   *           serializationPolicy are <code>null</code>
+   * @throws SecurityException if the method cannot be accessed or if the number
+   *           or type of actual and formal arguments differ
+   * @throws SerializationException if an object could not be serialized by the
+   *           stream
+   * @throws UnexpectedException if the serviceMethod throws a checked exception
+   *           that is not declared in its signature
+   */
+  public static void invokeAndStreamResponse(Object target, Method serviceMethod, Object[] args,
+      SerializationPolicy serializationPolicy, int flags, OutputStream stream)
+      throws SerializationException, IOException {
+    invokeAndEncode(target, serviceMethod, args, serializationPolicy, flags).writeTo(stream);
+  }
+
+  private static EncodedResponse encodeFailure(Method serviceMethod, Throwable cause,
+      SerializationPolicy serializationPolicy, int flags) throws SerializationException {
+    if (cause == null) {
+      throw new NullPointerException("cause cannot be null");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    if (serviceMethod != null && !RPCServletUtils.isExpectedException(serviceMethod, cause)) {
+      throw new UnexpectedException("Service method '" + getSourceRepresentation(serviceMethod)
+          + "' threw an unexpected exception: " + cause.toString(), cause);
+    }
+
+    return encodeResponse(cause.getClass(), cause, true, flags, serializationPolicy);
+  }
+
+  /**
+   * Encodes the results of an RPC call.
+   * 
+   * @param object the object that we wish to send back to the client
+   * @param wasThrown if true, the object being returned was an exception thrown
+   *          by the service method; if false, it was the result of the service
+   *          method's invocation
+   * @return the encoded response from a service method
+   * @throws SerializationException if the object cannot be serialized
+   */
+  private static EncodedResponse encodeResponse(Class<?> responseClass, Object object,
+      boolean wasThrown, int flags, SerializationPolicy serializationPolicy)
+      throws SerializationException {
+
+    ServerSerializationStreamWriter stream =
+        new ServerSerializationStreamWriter(serializationPolicy);
+    stream.setFlags(flags);
+
+    stream.prepareToWrite();
+    if (responseClass != void.class) {
+      stream.serializeValue(object, responseClass);
+    }
+
+    return new EncodedResponse(stream, wasThrown);
+  }
+
+  private static EncodedResponse encodeSuccess(Method serviceMethod, Object object,
+      SerializationPolicy serializationPolicy, int flags) throws SerializationException {
+    if (serviceMethod == null) {
+      throw new NullPointerException("serviceMethod cannot be null");
+    }
+
+    if (serializationPolicy == null) {
+      throw new NullPointerException("serializationPolicy");
+    }
+
+    Class<?> methodReturnType = serviceMethod.getReturnType();
+    if (methodReturnType != void.class && object != null) {
+      Class<?> actualReturnType;
+      if (methodReturnType.isPrimitive()) {
+        actualReturnType = getPrimitiveClassFromWrapper(object.getClass());
+      } else {
+        actualReturnType = object.getClass();
+      }
+
+      if (actualReturnType == null || !methodReturnType.isAssignableFrom(actualReturnType)) {
+        throw new IllegalArgumentException("Type '" + printTypeName(object.getClass())
+            + "' does not match the return type in the method's signature: '"
+            + getSourceRepresentation(serviceMethod) + "'");
+      }
+    }
+
+    return encodeResponse(methodReturnType, object, false, flags, serializationPolicy);
+  }
+
+  private static EncodedResponse invokeAndEncode(Object target, Method serviceMethod,
+      Object[] args, SerializationPolicy serializationPolicy, int flags)
+      throws SerializationException {
     if (serviceMethod == null) {
       throw new NullPointerException("serviceMethod");
     }
@@ -556,11 +699,11 @@ public final class RPC {
       throw new NullPointerException("serializationPolicy");
     }
 
-    String responsePayload;
+    EncodedResponse responsePayload;
     try {
       Object result = serviceMethod.invoke(target, args);
 
-      responsePayload = encodeResponseForSuccess(serviceMethod, result, serializationPolicy, flags);
+      responsePayload = encodeSuccess(serviceMethod, result, serializationPolicy, flags);
     } catch (IllegalAccessException e) {
       SecurityException securityException =
           new SecurityException(formatIllegalAccessErrorMessage(target, serviceMethod));
@@ -576,39 +719,12 @@ public final class RPC {
       //
       Throwable cause = e.getCause();
 
-      responsePayload = encodeResponseForFailure(serviceMethod, cause, serializationPolicy, flags);
+      responsePayload = encodeFailure(serviceMethod, cause, serializationPolicy, flags);
     }
 
     return responsePayload;
   }
 
-  /**
-   * Returns a string that encodes the results of an RPC call. Private overload
-   * that takes a flag signaling the preamble of the response payload.
-   * 
-   * @param object the object that we wish to send back to the client
-   * @param wasThrown if true, the object being returned was an exception thrown
-   *          by the service method; if false, it was the result of the service
-   *          method's invocation
-   * @return a string that encodes the response from a service method
-   * @throws SerializationException if the object cannot be serialized
-   */
-  private static String encodeResponse(Class<?> responseClass, Object object, boolean wasThrown,
-      int flags, SerializationPolicy serializationPolicy) throws SerializationException {
-
-    ServerSerializationStreamWriter stream =
-        new ServerSerializationStreamWriter(serializationPolicy);
-    stream.setFlags(flags);
-
-    stream.prepareToWrite();
-    if (responseClass != void.class) {
-      stream.serializeValue(object, responseClass);
-    }
-
-    String bufferStr = (wasThrown ? "//EX" : "//OK") + stream.toString();
-    return bufferStr;
-  }
-
   private static String formatIllegalAccessErrorMessage(Object target, Method serviceMethod) {
     StringBuffer sb = new StringBuffer();
     sb.append("Blocked attempt to access inaccessible method '");
@@ -18,8 +18,11 @@ package com.google.gwt.user.server.rpc;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.lang.reflect.Method;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.DeflaterOutputStream;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -131,6 +134,41 @@ public class RPCServletUtils {
     return false;
   }
 
+  /**
+   * Returns a Reader over the content of an {@link HttpServletRequest}, after
+   * performing the same validation as
+   * {@link #readContent(HttpServletRequest, String, String)}. This lets
+   * callers process large payloads without reading them into a String first.
+   * 
+   * @param request the servlet request whose content we want to read
+   * @param expectedContentType the expected content (i.e. 'type/subtype' only)
+   *          in the Content-Type request header, or <code>null</code> if no
+   *          validation is to be performed
+   * @param expectedCharSet the expected request charset, or <code>null</code>
+   *          if no charset validation is to be performed and <code>UTF-8</code>
+   *          should be assumed
+   * @return a Reader that decodes the request's content using
+   *         <code>expectedCharSet</code>, or <code>UTF-8</code> if
+   *         <code>expectedCharSet</code> is <code>null</code>
+   * @throws IOException if the request's input stream cannot be accessed
+   * @throws ServletException if the request's content type does not
+   *         equal the supplied <code>expectedContentType</code> or
+   *         <code>expectedCharSet</code>
+   */
+  public static Reader openContentReader(HttpServletRequest request,
+      String expectedContentType, String expectedCharSet)
+      throws IOException, ServletException {
+    if (expectedContentType != null) {
+      checkContentTypeIgnoreCase(request, expectedContentType);
+    }
+    if (expectedCharSet != null) {
+      checkCharacterEncodingIgnoreCase(request, expectedCharSet);
+    }
+    String contentCharSet = expectedCharSet != null
+        ? expectedCharSet : CHARSET_UTF8;
+    return new InputStreamReader(request.getInputStream(), contentCharSet);
+  }
+
   /**
    * Returns the content of an {@link HttpServletRequest} by decoding it using
    * <code>expectedCharSet</code>, or <code>UTF-8</code> if
@@ -249,6 +287,15 @@ public class RPCServletUtils {
     return readContent(request, GWT_RPC_CONTENT_TYPE, CHARSET_UTF8);
   }
 
+  /**
+   * Sets the header that indicates that a response is compressed by the given
+   * compressor.
+   */
+  public static void setContentEncodingHeader(HttpServletResponse response,
+      ResponseCompressor compressor) {
+    response.setHeader(CONTENT_ENCODING, compressor.getContentEncoding());
+  }
+
   /**
    * Sets the correct header to indicate that a response is gzipped.
    */
@@ -271,6 +318,69 @@ public class RPCServletUtils {
         && exceedsUncompressedContentLengthLimit(responseContent);
   }
 
+  /**
+   * Finishes a response started by
+   * {@link #startStreamingResponse(HttpServletResponse, boolean)}. The
+   * underlying servlet stream is not closed, in case there are servlet filters
+   * that want to write to it afterwards.
+   * 
+   * @param stream the stream returned by
+   *          {@link #startStreamingResponse(HttpServletResponse, boolean)}
+   * @throws IOException if writing to the response's output stream fails
+   */
+  public static void finishStreamingResponse(OutputStream stream) throws IOException {
+    if (stream instanceof DeflaterOutputStream) {
+      ((DeflaterOutputStream) stream).finish();
+    } else {
+      stream.flush();
+    }
+  }
+
+  /**
+   * Sets the headers of a successful response whose content will be written
+   * directly into the {@link HttpServletResponse} as it is encoded, and returns
+   * the stream the content should be written to. Since the length of the
+   * content is not known in advance, no content length is set. Callers must
+   * pass the stream to {@link #finishStreamingResponse(OutputStream)} once the
+   * content has been written.
+   * 
+   * @param response response instance
+   * @param gzipResponse if <code>true</code> the response content will be gzip
+   *          encoded as it is written
+   * @return the stream that receives the UTF-8 response content
+   * @throws IOException if the response's output stream cannot be opened
+   */
+  public static OutputStream startStreamingResponse(HttpServletResponse response,
+      boolean gzipResponse) throws IOException {
+    return startStreamingResponse(response, gzipResponse ? ResponseCompressor.getDefault()
+        : null);
+  }
+
+  /**
+   * Sets the headers of a successful response whose content will be written
+   * directly into the {@link HttpServletResponse} as it is encoded, and returns
+   * the stream the content should be written to. Callers must pass the stream
+   * to {@link #finishStreamingResponse(OutputStream)} once the content has been
+   * written.
+   * 
+   * @param response response instance
+   * @param compressor the compressor used to encode the response content as it
+   *          is written, or <code>null</code> to leave it uncompressed
+   * @return the stream that receives the UTF-8 response content
+   * @throws IOException if the response's output stream cannot be opened
+   */
+  public static OutputStream startStreamingResponse(HttpServletResponse response,
+      ResponseCompressor compressor) throws IOException {
+    response.setContentType(CONTENT_TYPE_APPLICATION_JSON_UTF8);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setHeader(CONTENT_DISPOSITION, ATTACHMENT);
+    if (compressor != null) {
+      setContentEncodingHeader(response, compressor);
+      return compressor.openStream(response.getOutputStream());
+    }
+    return response.getOutputStream();
+  }
+
   /**
    * Write the response content into the {@link HttpServletResponse}. If
    * <code>gzipResponse</code> is <code>true</code>, the response content will
@@ -287,38 +397,43 @@ public class RPCServletUtils {
   public static void writeResponse(ServletContext servletContext,
       HttpServletResponse response, String responseContent, boolean gzipResponse)
       throws IOException {
+    writeResponse(servletContext, response, responseContent,
+        gzipResponse ? ResponseCompressor.getDefault() : null, false);
+  }
+
+  /**
+   * Write the response content into the {@link HttpServletResponse},
+   * compressing it with <code>compressor</code> if it is not <code>null</code>.
+   * 
+   * @param servletContext servlet context for this response
+   * @param response response instance
+   * @param responseContent a string containing the response content
+   * @param compressor the compressor used to encode the response content, or
+   *          <code>null</code> to send it uncompressed
+   * @param cacheable if <code>true</code>, the same response content is likely
+   *          to be sent again, so <code>compressor</code> may reuse its
+   *          compressed form
+   * @throws IOException if reading, writing, or closing the response's output
+   *           stream fails
+   */
+  public static void writeResponse(ServletContext servletContext,
+      HttpServletResponse response, String responseContent,
+      ResponseCompressor compressor, boolean cacheable) throws IOException {
 
-    byte[] responseBytes = responseContent.getBytes(CHARSET_UTF8);
-    if (gzipResponse) {
+    byte[] responseBytes;
+    if (compressor != null) {
       // Compress the reply and adjust headers.
       //
-      ByteArrayOutputStream output = null;
-      GZIPOutputStream gzipOutputStream = null;
-      Throwable caught = null;
       try {
-        output = new ByteArrayOutputStream(responseBytes.length);
-        gzipOutputStream = new GZIPOutputStream(output);
-        gzipOutputStream.write(responseBytes);
-        gzipOutputStream.finish();
-        gzipOutputStream.flush();
-        setGzipEncodingHeader(response);
-        responseBytes = output.toByteArray();
+        responseBytes = compressor.compress(responseContent, cacheable);
       } catch (IOException e) {
-        caught = e;
-      } finally {
-        if (null != gzipOutputStream) {
-          gzipOutputStream.close();
-        }
-        if (null != output) {
-          output.close();
-        }
-      }
-
-      if (caught != null) {
-        servletContext.log("Unable to compress response", caught);
+        servletContext.log("Unable to compress response", e);
         response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         return;
       }
+      setContentEncodingHeader(response, compressor);
+    } else {
+      responseBytes = responseContent.getBytes(CHARSET_UTF8);
     }
 
     // Send the reply.
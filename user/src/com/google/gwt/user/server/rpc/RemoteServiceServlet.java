@@ -18,14 +18,23 @@ package com.google.gwt.user.server.rpc;
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.RpcTokenException;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -40,11 +49,42 @@ import javax.servlet.http.HttpServletResponse;
 public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     implements SerializationPolicyProvider {
 
+  private static final String CHARSET_UTF8 = "UTF-8";
+
+  /**
+   * The maximum number of policies kept in each servlet's cache; the least
+   * recently used ones are evicted beyond that.
+   */
+  private static final int SERIALIZATION_POLICY_CACHE_SIZE = Integer.getInteger(
+      "gwt.rpc.serializationPolicyCacheSize", 1000);
+
+  /**
+   * The maximum number of responses of {@link CacheableResponse} methods kept
+   * in each servlet's cache.
+   */
+  private static final int RESPONSE_CACHE_SIZE = Integer.getInteger(
+      "gwt.rpc.responseCacheSize", 1000);
+
   /**
    * Used by HybridServiceServlet.
    */
   static SerializationPolicy loadSerializationPolicy(HttpServlet servlet,
       HttpServletRequest request, String moduleBaseURL, String strongName) {
+    String serializationPolicyFilePath = getSerializationPolicyFilePath(servlet,
+        request, moduleBaseURL, strongName);
+    if (serializationPolicyFilePath == null) {
+      return null;
+    }
+    return loadSerializationPolicyFile(servlet, serializationPolicyFilePath);
+  }
+
+  /**
+   * Returns the context-relative path of the policy file for a module base URL
+   * and strong name, or returns <code>null</code> and logs why if the module
+   * is not in the same web application as the servlet.
+   */
+  private static String getSerializationPolicyFilePath(HttpServlet servlet,
+      HttpServletRequest request, String moduleBaseURL, String strongName) {
     // The request can tell you the path of the web app relative to the
     // container root.
     String contextPath = request.getContextPath();
@@ -59,8 +99,6 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       }
     }
 
-    SerializationPolicy serializationPolicy = null;
-
     /*
      * Check that the module path must be in the same web app as the servlet
      * itself. If you need to implement a scheme different than this, override
@@ -73,42 +111,52 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
           + contextPath
           + ".  Your module may not be properly configured or your client and server code maybe out of date.";
       servlet.log(message);
-    } else {
-      // Strip off the context path from the module base URL. It should be a
-      // strict prefix.
-      String contextRelativePath = modulePath.substring(contextPath.length());
+      return null;
+    }
 
-      String serializationPolicyFilePath = SerializationPolicyLoader.getSerializationPolicyFileName(contextRelativePath
-          + strongName);
+    // Strip off the context path from the module base URL. It should be a
+    // strict prefix.
+    String contextRelativePath = modulePath.substring(contextPath.length());
 
-      // Open the RPC resource file and read its contents.
-      InputStream is = servlet.getServletContext().getResourceAsStream(
-          serializationPolicyFilePath);
-      try {
-        if (is != null) {
-          try {
-            serializationPolicy = SerializationPolicyLoader.loadFromStream(is,
-                null);
-          } catch (ParseException e) {
-            servlet.log("ERROR: Failed to parse the policy file '"
-                + serializationPolicyFilePath + "'", e);
-          } catch (IOException e) {
-            servlet.log("ERROR: Could not read the policy file '"
-                + serializationPolicyFilePath + "'", e);
-          }
-        } else {
-          String message = "ERROR: The serialization policy file '"
-              + serializationPolicyFilePath
-              + "' was not found; did you forget to include it in this deployment?";
-          servlet.log(message);
+    return SerializationPolicyLoader.getSerializationPolicyFileName(contextRelativePath
+        + strongName);
+  }
+
+  /**
+   * Reads the policy file at a context-relative path, or returns
+   * <code>null</code> and logs why it could not.
+   */
+  private static SerializationPolicy loadSerializationPolicyFile(
+      HttpServlet servlet, String serializationPolicyFilePath) {
+    SerializationPolicy serializationPolicy = null;
+
+    // Open the RPC resource file and read its contents.
+    InputStream is = servlet.getServletContext().getResourceAsStream(
+        serializationPolicyFilePath);
+    try {
+      if (is != null) {
+        try {
+          serializationPolicy = SerializationPolicyLoader.loadFromStream(is,
+              null);
+        } catch (ParseException e) {
+          servlet.log("ERROR: Failed to parse the policy file '"
+              + serializationPolicyFilePath + "'", e);
+        } catch (IOException e) {
+          servlet.log("ERROR: Could not read the policy file '"
+              + serializationPolicyFilePath + "'", e);
         }
-      } finally {
-        if (is != null) {
-          try {
-            is.close();
-          } catch (IOException e) {
-            // Ignore this error
-          }
+      } else {
+        String message = "ERROR: The serialization policy file '"
+            + serializationPolicyFilePath
+            + "' was not found; did you forget to include it in this deployment?";
+        servlet.log(message);
+      }
+    } finally {
+      if (is != null) {
+        try {
+          is.close();
+        } catch (IOException e) {
+          // Ignore this error
         }
       }
     }
@@ -120,7 +168,37 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
    * A cache of moduleBaseURL and serialization policy strong name to
    * {@link SerializationPolicy}.
    */
-  private final Map<String, SerializationPolicy> serializationPolicyCache = new HashMap<String, SerializationPolicy>();
+  private final SerializationPolicyCache serializationPolicyCache = new SerializationPolicyCache(
+      SERIALIZATION_POLICY_CACHE_SIZE);
+
+  /**
+   * The preloaded policy files of this web application that have not been
+   * requested yet, keyed by context-relative path. A requested policy is moved
+   * to {@link #serializationPolicyCache}, which may evict it.
+   * 
+   * @see #shouldPreloadSerializationPolicies()
+   */
+  private final ConcurrentMap<String, FutureTask<SerializationPolicy>>
+      preloadedSerializationPolicies =
+          new ConcurrentHashMap<String, FutureTask<SerializationPolicy>>();
+
+  /**
+   * The encoded responses of {@link CacheableResponse} methods.
+   */
+  private final ResponseCache responseCache = new ResponseCache(RESPONSE_CACHE_SIZE);
+
+  /**
+   * The time to live, in milliseconds, of the responses of each service
+   * method, or 0 if they are not cacheable.
+   */
+  private final ConcurrentMap<Method, Long> responseTimesToLive =
+      new ConcurrentHashMap<Method, Long>();
+
+  /**
+   * Set while the successful response of a {@link CacheableResponse} method is
+   * being written.
+   */
+  private final ThreadLocal<Boolean> perThreadCacheableResponse = new ThreadLocal<Boolean>();
 
   /**
    * The implementation of the service.
@@ -145,40 +223,50 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     this.delegate = delegate;
   }
 
-  public final SerializationPolicy getSerializationPolicy(String moduleBaseURL,
-      String strongName) {
-
-    SerializationPolicy serializationPolicy = getCachedSerializationPolicy(
-        moduleBaseURL, strongName);
-    if (serializationPolicy != null) {
-      return serializationPolicy;
-    }
-
-    serializationPolicy = doGetSerializationPolicy(getThreadLocalRequest(),
-        moduleBaseURL, strongName);
+  public final SerializationPolicy getSerializationPolicy(
+      final String moduleBaseURL, final String strongName) {
+    final HttpServletRequest request = getThreadLocalRequest();
+    return serializationPolicyCache.get(moduleBaseURL + strongName,
+        new Callable<SerializationPolicy>() {
+          public SerializationPolicy call() {
+            SerializationPolicy serializationPolicy = doGetSerializationPolicy(
+                request, moduleBaseURL, strongName);
+
+            if (serializationPolicy == null) {
+              // Failed to get the requested serialization policy; use the default
+              log(
+                  "WARNING: Failed to get the SerializationPolicy '"
+                      + strongName
+                      + "' for module '"
+                      + moduleBaseURL
+                      + "'; a legacy, 1.3.3 compatible, serialization policy will be used.  You may experience SerializationExceptions as a result.");
+              serializationPolicy = RPC.getDefaultSerializationPolicy();
+            }
+
+            // This caches the default policy if the lookup failed, so we will
+            // not attempt to lookup the policy again.
+            return serializationPolicy;
+          }
+        });
+  }
 
-    if (serializationPolicy == null) {
-      // Failed to get the requested serialization policy; use the default
-      log(
-          "WARNING: Failed to get the SerializationPolicy '"
-              + strongName
-              + "' for module '"
-              + moduleBaseURL
-              + "'; a legacy, 1.3.3 compatible, serialization policy will be used.  You may experience SerializationExceptions as a result.");
-      serializationPolicy = RPC.getDefaultSerializationPolicy();
+  /**
+   * Preloads the serialization policy files of this web application if
+   * {@link #shouldPreloadSerializationPolicies()} returns <code>true</code>.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    if (shouldPreloadSerializationPolicies()) {
+      preloadSerializationPolicies();
     }
-
-    // This could cache null or an actual instance. Either way we will not
-    // attempt to lookup the policy again.
-    putCachedSerializationPolicy(moduleBaseURL, strongName, serializationPolicy);
-
-    return serializationPolicy;
   }
 
   /**
    * Process a call originating from the given request. Uses the
    * {@link RPC#invokeAndEncodeResponse(Object, java.lang.reflect.Method, Object[])}
-   * method to do the actual work.
+   * method to do the actual work, unless the method is annotated with
+   * {@link CacheableResponse} and its response is cached.
    * <p>
    * Subclasses may optionally override this method to handle the payload in any
    * way they desire (by routing the request to a framework component, for
@@ -205,6 +293,10 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     try {
       RPCRequest rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
       onAfterRequestDeserialized(rpcRequest);
+      long timeToLive = getResponseTimeToLive(rpcRequest.getMethod());
+      if (timeToLive > 0) {
+        return invokeAndEncodeCacheableResponse(rpcRequest, timeToLive);
+      }
       return RPC.invokeAndEncodeResponse(delegate, rpcRequest.getMethod(),
           rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
           rpcRequest.getFlags());
@@ -220,6 +312,54 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     }
   }
 
+  /**
+   * Process a call originating from the given request, like
+   * {@link #processCall(String)}, but write the encoded response to
+   * <code>stream</code> as UTF-8 instead of returning it as a String. This is
+   * used instead of {@link #processCall(String)} if
+   * {@link #shouldStreamResponse(HttpServletRequest)} returns <code>true</code>.
+   * The response is fully serialized before anything is written to
+   * <code>stream</code>. The responses of {@link CacheableResponse} methods are
+   * encoded as Strings so that they can be cached.
+   * 
+   * @param payload the UTF-8 request payload
+   * @param stream the stream that receives the encoded response
+   * @throws IOException if writing to <code>stream</code> fails
+   * @throws SerializationException if we cannot serialize the response
+   * @throws UnexpectedException if the invocation throws a checked exception
+   *           that is not declared in the service method's signature
+   * @throws RuntimeException if the service method throws an unchecked
+   *           exception (the exception will be the one thrown by the service)
+   */
+  public void processCall(String payload, OutputStream stream) throws SerializationException,
+      IOException {
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    try {
+      RPCRequest rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+      onAfterRequestDeserialized(rpcRequest);
+      long timeToLive = getResponseTimeToLive(rpcRequest.getMethod());
+      if (timeToLive > 0) {
+        stream.write(invokeAndEncodeCacheableResponse(rpcRequest, timeToLive).getBytes(
+            CHARSET_UTF8));
+        return;
+      }
+      RPC.invokeAndStreamResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags(), stream);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      RPC.streamResponseForFailure(null, ex, stream);
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      RPC.streamResponseForFailure(null, tokenException, stream);
+    }
+  }
+
   /**
    * Standard HttpServlet method: handle the POST.
    * 
@@ -234,6 +374,10 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
   public final void processPost(HttpServletRequest request,
       HttpServletResponse response) throws IOException, ServletException,
       SerializationException {
+    // Forget whether the previous response on this thread was cacheable.
+    //
+    perThreadCacheableResponse.remove();
+
     // Read the request fully.
     //
     String requestPayload = readContent(request);
@@ -242,6 +386,24 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     //
     onBeforeRequestDeserialized(requestPayload);
 
+    if (shouldStreamResponse(request)) {
+      // Serialize the result straight into the response.
+      //
+      ResponseCompressor compressor =
+          RPCServletUtils.acceptsGzipEncoding(request) ? getResponseCompressor() : null;
+      OutputStream out = RPCServletUtils.startStreamingResponse(response, compressor);
+      try {
+        processCall(requestPayload, out);
+        RPCServletUtils.finishStreamingResponse(out);
+      } finally {
+        if (compressor != null) {
+          // Releases the Deflater if the response could not be written
+          compressor.discard(out);
+        }
+      }
+      return;
+    }
+
     // Invoke the core dispatching logic, which returns the serialized
     // result.
     //
@@ -290,7 +452,21 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
    */
   protected SerializationPolicy doGetSerializationPolicy(
       HttpServletRequest request, String moduleBaseURL, String strongName) {
-    return loadSerializationPolicy(this, request, moduleBaseURL, strongName);
+    String serializationPolicyFilePath = getSerializationPolicyFilePath(this,
+        request, moduleBaseURL, strongName);
+    if (serializationPolicyFilePath == null) {
+      return null;
+    }
+
+    FutureTask<SerializationPolicy> preloaded =
+        preloadedSerializationPolicies.remove(serializationPolicyFilePath);
+    if (preloaded != null) {
+      SerializationPolicy serializationPolicy = SerializationPolicyCache.getResult(preloaded);
+      if (serializationPolicy != null) {
+        return serializationPolicy;
+      }
+    }
+    return loadSerializationPolicyFile(this, serializationPolicyFilePath);
   }
 
   /**
@@ -313,6 +489,27 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
   protected void onBeforeRequestDeserialized(String serializedRequest) {
   }
 
+  /**
+   * Determines whether the compressed form of a response payload should be
+   * kept by the {@link ResponseCompressor}, because the same payload is likely
+   * to be sent again, e.g. because it is the result of a method that returns
+   * reference data. Cached payloads are looked up by their content, so only
+   * payloads that recur verbatim benefit.
+   * <p>
+   * This implementation returns <code>true</code> for the successful responses
+   * of methods annotated with {@link CacheableResponse}. Subclasses can
+   * override this logic.
+   * </p>
+   * 
+   * @param request the request being served
+   * @param responsePayload the payload that is about to be compressed
+   * @return <code>true</code> if the compressed payload should be cached
+   */
+  protected boolean shouldCacheCompressedResponse(HttpServletRequest request,
+      String responsePayload) {
+    return Boolean.TRUE.equals(perThreadCacheableResponse.get());
+  }
+
   /**
    * Determines whether the response to a given servlet request should or should
    * not be GZIP compressed. This method is only called in cases where the
@@ -334,19 +531,169 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     return RPCServletUtils.exceedsUncompressedContentLengthLimit(responsePayload);
   }
 
-  private SerializationPolicy getCachedSerializationPolicy(
-      String moduleBaseURL, String strongName) {
-    synchronized (serializationPolicyCache) {
-      return serializationPolicyCache.get(moduleBaseURL + strongName);
+  /**
+   * Determines whether the serialization policy files of this web application
+   * should be loaded when the servlet is initialized, rather than when the
+   * first request for each of them arrives. The files are found by searching
+   * the web application outside WEB-INF for names ending in
+   * <code>.gwt.rpc</code>, and are loaded on a background thread. A request for
+   * a policy that is still waiting to be loaded loads it itself. At most
+   * <code>gwt.rpc.serializationPolicyCacheSize</code> files are preloaded, and
+   * each is handed over to the size-bounded policy cache when it is first
+   * requested.
+   * <p>
+   * Preloaded policies are only used by
+   * {@link #doGetSerializationPolicy(HttpServletRequest, String, String)}, so
+   * subclasses that override that method to load policies differently are not
+   * affected. This implementation returns <code>false</code>. Subclasses can
+   * override this logic, e.g. to read an init parameter.
+   * </p>
+   * 
+   * @return <code>true</code> if the policy files should be preloaded
+   */
+  protected boolean shouldPreloadSerializationPolicies() {
+    return false;
+  }
+
+  /**
+   * Determines whether the response to a given servlet request should be
+   * written into the {@link HttpServletResponse} as it is encoded, rather than
+   * built as a String first. This bounds the memory needed for large responses
+   * to the serialized tokens, at the cost of bypassing the String-based hooks:
+   * {@link #processCall(String, OutputStream)} is used instead of
+   * {@link #processCall(String)}, {@link #onAfterResponseSerialized(String)}
+   * is not called, and streamed responses are compressed whenever the
+   * requester accepts GZIP encoding.
+   * <p>
+   * This implementation returns <code>false</code>. Subclasses can override
+   * this logic.
+   * </p>
+   * 
+   * @param request the request being served
+   * @return <code>true</code> if the response should be streamed
+   */
+  protected boolean shouldStreamResponse(HttpServletRequest request) {
+    return false;
+  }
+
+  /**
+   * Adds the paths of the policy files under a directory of the web
+   * application to <code>paths</code>.
+   */
+  private void findSerializationPolicyFiles(String directory, List<String> paths) {
+    Set<String> resourcePaths = getServletContext().getResourcePaths(directory);
+    if (resourcePaths == null) {
+      return;
+    }
+    for (String path : resourcePaths) {
+      if (path.endsWith("/")) {
+        if (!path.equals("/WEB-INF/") && !path.equals("/META-INF/")) {
+          findSerializationPolicyFiles(path, paths);
+        }
+      } else if (path.endsWith(SerializationPolicyLoader.getSerializationPolicyFileName(""))) {
+        paths.add(path);
+      }
     }
   }
 
-  private void putCachedSerializationPolicy(String moduleBaseURL,
-      String strongName, SerializationPolicy serializationPolicy) {
-    synchronized (serializationPolicyCache) {
-      serializationPolicyCache.put(moduleBaseURL + strongName,
-          serializationPolicy);
+  /**
+   * Returns the time to live, in milliseconds, of the responses of a service
+   * method, from the {@link CacheableResponse} annotation of the method or of
+   * its implementation, or 0 if they are not cacheable.
+   */
+  private long getResponseTimeToLive(Method method) {
+    Long timeToLive = responseTimesToLive.get(method);
+    if (timeToLive == null) {
+      CacheableResponse annotation = method.getAnnotation(CacheableResponse.class);
+      if (annotation == null) {
+        try {
+          annotation = delegate.getClass().getMethod(method.getName(),
+              method.getParameterTypes()).getAnnotation(CacheableResponse.class);
+        } catch (NoSuchMethodException e) {
+          // The invocation will report it
+        }
+      }
+      timeToLive = annotation == null ? 0L : TimeUnit.SECONDS.toMillis(annotation.timeToLive());
+      responseTimesToLive.put(method, timeToLive);
     }
+    return timeToLive;
+  }
+
+  /**
+   * Returns the cached response to a call of a {@link CacheableResponse}
+   * method, or invokes the method and caches its response if it succeeds.
+   */
+  private String invokeAndEncodeCacheableResponse(RPCRequest rpcRequest, long timeToLive)
+      throws SerializationException {
+    Method method = rpcRequest.getMethod();
+    ResponseCache.Key key = null;
+    try {
+      // Serialize the arguments back to get a canonical form of them
+      ServerSerializationStreamWriter stream = new ServerSerializationStreamWriter(
+          rpcRequest.getSerializationPolicy());
+      stream.setFlags(rpcRequest.getFlags());
+      stream.prepareToWrite();
+      Class<?>[] parameterTypes = method.getParameterTypes();
+      Object[] parameters = rpcRequest.getParameters();
+      for (int i = 0; i < parameters.length; i++) {
+        stream.serializeValue(parameters[i], parameterTypes[i]);
+      }
+      key = new ResponseCache.Key(method, stream.toString(),
+          rpcRequest.getSerializationPolicy(), rpcRequest.getFlags());
+    } catch (SerializationException e) {
+      // The policy does not allow an argument to be sent to the client
+    }
+
+    String responsePayload = key == null ? null : responseCache.get(key);
+    if (responsePayload == null) {
+      responsePayload = RPC.invokeAndEncodeResponse(delegate, method, rpcRequest.getParameters(),
+          rpcRequest.getSerializationPolicy(), rpcRequest.getFlags());
+      if (!responsePayload.startsWith("//OK")) {
+        return responsePayload;
+      }
+      if (key != null) {
+        responseCache.put(key, responsePayload, timeToLive);
+      }
+    }
+    perThreadCacheableResponse.set(Boolean.TRUE);
+    return responsePayload;
+  }
+
+  private void preloadSerializationPolicies() {
+    List<String> paths = new ArrayList<String>();
+    findSerializationPolicyFiles("/", paths);
+    if (paths.isEmpty()) {
+      return;
+    }
+
+    if (paths.size() > SERIALIZATION_POLICY_CACHE_SIZE) {
+      paths = paths.subList(0, SERIALIZATION_POLICY_CACHE_SIZE);
+    }
+
+    final List<FutureTask<SerializationPolicy>> tasks =
+        new ArrayList<FutureTask<SerializationPolicy>>();
+    for (final String path : paths) {
+      FutureTask<SerializationPolicy> task = new FutureTask<SerializationPolicy>(
+          new Callable<SerializationPolicy>() {
+            public SerializationPolicy call() {
+              return loadSerializationPolicyFile(RemoteServiceServlet.this, path);
+            }
+          });
+      if (preloadedSerializationPolicies.putIfAbsent(path, task) == null) {
+        tasks.add(task);
+      }
+    }
+
+    Thread preloader = new Thread(getClass().getName() + " policy preloader") {
+      @Override
+      public void run() {
+        for (FutureTask<SerializationPolicy> task : tasks) {
+          task.run();
+        }
+      }
+    };
+    preloader.setDaemon(true);
+    preloader.start();
   }
 
   private void writeResponse(HttpServletRequest request,
@@ -355,6 +702,7 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
         && shouldCompressResponse(request, response, responsePayload);
 
     RPCServletUtils.writeResponse(getServletContext(), response,
-        responsePayload, gzipEncode);
+        responsePayload, gzipEncode ? getResponseCompressor() : null,
+        gzipEncode && shouldCacheCompressedResponse(request, responsePayload));
   }
 }
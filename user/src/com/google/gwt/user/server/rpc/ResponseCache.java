@@ -0,0 +1,156 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent, size-bounded cache of encoded RPC responses that expire after
+ * a time to live. Once the cache is full, adding a response evicts the expired
+ * ones, or else the least recently used one.
+ */
+class ResponseCache {
+
+  /**
+   * Identifies the calls that produce the same response: calls of the same
+   * method, with the same serialized arguments, under the same serialization
+   * policy and flags.
+   */
+  static final class Key {
+    private final String arguments;
+    private final int flags;
+    private final int hashCode;
+    private final Method method;
+    private final SerializationPolicy serializationPolicy;
+
+    public Key(Method method, String arguments, SerializationPolicy serializationPolicy, int flags) {
+      this.method = method;
+      this.arguments = arguments;
+      this.serializationPolicy = serializationPolicy;
+      this.flags = flags;
+      hashCode = (method.hashCode() * 31 + arguments.hashCode()) * 31
+          + System.identityHashCode(serializationPolicy) + flags;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      // Policies are compared by identity, since each is loaded once per strong name
+      return hashCode == other.hashCode && flags == other.flags
+          && serializationPolicy == other.serializationPolicy && method.equals(other.method)
+          && arguments.equals(other.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final class Entry {
+    final long expires;
+    volatile long lastUsed;
+    final String payload;
+
+    public Entry(String payload, long expires) {
+      this.payload = payload;
+      this.expires = expires;
+    }
+  }
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+  private final int maxSize;
+
+  public ResponseCache(int maxSize) {
+    assert maxSize > 0;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the response cached for a key, or <code>null</code> if there is
+   * none or it has expired.
+   */
+  public String get(Key key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expires <= currentTimeMillis()) {
+      entries.remove(key, entry);
+      return null;
+    }
+    // Don't contend on the clock while the same response is used over and over
+    if (entry.lastUsed != clock.get()) {
+      entry.lastUsed = clock.incrementAndGet();
+    }
+    return entry.payload;
+  }
+
+  /**
+   * Caches a response for <code>timeToLive</code> milliseconds.
+   */
+  public void put(Key key, String payload, long timeToLive) {
+    Entry entry = new Entry(payload, currentTimeMillis() + timeToLive);
+    entry.lastUsed = clock.incrementAndGet();
+    entries.put(key, entry);
+    evictIfNecessary();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the current time; tests override this.
+   */
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private void evictIfNecessary() {
+    if (entries.size() <= maxSize) {
+      return;
+    }
+    long now = currentTimeMillis();
+    for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+      if (candidate.getValue().expires <= now) {
+        entries.remove(candidate.getKey(), candidate.getValue());
+      }
+    }
+    while (entries.size() > maxSize) {
+      Map.Entry<Key, Entry> eldest = null;
+      for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+        if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+          eldest = candidate;
+        }
+      }
+      if (eldest == null) {
+        return;
+      }
+      entries.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+}
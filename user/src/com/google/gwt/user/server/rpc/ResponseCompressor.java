@@ -0,0 +1,292 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses the content of servlet responses with GZIP encoding. Unlike
+ * {@link java.util.zip.GZIPOutputStream}, which allocates a new
+ * {@link Deflater} and its native buffers for every response, a compressor
+ * reuses a pool of Deflaters configured with its compression level, and can
+ * keep the compressed form of responses that are sent repeatedly.
+ * <p>
+ * Instances are thread-safe. Servlets obtain theirs from
+ * {@link AbstractRemoteServiceServlet#getResponseCompressor()} or
+ * {@link com.google.web.bindery.requestfactory.server.RequestFactoryServlet#getResponseCompressor()}
+ * , which return {@link #getDefault()} unless overridden.
+ */
+public class ResponseCompressor {
+
+  /**
+   * A GZIP stream that compresses with a pooled Deflater, and returns it to
+   * the pool when it is finished, or ends it when it is discarded.
+   */
+  private class GzipStream extends DeflaterOutputStream {
+    private boolean closed;
+    private final CRC32 crc = new CRC32();
+    private boolean finished;
+    private int size;
+
+    GzipStream(OutputStream out, Deflater deflater) throws IOException {
+      super(out, deflater, RPCServletUtils.BUFFER_SIZE);
+      out.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        finish();
+      } finally {
+        out.close();
+      }
+    }
+
+    /**
+     * Ends the Deflater without writing the rest of the content, unless the
+     * stream is already finished.
+     */
+    public void discard() {
+      if (!finished) {
+        finished = true;
+        def.end();
+      }
+    }
+
+    @Override
+    public void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      try {
+        super.finish();
+        writeInt((int) crc.getValue());
+        writeInt(size);
+      } finally {
+        release(def);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (finished) {
+        throw new IOException("The stream is finished");
+      }
+      super.write(b, off, len);
+      crc.update(b, off, len);
+      size += len;
+    }
+
+    private void writeInt(int value) throws IOException {
+      out.write(value & 0xff);
+      out.write((value >> 8) & 0xff);
+      out.write((value >> 16) & 0xff);
+      out.write((value >> 24) & 0xff);
+    }
+  }
+
+  /**
+   * The system property that sets the compression level of the default
+   * compressor, from 0 to 9.
+   */
+  public static final String COMPRESSION_LEVEL_PROPERTY = "gwt.rpc.compressionLevel";
+
+  /**
+   * The system property that sets how many compressed responses the default
+   * compressor keeps.
+   */
+  public static final String CACHE_SIZE_PROPERTY = "gwt.rpc.compressedResponseCacheSize";
+
+  private static final String CHARSET_UTF8 = "UTF-8";
+
+  private static final int DEFAULT_CACHE_SIZE = 32;
+
+  private static final ResponseCompressor DEFAULT = new ResponseCompressor(Integer.getInteger(
+      COMPRESSION_LEVEL_PROPERTY, Deflater.DEFAULT_COMPRESSION), Integer.getInteger(
+      CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+
+  /**
+   * A GZIP member header without a file name or modification time.
+   */
+  private static final byte[] GZIP_HEADER = new byte[] {
+      0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+  private static final String GZIP = "gzip";
+
+  /**
+   * Returns the compressor used by the servlets unless they are configured
+   * otherwise. Its level and cache size are read from the
+   * {@value #COMPRESSION_LEVEL_PROPERTY} and {@value #CACHE_SIZE_PROPERTY}
+   * system properties.
+   */
+  public static ResponseCompressor getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * The compressed form of cacheable responses, in access order.
+   */
+  private final Map<String, byte[]> cache;
+
+  private final BlockingQueue<Deflater> deflaters;
+
+  private final int level;
+
+  /**
+   * Constructs a compressor.
+   * 
+   * @param level the compression level, from 0 to 9, or
+   *          {@link Deflater#DEFAULT_COMPRESSION}
+   * @param cacheSize the maximum number of compressed responses to keep, or 0
+   *          to disable caching
+   */
+  public ResponseCompressor(int level, final int cacheSize) {
+    if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9)) {
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    }
+    this.level = level;
+    deflaters = new ArrayBlockingQueue<Deflater>(Runtime.getRuntime().availableProcessors() * 2);
+    cache = cacheSize <= 0 ? null : new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Compresses content.
+   * 
+   * @param content the uncompressed content
+   * @return the compressed content
+   * @throws IOException if the content cannot be compressed
+   */
+  public byte[] compress(byte[] content) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 4 + 64);
+    DeflaterOutputStream stream = openStream(output);
+    try {
+      stream.write(content);
+      stream.finish();
+    } finally {
+      discard(stream);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Compresses the UTF-8 encoding of a response.
+   * 
+   * @param content the uncompressed content
+   * @param cacheable if <code>true</code>, the same content is likely to be
+   *          sent again, so its compressed form is kept for reuse
+   * @return the compressed content, which must not be modified
+   * @throws IOException if the content cannot be compressed
+   */
+  public byte[] compress(String content, boolean cacheable) throws IOException {
+    if (!cacheable || cache == null) {
+      return compress(content.getBytes(CHARSET_UTF8));
+    }
+    byte[] toReturn;
+    synchronized (cache) {
+      toReturn = cache.get(content);
+    }
+    if (toReturn == null) {
+      toReturn = compress(content.getBytes(CHARSET_UTF8));
+      synchronized (cache) {
+        cache.put(content, toReturn);
+      }
+    }
+    return toReturn;
+  }
+
+  /**
+   * Releases the resources used by a stream returned by
+   * {@link #openStream(OutputStream)} without finishing its content, which is
+   * left incomplete. Callers use this when writing the content fails; it has no
+   * effect on a stream that is already finished or closed.
+   * 
+   * @param stream a stream returned by {@link #openStream(OutputStream)}
+   */
+  public void discard(OutputStream stream) {
+    if (stream instanceof GzipStream) {
+      ((GzipStream) stream).discard();
+    }
+  }
+
+  /**
+   * Returns the value of the <code>Content-Encoding</code> header of responses
+   * compressed by this compressor.
+   */
+  public String getContentEncoding() {
+    return GZIP;
+  }
+
+  /**
+   * Returns the compression level.
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Returns a stream that compresses what is written to it into
+   * <code>out</code>. Callers must call
+   * {@link DeflaterOutputStream#finish()} or {@link OutputStream#close()} on
+   * the returned stream, which finishes the compressed content and releases
+   * the resources used to compress it; <code>finish()</code> leaves
+   * <code>out</code> open. If the content cannot be written, callers must pass
+   * the stream to {@link #discard(OutputStream)} instead.
+   * 
+   * @param out the stream that receives the compressed content
+   * @return a stream that receives the uncompressed content
+   * @throws IOException if writing to <code>out</code> fails
+   */
+  public DeflaterOutputStream openStream(OutputStream out) throws IOException {
+    Deflater deflater = acquire();
+    try {
+      return new GzipStream(out, deflater);
+    } catch (IOException e) {
+      release(deflater);
+      throw e;
+    }
+  }
+
+  private Deflater acquire() {
+    Deflater deflater = deflaters.poll();
+    return deflater == null ? new Deflater(level, true) : deflater;
+  }
+
+  private void release(Deflater deflater) {
+    deflater.reset();
+    if (!deflaters.offer(deflater)) {
+      deflater.end();
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent, size-bounded cache of {@link SerializationPolicy} instances.
+ * Lookups take no locks. Threads that miss on the same key share a single load,
+ * and once the cache is full, adding a policy evicts the least recently used
+ * one.
+ */
+final class SerializationPolicyCache {
+
+  private static final class Entry {
+    volatile long lastUsed;
+    final FutureTask<SerializationPolicy> task;
+
+    public Entry(FutureTask<SerializationPolicy> task) {
+      this.task = task;
+    }
+  }
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+  private final int maxSize;
+
+  public SerializationPolicyCache(int maxSize) {
+    assert maxSize > 0;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the policy for a key, calling <code>loader</code> on the current
+   * thread if it is not cached and no other thread is loading it. A load that
+   * fails is not cached, so that later requests retry it.
+   */
+  public SerializationPolicy get(String key, Callable<SerializationPolicy> loader) {
+    boolean added = false;
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      Entry newEntry = new Entry(new FutureTask<SerializationPolicy>(loader));
+      newEntry.lastUsed = clock.incrementAndGet();
+      entry = entries.putIfAbsent(key, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+        added = true;
+      }
+    }
+    // Don't contend on the clock while the same policy is used over and over
+    if (entry.lastUsed != clock.get()) {
+      entry.lastUsed = clock.incrementAndGet();
+    }
+
+    try {
+      SerializationPolicy serializationPolicy = getResult(entry.task);
+      if (added) {
+        evictIfNecessary();
+      }
+      return serializationPolicy;
+    } catch (RuntimeException e) {
+      entries.remove(key, entry);
+      throw e;
+    } catch (Error e) {
+      entries.remove(key, entry);
+      throw e;
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Runs a task if no other thread has started it, and returns its result.
+   */
+  static SerializationPolicy getResult(FutureTask<SerializationPolicy> task) {
+    task.run();
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          // Another thread is loading the policy; it won't take long.
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException("Unable to load the serialization policy", cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void evictIfNecessary() {
+    while (entries.size() > maxSize) {
+      Map.Entry<String, Entry> eldest = null;
+      for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+        if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+          eldest = candidate;
+        }
+      }
+      if (eldest == null) {
+        return;
+      }
+      entries.remove(eldest.getKey(), eldest.getValue());
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes the serializable fields of the instances of one class. The
+ * fields are identified by their index in the array returned by
+ * {@link SerializabilityUtil#applyFieldSerializationPolicy(Class)}.
+ *
+ * <p>
+ * This implementation uses reflection. When the system property
+ * {@code gwt.rpc.generateFieldAccessors} is {@code true},
+ * {@link SerializabilityUtil#getFieldAccessor(Class)} returns generated
+ * subclasses instead, which access the non-private fields directly and the
+ * private ones through {@link UnsafeFieldAccessor}, falling back to reflection
+ * only on VMs without {@code sun.misc.Unsafe}.
+ * </p>
+ */
+public class FieldAccessor {
+
+  private final Field[] fields;
+
+  /**
+   * Constructs an accessor for the given fields, overriding their access
+   * restrictions where necessary.
+   */
+  public FieldAccessor(Field[] fields) {
+    this.fields = fields;
+    for (Field field : fields) {
+      if (!field.isAccessible() && !Modifier.isPublic(field.getModifiers())) {
+        // Override the access restrictions
+        field.setAccessible(true);
+      }
+    }
+  }
+
+  /**
+   * Returns the value of a field of an instance, boxing primitive values.
+   */
+  public Object get(Object instance, int index) throws IllegalAccessException {
+    return fields[index].get(instance);
+  }
+
+  /**
+   * Sets the value of a field of an instance, unboxing primitive values.
+   *
+   * @throws IllegalArgumentException if the value cannot be assigned to the
+   *           field
+   */
+  public final void set(Object instance, int index, Object value) throws IllegalAccessException {
+    try {
+      setField(instance, index, value);
+    } catch (ClassCastException e) {
+      throw new IllegalArgumentException("Can not set " + fields[index] + " to "
+          + value.getClass().getName());
+    } catch (NullPointerException e) {
+      throw new IllegalArgumentException("Can not set " + fields[index] + " to null");
+    }
+  }
+
+  /**
+   * Sets the value of a field. Generated subclasses override this method and
+   * may throw {@link ClassCastException} or {@link NullPointerException} for
+   * values that cannot be assigned to the field.
+   */
+  protected void setField(Object instance, int index, Object value) throws IllegalAccessException {
+    fields[index].set(instance, value);
+  }
+}
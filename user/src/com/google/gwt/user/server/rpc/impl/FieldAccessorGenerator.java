@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.dev.asm.ClassWriter;
+import com.google.gwt.dev.asm.Label;
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+import com.google.web.bindery.autobean.vm.impl.ClassGenerationUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates {@link FieldAccessor} subclasses that read and write the
+ * non-private serializable fields of a class with plain field instructions
+ * instead of reflection. Bytecode cannot reach private fields, so generated
+ * accessors extend {@link UnsafeFieldAccessor}, which handles those fields,
+ * when it is available.
+ *
+ * <p>
+ * A generated accessor must be in the same runtime package as the class it
+ * accesses, so it is defined in the class's own ClassLoader. When that is not
+ * possible, e.g. for bootstrap classes, or because the ClassLoader cannot see
+ * the accessor's superclass or does not allow classes to be defined in it, or
+ * when all of the fields are private, an {@link UnsafeFieldAccessor} is used
+ * instead. Only when that is unavailable too does the caller fall back to
+ * reflection.
+ * </p>
+ */
+final class FieldAccessorGenerator implements Opcodes {
+
+  private static final String ACCESSOR_SUFFIX = "$GwtRpcFieldAccessor";
+
+  /**
+   * The superclass of generated accessors.
+   */
+  private static final Class<? extends FieldAccessor> FIELD_ACCESSOR_CLASS =
+      UnsafeFieldAccessor.isAvailable() ? UnsafeFieldAccessor.class : FieldAccessor.class;
+
+  private static final String FIELD_ACCESSOR = Type.getInternalName(FIELD_ACCESSOR_CLASS);
+
+  private static final Logger log = Logger.getLogger(FieldAccessorGenerator.class.getName());
+
+  /**
+   * Returns an accessor for the given serializable fields of a class that does
+   * not use reflection, or <code>null</code> if none can be created.
+   */
+  public static FieldAccessor generate(Class<?> clazz, Field[] fields) {
+    ClassLoader classLoader = clazz.getClassLoader();
+    if (!ClassGenerationUtils.canDefineClasses() || classLoader == null
+        || !hasNonPrivateField(fields)) {
+      return createUnsafeAccessor(fields);
+    }
+
+    String accessorName = clazz.getName() + ACCESSOR_SUFFIX;
+    try {
+      if (Class.forName(FIELD_ACCESSOR_CLASS.getName(), false, classLoader)
+          != FIELD_ACCESSOR_CLASS) {
+        return createUnsafeAccessor(fields);
+      }
+
+      Class<?> accessorClass;
+      byte[] bytes = generateBytes(clazz, accessorName, fields);
+      try {
+        accessorClass = ClassGenerationUtils.defineClass(classLoader, accessorName, bytes,
+            clazz.getProtectionDomain());
+      } catch (InvocationTargetException e) {
+        if (!(e.getCause() instanceof LinkageError)) {
+          throw e;
+        }
+        // Another thread defined the accessor first
+        accessorClass = Class.forName(accessorName, false, classLoader);
+      }
+
+      Constructor<?> constructor = accessorClass.getConstructor(Field[].class);
+      return (FieldAccessor) constructor.newInstance((Object) fields);
+    } catch (Exception e) {
+      log.log(Level.FINE, "Unable to generate a field accessor for " + clazz.getName(), e);
+      return createUnsafeAccessor(fields);
+    } catch (LinkageError e) {
+      log.log(Level.FINE, "Unable to generate a field accessor for " + clazz.getName(), e);
+      return createUnsafeAccessor(fields);
+    }
+  }
+
+  /**
+   * Generates the bytecode of an accessor. Its <code>get</code> and
+   * <code>setField</code> methods switch on the field index and defer to the
+   * superclass for private fields.
+   */
+  static byte[] generateBytes(Class<?> clazz, String accessorName, Field[] fields) {
+    String owner = Type.getInternalName(clazz);
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC,
+        accessorName.replace('.', '/'), null, FIELD_ACCESSOR, null);
+
+    String fieldsDesc = "([" + Type.getDescriptor(Field.class) + ")V";
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", fieldsDesc, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitMethodInsn(INVOKESPECIAL, FIELD_ACCESSOR, "<init>", fieldsDesc);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // public Object get(Object instance, int index)
+    String getDesc = "(Ljava/lang/Object;I)Ljava/lang/Object;";
+    mv = cw.visitMethod(ACC_PUBLIC, "get", getDesc, null,
+        new String[] {"java/lang/IllegalAccessException"});
+    mv.visitCode();
+    Label[] labels = new Label[fields.length];
+    Label inherited = new Label();
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitTableSwitchInsn(0, fields.length - 1, inherited, createLabels(fields, labels,
+        inherited));
+    for (int i = 0; i < fields.length; ++i) {
+      if (labels[i] == inherited) {
+        continue;
+      }
+      Type type = Type.getType(fields[i].getType());
+      mv.visitLabel(labels[i]);
+      mv.visitVarInsn(ALOAD, 1);
+      mv.visitTypeInsn(CHECKCAST, owner);
+      mv.visitFieldInsn(GETFIELD, owner, fields[i].getName(), type.getDescriptor());
+      ClassGenerationUtils.box(mv, type);
+      mv.visitInsn(ARETURN);
+    }
+    mv.visitLabel(inherited);
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitMethodInsn(INVOKESPECIAL, FIELD_ACCESSOR, "get", getDesc);
+    mv.visitInsn(ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    // protected void setField(Object instance, int index, Object value)
+    String setDesc = "(Ljava/lang/Object;ILjava/lang/Object;)V";
+    mv = cw.visitMethod(ACC_PROTECTED, "setField", setDesc, null,
+        new String[] {"java/lang/IllegalAccessException"});
+    mv.visitCode();
+    inherited = new Label();
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitTableSwitchInsn(0, fields.length - 1, inherited, createLabels(fields, labels,
+        inherited));
+    for (int i = 0; i < fields.length; ++i) {
+      if (labels[i] == inherited) {
+        continue;
+      }
+      Type type = Type.getType(fields[i].getType());
+      mv.visitLabel(labels[i]);
+      mv.visitVarInsn(ALOAD, 1);
+      mv.visitTypeInsn(CHECKCAST, owner);
+      mv.visitVarInsn(ALOAD, 3);
+      ClassGenerationUtils.unbox(mv, type);
+      mv.visitFieldInsn(PUTFIELD, owner, fields[i].getName(), type.getDescriptor());
+      mv.visitInsn(RETURN);
+    }
+    mv.visitLabel(inherited);
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ILOAD, 2);
+    mv.visitVarInsn(ALOAD, 3);
+    mv.visitMethodInsn(INVOKESPECIAL, FIELD_ACCESSOR, "setField", setDesc);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /**
+   * Fills in the switch labels for the given fields; private fields are
+   * handled by <code>inherited</code>, which calls the superclass.
+   */
+  private static Label[] createLabels(Field[] fields, Label[] labels, Label inherited) {
+    for (int i = 0; i < fields.length; ++i) {
+      labels[i] = Modifier.isPrivate(fields[i].getModifiers()) ? inherited : new Label();
+    }
+    return labels;
+  }
+
+  private static FieldAccessor createUnsafeAccessor(Field[] fields) {
+    return UnsafeFieldAccessor.isAvailable() ? new UnsafeFieldAccessor(fields) : null;
+  }
+
+  private static boolean hasNonPrivateField(Field[] fields) {
+    for (Field field : fields) {
+      if (!Modifier.isPrivate(field.getModifiers())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private FieldAccessorGenerator() {
+  }
+}
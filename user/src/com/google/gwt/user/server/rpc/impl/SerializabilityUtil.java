@@ -23,9 +23,13 @@ import com.google.gwt.user.client.rpc.SerializationStreamReader;
 import com.google.gwt.user.client.rpc.SerializationStreamWriter;
 import com.google.gwt.user.server.rpc.SerializationPolicy;
 import com.google.gwt.user.server.rpc.ServerCustomFieldSerializer;
+import com.google.web.bindery.autobean.vm.impl.ClassGenerationUtils;
+import com.google.web.bindery.autobean.vm.impl.ClassGenerationUtils.WeakClassKey;
 
 import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Modifier;
@@ -38,9 +42,10 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.CRC32;
 
 /**
@@ -61,60 +66,78 @@ public class SerializabilityUtil {
   };
 
   /**
-   * A permanent cache of all computed CRCs on classes. This is safe to do
-   * because a Class is guaranteed not to change within the lifetime of a
-   * ClassLoader (and thus, this Map). Access must be synchronized.
-   * 
-   * NOTE: after synchronizing on this field, it's possible to additionally
-   * synchronize on {@link #classCustomSerializerCache},
-   * {@link #classSerializableFieldsCache} or
-   * {@link #classServerCustomSerializerCache}, so be aware deadlock potential
-   * when changing this code.
+   * The reflection metadata used to serialize instances of a class. Each value
+   * is computed the first time it is needed; the computations are idempotent,
+   * so threads that race on a value may compute it more than once but always
+   * publish the same answer, and no locking is needed.
    */
-  private static final Map<Class<?>, String> classCRC32Cache =
-      new IdentityHashMap<Class<?>, String>();
+  private static final class ClassDescriptor {
+    /**
+     * The serialization signature. Like the previous per-class CRC cache, this
+     * is computed against the first policy that asks for it.
+     */
+    volatile String crc32;
 
-  /**
-   * A permanent cache of all serializable fields on classes. This is safe to do
-   * because a Class is guaranteed not to change within the lifetime of a
-   * ClassLoader (and thus, this Map). Access must be synchronized.
-   * 
-   * NOTE: to prevent deadlock, you may NOT synchronize {@link #classCRC32Cache}
-   * after synchronizing on this field.
-   */
-  private static final Map<Class<?>, Field[]> classSerializableFieldsCache =
-      new IdentityHashMap<Class<?>, Field[]>();
+    /**
+     * The custom field serializer, or the class itself if there is none.
+     */
+    volatile Class<?> customSerializer;
+
+    /**
+     * The accessor for the serializable fields.
+     */
+    volatile FieldAccessor fieldAccessor;
+
+    /**
+     * The serializable fields, sorted by name.
+     */
+    volatile Field[] serializableFields;
+
+    /**
+     * The type-checking custom field serializer, or the class itself if there
+     * is none.
+     */
+    volatile Class<?> serverCustomSerializer;
+  }
 
   /**
-   * A permanent cache of all which classes onto custom field serializers. This
-   * is safe to do because a Class is guaranteed not to change within the
-   * lifetime of a ClassLoader (and thus, this Map). Access must be
-   * synchronized.
-   * 
-   * NOTE: to prevent deadlock, you may NOT synchronize {@link #classCRC32Cache}
-   * after synchronizing on this field.
+   * A permanent cache of the descriptors of classes that are loaded by the
+   * ClassLoader of this class or one of its ancestors, which is safe because
+   * such a class cannot be unloaded before this Map is. This is where the
+   * classes of a web application end up when the GWT servlet code is deployed
+   * with it, so lookups in the common case take no locks and allocate nothing.
    */
-  private static final Map<Class<?>, Class<?>> classCustomSerializerCache =
-      new IdentityHashMap<Class<?>, Class<?>>();
+  private static final ConcurrentMap<Class<?>, ClassDescriptor> classDescriptorCache =
+      new ConcurrentHashMap<Class<?>, ClassDescriptor>();
 
   /**
-   * A permanent cache of all which classes onto server-side custom field
-   * serializers. This is safe to do because a Class is guaranteed not to change
-   * within the lifetime of a ClassLoader (and thus, this Map). Access must be
-   * synchronized.
-   * 
-   * NOTE: to prevent deadlock, you may NOT synchronize {@link #classCRC32Cache}
-   * after synchronizing on this field.
+   * A cache of the descriptors of all other classes, e.g. those of web
+   * applications sharing GWT servlet code installed in a container. The keys
+   * are weak and the values soft, since a descriptor refers to its class, so
+   * that the cache does not keep the web applications' ClassLoaders alive.
    */
-  private static final Map<Class<?>, Class<?>> classServerCustomSerializerCache =
-      new IdentityHashMap<Class<?>, Class<?>>();
+  private static final ConcurrentMap<WeakClassKey, SoftReference<ClassDescriptor>>
+      foreignClassDescriptorCache =
+          new ConcurrentHashMap<WeakClassKey, SoftReference<ClassDescriptor>>();
+
+  private static final ReferenceQueue<Class<?>> foreignClassQueue =
+      new ReferenceQueue<Class<?>>();
 
   /**
    * Map of {@link Class} objects to singleton instances of that
    * {@link CustomFieldSerializer}.
    */
   private static final Map<Class<?>, CustomFieldSerializer<?>> CLASS_TO_SERIALIZER_INSTANCE =
-      new IdentityHashMap<Class<?>, CustomFieldSerializer<?>>();
+      new ConcurrentHashMap<Class<?>, CustomFieldSerializer<?>>();
+
+  /**
+   * Whether {@link #getFieldAccessor(Class)} should generate bytecode instead
+   * of using reflection. Private fields, which bytecode cannot reach, are
+   * accessed at their {@code sun.misc.Unsafe} field offsets; only VMs without
+   * {@code Unsafe} use reflection for them.
+   */
+  private static final boolean GENERATE_FIELD_ACCESSORS =
+      Boolean.getBoolean("gwt.rpc.generateFieldAccessors");
 
   private static final String JRE_SERVER_SERIALIZER_PACKAGE = "com.google.gwt.user.server.rpc.core";
   private static final String JRE_SERIALIZER_PACKAGE = "com.google.gwt.user.client.rpc.core";
@@ -193,24 +216,22 @@ public class SerializabilityUtil {
    * ensure consistent answers.
    */
   public static Field[] applyFieldSerializationPolicy(Class<?> clazz) {
-    Field[] serializableFields;
-    synchronized (classSerializableFieldsCache) {
-      serializableFields = classSerializableFieldsCache.get(clazz);
-      if (serializableFields == null) {
-        ArrayList<Field> fieldList = new ArrayList<Field>();
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-          if (fieldQualifiesForSerialization(field)) {
-            fieldList.add(field);
-          }
+    ClassDescriptor descriptor = getClassDescriptor(clazz);
+    Field[] serializableFields = descriptor.serializableFields;
+    if (serializableFields == null) {
+      ArrayList<Field> fieldList = new ArrayList<Field>();
+      Field[] fields = clazz.getDeclaredFields();
+      for (Field field : fields) {
+        if (fieldQualifiesForSerialization(field)) {
+          fieldList.add(field);
         }
-        serializableFields = fieldList.toArray(new Field[fieldList.size()]);
+      }
+      serializableFields = fieldList.toArray(new Field[fieldList.size()]);
 
-        // sort the fields by name
-        Arrays.sort(serializableFields, 0, serializableFields.length, FIELD_COMPARATOR);
+      // sort the fields by name
+      Arrays.sort(serializableFields, 0, serializableFields.length, FIELD_COMPARATOR);
 
-        classSerializableFieldsCache.put(clazz, serializableFields);
-      }
+      descriptor.serializableFields = serializableFields;
     }
     return serializableFields;
   }
@@ -344,21 +365,39 @@ public class SerializabilityUtil {
     return null;
   }
 
+  /**
+   * Returns the accessor for the fields returned by
+   * {@link #applyFieldSerializationPolicy(Class)}.
+   */
+  public static FieldAccessor getFieldAccessor(Class<?> clazz) {
+    ClassDescriptor descriptor = getClassDescriptor(clazz);
+    FieldAccessor fieldAccessor = descriptor.fieldAccessor;
+    if (fieldAccessor == null) {
+      Field[] fields = applyFieldSerializationPolicy(clazz);
+      if (GENERATE_FIELD_ACCESSORS) {
+        fieldAccessor = FieldAccessorGenerator.generate(clazz, fields);
+      }
+      if (fieldAccessor == null) {
+        fieldAccessor = new FieldAccessor(fields);
+      }
+      descriptor.fieldAccessor = fieldAccessor;
+    }
+    return fieldAccessor;
+  }
+
   public static String getSerializationSignature(Class<?> instanceType,
       SerializationPolicy policy) {
-    String result;
-    synchronized (classCRC32Cache) {
-      result = classCRC32Cache.get(instanceType);
-      if (result == null) {
-        CRC32 crc = new CRC32();
-        try {
-          generateSerializationSignature(instanceType, crc, policy);
-        } catch (UnsupportedEncodingException e) {
-          throw new RuntimeException("Could not compute the serialization signature", e);
-        }
-        result = Long.toString(crc.getValue());
-        classCRC32Cache.put(instanceType, result);
+    ClassDescriptor descriptor = getClassDescriptor(instanceType);
+    String result = descriptor.crc32;
+    if (result == null) {
+      CRC32 crc = new CRC32();
+      try {
+        generateSerializationSignature(instanceType, crc, policy);
+      } catch (UnsupportedEncodingException e) {
+        throw new RuntimeException("Could not compute the serialization signature", e);
       }
+      result = Long.toString(crc.getValue());
+      descriptor.crc32 = result;
     }
     return result;
   }
@@ -383,22 +422,18 @@ public class SerializabilityUtil {
       return null;
     }
 
-    Class<?> result;
-    synchronized (classCustomSerializerCache) {
-      result = classCustomSerializerCache.get(instanceType);
+    ClassDescriptor descriptor = getClassDescriptor(instanceType);
+    Class<?> result = descriptor.customSerializer;
+    if (result == null) {
+      result = computeHasCustomFieldSerializer(instanceType, false);
       if (result == null) {
-        result = computeHasCustomFieldSerializer(instanceType, false);
-        if (result == null) {
-          /*
-           * Use (result == instanceType) as a sentinel value when the class has
-           * no custom field serializer. We avoid using null as the sentinel
-           * value, because that would necessitate an additional containsKey()
-           * check in the most common case, inside the synchronized block.
-           */
-          result = instanceType;
-        }
-        classCustomSerializerCache.put(instanceType, result);
+        /*
+         * Use (result == instanceType) as a sentinel value when the class has
+         * no custom field serializer, so that null still means "not computed".
+         */
+        result = instanceType;
       }
+      descriptor.customSerializer = result;
     }
     return (result == instanceType) ? null : result;
   }
@@ -416,22 +451,18 @@ public class SerializabilityUtil {
       return null;
     }
 
-    Class<?> result;
-    synchronized (classServerCustomSerializerCache) {
-      result = classServerCustomSerializerCache.get(instanceType);
+    ClassDescriptor descriptor = getClassDescriptor(instanceType);
+    Class<?> result = descriptor.serverCustomSerializer;
+    if (result == null) {
+      result = computeHasCustomFieldSerializer(instanceType, true);
       if (result == null) {
-        result = computeHasCustomFieldSerializer(instanceType, true);
-        if (result == null) {
-          /*
-           * Use (result == instanceType) as a sentinel value when the class has
-           * no custom field serializer. We avoid using null as the sentinel
-           * value, because that would necessitate an additional containsKey()
-           * check in the most common case, inside the synchronized block.
-           */
-          result = instanceType;
-        }
-        classServerCustomSerializerCache.put(instanceType, result);
+        /*
+         * Use (result == instanceType) as a sentinel value when the class has
+         * no custom field serializer, so that null still means "not computed".
+         */
+        result = instanceType;
       }
+      descriptor.serverCustomSerializer = result;
     }
     return (result == instanceType) ? null : result;
   }
@@ -501,10 +532,9 @@ public class SerializabilityUtil {
   static CustomFieldSerializer<?> loadCustomFieldSerializer(final Class<?> customSerializerClass)
       throws SerializationException {
     /**
-     * Note that neither reading or writing to the CLASS_TO_SERIALIZER_INSTANCE
-     * is synchronized for performance reasons. This could cause get misses, put
-     * misses and the same CustomFieldSerializer to be instantiated more than
-     * once, but none of these are critical operations as
+     * Note that reading and writing CLASS_TO_SERIALIZER_INSTANCE are not
+     * atomic. This could cause the same CustomFieldSerializer to be
+     * instantiated more than once, but that is not critical as
      * CLASS_TO_SERIALIZER_INSTANCE is only a performance improving cache.
      */
     CustomFieldSerializer<?> customFieldSerializer =
@@ -926,6 +956,36 @@ public class SerializabilityUtil {
     }
   }
 
+  /**
+   * Returns the descriptor of a class, creating it if necessary.
+   */
+  private static ClassDescriptor getClassDescriptor(Class<?> clazz) {
+    ClassDescriptor descriptor = classDescriptorCache.get(clazz);
+    if (descriptor != null) {
+      return descriptor;
+    }
+
+    if (ClassGenerationUtils.isLoadedByAncestorLoader(clazz)) {
+      descriptor = new ClassDescriptor();
+      ClassDescriptor existing = classDescriptorCache.putIfAbsent(clazz, descriptor);
+      return existing == null ? descriptor : existing;
+    }
+
+    WeakClassKey key = new WeakClassKey(clazz, null);
+    SoftReference<ClassDescriptor> ref = foreignClassDescriptorCache.get(key);
+    descriptor = ref == null ? null : ref.get();
+    if (descriptor == null) {
+      // Drop the entries of classes that have been unloaded
+      for (Object stale; (stale = foreignClassQueue.poll()) != null;) {
+        foreignClassDescriptorCache.remove(stale);
+      }
+      descriptor = new ClassDescriptor();
+      foreignClassDescriptorCache.put(new WeakClassKey(clazz, foreignClassQueue),
+          new SoftReference<ClassDescriptor>(descriptor));
+    }
+    return descriptor;
+  }
+
   private static Class<?> getCustomFieldSerializer(ClassLoader classLoader,
       String qualifiedSerialzierName) {
     try {
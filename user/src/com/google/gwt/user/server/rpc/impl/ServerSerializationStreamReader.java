@@ -35,7 +35,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
@@ -797,7 +796,9 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     }
 
     Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
-    for (Field declField : serializableFields) {
+    FieldAccessor fieldAccessor = SerializabilityUtil.getFieldAccessor(instanceClass);
+    for (int i = 0; i < serializableFields.length; ++i) {
+      Field declField = serializableFields[i];
       assert (declField != null);
       if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
         continue;
@@ -818,14 +819,7 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
       if ((setters != null) && ((setter = setters.get(fieldName)) != null)) {
         setter.invoke(instance, value);
       } else {
-        boolean isAccessible = declField.isAccessible();
-        boolean needsAccessOverride = !isAccessible && !Modifier.isPublic(declField.getModifiers());
-        if (needsAccessOverride) {
-          // Override access restrictions
-          declField.setAccessible(true);
-        }
-
-        declField.set(instance, value);
+        fieldAccessor.set(instance, i, value);
       }
     }
 
@@ -24,10 +24,10 @@ import com.google.gwt.user.server.rpc.SerializationPolicy;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -100,6 +100,58 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
+  /**
+   * Writes the same output as {@link LengthConstrainedArray} directly to a
+   * {@link Writer}, so that the array never needs to be held in memory.
+   */
+  private static class LengthConstrainedArrayWriter {
+    private int count = 0;
+    private boolean needsComma = false;
+    private int total = 0;
+    private final Writer writer;
+
+    public LengthConstrainedArrayWriter(Writer writer) throws IOException {
+      this.writer = writer;
+      writer.write('[');
+    }
+
+    public void addToken(String token) throws IOException {
+      startToken();
+      writer.write(String.valueOf(token));
+    }
+
+    public void close() throws IOException {
+      if (total > LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        writer.write(LengthConstrainedArray.POSTLUDE);
+      } else {
+        writer.write(']');
+      }
+    }
+
+    /**
+     * Writes the separator that precedes the next token; the caller then
+     * writes the token itself.
+     */
+    public void startToken() throws IOException {
+      total++;
+      if (count++ == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        if (total == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 1) {
+          writer.write(LengthConstrainedArray.PRELUDE);
+        } else {
+          writer.write("],[");
+        }
+        count = 0;
+        needsComma = false;
+      }
+
+      if (needsComma) {
+        writer.write(',');
+      } else {
+        needsComma = true;
+      }
+    }
+  }
+
   /**
    * Enumeration used to provided typed instance writers.
    */
@@ -561,6 +613,30 @@ public final class ServerSerializationStreamWriter extends
     return stream.toString();
   }
   
+  /**
+   * Writes the same array as {@link #toString()} to <code>writer</code>,
+   * without building it in memory first. This keeps the memory needed for a
+   * large response down to the serialized tokens themselves.
+   */
+  public void writeTo(Writer writer) throws IOException {
+    LengthConstrainedArrayWriter stream = new LengthConstrainedArrayWriter(writer);
+    ListIterator<String> tokenIterator = tokenList.listIterator(tokenList.size());
+    while (tokenIterator.hasPrevious()) {
+      stream.addToken(tokenIterator.previous());
+    }
+
+    stream.startToken();
+    LengthConstrainedArrayWriter tableStream = new LengthConstrainedArrayWriter(writer);
+    for (String s : getStringTable()) {
+      tableStream.addToken(escapeString(s));
+    }
+    tableStream.close();
+
+    stream.addToken(String.valueOf(getFlags()));
+    stream.addToken(String.valueOf(getVersion()));
+    stream.close();
+  }
+
   @Override
   public void writeLong(long value) {
     if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
@@ -689,23 +765,17 @@ public final class ServerSerializationStreamWriter extends
     }
     
     // Write the client-visible field data
-    for (Field declField : serializableFields) {
+    FieldAccessor fieldAccessor = SerializabilityUtil.getFieldAccessor(instanceClass);
+    for (int i = 0; i < serializableFields.length; ++i) {
+      Field declField = serializableFields[i];
       if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
         // Skip server-only fields
         continue;
       }
 
-      boolean isAccessible = declField.isAccessible();
-      boolean needsAccessOverride = !isAccessible
-          && !Modifier.isPublic(declField.getModifiers());
-      if (needsAccessOverride) {
-        // Override the access restrictions
-        declField.setAccessible(true);
-      }
-
       Object value;
       try {
-        value = declField.get(instance);
+        value = fieldAccessor.get(instance, i);
         serializeValue(value, declField.getType());
 
       } catch (IllegalArgumentException e) {
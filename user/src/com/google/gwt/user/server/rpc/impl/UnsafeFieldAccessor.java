@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import java.lang.reflect.Field;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sun.misc.Unsafe;
+
+/**
+ * A {@link FieldAccessor} that reads and writes fields at their
+ * {@link Unsafe#objectFieldOffset(Field) offsets}, which reaches private
+ * fields without the cost of reflection. Generated accessors extend this class
+ * when it is {@link #isAvailable() available}, so that it handles the private
+ * fields they cannot access directly.
+ *
+ * <p>
+ * Since {@link Unsafe} does not check types, this class checks the instance
+ * and every value before writing it, in the same way as the generated code.
+ * </p>
+ */
+public class UnsafeFieldAccessor extends FieldAccessor {
+
+  private static final Unsafe theUnsafe;
+
+  static {
+    Unsafe unsafe = null;
+    try {
+      Field f = Unsafe.class.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      unsafe = (Unsafe) f.get(null);
+    } catch (Exception e) {
+      Logger.getLogger(UnsafeFieldAccessor.class.getName()).log(Level.FINE,
+          "Field accessors will use reflection for private fields", e);
+    } catch (LinkageError e) {
+      Logger.getLogger(UnsafeFieldAccessor.class.getName()).log(Level.FINE,
+          "Field accessors will use reflection for private fields", e);
+    }
+    theUnsafe = unsafe;
+  }
+
+  /**
+   * Returns <code>true</code> if this VM provides {@link Unsafe}, which must
+   * be checked before constructing an instance.
+   */
+  public static boolean isAvailable() {
+    return theUnsafe != null;
+  }
+
+  private final Class<?>[] declaringClasses;
+  private final long[] offsets;
+  private final Class<?>[] types;
+
+  public UnsafeFieldAccessor(Field[] fields) {
+    super(fields);
+    declaringClasses = new Class<?>[fields.length];
+    offsets = new long[fields.length];
+    types = new Class<?>[fields.length];
+    for (int i = 0; i < fields.length; ++i) {
+      declaringClasses[i] = fields[i].getDeclaringClass();
+      offsets[i] = theUnsafe.objectFieldOffset(fields[i]);
+      types[i] = fields[i].getType();
+    }
+  }
+
+  @Override
+  public Object get(Object instance, int index) {
+    checkInstance(instance, index);
+    Class<?> type = types[index];
+    long offset = offsets[index];
+    if (!type.isPrimitive()) {
+      return theUnsafe.getObject(instance, offset);
+    } else if (type == int.class) {
+      return theUnsafe.getInt(instance, offset);
+    } else if (type == long.class) {
+      return theUnsafe.getLong(instance, offset);
+    } else if (type == boolean.class) {
+      return theUnsafe.getBoolean(instance, offset);
+    } else if (type == double.class) {
+      return theUnsafe.getDouble(instance, offset);
+    } else if (type == float.class) {
+      return theUnsafe.getFloat(instance, offset);
+    } else if (type == char.class) {
+      return theUnsafe.getChar(instance, offset);
+    } else if (type == short.class) {
+      return theUnsafe.getShort(instance, offset);
+    } else {
+      return theUnsafe.getByte(instance, offset);
+    }
+  }
+
+  @Override
+  protected void setField(Object instance, int index, Object value) {
+    checkInstance(instance, index);
+    Class<?> type = types[index];
+    long offset = offsets[index];
+    if (!type.isPrimitive()) {
+      theUnsafe.putObject(instance, offset, type.cast(value));
+    } else if (type == int.class) {
+      theUnsafe.putInt(instance, offset, ((Integer) value).intValue());
+    } else if (type == long.class) {
+      theUnsafe.putLong(instance, offset, ((Long) value).longValue());
+    } else if (type == boolean.class) {
+      theUnsafe.putBoolean(instance, offset, ((Boolean) value).booleanValue());
+    } else if (type == double.class) {
+      theUnsafe.putDouble(instance, offset, ((Double) value).doubleValue());
+    } else if (type == float.class) {
+      theUnsafe.putFloat(instance, offset, ((Float) value).floatValue());
+    } else if (type == char.class) {
+      theUnsafe.putChar(instance, offset, ((Character) value).charValue());
+    } else if (type == short.class) {
+      theUnsafe.putShort(instance, offset, ((Short) value).shortValue());
+    } else {
+      theUnsafe.putByte(instance, offset, ((Byte) value).byteValue());
+    }
+  }
+
+  /**
+   * Makes sure that the field is at the given offset in the instance, since
+   * {@link Unsafe} does not check this either.
+   */
+  private void checkInstance(Object instance, int index) {
+    if (!declaringClasses[index].isInstance(instance)) {
+      throw new IllegalArgumentException("Can not access a field of "
+          + declaringClasses[index].getName() + " in "
+          + (instance == null ? "null" : instance.getClass().getName()));
+    }
+  }
+}
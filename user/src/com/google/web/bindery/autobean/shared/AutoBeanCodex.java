@@ -19,6 +19,8 @@ import com.google.web.bindery.autobean.shared.impl.AutoBeanCodexImpl;
 import com.google.web.bindery.autobean.shared.impl.AutoBeanCodexImpl.EncodeState;
 import com.google.web.bindery.autobean.shared.impl.StringQuoter;
 
+import java.io.IOException;
+
 /**
  * Utility methods for encoding an AutoBean graph into a JSON-compatible string.
  * This codex intentionally does not preserve object identity, nor does it
@@ -83,4 +85,23 @@ public class AutoBeanCodex {
     AutoBeanCodexImpl.doEncode(state, bean);
     return StringQuoter.split(sb.toString());
   }
+
+  /**
+   * Encodes an AutoBean directly into an {@link Appendable}, such as a
+   * {@code Writer} on the JVM. Unlike {@link #encode(AutoBean)}, this does not
+   * build a Splittable for the payload, so the payload is never held in memory
+   * as a whole. The values of Splittable properties are written from their
+   * {@link Splittable#getPayload() payloads}.
+   * 
+   * @param bean the bean to encode
+   * @param out receives the payload
+   * @throws IOException if {@code out} throws one
+   */
+  public static void encode(AutoBean<?> bean, Appendable out) throws IOException {
+    if (bean == null) {
+      out.append(Splittable.NULL.getPayload());
+      return;
+    }
+    AutoBeanCodexImpl.doEncode(out, bean);
+  }
 }
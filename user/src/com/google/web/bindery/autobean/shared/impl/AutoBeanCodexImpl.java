@@ -23,6 +23,7 @@ import com.google.web.bindery.autobean.shared.AutoBeanVisitor.ParameterizationVi
 import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.ValueCodex;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -67,8 +68,8 @@ public class AutoBeanCodexImpl {
     /**
      * Constructs a state object used for encoding payloads.
      */
-    public static EncodeState forEncode(AutoBeanFactory factory, StringBuilder sb) {
-      return new EncodeState(factory, sb);
+    public static EncodeState forEncode(AutoBeanFactory factory, Appendable out) {
+      return new EncodeState(factory, out);
     }
 
     /**
@@ -81,14 +82,40 @@ public class AutoBeanCodexImpl {
 
     final EnumMap enumMap;
     final AutoBeanFactory factory;
-    final StringBuilder sb;
+    final Appendable out;
     final Stack<AutoBean<?>> seen;
 
-    private EncodeState(AutoBeanFactory factory, StringBuilder sb) {
+    private EncodeState(AutoBeanFactory factory, Appendable out) {
       this.factory = factory;
       enumMap = factory instanceof EnumMap ? (EnumMap) factory : null;
-      this.sb = sb;
-      this.seen = sb == null ? null : new Stack<AutoBean<?>>();
+      this.out = out;
+      this.seen = out == null ? null : new Stack<AutoBean<?>>();
+    }
+
+    /**
+     * Appends encoded text to the payload.
+     */
+    void append(String text) {
+      try {
+        out.append(text);
+      } catch (IOException e) {
+        throw new AppendException(e);
+      }
+    }
+  }
+
+  /**
+   * Carries an IOException thrown by the Appendable that a payload is encoded
+   * into.
+   */
+  static class AppendException extends RuntimeException {
+    public AppendException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public IOException getCause() {
+      return (IOException) super.getCause();
     }
   }
 
@@ -153,20 +180,20 @@ public class AutoBeanCodexImpl {
 
     public void encode(EncodeState state, Object value) {
       if (value == null) {
-        state.sb.append("null");
+        state.append("null");
         return;
       }
 
       Iterator<?> it = ((Collection<?>) value).iterator();
-      state.sb.append("[");
+      state.append("[");
       if (it.hasNext()) {
         elementDecoder.encode(state, it.next());
         while (it.hasNext()) {
-          state.sb.append(",");
+          state.append(",");
           elementDecoder.encode(state, it.next());
         }
       }
-      state.sb.append("]");
+      state.append("]");
     }
 
     public Splittable extractSplittable(EncodeState state, Object value) {
@@ -192,10 +219,10 @@ public class AutoBeanCodexImpl {
 
     public void encode(EncodeState state, Object value) {
       if (value == null) {
-        state.sb.append("null");
+        state.append("null");
         return;
       }
-      state.sb.append(StringQuoter.quote(state.enumMap.getToken((Enum<?>) value)));
+      state.append(StringQuoter.quote(state.enumMap.getToken((Enum<?>) value)));
     }
 
     public Splittable extractSplittable(EncodeState state, Object value) {
@@ -245,7 +272,7 @@ public class AutoBeanCodexImpl {
 
     public void encode(EncodeState state, Object value) {
       if (value == null) {
-        state.sb.append("null");
+        state.append("null");
         return;
       }
 
@@ -253,7 +280,7 @@ public class AutoBeanCodexImpl {
       boolean isSimpleMap = keyDecoder instanceof ValueCoder;
       if (isSimpleMap) {
         boolean first = true;
-        state.sb.append("{");
+        state.append("{");
         for (Map.Entry<?, ?> entry : map.entrySet()) {
           Object mapKey = entry.getKey();
           if (mapKey == null) {
@@ -265,19 +292,19 @@ public class AutoBeanCodexImpl {
           if (first) {
             first = false;
           } else {
-            state.sb.append(",");
+            state.append(",");
           }
 
           keyDecoder.encode(state, mapKey);
-          state.sb.append(":");
+          state.append(":");
           if (mapValue == null) {
             // Null values must be preserved
-            state.sb.append("null");
+            state.append("null");
           } else {
             valueDecoder.encode(state, mapValue);
           }
         }
-        state.sb.append("}");
+        state.append("}");
       } else {
         List<Object> keys = new ArrayList<Object>(map.size());
         List<Object> values = new ArrayList<Object>(map.size());
@@ -285,11 +312,11 @@ public class AutoBeanCodexImpl {
           keys.add(entry.getKey());
           values.add(entry.getValue());
         }
-        state.sb.append("[");
+        state.append("[");
         collectionCoder(List.class, keyDecoder).encode(state, keys);
-        state.sb.append(",");
+        state.append(",");
         collectionCoder(List.class, valueDecoder).encode(state, values);
-        state.sb.append("]");
+        state.append("]");
       }
     }
 
@@ -315,7 +342,7 @@ public class AutoBeanCodexImpl {
 
     public void encode(EncodeState state, Object value) {
       if (value == null) {
-        state.sb.append("null");
+        state.append("null");
         return;
       }
       doEncode(state, AutoBeanUtils.getAutoBean(value));
@@ -368,7 +395,7 @@ public class AutoBeanCodexImpl {
 
     @Override
     public void endVisit(AutoBean<?> bean, Context ctx) {
-      state.sb.append("}");
+      state.append("}");
       state.seen.pop();
     }
 
@@ -378,7 +405,7 @@ public class AutoBeanCodexImpl {
         throw new HaltException(new UnsupportedOperationException("Cycles not supported"));
       }
       state.seen.push(bean);
-      state.sb.append("{");
+      state.append("{");
       return true;
     }
 
@@ -406,10 +433,10 @@ public class AutoBeanCodexImpl {
       if (first) {
         first = false;
       } else {
-        state.sb.append(",");
+        state.append(",");
       }
-      state.sb.append(StringQuoter.quote(propertyName));
-      state.sb.append(":");
+      state.append(StringQuoter.quote(propertyName));
+      state.append(":");
       decoder.encode(state, value);
     }
   }
@@ -463,10 +490,10 @@ public class AutoBeanCodexImpl {
 
     public void encode(EncodeState state, Object value) {
       if (value == null) {
-        state.sb.append("null");
+        state.append("null");
         return;
       }
-      state.sb.append(((Splittable) value).getPayload());
+      state.append(((Splittable) value).getPayload());
     }
 
     public Splittable extractSplittable(EncodeState state, Object value) {
@@ -493,7 +520,7 @@ public class AutoBeanCodexImpl {
     }
 
     public void encode(EncodeState state, Object value) {
-      state.sb.append(ValueCodex.encode(type, value).getPayload());
+      state.append(ValueCodex.encode(type, value).getPayload());
     }
 
     public Splittable extractSplittable(EncodeState state, Object value) {
@@ -561,6 +588,17 @@ public class AutoBeanCodexImpl {
     }
   }
 
+  /**
+   * Encodes a bean into an Appendable, rethrowing any IOException it throws.
+   */
+  public static void doEncode(Appendable out, AutoBean<?> bean) throws IOException {
+    try {
+      doEncode(EncodeState.forEncode(bean.getFactory(), out), bean);
+    } catch (AppendException e) {
+      throw e.getCause();
+    }
+  }
+
   public static <E extends Enum<?>> Coder enumCoder(Class<E> type) {
     Coder toReturn = coders.get(type);
     if (toReturn == null) {
@@ -63,6 +63,25 @@ public class Configuration {
       return this;
     }
 
+    /**
+     * Determines whether AutoBeans are implemented with classes generated at
+     * runtime, which call through to the bean's properties directly, rather
+     * than with {@link java.lang.reflect.Proxy} instances, which dispatch every
+     * method call reflectively. Types for which no class can be generated
+     * always use a Proxy.
+     * <p>
+     * The default is the value of the
+     * {@value #GENERATE_BEAN_CLASSES_PROPERTY} system property, or
+     * {@code false} if it is not set.
+     * 
+     * @param generateBeanClasses {@code true} to use generated classes
+     * @return the Builder
+     */
+    public Builder setGenerateBeanClasses(boolean generateBeanClasses) {
+      toReturn.generateBeanClasses = generateBeanClasses;
+      return this;
+    }
+
     /**
      * Equivalent to applying a
      * {@link com.google.web.bindery.autobean.shared.AutoBeanFactory.NoWrap
@@ -77,8 +96,16 @@ public class Configuration {
     }
   }
 
+  /**
+   * The system property that provides the default value of
+   * {@link Builder#setGenerateBeanClasses(boolean)}.
+   */
+  public static final String GENERATE_BEAN_CLASSES_PROPERTY = "gwt.autobean.generateBeanClasses";
+
   private List<Class<?>> categories = Collections.emptyList();
 
+  private boolean generateBeanClasses = Boolean.getBoolean(GENERATE_BEAN_CLASSES_PROPERTY);
+
   private Set<Class<?>> noWrap = new HashSet<Class<?>>();
 
   private Configuration() {
@@ -91,4 +118,8 @@ public class Configuration {
   public Set<Class<?>> getNoWrap() {
     return noWrap;
   }
+
+  public boolean isGenerateBeanClasses() {
+    return generateBeanClasses;
+  }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * The superclass of the shim classes generated by {@link BeanClassGenerator}.
+ * It performs the same work as {@link ShimHandler} after a generated method has
+ * called the backing object directly.
+ * 
+ * @param <T> the interface type of the AutoBean
+ */
+public abstract class AbstractShim<T> {
+  private final ProxyAutoBean<T> bean;
+  private final BeanClassInfo info;
+  private final Method interceptor;
+
+  protected AbstractShim(ProxyAutoBean<T> bean, BeanClassInfo info) {
+    this.bean = bean;
+    this.info = info;
+    interceptor = info.getCategories(bean.getConfiguration().getCategories()).interceptor;
+  }
+
+  @Override
+  public boolean equals(Object couldBeShim) {
+    if (couldBeShim == null) {
+      return false;
+    }
+    // Handles the foo.equals(foo) case
+    if (this == couldBeShim) {
+      return true;
+    }
+    return bean.getWrapped().equals(couldBeShim);
+  }
+
+  @Override
+  public int hashCode() {
+    return bean.getWrapped().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return bean.getWrapped().toString();
+  }
+
+  /**
+   * Called by a generated method that is not a property accessor, after it has
+   * called the backing object.
+   */
+  protected final Object __afterCall(int index, Object returned, Object[] args) {
+    // XXX How should freezing and calls work together?
+    bean.call(info.names[index], returned, args);
+    return finish(index, returned);
+  }
+
+  /**
+   * Called by a generated getter after it has called the backing object.
+   */
+  protected final Object __afterGet(int index, Object returned) {
+    return finish(index, bean.get(info.names[index], returned));
+  }
+
+  /**
+   * Called by a generated setter after it has called the backing object.
+   */
+  protected final Object __afterSet(int index, Object returned, Object value) {
+    bean.set(info.names[index], value);
+    return finish(index, returned);
+  }
+
+  /**
+   * Returns the backing object.
+   */
+  protected final Object __getWrapped() {
+    return bean.getWrapped();
+  }
+
+  private Object finish(int index, Object toReturn) {
+    Class<?> intf = info.returnTypes[index];
+    if (!Object.class.equals(intf)) {
+      toReturn = ShimHandler.maybeWrap(bean, intf, toReturn);
+    }
+    if (interceptor != null) {
+      try {
+        toReturn = interceptor.invoke(null, bean, toReturn);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      } catch (InvocationTargetException e) {
+        throw BeanClassInfo.propagate(e.getCause());
+      }
+    }
+    return toReturn;
+  }
+}
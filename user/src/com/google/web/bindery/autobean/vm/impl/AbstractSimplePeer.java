@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.web.bindery.autobean.vm.impl.BeanClassInfo.Categories;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * The superclass of the simple peer classes generated by
+ * {@link BeanClassGenerator}. It performs the same work as
+ * {@link SimpleBeanHandler}, without having to find out what kind of method
+ * was called.
+ * 
+ * @param <T> the interface type of the AutoBean
+ */
+public abstract class AbstractSimplePeer<T> {
+  private final ProxyAutoBean<T> bean;
+  private final Categories categories;
+  private final BeanClassInfo info;
+
+  protected AbstractSimplePeer(ProxyAutoBean<T> bean, BeanClassInfo info) {
+    this.bean = bean;
+    this.info = info;
+    categories = info.getCategories(bean.getConfiguration().getCategories());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (categories.equals == null) {
+      return super.equals(obj);
+    }
+    return (Boolean) invoke(categories.equals, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    if (categories.hashCode == null) {
+      return super.hashCode();
+    }
+    return (Integer) invoke(categories.hashCode);
+  }
+
+  /**
+   * For debugging use only.
+   */
+  @Override
+  public String toString() {
+    if (categories.toString == null) {
+      return bean.getSplittable().getPayload();
+    }
+    return (String) invoke(categories.toString);
+  }
+
+  /**
+   * Implements a method that is not a property accessor with a category
+   * method.
+   */
+  protected final Object __call(int index, Object[] args) {
+    Method found = categories.methods[index];
+    if (found == null) {
+      throw new RuntimeException("Unhandled invocation " + info.names[index]);
+    }
+    return invoke(found, args);
+  }
+
+  /**
+   * Implements a getter.
+   */
+  protected final Object __get(int index) {
+    Object toReturn = bean.getOrReify(info.propertyNames[index]);
+    if (toReturn == null) {
+      toReturn = info.defaultValues[index];
+    }
+    return toReturn;
+  }
+
+  /**
+   * Implements a setter.
+   */
+  protected final void __set(int index, Object value) {
+    bean.setProperty(info.propertyNames[index], value);
+  }
+
+  /**
+   * Implements a setter that returns the bean.
+   */
+  protected final Object __setBuilder(int index, Object value) {
+    bean.setProperty(info.propertyNames[index], value);
+    return bean.as();
+  }
+
+  private Object invoke(Method found, Object... args) {
+    Object[] realArgs = new Object[args.length + 1];
+    realArgs[0] = bean;
+    System.arraycopy(args, 0, realArgs, 1, args.length);
+    try {
+      return found.invoke(null, realArgs);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (InvocationTargetException e) {
+      throw BeanClassInfo.propagate(e.getCause());
+    }
+  }
+}
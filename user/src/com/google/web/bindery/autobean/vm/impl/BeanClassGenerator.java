@@ -0,0 +1,475 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.gwt.dev.asm.ClassWriter;
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+import com.google.web.bindery.autobean.vm.impl.ClassGenerationUtils.WeakClassKey;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates classes that implement AutoBean interfaces, to be used instead of
+ * {@link java.lang.reflect.Proxy} instances when
+ * {@link com.google.web.bindery.autobean.vm.Configuration#isGenerateBeanClasses()}
+ * is set. A generated shim calls the backing object directly and a generated
+ * simple peer knows what kind of accessor each of its methods is, so neither
+ * has to match or invoke a Method on every call.
+ * 
+ * <p>
+ * A generated class is defined in the ClassLoader of its interface when that
+ * ClassLoader can see {@link AbstractShim}, so that package-private interfaces
+ * are supported. Otherwise it is defined in the ClassLoader of this class if
+ * the interface and its method signatures are public. When neither is
+ * possible, no class is generated and the caller falls back to a Proxy.
+ * </p>
+ */
+final class BeanClassGenerator implements Opcodes {
+
+  /**
+   * The classes generated for an AutoBean interface.
+   */
+  private static class Generated {
+    final BeanClassInfo info;
+    private volatile Constructor<?> peer;
+    private volatile boolean peerGenerated;
+    private volatile Constructor<?> shim;
+    private volatile boolean shimGenerated;
+
+    Generated(Class<?> beanType) {
+      info = new BeanClassInfo(beanType);
+    }
+
+    Constructor<?> getConstructor(boolean isShim) {
+      if (!(isShim ? shimGenerated : peerGenerated)) {
+        ensureGenerated(isShim);
+      }
+      return isShim ? shim : peer;
+    }
+
+    /**
+     * Generates a class once, without blocking threads that use the classes of
+     * other bean types.
+     */
+    private synchronized void ensureGenerated(boolean isShim) {
+      if (isShim && !shimGenerated) {
+        shim = generate(info, AbstractShim.class);
+        shimGenerated = true;
+      } else if (!isShim && !peerGenerated) {
+        peer = generate(info, AbstractSimplePeer.class);
+        peerGenerated = true;
+      }
+    }
+  }
+
+  private static final String ABSTRACT_SHIM = Type.getInternalName(AbstractShim.class);
+
+  private static final String ABSTRACT_SIMPLE_PEER = Type.getInternalName(AbstractSimplePeer.class);
+
+  private static final String CONSTRUCTOR_DESC = "(" + Type.getDescriptor(ProxyAutoBean.class)
+      + Type.getDescriptor(BeanClassInfo.class) + ")V";
+
+  private static final String SHIM_SUFFIX = "$AutoBeanShim";
+
+  private static final String SIMPLE_PEER_SUFFIX = "$AutoBeanSimplePeer";
+
+  /**
+   * The classes generated for bean types that are loaded by the ClassLoader of
+   * this class or one of its ancestors, which cannot be unloaded before this
+   * Map is.
+   */
+  private static final ConcurrentMap<Class<?>, Generated> cache =
+      new ConcurrentHashMap<Class<?>, Generated>();
+
+  /**
+   * The classes generated for all other bean types. The keys are weak and the
+   * values soft, since a Generated refers to its bean type both directly and
+   * through the ClassLoader of its generated classes.
+   */
+  private static final ConcurrentMap<WeakClassKey, SoftReference<Generated>> foreignCache =
+      new ConcurrentHashMap<WeakClassKey, SoftReference<Generated>>();
+
+  private static final ReferenceQueue<Class<?>> foreignQueue = new ReferenceQueue<Class<?>>();
+
+  private static final Logger log = Logger.getLogger(BeanClassGenerator.class.getName());
+
+  /**
+   * Returns a new instance of the generated shim class for a bean, or
+   * <code>null</code> if none can be generated.
+   */
+  public static <T> T createShim(ProxyAutoBean<T> bean) {
+    return create(bean, true);
+  }
+
+  /**
+   * Returns a new instance of the generated simple peer class for a bean, or
+   * <code>null</code> if none can be generated.
+   */
+  public static <T> T createSimplePeer(ProxyAutoBean<T> bean) {
+    return create(bean, false);
+  }
+
+  /**
+   * Generates the bytecode of a class that extends {@link AbstractShim} or
+   * {@link AbstractSimplePeer} and implements the methods described by
+   * <code>info</code>.
+   */
+  static byte[] generateBytes(BeanClassInfo info, String className, Class<?> superclass) {
+    boolean isShim = AbstractShim.class.equals(superclass);
+    String superName = isShim ? ABSTRACT_SHIM : ABSTRACT_SIMPLE_PEER;
+    String beanName = Type.getInternalName(info.beanType);
+
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className.replace('.',
+        '/'), null, superName, new String[] {beanName});
+
+    MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitVarInsn(ALOAD, 1);
+    mv.visitVarInsn(ALOAD, 2);
+    mv.visitMethodInsn(INVOKESPECIAL, superName, "<init>", CONSTRUCTOR_DESC);
+    mv.visitInsn(RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    for (int i = 0; i < info.methods.length; i++) {
+      Method method = info.methods[i];
+      Class<?>[] exceptionTypes = method.getExceptionTypes();
+      String[] exceptions = new String[exceptionTypes.length];
+      for (int j = 0; j < exceptions.length; j++) {
+        exceptions[j] = Type.getInternalName(exceptionTypes[j]);
+      }
+      mv =
+          cw.visitMethod(ACC_PUBLIC | ACC_FINAL, method.getName(), Type
+              .getMethodDescriptor(method), null, exceptions);
+      mv.visitCode();
+      if (isShim) {
+        writeShimMethod(mv, info, i, beanName);
+      } else {
+        writeSimplePeerMethod(mv, info, i);
+      }
+      mv.visitMaxs(0, 0);
+      mv.visitEnd();
+    }
+
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private static <T> T create(ProxyAutoBean<T> bean, boolean isShim) {
+    Generated generated = getGenerated(bean.getType());
+    Constructor<?> constructor = generated.getConstructor(isShim);
+    if (constructor == null) {
+      return null;
+    }
+
+    try {
+      return bean.getType().cast(constructor.newInstance(bean, generated.info));
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (InvocationTargetException e) {
+      throw BeanClassInfo.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Defines a class for the bean type and returns its constructor, or
+   * <code>null</code>.
+   */
+  private static Constructor<?> generate(BeanClassInfo info, Class<?> superclass) {
+    Class<?> beanType = info.beanType;
+    if (!ClassGenerationUtils.canDefineClasses() || !beanType.isInterface()) {
+      return null;
+    }
+
+    try {
+      Class<?> host = beanType;
+      String className =
+          beanType.getName() + (AbstractShim.class.equals(superclass) ? SHIM_SUFFIX
+              : SIMPLE_PEER_SUFFIX);
+      if (!isVisible(beanType.getClassLoader(), superclass)) {
+        host = BeanClassGenerator.class;
+        className = superclass.getName() + "$" + beanType.getName().replace('.', '_');
+        if (!isPublic(host.getClassLoader(), info)) {
+          return null;
+        }
+      }
+      ClassLoader classLoader = host.getClassLoader();
+
+      Class<?> clazz;
+      byte[] bytes = generateBytes(info, className, superclass);
+      try {
+        clazz = ClassGenerationUtils.defineClass(classLoader, className, bytes,
+            host.getProtectionDomain());
+      } catch (InvocationTargetException e) {
+        if (!(e.getCause() instanceof LinkageError)) {
+          throw e;
+        }
+        // Another thread, or an AutoBean type with a similar name, got there first
+        clazz = Class.forName(className, false, classLoader);
+        if (!beanType.isAssignableFrom(clazz) || !superclass.isAssignableFrom(clazz)) {
+          return null;
+        }
+      }
+      return clazz.getConstructor(ProxyAutoBean.class, BeanClassInfo.class);
+    } catch (Exception e) {
+      log.log(Level.FINE, "Unable to generate a class for " + beanType.getName(), e);
+      return null;
+    } catch (LinkageError e) {
+      log.log(Level.FINE, "Unable to generate a class for " + beanType.getName(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the unique Generated for a bean type.
+   */
+  private static Generated getGenerated(Class<?> beanType) {
+    Generated generated = cache.get(beanType);
+    if (generated != null) {
+      return generated;
+    }
+
+    if (ClassGenerationUtils.isLoadedByAncestorLoader(beanType)) {
+      generated = new Generated(beanType);
+      Generated existing = cache.putIfAbsent(beanType, generated);
+      return existing == null ? generated : existing;
+    }
+
+    SoftReference<Generated> ref = foreignCache.get(new WeakClassKey(beanType, null));
+    generated = ref == null ? null : ref.get();
+    if (generated != null) {
+      return generated;
+    }
+
+    // Drop the entries of bean types that have been unloaded
+    for (Object stale; (stale = foreignQueue.poll()) != null;) {
+      foreignCache.remove(stale);
+    }
+    generated = new Generated(beanType);
+    WeakClassKey key = new WeakClassKey(beanType, foreignQueue);
+    SoftReference<Generated> newRef = new SoftReference<Generated>(generated);
+    while (true) {
+      ref = foreignCache.putIfAbsent(key, newRef);
+      if (ref == null) {
+        return generated;
+      }
+      Generated existing = ref.get();
+      if (existing != null) {
+        return existing;
+      }
+      if (foreignCache.replace(key, ref, newRef)) {
+        return generated;
+      }
+    }
+  }
+
+  /**
+   * Determines whether a class generated in <code>classLoader</code> would be
+   * able to implement the bean type.
+   */
+  private static boolean isPublic(ClassLoader classLoader, BeanClassInfo info) {
+    if (classLoader == null || !isPublicAndVisible(classLoader, info.beanType)) {
+      return false;
+    }
+    for (Method method : info.methods) {
+      if (!isPublicAndVisible(classLoader, method.getReturnType())) {
+        return false;
+      }
+      for (Class<?> param : method.getParameterTypes()) {
+        if (!isPublicAndVisible(classLoader, param)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPublicAndVisible(ClassLoader classLoader, Class<?> clazz) {
+    while (clazz.isArray()) {
+      clazz = clazz.getComponentType();
+    }
+    return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers())
+        && isVisible(classLoader, clazz);
+  }
+
+  /**
+   * Determines whether <code>classLoader</code> resolves the name of
+   * <code>clazz</code> to <code>clazz</code>.
+   */
+  private static boolean isVisible(ClassLoader classLoader, Class<?> clazz) {
+    if (classLoader == null) {
+      return false;
+    }
+    try {
+      return Class.forName(clazz.getName(), false, classLoader) == clazz;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Loads the arguments of a method onto the stack.
+   */
+  private static void loadArg(MethodVisitor mv, Type[] argumentTypes, int index) {
+    int slot = 1;
+    for (int i = 0; i < index; i++) {
+      slot += argumentTypes[i].getSize();
+    }
+    mv.visitVarInsn(argumentTypes[index].getOpcode(ILOAD), slot);
+  }
+
+  /**
+   * Pushes an Object[] containing the boxed arguments of a method.
+   */
+  private static void pushArgArray(MethodVisitor mv, Type[] argumentTypes) {
+    pushInt(mv, argumentTypes.length);
+    mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+    for (int i = 0; i < argumentTypes.length; i++) {
+      mv.visitInsn(DUP);
+      pushInt(mv, i);
+      loadArg(mv, argumentTypes, i);
+      ClassGenerationUtils.box(mv, argumentTypes[i]);
+      mv.visitInsn(AASTORE);
+    }
+  }
+
+  private static void pushInt(MethodVisitor mv, int value) {
+    if (value <= 5) {
+      mv.visitInsn(ICONST_0 + value);
+    } else if (value <= Byte.MAX_VALUE) {
+      mv.visitIntInsn(BIPUSH, value);
+    } else if (value <= Short.MAX_VALUE) {
+      mv.visitIntInsn(SIPUSH, value);
+    } else {
+      mv.visitLdcInsn(value);
+    }
+  }
+
+  /**
+   * Returns the Object on the top of the stack as the given type.
+   */
+  private static void returnValue(MethodVisitor mv, Type type) {
+    if (type.getSort() == Type.VOID) {
+      mv.visitInsn(POP);
+      mv.visitInsn(RETURN);
+      return;
+    }
+    ClassGenerationUtils.unbox(mv, type);
+    mv.visitInsn(type.getOpcode(IRETURN));
+  }
+
+  /**
+   * Calls the backing object, then passes the result to the matching
+   * <code>__after</code> method of {@link AbstractShim}.
+   */
+  private static void writeShimMethod(MethodVisitor mv, BeanClassInfo info, int index,
+      String beanName) {
+    Method method = info.methods[index];
+    Type returnType = Type.getReturnType(method);
+    Type[] argumentTypes = Type.getArgumentTypes(method);
+
+    mv.visitVarInsn(ALOAD, 0);
+    pushInt(mv, index);
+
+    // ((BeanType) __getWrapped()).method(args...)
+    mv.visitVarInsn(ALOAD, 0);
+    mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SHIM, "__getWrapped", "()Ljava/lang/Object;");
+    mv.visitTypeInsn(CHECKCAST, beanName);
+    for (int i = 0; i < argumentTypes.length; i++) {
+      loadArg(mv, argumentTypes, i);
+    }
+    mv.visitMethodInsn(INVOKEINTERFACE, beanName, method.getName(), Type
+        .getMethodDescriptor(method));
+    if (returnType.getSort() == Type.VOID) {
+      mv.visitInsn(ACONST_NULL);
+    } else {
+      ClassGenerationUtils.box(mv, returnType);
+    }
+
+    switch (info.kinds[index]) {
+      case GET:
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SHIM, "__afterGet",
+            "(ILjava/lang/Object;)Ljava/lang/Object;");
+        break;
+      case SET:
+      case SET_BUILDER:
+        loadArg(mv, argumentTypes, 0);
+        ClassGenerationUtils.box(mv, argumentTypes[0]);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SHIM, "__afterSet",
+            "(ILjava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+        break;
+      default:
+        pushArgArray(mv, argumentTypes);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SHIM, "__afterCall",
+            "(ILjava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;");
+    }
+    returnValue(mv, returnType);
+  }
+
+  /**
+   * Calls the {@link AbstractSimplePeer} method for the kind of the method.
+   */
+  private static void writeSimplePeerMethod(MethodVisitor mv, BeanClassInfo info, int index) {
+    Method method = info.methods[index];
+    Type returnType = Type.getReturnType(method);
+    Type[] argumentTypes = Type.getArgumentTypes(method);
+
+    mv.visitVarInsn(ALOAD, 0);
+    pushInt(mv, index);
+    switch (info.kinds[index]) {
+      case GET:
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SIMPLE_PEER, "__get",
+            "(I)Ljava/lang/Object;");
+        break;
+      case SET:
+        loadArg(mv, argumentTypes, 0);
+        ClassGenerationUtils.box(mv, argumentTypes[0]);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SIMPLE_PEER, "__set",
+            "(ILjava/lang/Object;)V");
+        mv.visitInsn(RETURN);
+        return;
+      case SET_BUILDER:
+        loadArg(mv, argumentTypes, 0);
+        ClassGenerationUtils.box(mv, argumentTypes[0]);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SIMPLE_PEER, "__setBuilder",
+            "(ILjava/lang/Object;)Ljava/lang/Object;");
+        break;
+      default:
+        pushArgArray(mv, argumentTypes);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ABSTRACT_SIMPLE_PEER, "__call",
+            "(I[Ljava/lang/Object;)Ljava/lang/Object;");
+    }
+    returnValue(mv, returnType);
+  }
+
+  private BeanClassGenerator() {
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.gwt.dev.asm.Type;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Describes the methods of an AutoBean interface that are implemented by the
+ * classes that {@link BeanClassGenerator} generates for it. The generated
+ * methods identify themselves by their index in {@link #methods}.
+ */
+public final class BeanClassInfo {
+
+  /**
+   * The static category methods that apply to a bean type under one
+   * configuration.
+   */
+  static final class Categories {
+    final Method equals;
+    final Method hashCode;
+    final Method interceptor;
+    /**
+     * The implementations of the {@link BeanMethod#CALL} methods, by index.
+     */
+    final Method[] methods;
+    final Method toString;
+
+    Categories(BeanClassInfo info, List<Class<?>> categories) {
+      interceptor = ShimHandler.findInterceptor(categories);
+      methods = new Method[info.methods.length];
+      if (categories.isEmpty()) {
+        equals = hashCode = toString = null;
+        return;
+      }
+      for (int i = 0; i < methods.length; i++) {
+        if (info.kinds[i] == BeanMethod.CALL) {
+          methods[i] = BeanMethod.findMethod(info.beanType, categories, info.methods[i]);
+        }
+      }
+      try {
+        equals = findObjectMethod(info, categories, "equals", Object.class);
+        hashCode = findObjectMethod(info, categories, "hashCode");
+        toString = findObjectMethod(info, categories, "toString");
+      } catch (NoSuchMethodException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private static Method findObjectMethod(BeanClassInfo info, List<Class<?>> categories,
+        String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+      return BeanMethod.findMethod(info.beanType, categories, Object.class.getMethod(name,
+          parameterTypes));
+    }
+  }
+
+  /**
+   * The methods of Object that AutoBean implementations handle themselves.
+   */
+  private static final Set<String> OBJECT_METHODS = new HashSet<String>(Arrays.asList(
+      "equals(Ljava/lang/Object;)Z", "hashCode()I", "toString()Ljava/lang/String;"));
+
+  /**
+   * Rethrows the exception thrown by a reflectively-invoked method the way a
+   * {@link java.lang.reflect.Proxy} would.
+   */
+  static RuntimeException propagate(Throwable t) {
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    if (t instanceof RuntimeException) {
+      return (RuntimeException) t;
+    }
+    return new UndeclaredThrowableException(t);
+  }
+
+  final Class<?> beanType;
+  final ConcurrentMap<List<Class<?>>, Categories> categories =
+      new ConcurrentHashMap<List<Class<?>>, Categories>();
+  final Object[] defaultValues;
+  final BeanMethod[] kinds;
+  final Method[] methods;
+  final String[] names;
+  final String[] propertyNames;
+  final Class<?>[] returnTypes;
+
+  BeanClassInfo(Class<?> beanType) {
+    this.beanType = beanType;
+
+    List<Method> list = new ArrayList<Method>();
+    Set<String> seen = new HashSet<String>();
+    for (Method method : beanType.getMethods()) {
+      String signature = method.getName() + Type.getMethodDescriptor(method);
+      if (!Modifier.isStatic(method.getModifiers()) && !OBJECT_METHODS.contains(signature)
+          && seen.add(signature)) {
+        list.add(method);
+      }
+    }
+
+    methods = list.toArray(new Method[list.size()]);
+    defaultValues = new Object[methods.length];
+    kinds = new BeanMethod[methods.length];
+    names = new String[methods.length];
+    propertyNames = new String[methods.length];
+    returnTypes = new Class<?>[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      Method method = methods[i];
+      names[i] = method.getName();
+      returnTypes[i] = method.getReturnType();
+      for (BeanMethod kind : new BeanMethod[] {
+          BeanMethod.GET, BeanMethod.SET, BeanMethod.SET_BUILDER}) {
+        if (kind.matches(method)) {
+          kinds[i] = kind;
+          propertyNames[i] = kind.inferName(method);
+          break;
+        }
+      }
+      if (kinds[i] == null) {
+        kinds[i] = BeanMethod.CALL;
+      } else if (kinds[i] == BeanMethod.GET && returnTypes[i].isPrimitive()) {
+        defaultValues[i] = TypeUtils.getDefaultPrimitiveValue(returnTypes[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the category methods that apply to this type under a
+   * configuration.
+   */
+  Categories getCategories(List<Class<?>> categoryTypes) {
+    Categories toReturn = categories.get(categoryTypes);
+    if (toReturn == null) {
+      toReturn = new Categories(this, categoryTypes);
+      categories.putIfAbsent(categoryTypes, toReturn);
+    }
+    return toReturn;
+  }
+}
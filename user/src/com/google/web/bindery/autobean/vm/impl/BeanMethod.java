@@ -20,6 +20,7 @@ import com.google.web.bindery.autobean.shared.AutoBean.PropertyName;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.List;
 
 /**
  * Breakout of method types that an AutoBean shim interface can implement. The
@@ -174,13 +175,20 @@ public enum BeanMethod {
   private static final Object[] EMPTY_OBJECT = new Object[0];
 
   static Method findMethod(SimpleBeanHandler<?> handler, Method method) {
+    return findMethod(handler.getBean().getType(), handler.getBean().getConfiguration()
+        .getCategories(), method);
+  }
+
+  /**
+   * Finds the static category implementation of a method of an AutoBean type.
+   */
+  static Method findMethod(Class<?> autoBeanType, List<Class<?>> categories, Method method) {
     Class<?>[] declaredParams = method.getParameterTypes();
     Class<?>[] searchParams = new Class<?>[declaredParams.length + 1];
     searchParams[0] = AutoBean.class;
     System.arraycopy(declaredParams, 0, searchParams, 1, declaredParams.length);
-    Class<?> autoBeanType = handler.getBean().getType();
 
-    for (Class<?> clazz : handler.getBean().getConfiguration().getCategories()) {
+    for (Class<?> clazz : categories) {
       try {
         Method found = clazz.getMethod(method.getName(), searchParams);
         if (!Modifier.isStatic(found.getModifiers())) {
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared code for the server-side classes that generate bytecode at runtime or
+ * cache information about classes that may be unloaded, such as AutoBean
+ * classes and GWT-RPC field accessors.
+ */
+public final class ClassGenerationUtils implements Opcodes {
+
+  /**
+   * A key that refers to a class without preventing it from being unloaded.
+   */
+  public static final class WeakClassKey extends WeakReference<Class<?>> {
+    private final int hashCode;
+
+    public WeakClassKey(Class<?> clazz, ReferenceQueue<Class<?>> queue) {
+      super(clazz, queue);
+      hashCode = System.identityHashCode(clazz);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof WeakClassKey)) {
+        return false;
+      }
+      Class<?> clazz = get();
+      return clazz != null && clazz == ((WeakClassKey) o).get();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final Logger log = Logger.getLogger(ClassGenerationUtils.class.getName());
+
+  /**
+   * ClassLoader.defineClass, or <code>null</code> if it is not accessible.
+   */
+  private static final Method defineClass;
+
+  static {
+    Method method = null;
+    try {
+      method = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class,
+          int.class, int.class, ProtectionDomain.class);
+      method.setAccessible(true);
+    } catch (Exception e) {
+      log.log(Level.FINE, "Classes cannot be generated", e);
+      method = null;
+    }
+    defineClass = method;
+  }
+
+  /**
+   * Boxes the primitive value on the top of the stack, if <code>type</code> is
+   * primitive.
+   */
+  public static void box(MethodVisitor mv, Type type) {
+    Type boxed = getBoxedType(type);
+    if (boxed != null) {
+      mv.visitMethodInsn(INVOKESTATIC, boxed.getInternalName(), "valueOf",
+          Type.getMethodDescriptor(boxed, new Type[] {type}));
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if {@link #defineClass} can be used.
+   */
+  public static boolean canDefineClasses() {
+    return defineClass != null;
+  }
+
+  /**
+   * Defines a class in a ClassLoader. A {@link LinkageError}, e.g. because the
+   * class has already been defined by another thread, is thrown as the cause of
+   * an {@link InvocationTargetException}.
+   *
+   * @throws IllegalStateException if {@link #canDefineClasses()} is
+   *           <code>false</code>
+   */
+  public static Class<?> defineClass(ClassLoader classLoader, String className, byte[] bytes,
+      ProtectionDomain protectionDomain) throws IllegalAccessException,
+      InvocationTargetException {
+    if (defineClass == null) {
+      throw new IllegalStateException("ClassLoader.defineClass is not accessible");
+    }
+    return (Class<?>) defineClass.invoke(classLoader, className, bytes, 0, bytes.length,
+        protectionDomain);
+  }
+
+  /**
+   * Returns the type of the wrapper class of a primitive type, or
+   * <code>null</code> if <code>type</code> is not primitive.
+   */
+  public static Type getBoxedType(Type type) {
+    switch (type.getSort()) {
+      case Type.BOOLEAN:
+        return Type.getType(Boolean.class);
+      case Type.BYTE:
+        return Type.getType(Byte.class);
+      case Type.CHAR:
+        return Type.getType(Character.class);
+      case Type.DOUBLE:
+        return Type.getType(Double.class);
+      case Type.FLOAT:
+        return Type.getType(Float.class);
+      case Type.INT:
+        return Type.getType(Integer.class);
+      case Type.LONG:
+        return Type.getType(Long.class);
+      case Type.SHORT:
+        return Type.getType(Short.class);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if a class is loaded by the ClassLoader of this
+   * class or one of its ancestors. Such a class cannot be unloaded before this
+   * class, or the classes deployed alongside it, are.
+   */
+  public static boolean isLoadedByAncestorLoader(Class<?> clazz) {
+    ClassLoader classLoader = clazz.getClassLoader();
+    if (classLoader == null) {
+      return true;
+    }
+    for (ClassLoader loader = ClassGenerationUtils.class.getClassLoader(); loader != null;
+        loader = loader.getParent()) {
+      if (loader == classLoader) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Converts the Object on the top of the stack to <code>type</code>, unboxing
+   * it if <code>type</code> is primitive.
+   */
+  public static void unbox(MethodVisitor mv, Type type) {
+    Type boxed = getBoxedType(type);
+    if (boxed == null) {
+      mv.visitTypeInsn(CHECKCAST, type.getSort() == Type.ARRAY ? type.getDescriptor()
+          : type.getInternalName());
+    } else {
+      mv.visitTypeInsn(CHECKCAST, boxed.getInternalName());
+      mv.visitMethodInsn(INVOKEVIRTUAL, boxed.getInternalName(), type.getClassName() + "Value",
+          "()" + type.getDescriptor());
+    }
+  }
+
+  private ClassGenerationUtils() {
+  }
+}
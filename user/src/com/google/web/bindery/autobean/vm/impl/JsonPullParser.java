@@ -0,0 +1,287 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull parser for JSON text read from a {@link Reader}. Each call to
+ * {@link #next()} reads just enough characters to return the next token, so
+ * that callers can build their own representation of a payload without first
+ * reading it into a String.
+ */
+class JsonPullParser {
+
+  /**
+   * The tokens returned by {@link JsonPullParser#next()}.
+   */
+  enum Token {
+    BEGIN_ARRAY, BEGIN_OBJECT, BOOLEAN, END_ARRAY, END_DOCUMENT, END_OBJECT, NAME, NULL, NUMBER,
+    STRING
+  }
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int limit;
+  private int pos;
+  private final Reader reader;
+
+  /**
+   * Whether a value is expected to be followed by a comma, because the
+   * previous token was a value in an array or object.
+   */
+  private boolean afterValue;
+
+  /**
+   * Whether the parser is between the name and the value of an object member.
+   */
+  private boolean afterName;
+
+  /**
+   * The nesting of objects and arrays, as a stack of '{' and '[' characters.
+   */
+  private final StringBuilder scopes = new StringBuilder();
+
+  private final StringBuilder text = new StringBuilder();
+
+  private boolean booleanValue;
+
+  public JsonPullParser(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Returns the value of the last {@link Token#BOOLEAN}.
+   */
+  public boolean getBoolean() {
+    return booleanValue;
+  }
+
+  /**
+   * Returns the text of the last {@link Token#NAME}, {@link Token#STRING} or
+   * {@link Token#NUMBER}, without quotes or escapes.
+   */
+  public String getText() {
+    return text.toString();
+  }
+
+  /**
+   * Reads the next token.
+   *
+   * @throws IOException if the Reader throws it, or if the JSON text is
+   *           malformed
+   */
+  public Token next() throws IOException {
+    int c = nextNonWhitespace();
+    char scope = scopes.length() == 0 ? 0 : scopes.charAt(scopes.length() - 1);
+
+    if (c == ']' && scope == '[' || c == '}' && scope == '{' && !afterName) {
+      scopes.setLength(scopes.length() - 1);
+      afterValue = true;
+      return c == ']' ? Token.END_ARRAY : Token.END_OBJECT;
+    }
+
+    if (afterValue) {
+      if (scope == 0) {
+        if (c != -1) {
+          throw syntaxError("Unexpected data after the payload");
+        }
+        return Token.END_DOCUMENT;
+      }
+      if (c != ',') {
+        throw syntaxError("Expected ','");
+      }
+      afterValue = false;
+      c = nextNonWhitespace();
+    }
+
+    if (scope == '{' && !afterName) {
+      // A member name
+      if (c != '"') {
+        throw syntaxError("Expected a name");
+      }
+      readString();
+      if (nextNonWhitespace() != ':') {
+        throw syntaxError("Expected ':'");
+      }
+      afterName = true;
+      return Token.NAME;
+    }
+
+    afterName = false;
+    switch (c) {
+      case -1:
+        throw syntaxError("Unexpected end of payload");
+      case '{':
+        scopes.append('{');
+        return Token.BEGIN_OBJECT;
+      case '[':
+        scopes.append('[');
+        return Token.BEGIN_ARRAY;
+      case '"':
+        readString();
+        afterValue = true;
+        return Token.STRING;
+      case 't':
+        readLiteral("rue");
+        booleanValue = true;
+        afterValue = true;
+        return Token.BOOLEAN;
+      case 'f':
+        readLiteral("alse");
+        booleanValue = false;
+        afterValue = true;
+        return Token.BOOLEAN;
+      case 'n':
+        readLiteral("ull");
+        afterValue = true;
+        return Token.NULL;
+      default:
+        if (c == '-' || c >= '0' && c <= '9') {
+          readNumber((char) c);
+          afterValue = true;
+          return Token.NUMBER;
+        }
+        throw syntaxError("Unexpected character '" + (char) c + "'");
+    }
+  }
+
+  private boolean fill() throws IOException {
+    limit = reader.read(buffer, 0, buffer.length);
+    pos = 0;
+    if (limit <= 0) {
+      limit = 0;
+      return false;
+    }
+    return true;
+  }
+
+  private int nextChar() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos++];
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    while (true) {
+      int c = nextChar();
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return c;
+      }
+    }
+  }
+
+  private int peekChar() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos];
+  }
+
+  private void readLiteral(String rest) throws IOException {
+    for (int i = 0, j = rest.length(); i < j; i++) {
+      if (nextChar() != rest.charAt(i)) {
+        throw syntaxError("Unexpected literal");
+      }
+    }
+  }
+
+  private void readNumber(char first) throws IOException {
+    text.setLength(0);
+    text.append(first);
+    while (true) {
+      int c = peekChar();
+      if (c >= '0' && c <= '9' || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+        text.append((char) c);
+        pos++;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the rest of a string whose opening quote has been read.
+   */
+  private void readString() throws IOException {
+    text.setLength(0);
+    while (true) {
+      // Copy runs of unescaped characters in bulk
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos];
+        if (c == '"' || c == '\\') {
+          break;
+        }
+        pos++;
+      }
+      text.append(buffer, start, pos - start);
+
+      int c = nextChar();
+      switch (c) {
+        case -1:
+          throw syntaxError("Unterminated string");
+        case '"':
+          return;
+        case '\\':
+          text.append(readEscape());
+          break;
+        default:
+          // The buffer was exhausted
+          text.append((char) c);
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    int c = nextChar();
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(nextChar(), 16);
+          if (digit == -1) {
+            throw syntaxError("Malformed \\u escape");
+          }
+          value = (value << 4) + digit;
+        }
+        return (char) value;
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      default:
+        throw syntaxError("Unexpected escape");
+    }
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException(message + " in JSON payload");
+  }
+}
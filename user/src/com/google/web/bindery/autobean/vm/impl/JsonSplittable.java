@@ -24,6 +24,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,13 +43,18 @@ public class JsonSplittable implements Splittable, HasSplittable {
     return new JsonSplittable(new JSONObject());
   }
 
+  /**
+   * Creates a Splittable for a payload. Objects and arrays are parsed when
+   * their contents are first accessed, so that a payload that is only passed
+   * along, e.g. an encoded invocation result, is written back out by
+   * {@link #getPayload()} without ever being turned into a tree.
+   */
   public static Splittable create(String payload) {
     try {
       switch (payload.charAt(0)) {
         case '{':
-          return new JsonSplittable(new JSONObject(payload));
         case '[':
-          return new JsonSplittable(new JSONArray(payload));
+          return new JsonSplittable(payload, true);
         case '"':
           return new JsonSplittable(new JSONArray("[" + payload + "]").getString(0));
         case '-':
@@ -74,6 +82,73 @@ public class JsonSplittable implements Splittable, HasSplittable {
     }
   }
 
+  /**
+   * Reads a payload with a {@link JsonPullParser}, building the same
+   * representation as {@link #create(String)} without holding the whole
+   * payload text in memory.
+   *
+   * @throws IOException if the Reader throws it, or if the payload is not
+   *           well-formed JSON
+   */
+  public static Splittable create(Reader payload) throws IOException {
+    JsonPullParser parser = new JsonPullParser(payload);
+    List<Object> containers = new ArrayList<Object>();
+    Object root = null;
+    String name = null;
+    try {
+      while (true) {
+        Object value;
+        switch (parser.next()) {
+          case END_DOCUMENT:
+            return createRoot(root);
+          case NAME:
+            name = parser.getText();
+            continue;
+          case END_ARRAY:
+          case END_OBJECT:
+            containers.remove(containers.size() - 1);
+            continue;
+          case BEGIN_ARRAY:
+            value = new JSONArray();
+            break;
+          case BEGIN_OBJECT:
+            value = new JSONObject();
+            break;
+          case BOOLEAN:
+            value = parser.getBoolean();
+            break;
+          case NULL:
+            value = JSONObject.NULL;
+            break;
+          case NUMBER:
+            value = parseNumber(parser.getText());
+            break;
+          case STRING:
+            value = parser.getText();
+            break;
+          default:
+            throw new RuntimeException("Unhandled token");
+        }
+
+        if (containers.isEmpty()) {
+          root = value;
+        } else {
+          Object parent = containers.get(containers.size() - 1);
+          if (parent instanceof JSONObject) {
+            ((JSONObject) parent).put(name, value);
+          } else {
+            ((JSONArray) parent).put(value);
+          }
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+          containers.add(value);
+        }
+      }
+    } catch (JSONException e) {
+      throw new RuntimeException("Could not parse payload", e);
+    }
+  }
+
   public static Splittable createIndexed() {
     return new JsonSplittable(new JSONArray());
   }
@@ -100,8 +175,51 @@ public class JsonSplittable implements Splittable, HasSplittable {
     return names;
   }
 
+  private static Splittable createRoot(Object value) {
+    if (value instanceof JSONObject) {
+      return new JsonSplittable((JSONObject) value);
+    } else if (value instanceof JSONArray) {
+      return new JsonSplittable((JSONArray) value);
+    } else if (value instanceof String) {
+      return new JsonSplittable((String) value);
+    } else if (value instanceof Number) {
+      return new JsonSplittable(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      return new JsonSplittable((Boolean) value);
+    }
+    // A null payload
+    return null;
+  }
+
+  /**
+   * Converts a number the way org.json does, so that payloads read by
+   * {@link #create(Reader)} are encoded the same way as others.
+   */
+  private static Object parseNumber(String text) throws IOException {
+    try {
+      if (text.indexOf('.') == -1 && text.indexOf('e') == -1 && text.indexOf('E') == -1) {
+        try {
+          long value = Long.parseLong(text);
+          if (value == (int) value) {
+            return (int) value;
+          }
+          return value;
+        } catch (NumberFormatException e) {
+          // Too large for a long
+        }
+      }
+      return Double.valueOf(text);
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed number " + text + " in JSON payload", e);
+    }
+  }
+
   private JSONArray array;
   private Boolean bool;
+  /**
+   * The text of an object or array that has not been parsed yet.
+   */
+  private String unparsed;
   /**
    * Used to represent a null value.
    */
@@ -140,6 +258,14 @@ public class JsonSplittable implements Splittable, HasSplittable {
     this.string = string;
   }
 
+  /**
+   * Constructor for the unparsed text of an object or array. The flag only
+   * distinguishes it from the constructor for string values.
+   */
+  private JsonSplittable(String payload, boolean unparsed) {
+    this.unparsed = payload;
+  }
+
   public boolean asBoolean() {
     return bool;
   }
@@ -150,7 +276,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
 
   public void assign(Splittable parent, int index) {
     try {
-      ((JsonSplittable) parent).array.put(index, value());
+      ((JsonSplittable) parent).parse().array.put(index, value());
     } catch (JSONException e) {
       throw new RuntimeException(e);
     }
@@ -158,7 +284,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
 
   public void assign(Splittable parent, String propertyName) {
     try {
-      ((JsonSplittable) parent).obj.put(propertyName, value());
+      ((JsonSplittable) parent).parse().obj.put(propertyName, value());
     } catch (JSONException e) {
       throw new RuntimeException(e);
     }
@@ -174,7 +300,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
 
   public Splittable get(int index) {
     try {
-      return makeSplittable(array.get(index));
+      return makeSplittable(parse().array.get(index));
     } catch (JSONException e) {
       throw new RuntimeException(e);
     }
@@ -182,7 +308,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
 
   public Splittable get(String key) {
     try {
-      return makeSplittable(obj.get(key));
+      return makeSplittable(parse().obj.get(key));
     } catch (JSONException e) {
       throw new RuntimeException(key, e);
     }
@@ -192,6 +318,9 @@ public class JsonSplittable implements Splittable, HasSplittable {
     if (isNull) {
       return "null";
     }
+    if (unparsed != null) {
+      return unparsed;
+    }
     if (obj != null) {
       return obj.toString();
     }
@@ -211,7 +340,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public List<String> getPropertyKeys() {
-    String[] names = getNames(obj);
+    String[] names = getNames(parse().obj);
     if (names == null) {
       return Collections.emptyList();
     } else {
@@ -232,19 +361,20 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public boolean isIndexed() {
-    return array != null;
+    return unparsed != null ? unparsed.charAt(0) == '[' : array != null;
   }
 
   public boolean isKeyed() {
-    return obj != null;
+    return unparsed != null ? unparsed.charAt(0) == '{' : obj != null;
   }
 
   public boolean isNull(int index) {
-    return array.isNull(index);
+    return parse().array.isNull(index);
   }
 
   public boolean isNull(String key) {
     // Treat undefined and null as the same
+    parse();
     return !obj.has(key) || obj.isNull(key);
   }
 
@@ -261,7 +391,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public boolean isUndefined(String key) {
-    return !obj.has(key);
+    return !parse().obj.has(key);
   }
 
   public void setReified(String key, Object object) {
@@ -270,6 +400,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
 
   public void setSize(int size) {
     // This is terrible, but there's no API support for resizing or splicing
+    parse();
     JSONArray newArray = new JSONArray();
     for (int i = 0; i < size; i++) {
       try {
@@ -282,7 +413,7 @@ public class JsonSplittable implements Splittable, HasSplittable {
   }
 
   public int size() {
-    return array.length();
+    return parse().array.length();
   }
 
   /**
@@ -323,10 +454,31 @@ public class JsonSplittable implements Splittable, HasSplittable {
     return seen;
   }
 
+  /**
+   * Parses the text of an object or array if that has not been done yet, after
+   * which the tree is the only representation of it.
+   */
+  private JsonSplittable parse() {
+    if (unparsed != null) {
+      try {
+        if (unparsed.charAt(0) == '{') {
+          obj = new JSONObject(unparsed);
+        } else {
+          array = new JSONArray(unparsed);
+        }
+      } catch (JSONException e) {
+        throw new RuntimeException("Could not parse payload", e);
+      }
+      unparsed = null;
+    }
+    return this;
+  }
+
   private Object value() {
     if (isNull) {
       return null;
     }
+    parse();
     if (obj != null) {
       return obj;
     }
@@ -36,7 +36,8 @@ import java.util.Map;
 import java.util.WeakHashMap;
 
 /**
- * An implementation of an AutoBean that uses reflection.
+ * An implementation of an AutoBean that uses reflection, or classes generated
+ * at runtime if the {@link Configuration} asks for them.
  * 
  * @param <T> the type of interface being wrapped
  */
@@ -235,7 +236,12 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   @Override
   protected T getWrapped() {
     if (wrapped == null && isUsingSimplePeer()) {
-      wrapped = (T) ProxyAutoBean.makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      if (configuration.isGenerateBeanClasses()) {
+        wrapped = BeanClassGenerator.createSimplePeer(this);
+      }
+      if (wrapped == null) {
+        wrapped = (T) ProxyAutoBean.makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      }
     }
     return super.getWrapped();
   }
@@ -338,7 +344,13 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   }
 
   private T createShim() {
-    T toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    T toReturn = null;
+    if (configuration.isGenerateBeanClasses()) {
+      toReturn = BeanClassGenerator.createShim(this);
+    }
+    if (toReturn == null) {
+      toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    }
     WeakMapping.setWeak(toReturn, AutoBean.class.getName(), this);
     return toReturn;
   }
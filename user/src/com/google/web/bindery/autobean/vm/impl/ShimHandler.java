@@ -22,6 +22,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.List;
 
 /**
  * Implements an AutoBean's shim interface that intercepts calls to the backing
@@ -33,19 +34,53 @@ class ShimHandler<T> implements InvocationHandler {
   private final ProxyAutoBean<T> bean;
   private final Method interceptor;
 
-  public ShimHandler(ProxyAutoBean<T> bean, T toWrap) {
-    this.bean = bean;
-
-    Method maybe = null;
-    for (Class<?> clazz : bean.getConfiguration().getCategories()) {
+  /**
+   * Returns the first {@code __intercept} method declared by the given
+   * categories, or {@code null} if there is none.
+   */
+  static Method findInterceptor(List<Class<?>> categories) {
+    for (Class<?> clazz : categories) {
       try {
-        maybe = clazz.getMethod("__intercept", AutoBean.class, Object.class);
-        break;
+        return clazz.getMethod("__intercept", AutoBean.class, Object.class);
       } catch (SecurityException expected) {
       } catch (NoSuchMethodException expected) {
       }
     }
-    interceptor = maybe;
+    return null;
+  }
+
+  /**
+   * Wraps a value returned by a method of an AutoBean in an AutoBean of the
+   * method's return type, unless it is a value type or should not be wrapped.
+   */
+  static Object maybeWrap(ProxyAutoBean<?> bean, Class<?> intf, Object toReturn) {
+    if (toReturn == null) {
+      return null;
+    }
+    AutoBean<?> returnBean = AutoBeanUtils.getAutoBean(toReturn);
+    if (returnBean != null) {
+      return returnBean.as();
+    }
+    if (TypeUtils.isValueType(intf) || TypeUtils.isValueType(toReturn.getClass())
+        || bean.getConfiguration().getNoWrap().contains(intf)) {
+      return toReturn;
+    }
+    if (toReturn.getClass().isArray()) {
+      /*
+       * We can't reliably wrap arrays, but the only time we typically see an
+       * array is with toArray() call on a collection, since arrays aren't
+       * supported property types.
+       */
+      return toReturn;
+    }
+    ProxyAutoBean<Object> newBean =
+        new ProxyAutoBean<Object>(bean.getFactory(), intf, bean.getConfiguration(), toReturn);
+    return newBean.as();
+  }
+
+  public ShimHandler(ProxyAutoBean<T> bean, T toWrap) {
+    this.bean = bean;
+    interceptor = findInterceptor(bean.getConfiguration().getCategories());
   }
 
   @Override
@@ -88,7 +123,7 @@ class ShimHandler<T> implements InvocationHandler {
       Class<?> intf = method.getReturnType();
       if (!Object.class.equals(intf)) {
         // XXX Need to deal with resolving generic T return types
-        toReturn = maybeWrap(intf, toReturn);
+        toReturn = maybeWrap(bean, intf, toReturn);
       }
       if (interceptor != null) {
         toReturn = interceptor.invoke(null, bean, toReturn);
@@ -103,29 +138,4 @@ class ShimHandler<T> implements InvocationHandler {
   public String toString() {
     return bean.getWrapped().toString();
   }
-
-  private Object maybeWrap(Class<?> intf, Object toReturn) {
-    if (toReturn == null) {
-      return null;
-    }
-    AutoBean<?> returnBean = AutoBeanUtils.getAutoBean(toReturn);
-    if (returnBean != null) {
-      return returnBean.as();
-    }
-    if (TypeUtils.isValueType(intf) || TypeUtils.isValueType(toReturn.getClass())
-        || bean.getConfiguration().getNoWrap().contains(intf)) {
-      return toReturn;
-    }
-    if (toReturn.getClass().isArray()) {
-      /*
-       * We can't reliably wrap arrays, but the only time we typically see an
-       * array is with toArray() call on a collection, since arrays aren't
-       * supported property types.
-       */
-      return toReturn;
-    }
-    ProxyAutoBean<Object> newBean =
-        new ProxyAutoBean<Object>(bean.getFactory(), intf, bean.getConfiguration(), toReturn);
-    return newBean.as();
-  }
 }
@@ -27,6 +27,11 @@ import com.google.web.bindery.requestfactory.shared.ServiceName;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Adds support to the ServiceLayer chain for using {@link Locator} and
@@ -34,6 +39,27 @@ import java.lang.reflect.Modifier;
  */
 final class LocatorServiceLayer extends ServiceLayerDecorator {
 
+  /**
+   * Checks objects whose Locator overrides {@link Locator#areLive(List)} in
+   * one call per type, and the others one at a time.
+   */
+  @Override
+  public List<Boolean> areLive(List<Object> domainObjects) {
+    Boolean[] toReturn = new Boolean[domainObjects.size()];
+    Map<Class<?>, List<Integer>> indicesByType = new LinkedHashMap<Class<?>, List<Integer>>();
+    for (int i = 0, j = domainObjects.size(); i < j; i++) {
+      addIndex(indicesByType, domainObjects.get(i).getClass(), i);
+    }
+    for (Map.Entry<Class<?>, List<Integer>> entry : indicesByType.entrySet()) {
+      if (!doAreLive(entry.getKey(), entry.getValue(), domainObjects, toReturn)) {
+        for (int index : entry.getValue()) {
+          toReturn[index] = getTop().isLive(domainObjects.get(index));
+        }
+      }
+    }
+    return Arrays.asList(toReturn);
+  }
+
   @Override
   public <T> T createDomainObject(Class<T> clazz) {
     Locator<T, ?> l = getLocator(clazz);
@@ -90,6 +116,45 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return doLoadDomainObject(clazz, domainId);
   }
 
+  /**
+   * Loads the objects whose Locator overrides
+   * {@link Locator#findAll(Class, List)} in one call per type, and the others
+   * through the rest of the chain.
+   */
+  @Override
+  public List<Object> loadDomainObjects(List<Class<?>> classes, List<Object> domainIds) {
+    if (classes.size() != domainIds.size()) {
+      die(null, "Size mismatch in paramaters. classes.size() = %d domainIds.size=%d", classes
+          .size(), domainIds.size());
+    }
+    Object[] toReturn = new Object[classes.size()];
+    Map<Class<?>, List<Integer>> indicesByType = new LinkedHashMap<Class<?>, List<Integer>>();
+    for (int i = 0, j = classes.size(); i < j; i++) {
+      addIndex(indicesByType, classes.get(i), i);
+    }
+
+    List<Integer> otherIndices = new ArrayList<Integer>();
+    for (Map.Entry<Class<?>, List<Integer>> entry : indicesByType.entrySet()) {
+      if (!doLoadDomainObjects(entry.getKey(), entry.getValue(), domainIds, toReturn)) {
+        otherIndices.addAll(entry.getValue());
+      }
+    }
+
+    if (!otherIndices.isEmpty()) {
+      List<Class<?>> otherClasses = new ArrayList<Class<?>>(otherIndices.size());
+      List<Object> otherIds = new ArrayList<Object>(otherIndices.size());
+      for (int index : otherIndices) {
+        otherClasses.add(classes.get(index));
+        otherIds.add(domainIds.get(index));
+      }
+      List<Object> loaded = super.loadDomainObjects(otherClasses, otherIds);
+      for (int i = 0, j = otherIndices.size(); i < j; i++) {
+        toReturn[otherIndices.get(i)] = loaded.get(i);
+      }
+    }
+    return Arrays.asList(toReturn);
+  }
+
   /**
    * Returns true if the context method returns a {@link Request} and the domain
    * method is non-static.
@@ -158,6 +223,40 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return locatorType;
   }
 
+  private void addIndex(Map<Class<?>, List<Integer>> indicesByType, Class<?> type, int index) {
+    List<Integer> indices = indicesByType.get(type);
+    if (indices == null) {
+      indices = new ArrayList<Integer>();
+      indicesByType.put(type, indices);
+    }
+    indices.add(index);
+  }
+
+  /**
+   * Checks the objects of one type through their Locator, if it can check them
+   * all at once.
+   */
+  private <T> boolean doAreLive(Class<T> clazz, List<Integer> indices,
+      List<Object> domainObjects, Boolean[] toReturn) {
+    Locator<T, ?> l = getLocator(clazz);
+    if (l == null || !overrides(l, "areLive", List.class)) {
+      return false;
+    }
+    List<T> toCheck = new ArrayList<T>(indices.size());
+    for (int index : indices) {
+      toCheck.add(clazz.cast(domainObjects.get(index)));
+    }
+    List<Boolean> live = l.areLive(toCheck);
+    if (live == null || live.size() != toCheck.size()) {
+      die(null, "%s.areLive() returned %s values for %d objects", l.getClass()
+          .getCanonicalName(), live == null ? "null" : live.size(), toCheck.size());
+    }
+    for (int i = 0, j = indices.size(); i < j; i++) {
+      toReturn[indices.get(i)] = live.get(i);
+    }
+    return true;
+  }
+
   private <T> Object doGetId(T domainObject) {
     @SuppressWarnings("unchecked")
     Class<T> clazz = (Class<T>) domainObject.getClass();
@@ -198,6 +297,32 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return l.find(clazz, id);
   }
 
+  /**
+   * Loads the objects of one type through their Locator, if it can load them
+   * all at once.
+   */
+  private <T, I> boolean doLoadDomainObjects(Class<T> clazz, List<Integer> indices,
+      List<Object> domainIds, Object[] toReturn) {
+    @SuppressWarnings("unchecked")
+    Locator<T, I> l = (Locator<T, I>) getLocator(clazz);
+    if (l == null || !overrides(l, "findAll", Class.class, List.class)) {
+      return false;
+    }
+    List<I> ids = new ArrayList<I>(indices.size());
+    for (int index : indices) {
+      ids.add(l.getIdType().cast(domainIds.get(index)));
+    }
+    List<T> found = l.findAll(clazz, ids);
+    if (found == null || found.size() != ids.size()) {
+      die(null, "%s.findAll() returned %s objects for %d ids", l.getClass().getCanonicalName(),
+          found == null ? "null" : found.size(), ids.size());
+    }
+    for (int i = 0, j = indices.size(); i < j; i++) {
+      toReturn[indices.get(i)] = found.get(i);
+    }
+    return true;
+  }
+
   @SuppressWarnings("unchecked")
   private <T, I> Locator<T, I> getLocator(Class<T> domainType) {
     Class<? extends Locator<?, ?>> locatorType = getTop().resolveLocator(domainType);
@@ -207,6 +332,20 @@ final class LocatorServiceLayer extends ServiceLayerDecorator {
     return (Locator<T, I>) getTop().createLocator(locatorType);
   }
 
+  /**
+   * Returns {@code true} if a Locator overrides one of the bulk methods, which
+   * are only used when they are, so that service layers that decorate the
+   * single-object methods still see every object.
+   */
+  private boolean overrides(Locator<?, ?> l, String methodName, Class<?>... parameterTypes) {
+    try {
+      Method method = l.getClass().getMethod(methodName, parameterTypes);
+      return method.getDeclaringClass() != Locator.class;
+    } catch (NoSuchMethodException e) {
+      return die(e, "Could not find %s.%s()", Locator.class.getCanonicalName(), methodName);
+    }
+  }
+
   private <T> T newInstance(Class<T> clazz, Class<? super T> base) {
     Throwable ex;
     try {
@@ -32,6 +32,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -80,6 +81,15 @@ final class ReflectiveServiceLayer extends ServiceLayerDecorator {
     return null;
   }
 
+  @Override
+  public List<Boolean> areLive(List<Object> domainObjects) {
+    List<Boolean> toReturn = new ArrayList<Boolean>(domainObjects.size());
+    for (Object domainObject : domainObjects) {
+      toReturn.add(getTop().isLive(domainObject));
+    }
+    return toReturn;
+  }
+
   @Override
   public <T> T createDomainObject(Class<T> clazz) {
     Throwable ex;
@@ -120,6 +130,15 @@ final class ReflectiveServiceLayer extends ServiceLayerDecorator {
     return getFind(domainType).getParameterTypes()[0];
   }
 
+  /**
+   * Invocations run on the request thread unless a decorator provides an
+   * Executor.
+   */
+  @Override
+  public Executor getInvocationExecutor(Method contextMethod, Method domainMethod) {
+    return null;
+  }
+
   @Override
   public Object getProperty(Object domainObject, String property) {
     try {
@@ -16,10 +16,16 @@
 package com.google.web.bindery.requestfactory.server;
 
 import com.google.gwt.user.server.rpc.RPCServletUtils;
+import com.google.gwt.user.server.rpc.ResponseCompressor;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.zip.DeflaterOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -123,6 +129,10 @@ public class RequestFactoryServlet extends HttpServlet {
     // No new code should be placed outside of this try block.
     try {
       ensureConfig();
+      if (!DUMP_PAYLOAD && shouldStreamPayload(request)) {
+        streamPayload(request, response);
+        return;
+      }
       String jsonRequestString =
           RPCServletUtils.readContent(request, JSON_CONTENT_TYPE, JSON_CHARSET);
       if (DUMP_PAYLOAD) {
@@ -136,10 +146,21 @@ public class RequestFactoryServlet extends HttpServlet {
         }
         response.setStatus(HttpServletResponse.SC_OK);
         response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
-        // The Writer must be obtained after setting the content type
-        PrintWriter writer = response.getWriter();
-        writer.print(payload);
-        writer.flush();
+        if (RPCServletUtils.acceptsGzipEncoding(request)
+            && shouldCompressResponse(request, payload)) {
+          ResponseCompressor compressor = getResponseCompressor();
+          byte[] bytes = compressor.compress(payload, false);
+          RPCServletUtils.setContentEncodingHeader(response, compressor);
+          response.setContentLength(bytes.length);
+          OutputStream out = response.getOutputStream();
+          out.write(bytes);
+          out.flush();
+        } else {
+          // The Writer must be obtained after setting the content type
+          PrintWriter writer = response.getWriter();
+          writer.print(payload);
+          writer.flush();
+        }
       } catch (RuntimeException e) {
         response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         log.log(Level.SEVERE, "Unexpected error", e);
@@ -151,10 +172,96 @@ public class RequestFactoryServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Returns the {@link ResponseCompressor} used to compress responses.
+   * Subclasses can override this method to use a different compression level
+   * or cache size.
+   * 
+   * @return the shared {@link ResponseCompressor} by default
+   */
+  protected ResponseCompressor getResponseCompressor() {
+    return ResponseCompressor.getDefault();
+  }
+
+  /**
+   * Determines whether a response payload that is not streamed should be
+   * compressed. This method is only called when the requester accepts GZIP
+   * encoding.
+   * <p>
+   * The default implementation, like that of
+   * {@link com.google.gwt.user.server.rpc.RemoteServiceServlet}, compresses
+   * payloads that are larger than a few hundred bytes.
+   * 
+   * @param request the request being processed
+   * @param payload the JSON response payload
+   * @return {@code true} if the payload should be compressed
+   */
+  protected boolean shouldCompressResponse(HttpServletRequest request, String payload) {
+    return RPCServletUtils.exceedsUncompressedContentLengthLimit(payload);
+  }
+
+  /**
+   * Determines whether the request payload should be decoded as it is read
+   * from the {@link HttpServletRequest}, and the response payload written into
+   * the {@link HttpServletResponse} as it is encoded, rather than built as
+   * Strings. This saves the memory of the payload Strings, but not of the
+   * decoded request or the encoded invocation results; see
+   * {@link SimpleRequestProcessor#process(Reader, Writer)}. Since the response
+   * may be partially written when an error occurs, the client may receive a
+   * truncated payload instead of an error status. Streamed responses are always
+   * compressed when the requester accepts GZIP encoding, since their size is
+   * not known in advance.
+   * <p>
+   * The default implementation returns {@code false}. Payloads are never
+   * streamed when the {@code gwt.rpc.dumpPayload} system property is set.
+   * 
+   * @param request the request being processed
+   * @return {@code true} if the payloads should be streamed
+   */
+  protected boolean shouldStreamPayload(HttpServletRequest request) {
+    return false;
+  }
+
   private void ensureConfig() {
     String symbolMapsDirectory = getServletConfig().getInitParameter("symbolMapsDirectory");
     if (symbolMapsDirectory != null) {
       Logging.setSymbolMapsDirectory(symbolMapsDirectory);
     }
   }
+
+  private void streamPayload(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    Reader in = RPCServletUtils.openContentReader(request, JSON_CONTENT_TYPE, JSON_CHARSET);
+    try {
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
+      if (RPCServletUtils.acceptsGzipEncoding(request)) {
+        ResponseCompressor compressor = getResponseCompressor();
+        RPCServletUtils.setContentEncodingHeader(response, compressor);
+        DeflaterOutputStream out = compressor.openStream(response.getOutputStream());
+        try {
+          Writer writer = new OutputStreamWriter(out, JSON_CHARSET);
+          processor.process(in, writer);
+          writer.flush();
+          out.finish();
+        } finally {
+          // Releases the Deflater if the payload could not be written
+          compressor.discard(out);
+        }
+      } else {
+        // The Writer must be obtained after setting the content type
+        PrintWriter writer = response.getWriter();
+        processor.process(in, writer);
+        writer.flush();
+      }
+    } catch (RuntimeException e) {
+      if (!response.isCommitted()) {
+        response.reset();
+        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+      log.log(Level.SEVERE, "Unexpected error", e);
+    } finally {
+      in.close();
+    }
+  }
 }
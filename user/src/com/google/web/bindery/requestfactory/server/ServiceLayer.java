@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.validation.ConstraintViolation;
 
@@ -102,6 +103,23 @@ public abstract class ServiceLayer {
   ServiceLayer() {
   }
 
+  /**
+   * Determines if each of several domain objects is still live (i.e. not
+   * deleted) in the backing store. This method is intended to allow more
+   * efficient access to the backing store by checking all objects whose state
+   * will be returned to the client at once.
+   * <p>
+   * The built-in service layers check the objects of each type whose
+   * {@link Locator} overrides {@link Locator#areLive(List)} with one call to
+   * it, and every other object with {@link #isLive(Object)}.
+   * 
+   * @param domainObjects the domain entities to check
+   * @return a list of the same size as {@code domainObjects}, elements of which
+   *         are {@code true} if the corresponding object could be retrieved at
+   *         a later point in time
+   */
+  public abstract List<Boolean> areLive(List<Object> domainObjects);
+
   /**
    * Create an instance of the requested domain type.
    * 
@@ -184,6 +202,25 @@ public abstract class ServiceLayer {
    */
   public abstract Class<?> getIdType(Class<?> domainType);
 
+  /**
+   * Returns an Executor on which an invocation of a domain method may run
+   * concurrently with the other invocations in the same request, or
+   * {@code null} to invoke the method on the request thread, in order. The
+   * results of concurrent invocations are still returned to the client in the
+   * order of the invocations.
+   * <p>
+   * Only return an Executor for methods that do not depend on the side-effects
+   * of other invocations in the same request, such as independent queries.
+   * Invocations that run on an Executor thread do not see thread-local state,
+   * such as {@link RequestFactoryServlet#getThreadLocalRequest()}, unless the
+   * Executor propagates it.
+   * 
+   * @param contextMethod a method defined in a RequestContext
+   * @param domainMethod the domain method that will be invoked
+   * @return an Executor, or {@code null}
+   */
+  public abstract Executor getInvocationExecutor(Method contextMethod, Method domainMethod);
+
   /**
    * Retrieve the named property from the domain object.
    * 
@@ -26,6 +26,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +47,11 @@ public class ServiceLayerDecorator extends ServiceLayer {
    */
   ServiceLayer next;
 
+  @Override
+  public List<Boolean> areLive(List<Object> domainObjects) {
+    return getNext().areLive(domainObjects);
+  }
+
   @Override
   public <T> T createDomainObject(Class<T> clazz) {
     return getNext().createDomainObject(clazz);
@@ -86,6 +92,11 @@ public class ServiceLayerDecorator extends ServiceLayer {
     return getNext().getIdType(domainType);
   }
 
+  @Override
+  public Executor getInvocationExecutor(Method contextMethod, Method domainMethod) {
+    return getNext().getInvocationExecutor(contextMethod, domainMethod);
+  }
+
   @Override
   public Object getProperty(Object domainObject, String property) {
     return getNext().getProperty(domainObject, property);
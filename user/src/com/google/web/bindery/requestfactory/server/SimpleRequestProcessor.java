@@ -24,6 +24,7 @@ import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.ValueCodex;
 import com.google.web.bindery.autobean.vm.AutoBeanFactorySource;
 import com.google.web.bindery.autobean.vm.Configuration;
+import com.google.web.bindery.autobean.vm.impl.JsonSplittable;
 import com.google.web.bindery.autobean.vm.impl.TypeUtils;
 import com.google.web.bindery.requestfactory.shared.BaseProxy;
 import com.google.web.bindery.requestfactory.shared.EntityProxyId;
@@ -48,13 +49,17 @@ import com.google.web.bindery.requestfactory.shared.messages.ResponseMessage;
 import com.google.web.bindery.requestfactory.shared.messages.ServerFailureMessage;
 import com.google.web.bindery.requestfactory.shared.messages.ViolationMessage;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -62,6 +67,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.validation.ConstraintViolation;
 
@@ -122,16 +132,27 @@ public class SimpleRequestProcessor {
    */
   public String process(String payload) {
     RequestMessage req = AutoBeanCodex.decode(FACTORY, RequestMessage.class, payload).as();
-    AutoBean<ResponseMessage> responseBean = FACTORY.response();
-    try {
-      process(req, responseBean.as());
-    } catch (ReportableException e) {
-      // Create a new response envelope, since the state is unknown
-      responseBean = FACTORY.response();
-      responseBean.as().setGeneralFailure(createFailureMessage(e).as());
-    }
     // Return a JSON-formatted payload
-    return AutoBeanCodex.encode(responseBean).getPayload();
+    return AutoBeanCodex.encode(process(req)).getPayload();
+  }
+
+  /**
+   * Process a payload sent by a RequestFactory client, reading it from a
+   * Reader and writing the response payload to a Writer as it is encoded.
+   * Unlike {@link #process(String)}, neither payload is held as a String. The
+   * request is still decoded into a tree, and each invocation result is still
+   * held as its encoded text until the response is written, so the memory
+   * needed still grows with the size of the payloads.
+   * 
+   * @param payload the payload sent by the client
+   * @param out receives the payload to return to the client
+   * @throws IOException if reading the payload or writing the response fails,
+   *           or if the payload is not well-formed
+   */
+  public void process(Reader payload, Writer out) throws IOException {
+    Splittable data = JsonSplittable.create(payload);
+    RequestMessage req = AutoBeanCodex.decode(FACTORY, RequestMessage.class, data).as();
+    AutoBeanCodex.encode(process(req), out);
   }
 
   public void setExceptionHandler(ExceptionHandler exceptionHandler) {
@@ -255,12 +276,11 @@ public class SimpleRequestProcessor {
 
   private void createReturnOperations(List<OperationMessage> operations, RequestState returnState,
       IdToEntityMap toProcess) {
+    // Check the liveness of all persistent objects at once
+    List<Object> toCheck = new ArrayList<Object>();
     for (Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> entry : toProcess.entrySet()) {
       SimpleProxyId<?> id = entry.getKey();
-
-      AutoBean<? extends BaseProxy> bean = entry.getValue();
-      Object domainObject = bean.getTag(Constants.DOMAIN_OBJECT);
-      WriteOperation writeOperation;
+      Object domainObject = entry.getValue().getTag(Constants.DOMAIN_OBJECT);
 
       if (id.isEphemeral()) {
         // See if the entity has been persisted in the meantime
@@ -268,10 +288,29 @@ public class SimpleRequestProcessor {
             Collections.<String> emptySet());
       }
 
+      if (!id.isEphemeral() && !id.isSynthetic() && domainObject != null) {
+        toCheck.add(domainObject);
+      }
+    }
+    Map<Object, Boolean> live = new IdentityHashMap<Object, Boolean>();
+    if (!toCheck.isEmpty()) {
+      List<Boolean> areLive = service.areLive(toCheck);
+      for (int i = 0, j = toCheck.size(); i < j; i++) {
+        live.put(toCheck.get(i), areLive.get(i));
+      }
+    }
+
+    for (Map.Entry<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> entry : toProcess.entrySet()) {
+      SimpleProxyId<?> id = entry.getKey();
+
+      AutoBean<? extends BaseProxy> bean = entry.getValue();
+      Object domainObject = bean.getTag(Constants.DOMAIN_OBJECT);
+      WriteOperation writeOperation;
+
       if (id.isEphemeral() || id.isSynthetic() || domainObject == null) {
         // If the object isn't persistent, there's no reason to send an update
         writeOperation = null;
-      } else if (!service.isLive(domainObject)) {
+      } else if (!Boolean.TRUE.equals(live.get(domainObject))) {
         writeOperation = WriteOperation.DELETE;
       } else if (id.wasEphemeral()) {
         writeOperation = WriteOperation.PERSIST;
@@ -415,6 +454,53 @@ public class SimpleRequestProcessor {
     return args;
   }
 
+  /**
+   * Returns the result of an invocation started by
+   * {@link #startInvocation(Executor, Method, Object[])}, running it on the
+   * current thread if the Executor has not started it yet.
+   */
+  private Object getInvocationResult(FutureTask<Object> task) {
+    task.run();
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          // Let the invocation finish, so that its result can be reported
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new UnexpectedException("Invocation failed", cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Builds the response envelope for a decoded request.
+   */
+  private AutoBean<ResponseMessage> process(RequestMessage req) {
+    AutoBean<ResponseMessage> responseBean = FACTORY.response();
+    try {
+      process(req, responseBean.as());
+    } catch (ReportableException e) {
+      // Create a new response envelope, since the state is unknown
+      responseBean = FACTORY.response();
+      responseBean.as().setGeneralFailure(createFailureMessage(e).as());
+    }
+    return responseBean;
+  }
+
   private void processInvocationMessages(RequestState state, RequestMessage req,
       List<Splittable> results, List<Boolean> success, RequestState returnState) {
     List<InvocationMessage> invocations = req.getInvocations();
@@ -424,9 +510,12 @@ public class SimpleRequestProcessor {
     }
     List<Method> contextMethods = new ArrayList<Method>(invocations.size());
     List<Object> invocationResults = new ArrayList<Object>(invocations.size());
+    // The invocations running on an Executor, by index
+    List<FutureTask<Object>> pending = new ArrayList<FutureTask<Object>>(invocations.size());
     Map<Object, SortedSet<String>> allPropertyRefs = new HashMap<Object, SortedSet<String>>();
     for (InvocationMessage invocation : invocations) {
-      Object domainReturnValue;
+      Object domainReturnValue = null;
+      FutureTask<Object> task = null;
       boolean ok;
       try {
         // Find the Method
@@ -451,15 +540,12 @@ public class SimpleRequestProcessor {
           Object serviceInstance = service.createServiceInstance(requestContext);
           args.add(0, serviceInstance);
         }
-        // Invoke it
-        domainReturnValue = service.invoke(domainMethod, args.toArray());
-        if (invocation.getPropertyRefs() != null) {
-          SortedSet<String> paths = allPropertyRefs.get(domainReturnValue);
-          if (paths == null) {
-            paths = new TreeSet<String>();
-            allPropertyRefs.put(domainReturnValue, paths);
-          }
-          paths.addAll(invocation.getPropertyRefs());
+        // Invoke it, possibly concurrently with other invocations
+        Executor executor = service.getInvocationExecutor(contextMethod, domainMethod);
+        if (executor == null) {
+          domainReturnValue = service.invoke(domainMethod, args.toArray());
+        } else {
+          task = startInvocation(executor, domainMethod, args.toArray());
         }
         ok = true;
       } catch (ReportableException e) {
@@ -467,8 +553,32 @@ public class SimpleRequestProcessor {
         ok = false;
       }
       invocationResults.add(domainReturnValue);
+      pending.add(task);
       success.add(ok);
     }
+
+    // Wait for the concurrent invocations, and collect the property refs
+    for (int i = 0, j = invocations.size(); i < j; i++) {
+      if (pending.get(i) != null) {
+        try {
+          invocationResults.set(i, getInvocationResult(pending.get(i)));
+        } catch (ReportableException e) {
+          invocationResults.set(i, AutoBeanCodex.encode(createFailureMessage(e)));
+          success.set(i, false);
+        }
+      }
+      Set<String> propertyRefs = invocations.get(i).getPropertyRefs();
+      if (success.get(i) && propertyRefs != null) {
+        Object domainReturnValue = invocationResults.get(i);
+        SortedSet<String> paths = allPropertyRefs.get(domainReturnValue);
+        if (paths == null) {
+          paths = new TreeSet<String>();
+          allPropertyRefs.put(domainReturnValue, paths);
+        }
+        paths.addAll(propertyRefs);
+      }
+    }
+
     Iterator<Method> contextMethodIt = contextMethods.iterator();
     Iterator<Object> objects = invocationResults.iterator();
     Iterator<Boolean> successes = success.iterator();
@@ -548,6 +658,25 @@ public class SimpleRequestProcessor {
     }
   }
 
+  /**
+   * Submits an invocation to an Executor. If the Executor rejects it, it will
+   * run in {@link #getInvocationResult(FutureTask)}.
+   */
+  private FutureTask<Object> startInvocation(Executor executor, final Method domainMethod,
+      final Object[] args) {
+    FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+      public Object call() {
+        return service.invoke(domainMethod, args);
+      }
+    });
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // Run on the request thread instead
+    }
+    return task;
+  }
+
   /**
    * Validate all of the entities referenced in a RequestState.
    */
@@ -15,6 +15,9 @@
  */
 package com.google.web.bindery.requestfactory.shared;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A Locator allows entity types that do not conform to the RequestFactory
  * entity protocol to be used. Instead of attempting to use a {@code findFoo()},
@@ -32,6 +35,28 @@ package com.google.web.bindery.requestfactory.shared;
  * @see ProxyFor#locator()
  */
 public abstract class Locator<T, I> {
+  /**
+   * Returns a value for each of several domain objects indicating if it should
+   * no longer be considered accessible, as {@link #isLive(Object)} does.
+   * RequestFactory checks all the objects that a request touched at once, so
+   * that the checks can be implemented with a single query.
+   * <p>
+   * The default implementation of this method calls {@link #isLive(Object)}
+   * for each object. When it is not overridden, the service layer calls
+   * {@link #isLive(Object)} itself instead.
+   * 
+   * @param domainObjects the objects to check
+   * @return a list of the same size as {@code domainObjects}, holding the
+   *         liveness of each object in the same order
+   */
+  public List<Boolean> areLive(List<T> domainObjects) {
+    List<Boolean> toReturn = new ArrayList<Boolean>(domainObjects.size());
+    for (T domainObject : domainObjects) {
+      toReturn.add(isLive(domainObject));
+    }
+    return toReturn;
+  }
+
   /**
    * Create a new instance of the requested type.
    * 
@@ -50,6 +75,29 @@ public abstract class Locator<T, I> {
    */
   public abstract T find(Class<? extends T> clazz, I id);
 
+  /**
+   * Retrieve several objects of the same type. RequestFactory loads all the
+   * objects of a type that a request refers to at once, so that they can be
+   * retrieved with a single query.
+   * <p>
+   * The default implementation of this method calls
+   * {@link #find(Class, Object)} for each id. When it is not overridden, the
+   * service layer loads the objects one at a time instead.
+   * 
+   * @param clazz the type of objects to retrieve
+   * @param ids ids previously returned from {@link #getId(Object)}
+   * @return a list of the same size as {@code ids}, holding the requested
+   *         objects in the same order, elements of which may be {@code null}
+   *         if the objects could not be found
+   */
+  public List<T> findAll(Class<? extends T> clazz, List<I> ids) {
+    List<T> toReturn = new ArrayList<T>(ids.size());
+    for (I id : ids) {
+      toReturn.add(find(clazz, id));
+    }
+    return toReturn;
+  }
+
   /**
    * Returns the {@code T} type.
    */
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.cfg.ModuleDef;
+import com.google.gwt.dev.cfg.ModuleDefLoader;
+import com.google.gwt.dev.jjs.JJSOptions;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests the keys computed by {@link PermutationResultCache} for real
+ * precompiles.
+ */
+public class PermutationResultCacheKeyTest extends TestCase {
+
+  private static final String MODULE = "com.google.gwt.dev.strict.good.Good";
+
+  private final PermutationResultCache cache =
+      new PermutationResultCache(new File(System.getProperty("java.io.tmpdir")));
+
+  private final TreeLogger logger = TreeLogger.NULL;
+
+  private final JJSOptions options = new Compiler.CompilerOptionsImpl();
+
+  /**
+   * Two separate precompiles of the same module must produce the same keys,
+   * even though their ASTs hash differently in memory.
+   */
+  public void testIndependentPrecompilesAgree() throws UnableToCompleteException {
+    List<String> first = computeKeys();
+    List<String> second = computeKeys();
+    assertFalse(first.isEmpty());
+    assertEquals(first, second);
+
+    // Every permutation has its own key.
+    assertEquals(first.size(), new HashSet<String>(first).size());
+  }
+
+  public void testOptionsChangeKeys() throws UnableToCompleteException {
+    List<String> keys = computeKeys();
+    options.setEnableAssertions(!options.isEnableAssertions());
+    List<String> changedKeys = computeKeys();
+    assertEquals(keys.size(), changedKeys.size());
+    for (String key : changedKeys) {
+      assertFalse(keys.contains(key));
+    }
+  }
+
+  private List<String> computeKeys() throws UnableToCompleteException {
+    ModuleDef module = ModuleDefLoader.loadFromClassPath(logger, MODULE);
+    Precompilation precompilation = Precompile.precompile(logger, options, module, null);
+    assertNotNull(precompilation);
+    List<String> keys = new ArrayList<String>();
+    for (Permutation permutation : precompilation.getPermutations()) {
+      String key = cache.computeKey(permutation, precompilation.getUnifiedAst());
+      assertNotNull(key);
+      keys.add(key);
+    }
+    return keys;
+  }
+}
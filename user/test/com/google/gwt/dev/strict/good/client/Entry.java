@@ -19,7 +19,8 @@ package com.google.gwt.dev.strict.good.client;
 import com.google.gwt.core.client.EntryPoint;
 
 /**
- * Used by {@link com.google.gwt.dev.StrictModeTest}.
+ * Used by {@link com.google.gwt.dev.StrictModeTest} and
+ * {@link com.google.gwt.dev.PermutationResultCacheKeyTest}.
  */
 public class Entry implements EntryPoint {
   public void onModuleLoad() {
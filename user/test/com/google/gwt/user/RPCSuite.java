@@ -57,8 +57,10 @@ import com.google.gwt.user.server.UtilTest;
 import com.google.gwt.user.server.rpc.AbstractXsrfProtectedServiceServletTest;
 import com.google.gwt.user.server.rpc.RPCRequestTest;
 import com.google.gwt.user.server.rpc.RPCServletUtilsTest;
+import com.google.gwt.user.server.rpc.ResponseCompressorTest;
 import com.google.gwt.user.server.rpc.RPCTest;
 import com.google.gwt.user.server.rpc.SerializationPolicyLoaderTest;
+import com.google.gwt.user.server.rpc.impl.FieldAccessorTest;
 import com.google.gwt.user.server.rpc.impl.LegacySerializationPolicyTest;
 import com.google.gwt.user.server.rpc.impl.StandardSerializationPolicyTest;
 
@@ -90,8 +92,10 @@ public class RPCSuite {
     suite.addTestSuite(com.google.gwt.user.server.rpc.RemoteServiceServletTest.class);
     suite.addTestSuite(LegacySerializationPolicyTest.class);
     suite.addTestSuite(StandardSerializationPolicyTest.class);
+    suite.addTestSuite(FieldAccessorTest.class);
     suite.addTestSuite(SerializationPolicyLoaderTest.class);
     suite.addTestSuite(RPCServletUtilsTest.class);
+    suite.addTestSuite(ResponseCompressorTest.class);
     suite.addTestSuite(RPCRequestTest.class);
     suite.addTestSuite(FailedRequestTest.class);
     suite.addTestSuite(FailingRequestBuilderTest.class);
@@ -25,10 +25,12 @@ import com.google.gwt.user.client.rpc.SerializableException;
 import com.google.gwt.user.client.rpc.SerializationException;
 import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
 import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReader;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter;
 import com.google.gwt.user.server.rpc.impl.TypeNameObfuscator;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.Set;
@@ -75,6 +77,11 @@ public class RPCTest extends TestCase {
     long echo(long val);
   }
 
+  @SuppressWarnings("rpc-validation")
+  private static interface E extends RemoteService {
+    int[] values();
+  }
+
   /**
    * Test error message for an out=of-range int value.
    * 
@@ -836,6 +843,52 @@ public class RPCTest extends TestCase {
     }, A_method1, null);
   }
 
+  /**
+   * Tests that
+   * {@link RPC#invokeAndStreamResponse(Object, Method, Object[], SerializationPolicy, int, java.io.OutputStream)}
+   * writes the same response as
+   * {@link RPC#invokeAndEncodeResponse(Object, Method, Object[])}, including
+   * responses that are too long for a single array literal.
+   */
+  public void testInvokeAndStreamResponse() throws Exception {
+    E service = new E() {
+      public int[] values() {
+        int[] values =
+            new int[3 * ServerSerializationStreamWriter.LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH];
+        for (int i = 0; i < values.length; ++i) {
+          values[i] = i;
+        }
+        return values;
+      }
+    };
+    Method method = E.class.getMethod("values");
+    String expected = RPC.invokeAndEncodeResponse(service, method, null);
+    assertTrue(expected.startsWith("//OK"));
+    assertTrue(expected.contains("].concat(["));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RPC.invokeAndStreamResponse(service, method, null, RPC.getDefaultSerializationPolicy(),
+        AbstractSerializationStream.DEFAULT_FLAGS, out);
+    assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+  }
+
+  /**
+   * Tests that
+   * {@link RPC#streamResponseForFailure(Method, Throwable, java.io.OutputStream)}
+   * writes the same response as
+   * {@link RPC#encodeResponseForFailure(Method, Throwable)}.
+   */
+  public void testStreamResponseForFailure() throws Exception {
+    Method method = A.class.getMethod("method1");
+    SerializableException cause = new SerializableException("caf\u00e9 \u2011 \"quoted\"");
+    String expected = RPC.encodeResponseForFailure(method, cause);
+    assertTrue(expected.startsWith("//EX"));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RPC.streamResponseForFailure(method, cause, out);
+    assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+  }
+
   public void testSerializationStreamDequote() throws SerializationException {
     ServerSerializationStreamReader reader = new ServerSerializationStreamReader(
         null, null);
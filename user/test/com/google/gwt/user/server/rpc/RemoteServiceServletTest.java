@@ -16,7 +16,9 @@
 package com.google.gwt.user.server.rpc;
 
 import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.RemoteService;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
 
 import junit.framework.TestCase;
 
@@ -24,10 +26,15 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.Servlet;
@@ -37,9 +44,8 @@ import javax.servlet.ServletException;
 
 /**
  * Test some of the failure modes associated with
- * {@link RemoteServiceServlet#doGetSerializationPolicy(HttpServletRequest, String, String)}.
- * 
- * TODO: test caching of policies?
+ * {@link RemoteServiceServlet#doGetSerializationPolicy(HttpServletRequest, String, String)},
+ * the caching and preloading of policies, and the caching of responses.
  */
 public class RemoteServiceServletTest extends TestCase {
 
@@ -52,6 +58,46 @@ public class RemoteServiceServletTest extends TestCase {
   private static class Foo implements IsSerializable {
   }
 
+  /**
+   * A service with a cacheable method.
+   */
+  @SuppressWarnings("rpc-validation")
+  public static interface LookupService extends RemoteService {
+    @CacheableResponse
+    int lookup(int key);
+
+    int uncachedLookup(int key);
+  }
+
+  /**
+   * Counts the invocations of its methods.
+   */
+  @SuppressWarnings("serial")
+  public static class LookupServiceServlet extends RemoteServiceServlet implements
+      LookupService {
+    final AtomicInteger calls = new AtomicInteger();
+
+    public int lookup(int key) {
+      calls.incrementAndGet();
+      return key * 2;
+    }
+
+    public int uncachedLookup(int key) {
+      calls.incrementAndGet();
+      return key * 2;
+    }
+
+    @Override
+    protected void checkPermutationStrongName() {
+    }
+
+    @Override
+    protected SerializationPolicy doGetSerializationPolicy(
+        javax.servlet.http.HttpServletRequest request, String moduleBaseURL, String strongName) {
+      return RPC.getDefaultSerializationPolicy();
+    }
+  }
+
   private static class MockHttpServletRequestContextPath extends
       MockHttpServletRequest {
     private String contextPath;
@@ -192,6 +238,23 @@ public class RemoteServiceServletTest extends TestCase {
     }
   }
 
+  public void testCacheableResponse() throws SerializationException {
+    LookupServiceServlet rss = new LookupServiceServlet();
+
+    String response = rss.processCall(encodeLookupRequest("lookup", 7));
+    assertTrue(response.startsWith("//OK"));
+    assertTrue(rss.shouldCacheCompressedResponse(null, response));
+    assertEquals(response, rss.processCall(encodeLookupRequest("lookup", 7)));
+    assertEquals(1, rss.calls.get());
+
+    assertFalse(response.equals(rss.processCall(encodeLookupRequest("lookup", 8))));
+    assertEquals(2, rss.calls.get());
+
+    rss.processCall(encodeLookupRequest("uncachedLookup", 7));
+    rss.processCall(encodeLookupRequest("uncachedLookup", 7));
+    assertEquals(4, rss.calls.get());
+  }
+
   public void testDoGetSerializationPolicy_FailToOpenMD5Resource()
       throws ServletException {
     MockServletContext mockContext = new MockServletContext() {
@@ -289,6 +352,168 @@ public class RemoteServiceServletTest extends TestCase {
     assertNotValidDeserialize(serializationPolicy, Baz.class);
   }
 
+  public void testGetSerializationPolicy_Cached() {
+    final AtomicInteger loads = new AtomicInteger();
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      protected SerializationPolicy doGetSerializationPolicy(
+          javax.servlet.http.HttpServletRequest request, String moduleBaseURL,
+          String strongName) {
+        loads.incrementAndGet();
+        return RPC.getDefaultSerializationPolicy();
+      }
+    };
+
+    SerializationPolicy policy = rss.getSerializationPolicy(
+        "http://www.google.com/MyModule/", "12345");
+    assertSame(policy, rss.getSerializationPolicy(
+        "http://www.google.com/MyModule/", "12345"));
+    assertEquals(1, loads.get());
+
+    rss.getSerializationPolicy("http://www.google.com/MyModule/", "67890");
+    assertEquals(2, loads.get());
+  }
+
+  public void testPreloadSerializationPolicies() throws Exception {
+    final String resourcePath = "/MyModule/"
+        + SerializationPolicyLoader.getSerializationPolicyFileName("12345");
+    final AtomicInteger loads = new AtomicInteger();
+    MockServletContext mockContext = new MockServletContext() {
+      public InputStream getResourceAsStream(String resource) {
+        if (resourcePath.equals(resource)) {
+          loads.incrementAndGet();
+          try {
+            String payLoad = Foo.class.getName() + ",true\n";
+            return new ByteArrayInputStream(
+                payLoad.getBytes(SerializationPolicyLoader.SERIALIZATION_POLICY_FILE_ENCODING));
+          } catch (UnsupportedEncodingException e) {
+            return null;
+          }
+        }
+        return null;
+      }
+
+      public Set<String> getResourcePaths(String path) {
+        if ("/".equals(path)) {
+          return new HashSet<String>(Arrays.asList("/MyModule/", "/WEB-INF/"));
+        } else if ("/MyModule/".equals(path)) {
+          return new HashSet<String>(Arrays.asList(resourcePath, "/MyModule/MyModule.nocache.js"));
+        } else if ("/WEB-INF/".equals(path)) {
+          fail("WEB-INF should not be searched");
+        }
+        return null;
+      }
+    };
+    RemoteServiceServlet rss = new RemoteServiceServlet() {
+      @Override
+      protected boolean shouldPreloadSerializationPolicies() {
+        return true;
+      }
+    };
+    rss.init(new MockServletConfig(mockContext));
+
+    // The module path must still be in the servlet's web application
+    MockHttpServletRequestContextPath mockRequest = new MockHttpServletRequestContextPath();
+    mockRequest.contextPath = "/foo";
+    assertNull(rss.doGetSerializationPolicy(mockRequest,
+        "http://www.google.com/MyModule/", "12345"));
+
+    mockRequest.contextPath = "";
+    SerializationPolicy serializationPolicy = rss.doGetSerializationPolicy(
+        mockRequest, "http://www.google.com/MyModule/", "12345");
+    assertNotNull(serializationPolicy);
+    assertDeserializeFields(serializationPolicy, Foo.class);
+    assertEquals(1, loads.get());
+
+    // The preloaded policy was handed over to the caller, which caches it
+    serializationPolicy = rss.doGetSerializationPolicy(mockRequest,
+        "http://www.google.com/MyModule/", "12345");
+    assertDeserializeFields(serializationPolicy, Foo.class);
+    assertEquals(2, loads.get());
+  }
+
+  public void testResponseCache() throws NoSuchMethodException {
+    final long[] now = new long[1];
+    ResponseCache cache = new ResponseCache(2) {
+      @Override
+      long currentTimeMillis() {
+        return now[0];
+      }
+    };
+    SerializationPolicy policy = RPC.getDefaultSerializationPolicy();
+    Method method = LookupService.class.getMethod("lookup", int.class);
+    ResponseCache.Key a = new ResponseCache.Key(method, "a", policy, 0);
+    ResponseCache.Key b = new ResponseCache.Key(method, "b", policy, 0);
+    ResponseCache.Key c = new ResponseCache.Key(method, "c", policy, 0);
+
+    cache.put(a, "//OK[a]", 1000);
+    cache.put(b, "//OK[b]", 2000);
+    assertEquals("//OK[a]", cache.get(new ResponseCache.Key(method, "a", policy, 0)));
+    assertNull(cache.get(new ResponseCache.Key(method, "a", policy, 1)));
+
+    // "b" was the least recently used response
+    cache.put(c, "//OK[c]", 2000);
+    assertEquals(2, cache.size());
+    assertNull(cache.get(b));
+
+    now[0] = 1000;
+    assertNull(cache.get(a));
+    assertEquals("//OK[c]", cache.get(c));
+    assertEquals(1, cache.size());
+  }
+
+  public void testSerializationPolicyCache() {
+    SerializationPolicyCache cache = new SerializationPolicyCache(2);
+    final SerializationPolicy policy = RPC.getDefaultSerializationPolicy();
+    Callable<SerializationPolicy> loader = new Callable<SerializationPolicy>() {
+      public SerializationPolicy call() {
+        return policy;
+      }
+    };
+    Callable<SerializationPolicy> failingLoader = new Callable<SerializationPolicy>() {
+      public SerializationPolicy call() {
+        throw new IllegalStateException();
+      }
+    };
+
+    assertSame(policy, cache.get("a", loader));
+    assertSame(policy, cache.get("b", loader));
+    assertSame(policy, cache.get("a", failingLoader));
+    assertSame(policy, cache.get("c", loader));
+    assertEquals(2, cache.size());
+
+    // "b" was the least recently used policy
+    try {
+      cache.get("b", failingLoader);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(2, cache.size());
+    assertSame(policy, cache.get("b", loader));
+  }
+
+  /**
+   * Encodes a call of a {@link LookupService} method.
+   */
+  private String encodeLookupRequest(String methodName, int key) {
+    char separator = AbstractSerializationStream.RPC_SEPARATOR_CHAR;
+    return "" + AbstractSerializationStream.SERIALIZATION_STREAM_VERSION + separator // version
+        + "0" + separator // flags
+        + "5" + separator // string table count
+        + "moduleBaseUrl" + separator // string table entry #1
+        + "whitelistHashCode" + separator // string table entry #2
+        + LookupService.class.getName() + separator // string table entry #3
+        + methodName + separator // string table entry #4
+        + "I" + separator // string table entry #5
+        + "1" + separator // moduleBaseUrl
+        + "2" + separator // whitelist hashcode
+        + "3" + separator // interface name
+        + "4" + separator // method name
+        + "1" + separator // param count
+        + "5" + separator // 'I' == int param type
+        + key + separator;
+  }
+
   private void assertDeserializeFields(SerializationPolicy policy,
       Class<?> clazz) {
     assertTrue(policy.shouldDeserializeFields(clazz));
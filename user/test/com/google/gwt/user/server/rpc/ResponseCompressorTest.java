@@ -0,0 +1,156 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests {@link ResponseCompressor}.
+ */
+public class ResponseCompressorTest extends TestCase {
+
+  private static final String CONTENT;
+
+  static {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("//OK[").append(i).append(",\"\u00e9l\u00e9ment\"],");
+    }
+    CONTENT = sb.toString();
+  }
+
+  public void testCacheable() throws IOException {
+    ResponseCompressor compressor = new ResponseCompressor(Deflater.DEFAULT_COMPRESSION, 1);
+    byte[] first = compressor.compress(CONTENT, true);
+    assertSame(first, compressor.compress(CONTENT, true));
+    assertNotSame(first, compressor.compress(CONTENT, false));
+    assertEquals(CONTENT, decompress(first));
+
+    // The single cache entry is evicted
+    compressor.compress("other", true);
+    assertNotSame(first, compressor.compress(CONTENT, true));
+  }
+
+  public void testCacheDisabled() throws IOException {
+    ResponseCompressor compressor = new ResponseCompressor(Deflater.DEFAULT_COMPRESSION, 0);
+    byte[] first = compressor.compress(CONTENT, true);
+    assertNotSame(first, compressor.compress(CONTENT, true));
+    assertEquals(CONTENT, decompress(first));
+  }
+
+  public void testClose() throws IOException {
+    final boolean[] closed = new boolean[1];
+    ByteArrayOutputStream out = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+    DeflaterOutputStream stream = ResponseCompressor.getDefault().openStream(out);
+    stream.write(CONTENT.getBytes("UTF-8"));
+    stream.close();
+    assertTrue(closed[0]);
+    assertEquals(CONTENT, decompress(out.toByteArray()));
+
+    // Closing or discarding again has no effect
+    stream.close();
+    ResponseCompressor.getDefault().discard(stream);
+    assertEquals(CONTENT, decompress(out.toByteArray()));
+  }
+
+  public void testDiscard() throws IOException {
+    ResponseCompressor compressor = new ResponseCompressor(Deflater.DEFAULT_COMPRESSION, 0);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DeflaterOutputStream stream = compressor.openStream(out);
+    stream.write(CONTENT.getBytes("UTF-8"));
+    compressor.discard(stream);
+    int size = out.size();
+
+    // The discarded stream writes nothing more
+    stream.finish();
+    assertEquals(size, out.size());
+    try {
+      stream.write(1);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+
+    // Other streams are unaffected
+    assertEquals(CONTENT, decompress(compressor.compress(CONTENT, false)));
+    compressor.discard(new ByteArrayOutputStream());
+  }
+
+  public void testInvalidLevel() {
+    try {
+      new ResponseCompressor(10, 0);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testLevels() throws IOException {
+    int[] levels = {Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED,
+        Deflater.BEST_COMPRESSION};
+    for (int level : levels) {
+      ResponseCompressor compressor = new ResponseCompressor(level, 0);
+      assertEquals(level, compressor.getLevel());
+      // Compress more than once to reuse the pooled Deflater
+      for (int i = 0; i < 3; i++) {
+        assertEquals(CONTENT, decompress(compressor.compress(CONTENT, false)));
+      }
+    }
+  }
+
+  public void testStream() throws IOException {
+    ResponseCompressor compressor = ResponseCompressor.getDefault();
+    assertEquals("gzip", compressor.getContentEncoding());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DeflaterOutputStream stream = compressor.openStream(out);
+    byte[] bytes = CONTENT.getBytes("UTF-8");
+    stream.write(bytes, 0, 100);
+    stream.write(bytes[100]);
+    stream.write(bytes, 101, bytes.length - 101);
+    stream.finish();
+    // Finishing again has no effect
+    stream.finish();
+    assertEquals(CONTENT, decompress(out.toByteArray()));
+
+    try {
+      stream.write(bytes);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  private String decompress(byte[] bytes) throws IOException {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toString("UTF-8");
+  }
+}
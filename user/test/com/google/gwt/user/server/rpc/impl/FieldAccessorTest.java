@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import junit.framework.TestCase;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+
+/**
+ * Tests {@link FieldAccessor}, {@link UnsafeFieldAccessor} and
+ * {@link FieldAccessorGenerator}.
+ */
+public class FieldAccessorTest extends TestCase {
+
+  /**
+   * A class with fields of each kind of type and visibility.
+   */
+  static class Bean implements Serializable {
+    int[] array;
+    boolean booleanValue;
+    protected char charValue;
+    public double doubleValue;
+    long longValue;
+    private String privateString;
+    String string;
+  }
+
+  public void testGeneratedAccessor() throws Exception {
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(Bean.class);
+    FieldAccessor accessor = FieldAccessorGenerator.generate(Bean.class, fields);
+    if (accessor == null || accessor.getClass() == UnsafeFieldAccessor.class) {
+      // This VM does not allow classes to be defined in other ClassLoaders
+      return;
+    }
+    assertSame(Bean.class.getClassLoader(), accessor.getClass().getClassLoader());
+    checkAccessor(accessor, fields);
+  }
+
+  public void testReflectiveAccessor() throws Exception {
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(Bean.class);
+    checkAccessor(new FieldAccessor(fields), fields);
+  }
+
+  public void testPrivateFieldsOnly() throws Exception {
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(Bean.class);
+    Field[] privateFields = new Field[] {fields[indexOf(fields, "privateString")]};
+    FieldAccessor accessor = FieldAccessorGenerator.generate(Bean.class, privateFields);
+    if (!UnsafeFieldAccessor.isAvailable()) {
+      assertNull(accessor);
+      return;
+    }
+    assertSame(UnsafeFieldAccessor.class, accessor.getClass());
+    Bean bean = new Bean();
+    accessor.set(bean, 0, "private");
+    assertEquals("private", bean.privateString);
+    assertEquals("private", accessor.get(bean, 0));
+  }
+
+  public void testUnsafeAccessor() throws Exception {
+    if (!UnsafeFieldAccessor.isAvailable()) {
+      return;
+    }
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(Bean.class);
+    FieldAccessor accessor = new UnsafeFieldAccessor(fields);
+    checkAccessor(accessor, fields);
+
+    try {
+      accessor.get(new Object(), indexOf(fields, "privateString"));
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private void checkAccessor(FieldAccessor accessor, Field[] fields) throws Exception {
+    Bean bean = new Bean();
+    int[] array = new int[] {1, 2};
+    accessor.set(bean, indexOf(fields, "array"), array);
+    accessor.set(bean, indexOf(fields, "booleanValue"), true);
+    accessor.set(bean, indexOf(fields, "charValue"), 'c');
+    accessor.set(bean, indexOf(fields, "doubleValue"), 1.5);
+    accessor.set(bean, indexOf(fields, "longValue"), 42L);
+    accessor.set(bean, indexOf(fields, "privateString"), "private");
+    accessor.set(bean, indexOf(fields, "string"), "hello");
+
+    assertSame(array, bean.array);
+    assertTrue(bean.booleanValue);
+    assertEquals('c', bean.charValue);
+    assertEquals(1.5, bean.doubleValue);
+    assertEquals(42L, bean.longValue);
+    assertEquals("private", bean.privateString);
+    assertEquals("hello", bean.string);
+
+    assertSame(array, accessor.get(bean, indexOf(fields, "array")));
+    assertEquals(Boolean.TRUE, accessor.get(bean, indexOf(fields, "booleanValue")));
+    assertEquals(Character.valueOf('c'), accessor.get(bean, indexOf(fields, "charValue")));
+    assertEquals(Double.valueOf(1.5), accessor.get(bean, indexOf(fields, "doubleValue")));
+    assertEquals(Long.valueOf(42L), accessor.get(bean, indexOf(fields, "longValue")));
+    assertEquals("private", accessor.get(bean, indexOf(fields, "privateString")));
+    assertEquals("hello", accessor.get(bean, indexOf(fields, "string")));
+
+    try {
+      accessor.set(bean, indexOf(fields, "string"), Integer.valueOf(1));
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      accessor.set(bean, indexOf(fields, "privateString"), Integer.valueOf(1));
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      accessor.set(bean, indexOf(fields, "longValue"), null);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private int indexOf(Field[] fields, String name) {
+    for (int i = 0; i < fields.length; ++i) {
+      if (fields[i].getName().equals(name)) {
+        return i;
+      }
+    }
+    fail("No field " + name);
+    return -1;
+  }
+}
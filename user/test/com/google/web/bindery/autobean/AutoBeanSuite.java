@@ -19,6 +19,7 @@ import com.google.web.bindery.autobean.gwt.client.AutoBeanTest;
 import com.google.web.bindery.autobean.shared.AutoBeanCodexTest;
 import com.google.web.bindery.autobean.shared.SplittableTest;
 import com.google.web.bindery.autobean.vm.AutoBeanCodexJreTest;
+import com.google.web.bindery.autobean.vm.AutoBeanGeneratedClassesJreTest;
 import com.google.web.bindery.autobean.vm.AutoBeanJreTest;
 import com.google.web.bindery.autobean.vm.SplittableJreTest;
 import com.google.gwt.junit.tools.GWTTestSuite;
@@ -34,6 +35,7 @@ public class AutoBeanSuite {
     GWTTestSuite suite = new GWTTestSuite("Test suite for AutoBean functions");
     suite.addTestSuite(AutoBeanCodexJreTest.class);
     suite.addTestSuite(AutoBeanCodexTest.class);
+    suite.addTestSuite(AutoBeanGeneratedClassesJreTest.class);
     suite.addTestSuite(AutoBeanJreTest.class);
     suite.addTestSuite(AutoBeanTest.class);
     suite.addTestSuite(SplittableJreTest.class);
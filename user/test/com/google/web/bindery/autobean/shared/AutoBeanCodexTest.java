@@ -20,6 +20,7 @@ import com.google.web.bindery.autobean.shared.impl.EnumMap;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.junit.client.GWTTestCase;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -384,6 +385,16 @@ public class AutoBeanCodexTest extends GWTTestCase {
     Splittable split = AutoBeanCodex.encode(bean);
     AutoBean<T> decoded = AutoBeanCodex.decode(f, bean.getType(), split);
     assertTrue(AutoBeanUtils.deepEquals(bean, decoded));
+
+    // Encoding into an Appendable must produce an equivalent payload
+    StringBuilder sb = new StringBuilder();
+    try {
+      AutoBeanCodex.encode(bean, sb);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    AutoBean<T> decodedFromAppendable = AutoBeanCodex.decode(f, bean.getType(), sb.toString());
+    assertTrue(AutoBeanUtils.deepEquals(bean, decodedFromAppendable));
     return decoded;
   }
 }
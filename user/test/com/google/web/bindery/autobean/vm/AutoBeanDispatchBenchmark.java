@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanFactory;
+import com.google.web.bindery.autobean.vm.impl.ProxyAutoBean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the cost of calling the methods of JVM AutoBeans, with Proxy-based
+ * implementations and with generated classes (see
+ * {@link Configuration.Builder#setGenerateBeanClasses(boolean)}).
+ *
+ * <p>
+ * Each operation is run a fixed number of times per iteration. Results are
+ * averaged over the measured iterations, after a number of warmup iterations
+ * that let the JIT settle.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>java -cp &lt;gwt-user, gwt-dev, user test classes&gt;
+ * com.google.web.bindery.autobean.vm.AutoBeanDispatchBenchmark [-warmup N]
+ * [-iterations N]</code>
+ * </p>
+ */
+public class AutoBeanDispatchBenchmark {
+
+  /**
+   * A simple bean.
+   */
+  public interface Bean {
+    int getCount();
+
+    String getName();
+
+    void setCount(int count);
+
+    void setName(String name);
+  }
+
+  /**
+   * A measured unit of work.
+   */
+  private abstract static class Operation {
+    private final String name;
+
+    public Operation(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Runs the operation once with the given configuration, returning a value
+     * that depends on its result.
+     */
+    public abstract int run(Configuration configuration, int i);
+  }
+
+  private static final int DEFAULT_ITERATIONS = 10;
+
+  private static final int DEFAULT_WARMUP = 3;
+
+  private static final AutoBeanFactory FACTORY =
+      AutoBeanFactorySource.create(AutoBeanFactory.class);
+
+  private static final int OPERATIONS_PER_ITERATION = 100000;
+
+  /**
+   * Keeps the JIT from eliminating the measured calls.
+   */
+  private static int sink;
+
+  public static void main(String[] args) {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    for (int i = 0; i < args.length; ++i) {
+      if ("-warmup".equals(args[i]) && i + 1 < args.length) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("-iterations".equals(args[i]) && i + 1 < args.length) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        printUsage();
+        return;
+      }
+    }
+    if (iterations < 1) {
+      printUsage();
+      return;
+    }
+
+    Configuration proxies = new Configuration.Builder().setGenerateBeanClasses(false).build();
+    Configuration generated = new Configuration.Builder().setGenerateBeanClasses(true).build();
+    System.out.println(String.format("  %-36s %12s %12s %12s", "operation", "proxy ns/op",
+        "class ns/op", "speedup"));
+    for (Operation operation : createOperations()) {
+      double proxyNanos = measure(operation, proxies, warmup, iterations);
+      double generatedNanos = measure(operation, generated, warmup, iterations);
+      System.out.println(String.format("  %-36s %12.1f %12.1f %11.2fx", operation.getName(),
+          proxyNanos, generatedNanos, proxyNanos / generatedNanos));
+    }
+    if (sink == 42) {
+      System.out.println();
+    }
+  }
+
+  private static List<Operation> createOperations() {
+    return Arrays.asList(new Operation("create, set and get") {
+      @Override
+      public int run(Configuration configuration, int i) {
+        Bean bean = AutoBeanFactorySource.createBean(Bean.class, configuration).as();
+        bean.setCount(i);
+        bean.setName("name");
+        return bean.getCount() + bean.getName().length();
+      }
+    }, new Operation("getter and setter") {
+      private Configuration last;
+      private Bean bean;
+
+      @Override
+      public int run(Configuration configuration, int i) {
+        if (configuration != last) {
+          bean = AutoBeanFactorySource.createBean(Bean.class, configuration).as();
+          last = configuration;
+        }
+        bean.setCount(i);
+        return bean.getCount();
+      }
+    }, new Operation("wrapped List.get") {
+      private Configuration last;
+      private List<String> list;
+
+      @Override
+      public int run(Configuration configuration, int i) {
+        if (configuration != last) {
+          List<String> toWrap = new ArrayList<String>(Arrays.asList("a", "b", "c"));
+          @SuppressWarnings({"unchecked", "rawtypes"})
+          AutoBean<List<String>> bean =
+              new ProxyAutoBean(FACTORY, List.class, configuration, toWrap);
+          list = bean.as();
+          last = configuration;
+        }
+        return list.get(i % 3).length();
+      }
+    });
+  }
+
+  /**
+   * Returns the average time of one operation in nanoseconds.
+   */
+  private static double measure(Operation operation, Configuration configuration, int warmup,
+      int iterations) {
+    for (int i = 0; i < warmup; ++i) {
+      runIteration(operation, configuration);
+    }
+    long totalNanos = 0;
+    for (int i = 0; i < iterations; ++i) {
+      long start = System.nanoTime();
+      runIteration(operation, configuration);
+      totalNanos += System.nanoTime() - start;
+    }
+    return (double) totalNanos / iterations / OPERATIONS_PER_ITERATION;
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: java " + AutoBeanDispatchBenchmark.class.getName()
+        + " [-warmup N] [-iterations N]");
+  }
+
+  private static void runIteration(Operation operation, Configuration configuration) {
+    int result = 0;
+    for (int i = 0; i < OPERATIONS_PER_ITERATION; ++i) {
+      result += operation.run(configuration, i);
+    }
+    sink += result;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the AutoBeanTests against the JRE implementation, using generated
+ * classes instead of Proxies.
+ */
+public class AutoBeanGeneratedClassesJreTest extends AutoBeanJreTest {
+
+  /**
+   * Creates shims of one type from several threads at once, which must all
+   * share the single class generated for that type.
+   */
+  public void testConcurrentCreation() throws Exception {
+    int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Class<?>>> results = new ArrayList<Future<Class<?>>>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(new Callable<Class<?>>() {
+          public Class<?> call() throws Exception {
+            start.await();
+            Object shim = factory.intf().as();
+            return shim.getClass();
+          }
+        }));
+      }
+      start.countDown();
+      Object shim = factory.intf().as();
+      Class<?> expected = shim.getClass();
+      assertFalse(Proxy.isProxyClass(expected));
+      for (Future<Class<?>> result : results) {
+        assertSame(expected, result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testGeneratedClasses() {
+    Object shim = factory.intf().as();
+    assertFalse(Proxy.isProxyClass(shim.getClass()));
+
+    List<String> list = new ArrayList<String>();
+    @SuppressWarnings("unchecked")
+    List<String> wrapped = factory.create(List.class, list).as();
+    assertFalse(Proxy.isProxyClass(wrapped.getClass()));
+    wrapped.add("foo");
+    assertEquals(Collections.singletonList("foo"), list);
+    assertEquals("foo", wrapped.get(0));
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    String old =
+        System.setProperty(Configuration.GENERATE_BEAN_CLASSES_PROPERTY, String.valueOf(true));
+    try {
+      super.gwtSetUp();
+    } finally {
+      if (old == null) {
+        System.clearProperty(Configuration.GENERATE_BEAN_CLASSES_PROPERTY);
+      } else {
+        System.setProperty(Configuration.GENERATE_BEAN_CLASSES_PROPERTY, old);
+      }
+    }
+  }
+}
@@ -15,7 +15,13 @@
  */
 package com.google.web.bindery.autobean.vm;
 
+import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.shared.SplittableTest;
+import com.google.web.bindery.autobean.shared.impl.StringQuoter;
+import com.google.web.bindery.autobean.vm.impl.JsonSplittable;
+
+import java.io.IOException;
+import java.io.StringReader;
 
 /**
  * A JRE-only version of SplittableTest.
@@ -25,4 +31,79 @@ public class SplittableJreTest extends SplittableTest {
   public String getModuleName() {
     return null;
   }
+
+  /**
+   * Objects and arrays created from a String keep their text until their
+   * contents are accessed.
+   */
+  public void testCreateDefersParsing() {
+    String payload = "{\"a\": [1, 2], \"b\": \"x\"}";
+    Splittable split = StringQuoter.split(payload);
+    assertTrue(split.isKeyed());
+    assertFalse(split.isIndexed());
+    assertEquals(payload, split.getPayload());
+
+    Splittable a = split.get("a");
+    assertEquals(2, a.size());
+    StringQuoter.split("3").assign(a, 1);
+    // The payload now reflects the change
+    assertTrue(split.getPayload(), split.getPayload().contains("[1,3]"));
+
+    try {
+      StringQuoter.split("[1,").size();
+      fail("Should not have parsed");
+    } catch (RuntimeException expected) {
+    }
+  }
+
+  /**
+   * Payloads read from a Reader must be indistinguishable from those parsed
+   * from a String.
+   */
+  public void testCreateFromReader() throws IOException {
+    String[] payloads = {
+        "{\"a\":true, \"b\":3, \"c\":\"string\", \"d\":null}",
+        "[1, -2.5, 1e3, 12345678901, [], {}, [[null]], false ] ",
+        "{\"nested\":{\"list\":[{\"x\":\"\\u00e9\\\"\\\\\\/\\n\"}]}, \"empty\":\"\"}",
+        "\"a string\"", "42", "true"};
+    for (String payload : payloads) {
+      Splittable expected = parsed(StringQuoter.split(payload));
+      Splittable actual = JsonSplittable.create(new StringReader(payload));
+      assertEquals(payload, expected.getPayload(), actual.getPayload());
+    }
+    assertNull(JsonSplittable.create(new StringReader("null")));
+
+    // Strings longer than the parser's buffer
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("abc\\\"");
+    }
+    String payload = "[\"" + sb + "\"]";
+    assertEquals(StringQuoter.split(payload).get(0).asString(), JsonSplittable.create(
+        new StringReader(payload)).get(0).asString());
+  }
+
+  public void testCreateFromReaderMalformed() {
+    String[] payloads = {"", "{", "[1,]", "{\"a\"}", "{\"a\":1]", "[1 2]", "tru", "[1] 2",
+        "\"unterminated"};
+    for (String payload : payloads) {
+      try {
+        JsonSplittable.create(new StringReader(payload));
+        fail("Should not have parsed " + payload);
+      } catch (IOException expected) {
+      }
+    }
+  }
+
+  /**
+   * Makes a Splittable parse its text, so that its payload is normalized.
+   */
+  private Splittable parsed(Splittable split) {
+    if (split.isIndexed()) {
+      split.size();
+    } else if (split.isKeyed()) {
+      split.getPropertyKeys();
+    }
+    return split;
+  }
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2011 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.event.shared.EventBus;
+import com.google.web.bindery.event.shared.SimpleEventBus;
+import com.google.web.bindery.requestfactory.server.testing.InProcessRequestTransport;
+import com.google.web.bindery.requestfactory.shared.EntityProxy;
+import com.google.web.bindery.requestfactory.shared.EntityProxyChange;
+import com.google.web.bindery.requestfactory.shared.EntityProxyId;
+import com.google.web.bindery.requestfactory.shared.Locator;
+import com.google.web.bindery.requestfactory.shared.ProxyFor;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.Service;
+import com.google.web.bindery.requestfactory.shared.WriteOperation;
+import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests that entities whose Locators override
+ * {@link Locator#findAll(Class, List)} and {@link Locator#areLive(List)} are
+ * loaded and checked with one call per type, alongside entities that are
+ * handled one at a time.
+ */
+public class BulkLocatorJreTest extends TestCase {
+
+  /**
+   * An entity loaded by {@link BulkLocator}.
+   */
+  static class Bulk {
+    final String id;
+
+    Bulk(String id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * Records the bulk calls and fails on single-object calls.
+   */
+  public static class BulkLocator extends Locator<Bulk, String> {
+    static final List<List<String>> areLiveCalls = new ArrayList<List<String>>();
+    static final Set<String> deadIds = new HashSet<String>();
+    static final List<List<String>> findAllCalls = new ArrayList<List<String>>();
+
+    @Override
+    public List<Boolean> areLive(List<Bulk> domainObjects) {
+      List<String> ids = new ArrayList<String>();
+      List<Boolean> toReturn = new ArrayList<Boolean>();
+      for (Bulk bulk : domainObjects) {
+        ids.add(bulk.id);
+        toReturn.add(!deadIds.contains(bulk.id));
+      }
+      areLiveCalls.add(ids);
+      return toReturn;
+    }
+
+    @Override
+    public Bulk create(Class<? extends Bulk> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Bulk find(Class<? extends Bulk> clazz, String id) {
+      fail("find() should not be called");
+      return null;
+    }
+
+    @Override
+    public List<Bulk> findAll(Class<? extends Bulk> clazz, List<String> ids) {
+      assertEquals(Bulk.class, clazz);
+      findAllCalls.add(new ArrayList<String>(ids));
+      List<Bulk> toReturn = new ArrayList<Bulk>();
+      for (String id : ids) {
+        toReturn.add(new Bulk(id));
+      }
+      return toReturn;
+    }
+
+    @Override
+    public Class<Bulk> getDomainType() {
+      return Bulk.class;
+    }
+
+    @Override
+    public String getId(Bulk domainObject) {
+      return domainObject.id;
+    }
+
+    @Override
+    public Class<String> getIdType() {
+      return String.class;
+    }
+
+    @Override
+    public Object getVersion(Bulk domainObject) {
+      return 0;
+    }
+
+    @Override
+    public boolean isLive(Bulk domainObject) {
+      fail("isLive() should not be called");
+      return false;
+    }
+  }
+
+  @ProxyFor(value = Bulk.class, locator = BulkLocator.class)
+  interface BulkProxy extends EntityProxy {
+    EntityProxyId<BulkProxy> stableId();
+  }
+
+  @Service(ContextImpl.class)
+  interface Context extends RequestContext {
+    Request<String> describe(List<BulkProxy> bulks, SingleProxy single, PlainProxy plain,
+        BulkProxy bulk);
+
+    Request<List<BulkProxy>> getBulks();
+
+    Request<PlainProxy> getPlain();
+
+    Request<SingleProxy> getSingle();
+  }
+
+  static class ContextImpl {
+    public static String describe(List<Bulk> bulks, Single single, Plain plain, Bulk bulk) {
+      StringBuilder sb = new StringBuilder();
+      for (Bulk b : bulks) {
+        sb.append(b.id).append(",");
+      }
+      return sb.append(single.id).append(",").append(plain.id).append(",").append(bulk.id)
+          .toString();
+    }
+
+    public static List<Bulk> getBulks() {
+      return Arrays.asList(new Bulk("a"), new Bulk("b"), new Bulk("c"));
+    }
+
+    public static Plain getPlain() {
+      return new Plain(42L);
+    }
+
+    public static Single getSingle() {
+      return new Single("s");
+    }
+  }
+
+  /**
+   * The factory under test.
+   */
+  interface Factory extends RequestFactory {
+    Context context();
+  }
+
+  /**
+   * An entity without a Locator.
+   */
+  static class Plain {
+    static int finds;
+
+    public static Plain findPlain(Long id) {
+      finds++;
+      return new Plain(id);
+    }
+
+    final Long id;
+
+    Plain(Long id) {
+      this.id = id;
+    }
+
+    public Long getId() {
+      return id;
+    }
+
+    public Integer getVersion() {
+      return 0;
+    }
+  }
+
+  @ProxyFor(Plain.class)
+  interface PlainProxy extends EntityProxy {
+    EntityProxyId<PlainProxy> stableId();
+  }
+
+  /**
+   * Captures the response of a request.
+   */
+  static class ResultReceiver<T> extends Receiver<T> {
+    T result;
+
+    @Override
+    public void onSuccess(T response) {
+      result = response;
+    }
+  }
+
+  /**
+   * An entity loaded by {@link SingleLocator}.
+   */
+  static class Single {
+    final String id;
+
+    Single(String id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * Counts the single-object calls of a Locator without bulk methods.
+   */
+  public static class SingleLocator extends Locator<Single, String> {
+    static int finds;
+    static int isLives;
+
+    @Override
+    public Single create(Class<? extends Single> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Single find(Class<? extends Single> clazz, String id) {
+      finds++;
+      return new Single(id);
+    }
+
+    @Override
+    public Class<Single> getDomainType() {
+      return Single.class;
+    }
+
+    @Override
+    public String getId(Single domainObject) {
+      return domainObject.id;
+    }
+
+    @Override
+    public Class<String> getIdType() {
+      return String.class;
+    }
+
+    @Override
+    public Object getVersion(Single domainObject) {
+      return 0;
+    }
+
+    @Override
+    public boolean isLive(Single domainObject) {
+      isLives++;
+      return true;
+    }
+  }
+
+  @ProxyFor(value = Single.class, locator = SingleLocator.class)
+  interface SingleProxy extends EntityProxy {
+    EntityProxyId<SingleProxy> stableId();
+  }
+
+  private EventBus eventBus;
+
+  private Factory factory;
+
+  public void testBulkCalls() {
+    final List<EntityProxyId<BulkProxy>> deleted = new ArrayList<EntityProxyId<BulkProxy>>();
+    EntityProxyChange.registerForProxyType(eventBus, BulkProxy.class,
+        new EntityProxyChange.Handler<BulkProxy>() {
+          public void onProxyChange(EntityProxyChange<BulkProxy> event) {
+            if (WriteOperation.DELETE.equals(event.getWriteOperation())) {
+              deleted.add(event.getProxyId());
+            }
+          }
+        });
+    BulkLocator.deadIds.add("b");
+
+    Context context = factory.context();
+    ResultReceiver<List<BulkProxy>> bulks = new ResultReceiver<List<BulkProxy>>();
+    ResultReceiver<SingleProxy> single = new ResultReceiver<SingleProxy>();
+    ResultReceiver<PlainProxy> plain = new ResultReceiver<PlainProxy>();
+    context.getBulks().to(bulks);
+    context.getSingle().to(single);
+    context.getPlain().to(plain);
+    context.fire();
+
+    // All of the returned Bulks are checked at once, the others one by one
+    assertEquals(1, BulkLocator.areLiveCalls.size());
+    assertEquals(3, BulkLocator.areLiveCalls.get(0).size());
+    assertEquals(1, SingleLocator.isLives);
+    assertTrue(BulkLocator.findAllCalls.isEmpty());
+    assertEquals(3, bulks.result.size());
+
+    // The liveness of each Bulk was matched with the right object
+    assertEquals(Arrays.asList(bulks.result.get(1).stableId()), deleted);
+    assertNotNull(single.result);
+    assertNotNull(plain.result);
+
+    reset();
+    ResultReceiver<String> description = new ResultReceiver<String>();
+    List<BulkProxy> reversed = Arrays.asList(bulks.result.get(2), bulks.result.get(0));
+    factory.context().describe(reversed, single.result, plain.result, bulks.result.get(1)).fire(
+        description);
+
+    // The arguments are loaded with one findAll() call and passed in order
+    assertEquals("c,a,s,42,b", description.result);
+    assertEquals(1, BulkLocator.findAllCalls.size());
+    List<String> found = BulkLocator.findAllCalls.get(0);
+    assertEquals(3, found.size());
+    assertTrue(found.containsAll(Arrays.asList("a", "b", "c")));
+    assertEquals(1, SingleLocator.finds);
+    // Once to load the Plain, and once to check that it is live
+    assertEquals(2, Plain.finds);
+    assertEquals(1, BulkLocator.areLiveCalls.size());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    reset();
+    eventBus = new SimpleEventBus();
+    factory = RequestFactorySource.create(Factory.class);
+    SimpleRequestProcessor processor = new SimpleRequestProcessor(ServiceLayer.create());
+    factory.initialize(eventBus, new InProcessRequestTransport(processor));
+  }
+
+  private void reset() {
+    BulkLocator.areLiveCalls.clear();
+    BulkLocator.deadIds.clear();
+    BulkLocator.findAllCalls.clear();
+    Plain.finds = 0;
+    SingleLocator.finds = 0;
+    SingleLocator.isLives = 0;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2011 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.event.shared.SimpleEventBus;
+import com.google.web.bindery.requestfactory.server.testing.InProcessRequestTransport;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.ServerFailure;
+import com.google.web.bindery.requestfactory.shared.SimpleFooRequest;
+import com.google.web.bindery.requestfactory.shared.SimpleRequestFactory;
+import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests invocations that run on an Executor provided by
+ * {@link ServiceLayer#getInvocationExecutor(Method, Method)}.
+ */
+public class ConcurrentInvocationJreTest extends TestCase {
+
+  /**
+   * Runs the invocations of the given domain methods on an Executor.
+   */
+  static class ExecutorDecorator extends ServiceLayerDecorator {
+    private final Executor executor;
+    private final List<String> methodNames;
+
+    public ExecutorDecorator(Executor executor, String... methodNames) {
+      this.executor = executor;
+      this.methodNames = Arrays.asList(methodNames);
+    }
+
+    @Override
+    public Executor getInvocationExecutor(Method contextMethod, Method domainMethod) {
+      return methodNames.contains(domainMethod.getName()) ? executor : null;
+    }
+  }
+
+  /**
+   * Records the results of invocations in the order in which they are
+   * delivered.
+   */
+  static class RecordingReceiver<T> extends Receiver<T> {
+    private final List<Object> results;
+
+    public RecordingReceiver(List<Object> results) {
+      this.results = results;
+    }
+
+    @Override
+    public void onFailure(ServerFailure error) {
+      results.add(error);
+    }
+
+    @Override
+    public void onSuccess(T response) {
+      results.add(response);
+    }
+  }
+
+  private ExecutorService executorService;
+
+  public void testFailureIsReportedInOrder() {
+    SimpleRequestFactory factory =
+        createFactory(new ExecutorDecorator(executorService, "add", "pleaseCrash"));
+    List<Object> results = new ArrayList<Object>();
+    SimpleFooRequest context = factory.simpleFooRequest();
+    context.add(1, 2).to(new RecordingReceiver<Integer>(results));
+    context.pleaseCrash(42).to(new RecordingReceiver<Void>(results));
+    context.add(3, 4).to(new RecordingReceiver<Integer>(results));
+    context.fire();
+
+    assertEquals(3, results.size());
+    assertEquals(3, results.get(0));
+    assertTrue(results.get(1) instanceof ServerFailure);
+    assertEquals(7, results.get(2));
+  }
+
+  public void testInvocationsOnExecutor() {
+    final AtomicInteger executed = new AtomicInteger();
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        executed.incrementAndGet();
+        executorService.execute(command);
+      }
+    };
+    SimpleRequestFactory factory = createFactory(new ExecutorDecorator(executor, "add"));
+    List<Object> results = new ArrayList<Object>();
+    SimpleFooRequest context = factory.simpleFooRequest();
+    for (int i = 0; i < 10; i++) {
+      context.add(i, i).to(new RecordingReceiver<Integer>(results));
+    }
+    context.countSimpleFoo().to(new RecordingReceiver<Long>(results));
+    context.fire();
+
+    assertEquals(10, executed.get());
+    assertEquals(11, results.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i + i, results.get(i));
+    }
+    assertTrue(results.get(10) instanceof Long);
+  }
+
+  public void testRejectedInvocationsRunOnRequestThread() {
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    SimpleRequestFactory factory = createFactory(new ExecutorDecorator(executor, "add"));
+    List<Object> results = new ArrayList<Object>();
+    SimpleFooRequest context = factory.simpleFooRequest();
+    context.add(1, 2).to(new RecordingReceiver<Integer>(results));
+    context.add(3, 4).to(new RecordingReceiver<Integer>(results));
+    context.fire();
+
+    assertEquals(Arrays.<Object> asList(3, 7), results);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executorService.shutdownNow();
+  }
+
+  private SimpleRequestFactory createFactory(ServiceLayerDecorator decorator) {
+    SimpleRequestFactory factory = RequestFactorySource.create(SimpleRequestFactory.class);
+    SimpleRequestProcessor processor = new SimpleRequestProcessor(ServiceLayer.create(decorator));
+    factory.initialize(new SimpleEventBus(), new InProcessRequestTransport(processor));
+    return factory;
+  }
+}